@@ -0,0 +1,219 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blizzardtec.fixclient.ClientApplication;
+import com.blizzardtec.fixclient.DecodeMode;
+import com.blizzardtec.fixclient.OrderType;
+
+import quickfix.ConfigError;
+import quickfix.DataDictionary;
+import quickfix.InvalidMessage;
+import quickfix.Message;
+import quickfix.MessageUtils;
+import quickfix.SessionID;
+import quickfix.field.MDEntryPositionNo;
+import quickfix.field.MDEntryPx;
+import quickfix.field.MDEntrySize;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDUpdateAction;
+import quickfix.field.SenderCompID;
+import quickfix.field.Symbol;
+import quickfix.field.TargetCompID;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import quickfix.fix44.MessageFactory;
+
+/**
+ * Market data messages applied through the application, as the
+ * session thread applies them, with each way of decoding.
+ *
+ * The messages are parsed from their wire form with the FIX44.xml
+ * dictionary, so they hold the same groups a session hands over.
+ * Books are built on the calling thread.
+ *
+ * @author Barnaby Golden
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientApplicationBenchmarks {
+
+    /**
+     * Instrument.
+     */
+    private static final String SYMBOL = "EUR/USD";
+    /**
+     * Bid prices of the snapshot, best first.
+     */
+    private static final String[] BID_PRICES =
+                                        {"1.4335", "1.4334", "1.4333"};
+    /**
+     * Offer prices of the snapshot, best first.
+     */
+    private static final String[] OFFER_PRICES =
+                                        {"1.4336", "1.4337", "1.4338"};
+    /**
+     * Order size.
+     */
+    private static final String SIZE = "1000";
+    /**
+     * Client comp ID.
+     */
+    private static final String CLIENT = "FIXCLIENT";
+    /**
+     * Venue comp ID.
+     */
+    private static final String SERVER = "FIXSERVER";
+
+    /**
+     * How messages are decoded.
+     */
+    @Param({"STANDARD", "FLYWEIGHT"})
+    public DecodeMode decodeMode;
+
+    /**
+     * Session the messages arrive on.
+     */
+    private final SessionID sessionID =
+                        new SessionID("FIX.4.4", CLIENT, SERVER);
+    /**
+     * Application.
+     */
+    private ClientApplication application;
+    /**
+     * Three level snapshot of both sides.
+     */
+    private MarketDataSnapshotFullRefresh snapshot;
+    /**
+     * Refresh changing the top bid.
+     */
+    private MarketDataIncrementalRefresh refresh;
+
+    /**
+     * Parse the messages and build the book.
+     * @throws ConfigError thrown if the dictionary cannot be loaded
+     * @throws InvalidMessage thrown if a message cannot be parsed
+     */
+    @Setup
+    public void setUp() throws ConfigError, InvalidMessage {
+
+        final DataDictionary dictionary = new DataDictionary("FIX44.xml");
+        final MessageFactory factory = new MessageFactory();
+
+        snapshot = (MarketDataSnapshotFullRefresh) MessageUtils.parse(
+                factory, dictionary, wire(buildSnapshot()));
+        refresh = (MarketDataIncrementalRefresh) MessageUtils.parse(
+                factory, dictionary, wire(buildRefresh()));
+
+        application = new ClientApplication(decodeMode);
+        application.onMessage(snapshot, sessionID);
+    }
+
+    /**
+     * Apply a full snapshot.
+     */
+    @Benchmark
+    public void snapshot() {
+        application.onMessage(snapshot, sessionID);
+    }
+
+    /**
+     * Apply a one entry incremental refresh.
+     */
+    @Benchmark
+    public void incremental() {
+        application.onMessage(refresh, sessionID);
+    }
+
+    /**
+     * Get a message as received from the venue.
+     * @param message message
+     * @return wire form
+     */
+    private static String wire(final Message message) {
+        message.getHeader().setString(SenderCompID.FIELD, SERVER);
+        message.getHeader().setString(TargetCompID.FIELD, CLIENT);
+        return message.toString();
+    }
+
+    /**
+     * Build a three level snapshot.
+     * @return snapshot
+     */
+    private static MarketDataSnapshotFullRefresh buildSnapshot() {
+
+        final MarketDataSnapshotFullRefresh message =
+                                    new MarketDataSnapshotFullRefresh();
+        message.setString(Symbol.FIELD, SYMBOL);
+
+        for (int i = 0; i < BID_PRICES.length; i++) {
+            message.addGroup(buildEntry(OrderType.BID, i + 1,
+                                        BID_PRICES[i]));
+            message.addGroup(buildEntry(OrderType.OFFER, i + 1,
+                                        OFFER_PRICES[i]));
+        }
+
+        return message;
+    }
+
+    /**
+     * Build a snapshot entry.
+     * @param type bid or offer
+     * @param level level
+     * @param price price
+     * @return entry group
+     */
+    private static MarketDataSnapshotFullRefresh.NoMDEntries buildEntry(
+            final char type, final int level, final String price) {
+
+        final MarketDataSnapshotFullRefresh.NoMDEntries group =
+                new MarketDataSnapshotFullRefresh.NoMDEntries();
+        group.setChar(MDEntryType.FIELD, type);
+        group.setString(MDEntryPx.FIELD, price);
+        group.setString(MDEntrySize.FIELD, SIZE);
+        group.setInt(MDEntryPositionNo.FIELD, level);
+
+        return group;
+    }
+
+    /**
+     * Build a refresh changing the top bid.
+     * @return refresh
+     */
+    private static MarketDataIncrementalRefresh buildRefresh() {
+
+        final MarketDataIncrementalRefresh message =
+                                    new MarketDataIncrementalRefresh();
+        final MarketDataIncrementalRefresh.NoMDEntries group =
+                new MarketDataIncrementalRefresh.NoMDEntries();
+        group.setChar(MDUpdateAction.FIELD, MDUpdateAction.CHANGE);
+        group.setChar(MDEntryType.FIELD, OrderType.BID);
+        group.setString(Symbol.FIELD, SYMBOL);
+        group.setInt(MDEntryPositionNo.FIELD, 1);
+        group.setString(MDEntryPx.FIELD, BID_PRICES[0]);
+        group.setString(MDEntrySize.FIELD, SIZE);
+        message.addGroup(group);
+
+        return message;
+    }
+}
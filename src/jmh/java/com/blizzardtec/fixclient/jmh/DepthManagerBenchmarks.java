@@ -0,0 +1,194 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blizzardtec.fixclient.OrderType;
+import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.depth.InstrumentDepth;
+import com.blizzardtec.fixclient.depth.PriceDepth;
+
+/**
+ * Book lookups, updates and reads through the depth manager, over
+ * a number of three level books.
+ *
+ * Each operation moves on to the next symbol. Updates are measured
+ * with and without a symbol ID, the flyweight and standard decode
+ * paths, to show the cost of the symbol lookup.
+ *
+ * @author Barnaby Golden
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DepthManagerBenchmarks {
+
+    /**
+     * Base price, scaled by the default price scale.
+     */
+    private static final long PRICE = 143350000L;
+    /**
+     * Price increment, scaled by the default price scale.
+     */
+    private static final long TICK = 10000L;
+    /**
+     * Order size.
+     */
+    private static final int SIZE = 1000;
+
+    /**
+     * Number of books.
+     */
+    @Param({"10", "1000"})
+    public int symbolCount;
+
+    /**
+     * Depth manager.
+     */
+    private final DepthManager manager = new DepthManager();
+    /**
+     * Symbols.
+     */
+    private String[] symbols;
+    /**
+     * Symbol IDs.
+     */
+    private int[] ids;
+    /**
+     * Level 1 bid of each symbol, without a symbol ID.
+     */
+    private PriceDepth[] bySymbol;
+    /**
+     * Level 1 bid of each symbol, with its symbol ID.
+     */
+    private PriceDepth[] byId;
+    /**
+     * Reused copy of a side.
+     */
+    private final PriceDepth[] copy =
+                        new PriceDepth[InstrumentDepth.DEPTH_LEVELS];
+    /**
+     * Index of the last symbol used.
+     */
+    private int index;
+
+    /**
+     * Fill the books.
+     */
+    @Setup
+    public void setUp() {
+
+        symbols = new String[symbolCount];
+        ids = new int[symbolCount];
+        bySymbol = new PriceDepth[symbolCount];
+        byId = new PriceDepth[symbolCount];
+
+        for (int i = 0; i < symbolCount; i++) {
+
+            symbols[i] = "SYM" + i;
+
+            final PriceDepth entry = new PriceDepth();
+            entry.setSymbol(symbols[i]);
+            entry.setType(OrderType.BID);
+            entry.setOrderSize(SIZE);
+
+            for (int level = 1; level <= InstrumentDepth.DEPTH_LEVELS;
+                    level++) {
+                entry.setLevel(level);
+                entry.setPrice(PRICE - level * TICK);
+                manager.newDepthData(entry);
+            }
+
+            entry.setLevel(1);
+            entry.setPrice(PRICE);
+            bySymbol[i] = entry;
+
+            ids[i] = manager.getSymbolRegistry().getId(symbols[i]);
+            byId[i] = new PriceDepth();
+            byId[i].copy(entry);
+            byId[i].setSymbolId(ids[i]);
+        }
+
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = new PriceDepth();
+        }
+    }
+
+    /**
+     * @return index of the next symbol
+     */
+    private int next() {
+        index = (index + 1) % symbolCount;
+        return index;
+    }
+
+    /**
+     * Find a book by symbol.
+     * @return the book
+     */
+    @Benchmark
+    public InstrumentDepth lookupBySymbol() {
+        return manager.getInstrumentDepth(symbols[next()]);
+    }
+
+    /**
+     * Find a book by symbol ID.
+     * @return the book
+     */
+    @Benchmark
+    public InstrumentDepth lookupById() {
+        return manager.getInstrumentDepth(ids[next()]);
+    }
+
+    /**
+     * Change the top bid of a book found by symbol.
+     */
+    @Benchmark
+    public void updateBySymbol() {
+        manager.updateDepthData(bySymbol[next()]);
+    }
+
+    /**
+     * Change the top bid of a book found by symbol ID.
+     */
+    @Benchmark
+    public void updateById() {
+        manager.updateDepthData(byId[next()]);
+    }
+
+    /**
+     * Copy the bids of a book into a reused array.
+     * @return number of levels copied
+     */
+    @Benchmark
+    public int copyDepth() {
+        return manager.copyDepth(symbols[next()], OrderType.BID, copy);
+    }
+
+    /**
+     * Render a book as text.
+     * @return the text
+     */
+    @Benchmark
+    public String printDepth() {
+        return manager.printDepth(symbols[next()]);
+    }
+}
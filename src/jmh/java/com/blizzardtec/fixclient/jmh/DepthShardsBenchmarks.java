@@ -0,0 +1,194 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blizzardtec.fixclient.OrderType;
+import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.depth.DepthShards;
+import com.blizzardtec.fixclient.depth.PriceDepth;
+import com.blizzardtec.fixclient.depth.WaitStrategy;
+
+/**
+ * Book building throughput by number of shard threads.
+ *
+ * The benchmark thread is the single producer. It sends an equal
+ * mix of new, change and delete entries for random levels of many
+ * instruments, one entry per message, and each invocation ends once
+ * every shard has drained, so the score is entries built into the
+ * books. Scaling needs a free core per shard plus one for the
+ * producer, so only compare counts the machine has cores for.
+ *
+ * @author Barnaby Golden
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DepthShardsBenchmarks {
+
+    /**
+     * Entries sent per invocation.
+     */
+    private static final int BATCH = 10000;
+    /**
+     * Random entries sent in turn, a power of two.
+     */
+    private static final int SAMPLES = 1 << 16;
+    /**
+     * Number of instruments.
+     */
+    private static final int SYMBOLS = 1000;
+    /**
+     * Depth of each book.
+     */
+    private static final int DEPTH = 50;
+    /**
+     * Base price, scaled by the default price scale.
+     */
+    private static final long PRICE = 143350000L;
+    /**
+     * Price increment, scaled by the default price scale.
+     */
+    private static final long TICK = 10000L;
+    /**
+     * Random seed.
+     */
+    private static final long SEED = 42L;
+    /**
+     * Order size.
+     */
+    private static final int SIZE = 1000;
+    /**
+     * Number of update kinds in the mix.
+     */
+    private static final int KINDS = 3;
+
+    /**
+     * Number of shard threads.
+     */
+    @Param({"1", "2", "4", "8"})
+    public int shardCount;
+
+    /**
+     * Shards the entries are sent to.
+     */
+    private DepthShards shards;
+    /**
+     * Symbols.
+     */
+    private final String[] symbols = new String[SYMBOLS];
+    /**
+     * Symbol index of each entry.
+     */
+    private final int[] targets = new int[SAMPLES];
+    /**
+     * Level of each entry.
+     */
+    private final int[] levels = new int[SAMPLES];
+    /**
+     * Entry sent.
+     */
+    private final PriceDepth entry = new PriceDepth();
+    /**
+     * Next entry to send.
+     */
+    private int next;
+
+    /**
+     * Fill the books and start the shard threads.
+     */
+    @Setup
+    public void setUp() {
+
+        final DepthManager manager = new DepthManager();
+        manager.setDefaultMarketDepth(DEPTH);
+
+        entry.setType(OrderType.BID);
+        entry.setOrderSize(SIZE);
+
+        for (int i = 0; i < SYMBOLS; i++) {
+            symbols[i] = "SYM" + i;
+            entry.setSymbol(symbols[i]);
+
+            for (int level = 1; level <= DEPTH; level++) {
+                entry.setLevel(level);
+                entry.setPrice(PRICE - level * TICK);
+                manager.newDepthData(entry);
+            }
+        }
+
+        final Random random = new Random(SEED);
+
+        for (int i = 0; i < SAMPLES; i++) {
+            targets[i] = random.nextInt(SYMBOLS);
+            levels[i] = random.nextInt(DEPTH) + 1;
+        }
+
+        shards = new DepthShards(manager, shardCount,
+                                 WaitStrategy.BUSY_SPIN);
+        shards.start();
+    }
+
+    /**
+     * Stop the shard threads.
+     * @throws InterruptedException thrown if interrupted
+     */
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        shards.stop();
+    }
+
+    /**
+     * Send a batch of entries and wait for the shards to build them.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void build() {
+
+        for (int i = 0; i < BATCH; i++) {
+
+            final int sample = next++ & (SAMPLES - 1);
+
+            entry.setSymbol(symbols[targets[sample]]);
+            entry.setLevel(levels[sample]);
+            entry.setPrice(PRICE - levels[sample] * TICK);
+
+            final int kind = sample % KINDS;
+
+            if (kind == 0) {
+                shards.newDepthData(entry);
+            } else if (kind == 1) {
+                shards.updateDepthData(entry);
+            } else {
+                shards.deleteDepthLevel(entry);
+            }
+
+            shards.endOfMessage();
+        }
+
+        while (shards.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+}
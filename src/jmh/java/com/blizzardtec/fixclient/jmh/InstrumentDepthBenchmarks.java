@@ -0,0 +1,156 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blizzardtec.fixclient.OrderType;
+import com.blizzardtec.fixclient.depth.BookMode;
+import com.blizzardtec.fixclient.depth.InstrumentDepth;
+import com.blizzardtec.fixclient.depth.PriceDepth;
+
+/**
+ * New, change and delete applied to one book filled to its depth.
+ *
+ * Each operation moves on to the next level, so every level of
+ * the book is exercised. New pushes the bottom level off a full
+ * book, and delete is paired with a new at the same level, so the
+ * book stays full throughout. The depths run from a top of book to
+ * a deep one, to show how the cost grows with depth. Depth 0 is a
+ * full depth book filled to, and capped at, FULL_LEVELS.
+ *
+ * @author Barnaby Golden
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentDepthBenchmarks {
+
+    /**
+     * Base price, scaled by the default price scale.
+     */
+    private static final long PRICE = 143350000L;
+    /**
+     * Price increment, scaled by the default price scale.
+     */
+    private static final long TICK = 10000L;
+    /**
+     * Order size.
+     */
+    private static final int SIZE = 1000;
+    /**
+     * Levels a full depth book is filled to and held at.
+     */
+    private static final int FULL_LEVELS = 1000;
+
+    /**
+     * Book depth, 0 for full depth.
+     */
+    @Param({"3", "10", "20", "50", "100", "500", "0"})
+    public int depth;
+
+    /**
+     * Book updated.
+     */
+    private InstrumentDepth book;
+    /**
+     * Entry applied.
+     */
+    private final PriceDepth entry = new PriceDepth();
+    /**
+     * Levels the book is filled to.
+     */
+    private int levels;
+    /**
+     * Level of the last operation.
+     */
+    private int level;
+
+    /**
+     * Fill the book.
+     */
+    @Setup
+    public void setUp() {
+
+        levels = depth;
+
+        if (depth == InstrumentDepth.FULL_DEPTH) {
+            levels = FULL_LEVELS;
+        }
+
+        book = new InstrumentDepth("EUR/USD", depth,
+                PriceDepth.DEFAULT_PRICE_SCALE, BookMode.POSITION,
+                FULL_LEVELS);
+        entry.setType(OrderType.BID);
+        entry.setOrderSize(SIZE);
+
+        for (int i = 1; i <= levels; i++) {
+            entry.setLevel(i);
+            entry.setPrice(PRICE - i * TICK);
+            book.newDepth(entry);
+        }
+    }
+
+    /**
+     * Point the entry at the next level.
+     */
+    private void nextLevel() {
+        level = level % levels + 1;
+        entry.setLevel(level);
+        entry.setPrice(PRICE - level * TICK);
+    }
+
+    /**
+     * Insert a level, pushing the bottom one off.
+     */
+    @Benchmark
+    public void newDepth() {
+        nextLevel();
+        book.newDepth(entry);
+    }
+
+    /**
+     * Change a level in place.
+     */
+    @Benchmark
+    public void updateDepth() {
+        nextLevel();
+        book.updateDepth(entry);
+    }
+
+    /**
+     * Delete a level and insert it again.
+     */
+    @Benchmark
+    public void deleteDepth() {
+        nextLevel();
+        book.deleteDepth(entry);
+        book.newDepth(entry);
+    }
+
+    /**
+     * Render the book as text.
+     * @return the text
+     */
+    @Benchmark
+    public String printDepth() {
+        return book.printDepth();
+    }
+}
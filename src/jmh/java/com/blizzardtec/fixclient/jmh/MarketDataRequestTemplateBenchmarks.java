@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blizzardtec.fixclient.MarketDataRequestTemplate;
+
+import quickfix.ConfigError;
+import quickfix.DataDictionary;
+import quickfix.FieldNotFound;
+import quickfix.IncorrectDataFormat;
+import quickfix.IncorrectTagValue;
+import quickfix.Message;
+
+/**
+ * Resubscribing a batch of symbols by building and validating a new
+ * MarketDataRequest, as before templates, against patching the
+ * MDReqID of a MarketDataRequestTemplate.
+ *
+ * Both end by encoding the message, as Session.send does.
+ *
+ * @author Barnaby Golden
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarketDataRequestTemplateBenchmarks {
+
+    /**
+     * Depth levels requested.
+     */
+    private static final int DEPTH = 5;
+
+    /**
+     * Symbols in each request.
+     */
+    @Param({"1", "10", "100"})
+    public int symbolCount;
+
+    /**
+     * Dictionary new requests are validated with.
+     */
+    private DataDictionary dictionary;
+    /**
+     * Symbols requested.
+     */
+    private final List<String> symbols = new ArrayList<String>();
+    /**
+     * Template of the request.
+     */
+    private MarketDataRequestTemplate template;
+    /**
+     * Next MDReqID.
+     */
+    private int next;
+
+    /**
+     * Load the dictionary and build the template.
+     * @throws ConfigError thrown if the dictionary cannot be loaded
+     */
+    @Setup
+    public void setUp() throws ConfigError {
+
+        dictionary = new DataDictionary("FIX44.xml");
+
+        for (int i = 0; i < symbolCount; i++) {
+            symbols.add("SYM" + i);
+        }
+
+        template = new MarketDataRequestTemplate(symbols, DEPTH);
+    }
+
+    /**
+     * Build, validate and encode a new request.
+     * @return encoded request
+     * @throws FieldNotFound thrown if the request is invalid
+     * @throws IncorrectDataFormat thrown if the request is invalid
+     * @throws IncorrectTagValue thrown if the request is invalid
+     */
+    @Benchmark
+    public String rebuild() throws FieldNotFound, IncorrectDataFormat,
+            IncorrectTagValue {
+
+        final Message message = new MarketDataRequestTemplate(
+                symbols, DEPTH).subscribe(Integer.toString(next++));
+        dictionary.validate(message, true);
+
+        return message.toString();
+    }
+
+    /**
+     * Patch and encode the template.
+     * @return encoded request
+     */
+    @Benchmark
+    public String template() {
+        return template.subscribe(Integer.toString(next++)).toString();
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blizzardtec.fixclient.ClientApplication;
+import com.blizzardtec.fixclient.SessionSender;
+
+import quickfix.ConfigError;
+import quickfix.DataDictionaryProvider;
+import quickfix.DefaultSessionFactory;
+import quickfix.FieldNotFound;
+import quickfix.IncorrectDataFormat;
+import quickfix.IncorrectTagValue;
+import quickfix.MemoryStoreFactory;
+import quickfix.Message;
+import quickfix.MessageUtils;
+import quickfix.ScreenLogFactory;
+import quickfix.Session;
+import quickfix.SessionID;
+import quickfix.SessionNotFound;
+import quickfix.SessionSettings;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDReqID;
+import quickfix.field.MarketDepth;
+import quickfix.field.SubscriptionRequestType;
+import quickfix.field.Symbol;
+import quickfix.fix44.MarketDataRequest;
+import quickfix.fix44.MessageFactory;
+
+/**
+ * Sending a market data request three ways: looking up the session
+ * and dictionary and validating on every send, as FixHelper used
+ * to, through a cached SessionSender that still validates, and
+ * through sendValidated, as SubscriptionManager does once a request
+ * has gone out.
+ *
+ * The session is not connected, so each send ends with the message
+ * being stored for resend rather than written to a socket; that
+ * part is the same for all three. The store is cleared after each
+ * iteration so it does not grow across the run.
+ *
+ * @author Barnaby Golden
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionSenderBenchmarks {
+
+    /**
+     * Session the requests are sent on.
+     */
+    private final SessionID sessionID =
+                    new SessionID("FIX.4.4", "BENCHMARK", "FIXSERVER");
+    /**
+     * Session.
+     */
+    private Session session;
+    /**
+     * Cached sender.
+     */
+    private SessionSender sender;
+    /**
+     * Request sent, with a new MDReqID each time.
+     */
+    private Message message;
+    /**
+     * Next MDReqID.
+     */
+    private int next;
+
+    /**
+     * Create an unconnected session and its sender.
+     * @throws ConfigError thrown if the session cannot be created
+     * @throws SessionNotFound thrown if the session is not registered
+     */
+    @Setup
+    public void setUp() throws ConfigError, SessionNotFound {
+
+        final SessionSettings settings = new SessionSettings();
+        settings.setString(sessionID, "ConnectionType", "initiator");
+        settings.setString(sessionID, "StartTime", "00:00:00");
+        settings.setString(sessionID, "EndTime", "00:00:00");
+        settings.setString(sessionID, "HeartBtInt", "30");
+        settings.setString(sessionID, "UseDataDictionary", "Y");
+        settings.setString(sessionID, "DataDictionary", "FIX44.xml");
+
+        session = new DefaultSessionFactory(new ClientApplication(),
+                new MemoryStoreFactory(),
+                new ScreenLogFactory(false, false, false),
+                new MessageFactory()).create(sessionID, settings);
+        sender = new SessionSender(sessionID);
+        message = buildRequest();
+    }
+
+    /**
+     * Clear the resend store.
+     * @throws IOException thrown if the store cannot be reset
+     */
+    @TearDown(Level.Iteration)
+    public void clearStore() throws IOException {
+        session.reset();
+    }
+
+    /**
+     * Close the session.
+     * @throws IOException thrown if the session cannot close
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        session.close();
+    }
+
+    /**
+     * Look up the session and dictionary, validate and send.
+     * @return true if sent
+     */
+    @Benchmark
+    public boolean lookupAndValidate() {
+
+        nextRequest();
+
+        final Session current = Session.lookupSession(sessionID);
+        final DataDictionaryProvider dictProvider =
+                                current.getDataDictionaryProvider();
+
+        try {
+            dictProvider.getApplicationDataDictionary(
+                    MessageUtils.toApplVerID(sessionID.getBeginString()))
+                    .validate(message, true);
+        } catch (FieldNotFound | IncorrectDataFormat
+                | IncorrectTagValue e) {
+            return false;
+        }
+
+        return current.send(message);
+    }
+
+    /**
+     * Validate and send through the cached sender.
+     * @return true if sent
+     */
+    @Benchmark
+    public boolean cachedAndValidate() {
+        nextRequest();
+        return sender.send(message);
+    }
+
+    /**
+     * Send a request validated before, through the cached sender.
+     * @return true if sent
+     */
+    @Benchmark
+    public boolean validatedOnce() {
+        nextRequest();
+        return sender.sendValidated(message);
+    }
+
+    /**
+     * Give the request the next MDReqID.
+     */
+    private void nextRequest() {
+        message.setString(MDReqID.FIELD, Integer.toString(next++));
+    }
+
+    /**
+     * Build a one symbol request for the top bid.
+     * @return request
+     */
+    private static Message buildRequest() {
+
+        final MarketDataRequest request = new MarketDataRequest(
+                new MDReqID("0"),
+                new SubscriptionRequestType(
+                        SubscriptionRequestType.SNAPSHOT_PLUS_UPDATES),
+                new MarketDepth(1));
+
+        final MarketDataRequest.NoMDEntryTypes entryGroup =
+                new MarketDataRequest.NoMDEntryTypes();
+        entryGroup.set(new MDEntryType(MDEntryType.BID));
+        request.addGroup(entryGroup);
+
+        final MarketDataRequest.NoRelatedSym symGroup =
+                new MarketDataRequest.NoRelatedSym();
+        symGroup.set(new Symbol("EUR/USD"));
+        request.addGroup(symGroup);
+
+        return request;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * jmh.
+ *
+ * JMH benchmarks of the book building and decoding hot paths.
+ * They are only compiled with the jmh profile, which also runs
+ * them with the GC profiler:
+ *
+ * <pre>
+ * mvn -Pjmh integration-test
+ * mvn -Pjmh integration-test -Djmh.args="InstrumentDepth -prof gc"
+ * </pre>
+ *
+ * JMH extends the state classes it generates code for, so unlike
+ * the rest of the code base they are not final, and their
+ * parameters are public fields.
+ *
+ * @since 1.0
+ * @author Barnaby
+ * @version 1.0
+ */
+package com.blizzardtec.fixclient.jmh;
@@ -3,15 +3,26 @@
  */
 package com.blizzardtec.fixclient;
 
-import java.util.HashSet;
-import java.util.Observable;
-import java.util.Set;
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.blizzardtec.fixclient.depth.ConsolidatedDepth;
 import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.depth.DepthUpdateHandler;
+import com.blizzardtec.fixclient.depth.FixedPoint;
 import com.blizzardtec.fixclient.depth.PriceDepth;
+import com.blizzardtec.fixclient.depth.WaitStrategy;
+import com.blizzardtec.fixclient.latency.LatencyRecorder;
+import com.blizzardtec.fixclient.latency.LatencyStage;
+import com.blizzardtec.fixclient.log.EventLog;
+import com.blizzardtec.fixclient.log.EventType;
+import com.blizzardtec.fixclient.metrics.FeedMetrics;
 
 import quickfix.Application;
 import quickfix.DoNotSend;
@@ -22,8 +33,16 @@ import quickfix.Message;
 import quickfix.RejectLogon;
 import quickfix.SessionID;
 import quickfix.UnsupportedMessageType;
+import quickfix.field.MDReqID;
 import quickfix.field.MDUpdateAction;
+import quickfix.field.MsgType;
+import quickfix.field.NoMDEntries;
+import quickfix.field.RptSeq;
+import quickfix.field.SendingTime;
+import quickfix.field.Symbol;
+import quickfix.field.Text;
 import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataRequestReject;
 import quickfix.fix44.MarketDataSnapshotFullRefresh;
 import quickfix.fix44.MessageCracker;
 
@@ -33,7 +52,7 @@ import quickfix.fix44.MessageCracker;
  */
 @SuppressWarnings("PMD.UnnecessaryFullyQualifiedName")
 public final class ClientApplication
-            extends MessageCracker implements Application {
+            extends MessageCracker implements Application, MessageSender {
 
     /**
      * Logger.
@@ -42,65 +61,177 @@ public final class ClientApplication
         LoggerFactory.getLogger(ClientApplication.class);
 
     /**
-     * SessionID.
+     * Books and book building pipeline by session.
      */
-    private transient SessionID sessionId;
+    private final transient ConcurrentMap<SessionID, SessionBooks> books =
+                    new ConcurrentHashMap<SessionID, SessionBooks>();
     /**
-     * Price depth manager.
+     * Subscription managers by session, told of request rejects.
      */
-    private final transient DepthManager manager;
+    private final transient ConcurrentMap<SessionID, SubscriptionManager>
+        subscriptions =
+                    new ConcurrentHashMap<SessionID, SubscriptionManager>();
+    /**
+     * Books merged over the sessions consolidated.
+     */
+    private final transient ConsolidatedDepth consolidated =
+                                            new ConsolidatedDepth();
+    /**
+     * Venue index in the consolidated books by session.
+     */
+    private final transient ConcurrentMap<SessionID, Integer> venues =
+                    new ConcurrentHashMap<SessionID, Integer>();
+    /**
+     * Hot path event log, shared by every session.
+     */
+    private final transient EventLog eventLog;
+    /**
+     * How market data messages are decoded.
+     */
+    private final transient DecodeMode decodeMode;
+    /**
+     * Wait strategy of the book building threads of sessions not
+     * created explicitly, null to build on the session thread.
+     */
+    private final transient WaitStrategy waitStrategy;
+    /**
+     * Number of book building threads of sessions not created
+     * explicitly.
+     */
+    private final transient int bookThreads;
+    /**
+     * True once started, so later sessions are started on creation.
+     */
+    private transient boolean started;
 
     /**
-     * Logon.
+     * Logged on sessions and logon listeners.
+     */
+    private final transient SessionReadiness readiness =
+                                            new SessionReadiness();
+    /**
+     * System.nanoTime when started.
+     */
+    private volatile long startNanos;
+    /**
+     * System.nanoTime of the first logon, 0 until then.
+     */
+    private final transient AtomicLong logonNanos = new AtomicLong();
+    /**
+     * System.nanoTime of the first market data message, 0 until then.
      */
-    private final transient ObservableLogon observableLogon =
-                                            new ObservableLogon();
+    private final transient AtomicLong firstTickNanos = new AtomicLong();
 
     /**
-     * Observable logon.
-     *
-     * @author Barnaby Golden
-     *
+     * Constructor.
      */
-    private static class ObservableLogon extends Observable {
-        /**
-         * Set.
-         */
-        private final transient Set<SessionID> set = new HashSet<SessionID>();
-
-        /**
-         * Logon.
-         *
-         * @param sessionID
-         *            id
-         */
-        public void logon(final SessionID sessionID) {
-            set.add(sessionID);
-            setChanged();
-            notifyObservers(new LogonEvent(sessionID, true));
-            clearChanged();
-        }
+    public ClientApplication() {
+        this(DecodeMode.STANDARD);
+    }
 
-        /**
-         * Logoff.
-         *
-         * @param sessionID
-         *            id
-         */
-        public void logoff(final SessionID sessionID) {
-            set.remove(sessionID);
-            setChanged();
-            notifyObservers(new LogonEvent(sessionID, false));
-            clearChanged();
-        }
+    /**
+     * Constructor. Books are built on the session thread.
+     * @param decodeMode how market data messages are decoded
+     */
+    public ClientApplication(final DecodeMode decodeMode) {
+        this(decodeMode, null, 1);
     }
 
     /**
      * Constructor.
+     * @param decodeMode how market data messages are decoded
+     * @param waitStrategy wait strategy of the book building threads
+     *        of sessions not created explicitly, null to build books
+     *        on the session thread
+     * @param bookThreads number of book building threads of each
+     *        such session, instruments are shared between them by
+     *        symbol
      */
-    public ClientApplication() {
+    public ClientApplication(final DecodeMode decodeMode,
+                             final WaitStrategy waitStrategy,
+                             final int bookThreads) {
         super();
-        manager = new DepthManager();
+        this.decodeMode = decodeMode;
+        this.waitStrategy = waitStrategy;
+        this.bookThreads = bookThreads;
+
+        eventLog = new EventLog(EventLog.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create the books of a session. Sessions not created before
+     * their first message get books with the application defaults.
+     * @param sessionID session
+     * @param sessionWaitStrategy wait strategy of the book building
+     *        threads, null to build books on the session thread
+     * @param sessionBookThreads number of book building threads
+     * @return the books, the existing ones if already created
+     */
+    public synchronized SessionBooks createSession(
+            final SessionID sessionID,
+            final WaitStrategy sessionWaitStrategy,
+            final int sessionBookThreads) {
+
+        SessionBooks session = books.get(sessionID);
+
+        if (session == null) {
+            session = new SessionBooks(sessionID, sessionWaitStrategy,
+                                       sessionBookThreads, eventLog);
+            if (started) {
+                session.start();
+            }
+            books.put(sessionID, session);
+        }
+
+        return session;
+    }
+
+    /**
+     * Get the books of a session, creating them with the defaults
+     * if needed.
+     * @param sessionID session
+     * @return the books
+     */
+    public SessionBooks getSessionBooks(final SessionID sessionID) {
+
+        final SessionBooks session = books.get(sessionID);
+
+        if (session != null) {
+            return session;
+        }
+
+        return createSession(sessionID, waitStrategy, bookThreads);
+    }
+
+    /**
+     * Start the book building threads, if there are any. Call before
+     * the initiator is started.
+     */
+    public synchronized void start() {
+        startNanos = System.nanoTime();
+        eventLog.start();
+
+        for (final SessionBooks session : books.values()) {
+            session.start();
+        }
+
+        started = true;
+    }
+
+    /**
+     * Stop the book building threads once they have applied
+     * everything received. Call after the initiator is stopped.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public synchronized void stop() throws InterruptedException {
+
+        started = false;
+
+        for (final SessionBooks session : books.values()) {
+            session.stop();
+        }
+
+        eventLog.stop();
     }
 
     /*
@@ -126,7 +257,27 @@ public final class ClientApplication
             throws FieldNotFound, IncorrectDataFormat, IncorrectTagValue,
             UnsupportedMessageType {
 
+        final LatencyRecorder latency =
+                        getSessionBooks(sessionId).getLatencyRecorder();
+
+        if (latency == null) {
+            crack(message, sessionId);
+            return;
+        }
+
+        final long receivedNanos = System.nanoTime();
+        final Message.Header header = message.getHeader();
+        final String msgType = header.getString(MsgType.FIELD);
+
+        if (header.isSetField(SendingTime.FIELD)) {
+            latency.recordWire(msgType, header.getString(SendingTime.FIELD),
+                               System.currentTimeMillis());
+        }
+
         crack(message, sessionId);
+
+        latency.record(LatencyStage.CRACK, msgType,
+                       System.nanoTime() - receivedNanos);
     }
 
     /**
@@ -137,64 +288,119 @@ public final class ClientApplication
     public void onMessage(final MarketDataSnapshotFullRefresh snapshot,
                           final SessionID sessionID) {
 
-        LOG.info("Received MarketDataSnapshotFullRefresh");
+        if (firstTickNanos.get() == 0) {
+            firstTick();
+        }
+
+        final SessionBooks session = getSessionBooks(sessionID);
+
+        session.getFeedMetrics().snapshot();
 
         try {
+            if (eventLog.isEnabled()) {
+                eventLog.record(EventType.SNAPSHOT,
+                        snapshot.getString(Symbol.FIELD),
+                        snapshot.getGroupCount(NoMDEntries.FIELD));
+            }
+
+            if (decodeMode == DecodeMode.FLYWEIGHT) {
+                session.getDecoder().decode(snapshot);
+                return;
+            }
+
+            final DepthUpdateHandler handler = session.getHandler();
+
             final String symbol =
                 snapshot.get(new quickfix.field.Symbol()).getValue();
 
-            final int entryCount =
-                snapshot.get(new quickfix.field.NoMDEntries()).getValue();
+            final PriceDepth begin = new PriceDepth();
+            begin.setSymbol(symbol);
 
-            for (int i = 1; i < (entryCount + 1); i++) {
+            if (snapshot.isSetField(RptSeq.FIELD)) {
+                begin.setRptSeq(snapshot.getInt(RptSeq.FIELD));
+            }
 
-                final quickfix.fix44.MarketDataSnapshotFullRefresh.NoMDEntries
-                    group =
-                 new quickfix.fix44.MarketDataSnapshotFullRefresh.NoMDEntries();
+            handler.beginSnapshot(begin);
 
-                snapshot.getGroup(i, group);
+            boolean complete = false;
 
-                final quickfix.field.MDEntryType mdEntryType =
-                            new quickfix.field.MDEntryType();
-                final quickfix.field.MDEntryPx mdEntryPx =
-                            new quickfix.field.MDEntryPx();
-                final quickfix.field.MDEntrySize mdEntrySize =
-                            new quickfix.field.MDEntrySize();
-                final quickfix.field.MDEntryPositionNo mdPosition =
-                            new quickfix.field.MDEntryPositionNo();
+            try {
+                applySnapshotEntries(snapshot, symbol, handler);
+                complete = true;
+            } finally {
+                // a bad entry must not publish the half built book,
+                // nor leave it building
+                if (complete) {
+                    handler.endSnapshot(begin);
+                } else {
+                    handler.abortSnapshot(begin);
+                }
 
-                group.get(mdEntryType);
-                group.get(mdEntryPx);
-                group.get(mdEntrySize);
-                group.get(mdPosition);
+                handler.endOfMessage();
+            }
+        } catch (FieldNotFound e) {
+            session.getFeedMetrics().fieldNotFound();
+            LOG.error(e.getMessage());
+        } catch (NumberFormatException | ArithmeticException e) {
+            malformed(session, e);
+        }
+    }
 
-                final char type = mdEntryType.getObject();
-                final double price = mdEntryPx.getValue().doubleValue();
-                final int size = mdEntrySize.getValue().intValueExact();
-                final int level = mdPosition.getValue();
+    /**
+     * Pass each entry of a snapshot to a handler as a new level.
+     * @param snapshot snapshot
+     * @param symbol instrument symbol of the snapshot
+     * @param handler handler
+     * @throws FieldNotFound thrown if a required tag is missing
+     */
+    private static void applySnapshotEntries(
+            final MarketDataSnapshotFullRefresh snapshot,
+            final String symbol,
+            final DepthUpdateHandler handler) throws FieldNotFound {
 
-                String typeStr = "Bid";
+        final int entryCount =
+            snapshot.get(new quickfix.field.NoMDEntries()).getValue();
 
-                if (type == OrderType.OFFER) {
-                    typeStr = "Offer";
-                }
+        for (int i = 1; i < (entryCount + 1); i++) {
+
+            final quickfix.fix44.MarketDataSnapshotFullRefresh.NoMDEntries
+                group =
+             new quickfix.fix44.MarketDataSnapshotFullRefresh.NoMDEntries();
 
-                LOG.info(
-                        typeStr + " Level " + level + " of "
-                        + symbol + " " + size + " at " + price);
+            snapshot.getGroup(i, group);
 
-                final PriceDepth priceDepth = new PriceDepth();
+            final quickfix.field.MDEntryType mdEntryType =
+                        new quickfix.field.MDEntryType();
+            final quickfix.field.MDEntryPx mdEntryPx =
+                        new quickfix.field.MDEntryPx();
+            final quickfix.field.MDEntrySize mdEntrySize =
+                        new quickfix.field.MDEntrySize();
+            final quickfix.field.MDEntryPositionNo mdPosition =
+                        new quickfix.field.MDEntryPositionNo();
 
-                priceDepth.setMidPrice(price);
-                priceDepth.setOrderSize(size);
-                priceDepth.setSymbol(symbol);
-                priceDepth.setType(type);
-                priceDepth.setLevel(level);
+            group.get(mdEntryType);
+            group.get(mdEntryPx);
+            group.get(mdEntrySize);
 
-                manager.newDepthData(priceDepth);
+            // price keyed venues may omit the position
+            if (group.isSetField(mdPosition)) {
+                group.get(mdPosition);
             }
-        } catch (FieldNotFound e) {
-            LOG.error(e.getMessage());
+
+            final char type = mdEntryType.getObject();
+            final BigDecimal price = mdEntryPx.getValue();
+            final int size = mdEntrySize.getValue().intValueExact();
+            final int level = mdPosition.getValue();
+
+            final PriceDepth priceDepth = new PriceDepth();
+
+            setPrice(priceDepth, price);
+            priceDepth.setOrderSize(size);
+            priceDepth.setSymbol(symbol);
+            priceDepth.setType(type);
+            priceDepth.setLevel(level);
+
+            handler.newDepthData(priceDepth);
         }
     }
 
@@ -206,79 +412,208 @@ public final class ClientApplication
     public void onMessage(final MarketDataIncrementalRefresh refresh,
                           final SessionID sessionID) {
 
-        LOG.info("Received MarketDataIncrementalRefresh");
+        if (firstTickNanos.get() == 0) {
+            firstTick();
+        }
+
+        final SessionBooks session = getSessionBooks(sessionID);
+
+        session.getFeedMetrics().refresh();
 
         try {
+            if (eventLog.isEnabled()) {
+                eventLog.record(EventType.REFRESH, null,
+                        refresh.getGroupCount(NoMDEntries.FIELD));
+            }
+
+            if (decodeMode == DecodeMode.FLYWEIGHT) {
+                session.getDecoder().decode(refresh);
+                return;
+            }
+
+            final DepthUpdateHandler handler = session.getHandler();
 
-            final int entryCount =
-                refresh.get(new quickfix.field.NoMDEntries()).getValue();
-
-            for (int i = 1; i < (entryCount + 1); i++) {
-
-                final quickfix.fix44.MarketDataIncrementalRefresh.NoMDEntries
-                    group =
-                 new quickfix.fix44.MarketDataIncrementalRefresh.NoMDEntries();
-
-                refresh.getGroup(i, group);
-
-                final quickfix.field.MDEntryType mdEntryType =
-                            new quickfix.field.MDEntryType();
-                final quickfix.field.MDEntryPx mdEntryPx =
-                            new quickfix.field.MDEntryPx();
-                final quickfix.field.MDEntrySize mdEntrySize =
-                            new quickfix.field.MDEntrySize();
-                final quickfix.field.Symbol symbol =
-                            new quickfix.field.Symbol();
-                final quickfix.field.MDUpdateAction mdUpdate =
-                            new quickfix.field.MDUpdateAction();
-                final quickfix.field.MDEntryPositionNo mdPosition =
-                    new quickfix.field.MDEntryPositionNo();
-
-                group.get(mdEntryType);
-                group.get(mdEntryPx);
-                group.get(mdEntrySize);
-                group.get(symbol);
-                group.get(mdUpdate);
+            try {
+                applyRefreshEntries(refresh, handler,
+                                    session.getFeedMetrics());
+            } finally {
+                // so the entries before a bad one are published
+                handler.endOfMessage();
+            }
+        } catch (FieldNotFound e) {
+            session.getFeedMetrics().fieldNotFound();
+            LOG.error(e.getMessage());
+        } catch (NumberFormatException | ArithmeticException e) {
+            malformed(session, e);
+        }
+    }
+
+    /**
+     * Pass each entry of an incremental refresh to a handler.
+     * @param refresh refresh
+     * @param handler handler
+     * @param metrics counters of the session
+     * @throws FieldNotFound thrown if a required tag is missing
+     */
+    private static void applyRefreshEntries(
+            final MarketDataIncrementalRefresh refresh,
+            final DepthUpdateHandler handler,
+            final FeedMetrics metrics) throws FieldNotFound {
+
+        final int entryCount =
+            refresh.get(new quickfix.field.NoMDEntries()).getValue();
+
+        for (int i = 1; i < (entryCount + 1); i++) {
+
+            final quickfix.fix44.MarketDataIncrementalRefresh.NoMDEntries
+                group =
+             new quickfix.fix44.MarketDataIncrementalRefresh.NoMDEntries();
+
+            refresh.getGroup(i, group);
+
+            final quickfix.field.MDEntryType mdEntryType =
+                        new quickfix.field.MDEntryType();
+            final quickfix.field.MDEntryPx mdEntryPx =
+                        new quickfix.field.MDEntryPx();
+            final quickfix.field.MDEntrySize mdEntrySize =
+                        new quickfix.field.MDEntrySize();
+            final quickfix.field.Symbol symbol =
+                        new quickfix.field.Symbol();
+            final quickfix.field.MDUpdateAction mdUpdate =
+                        new quickfix.field.MDUpdateAction();
+            final quickfix.field.MDEntryPositionNo mdPosition =
+                new quickfix.field.MDEntryPositionNo();
+
+            group.get(mdEntryType);
+            group.get(mdEntryPx);
+            group.get(mdEntrySize);
+            group.get(symbol);
+            group.get(mdUpdate);
+
+            // price keyed venues may omit the position
+            if (group.isSetField(mdPosition)) {
                 group.get(mdPosition);
+            }
 
-                final char type = mdEntryType.getObject();
-                final double price = mdEntryPx.getValue().doubleValue();
-                final int size = (int) mdEntrySize.getValue().intValueExact();
-                final int level = mdPosition.getValue();
-
-                final PriceDepth priceDepth = new PriceDepth();
-                priceDepth.setLevel(level);
-                priceDepth.setMidPrice(price);
-                priceDepth.setOrderSize(size);
-                priceDepth.setSymbol(symbol.getObject());
-                priceDepth.setType(type);
-
-                String updateAction;
-
-                if (mdUpdate.getObject() == MDUpdateAction.CHANGE) {
-                    updateAction = "CHANGE";
-                    manager.updateDepthData(priceDepth);
-                } else if (mdUpdate.getObject() == MDUpdateAction.DELETE) {
-                    updateAction = "DELETE";
-                    manager.deleteDepthLevel(priceDepth);
-                } else if (mdUpdate.getObject() == MDUpdateAction.NEW) {
-                    updateAction = "NEW";
-                    manager.newDepthData(priceDepth);
-                } else {
-                    updateAction = "UNKNOWN";
+            final char type = mdEntryType.getObject();
+            final BigDecimal price = mdEntryPx.getValue();
+            final int size = (int) mdEntrySize.getValue().intValueExact();
+            final int level = mdPosition.getValue();
+
+            final PriceDepth priceDepth = new PriceDepth();
+            priceDepth.setLevel(level);
+            setPrice(priceDepth, price);
+            priceDepth.setOrderSize(size);
+            priceDepth.setSymbol(symbol.getObject());
+            priceDepth.setType(type);
+
+            if (group.isSetField(RptSeq.FIELD)) {
+                priceDepth.setRptSeq(group.getInt(RptSeq.FIELD));
+            }
+
+            if (mdUpdate.getObject() == MDUpdateAction.CHANGE) {
+                handler.updateDepthData(priceDepth);
+            } else if (mdUpdate.getObject() == MDUpdateAction.DELETE) {
+                handler.deleteDepthLevel(priceDepth);
+            } else if (mdUpdate.getObject() == MDUpdateAction.NEW) {
+                handler.newDepthData(priceDepth);
+            } else {
+                metrics.unknownAction();
+
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Unknown MDUpdateAction "
+                            + mdUpdate.getObject()
+                            + " for " + symbol.getObject());
                 }
+            }
+        }
+    }
+
+    /**
+     * Count and log a message dropped for a malformed value.
+     * @param session books of the session
+     * @param e what was wrong
+     */
+    private static void malformed(final SessionBooks session,
+                                  final RuntimeException e) {
+
+        session.getFeedMetrics().malformed();
 
+        if (LOG.isErrorEnabled()) {
+            LOG.error("Malformed market data for "
+                    + session.getSessionID() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handle a market data request reject.
+     * @param reject reject
+     * @param sessionID id
+     */
+    public void onMessage(final MarketDataRequestReject reject,
+                          final SessionID sessionID) {
+
+        final SessionBooks session = getSessionBooks(sessionID);
+
+        session.getFeedMetrics().reject();
+
+        try {
+            String reason = null;
+
+            if (reject.isSetField(Text.FIELD)) {
+                reason = reject.getString(Text.FIELD);
+            }
 
-                LOG.info(
-                    "Received " + updateAction + " refresh: "
-                        + symbol.getObject() + " " + size + " at " + price);
+            final SubscriptionManager current =
+                subscriptions.get(sessionID);
 
+            if (current == null) {
+                LOG.warn("MarketDataRequest "
+                        + reject.getString(MDReqID.FIELD)
+                        + " rejected: " + reason);
+            } else {
+                current.rejected(reject.getString(MDReqID.FIELD), reason);
             }
         } catch (FieldNotFound e) {
+            session.getFeedMetrics().fieldNotFound();
             LOG.error(e.getMessage());
         }
     }
 
+    /**
+     * Record the arrival of the first market data message.
+     */
+    private void firstTick() {
+
+        if (firstTickNanos.compareAndSet(0, System.nanoTime())
+                && LOG.isInfoEnabled()) {
+            LOG.info("First market data "
+                    + TimeUnit.NANOSECONDS.toMillis(
+                            getStartupToFirstTickNanos())
+                    + " ms after start");
+        }
+    }
+
+    /**
+     * Set the price of a price depth as a scaled long.
+     * @param priceDepth price depth
+     * @param price decimal price
+     * @throws NumberFormatException if the price has more than
+     *         FixedPoint.MAX_SCALE decimal places
+     */
+    private static void setPrice(final PriceDepth priceDepth,
+                                 final BigDecimal price) {
+
+        final BigDecimal scaled = price.setScale(Math.max(price.scale(), 0));
+
+        if (scaled.scale() > FixedPoint.MAX_SCALE) {
+            throw new NumberFormatException(price.toPlainString());
+        }
+
+        priceDepth.setPriceScale(scaled.scale());
+        priceDepth.setPrice(scaled.unscaledValue().longValueExact());
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -286,7 +621,7 @@ public final class ClientApplication
      */
     @Override
     public void onCreate(final SessionID arg0) {
-        // TODO Auto-generated method stub
+        getSessionBooks(arg0);
     }
 
     /*
@@ -296,8 +631,14 @@ public final class ClientApplication
      */
     @Override
     public void onLogon(final SessionID arg0) {
-        observableLogon.logon(arg0);
-        this.sessionId = arg0;
+
+        if (logonNanos.compareAndSet(0, System.nanoTime())
+                && LOG.isInfoEnabled()) {
+            LOG.info("Logged on " + TimeUnit.NANOSECONDS.toMillis(
+                    logonNanos.get() - startNanos) + " ms after start");
+        }
+
+        readiness.logon(arg0);
     }
 
     /*
@@ -307,7 +648,15 @@ public final class ClientApplication
      */
     @Override
     public void onLogout(final SessionID arg0) {
-        observableLogon.logoff(arg0);
+
+        // the venue's prices are stale until it sends new snapshots
+        final Integer venue = venues.get(arg0);
+
+        if (venue != null) {
+            consolidated.clearVenue(venue);
+        }
+
+        readiness.logoff(arg0);
     }
 
     /*
@@ -333,19 +682,103 @@ public final class ClientApplication
     }
 
     /**
-     * @return the sessionId
+     * Add a listener told of every logon and logoff, straight away
+     * for sessions already logged on.
+     * @param listener listener
+     */
+    public void addLogonListener(final LogonListener listener) {
+        readiness.addListener(listener);
+    }
+
+    /**
+     * Add the subscription manager of a session, which is told of
+     * its request rejects and of every logon and logoff, and asked
+     * for a snapshot of any book found stale.
+     * @param sessionID session
+     * @param manager subscription manager
      */
-    public SessionID getSessionId() {
-        return sessionId;
+    public void addSubscriptionManager(final SessionID sessionID,
+                                       final SubscriptionManager manager) {
+        subscriptions.put(sessionID, manager);
+        readiness.addListener(manager);
+        getSessionBooks(sessionID).getGapRecovery()
+                                  .setSnapshotRequester(manager);
+    }
+
+    /**
+     * @return logged on sessions and logon listeners
+     */
+    public SessionReadiness getReadiness() {
+        return readiness;
+    }
+
+    /**
+     * @return nanoseconds from start to the first market data
+     *         message, -1 if none has arrived
+     */
+    public long getStartupToFirstTickNanos() {
+
+        final long tick = firstTickNanos.get();
+
+        long elapsed = -1;
+
+        if (tick != 0) {
+            elapsed = tick - startNanos;
+        }
+
+        return elapsed;
+    }
+
+    /**
+     * Merge the books of a session into the consolidated books.
+     * Only sessions asked for are merged, as listening to their
+     * books costs every market data message.
+     * @param sessionID session
+     */
+    public synchronized void consolidate(final SessionID sessionID) {
+
+        if (!venues.containsKey(sessionID)) {
+            venues.put(sessionID, consolidated.addVenue(
+                    getSessionBooks(sessionID).getDepthManager()));
+        }
+    }
+
+    /**
+     * @return books merged over the sessions consolidated
+     */
+    public ConsolidatedDepth getConsolidatedDepth() {
+        return consolidated;
+    }
+
+    /**
+     * @param sessionID session
+     * @return the depth manager of the session
+     */
+    public DepthManager getDepthManager(final SessionID sessionID) {
+        return getSessionBooks(sessionID).getDepthManager();
     }
 
     /**
      * Send a message.
      * @param sessionID id
      * @param message message to send
+     * @return true if the session sent it
+     */
+    @Override
+    public boolean sendMessage(
+            final SessionID sessionID, final Message message) {
+        return FixHelper.sendMessage(sessionID, message);
+    }
+
+    /**
+     * Send a message without validating it.
+     * @param sessionID id
+     * @param message message to send
+     * @return true if the session sent it
      */
-    public void sendMessage(
+    @Override
+    public boolean sendValidated(
             final SessionID sessionID, final Message message) {
-        FixHelper.sendMessage(sessionID, message);
+        return FixHelper.sendValidated(sessionID, message);
     }
 }
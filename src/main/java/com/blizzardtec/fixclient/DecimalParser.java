@@ -0,0 +1,157 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import com.blizzardtec.fixclient.depth.FixedPoint;
+
+/**
+ * Parses FIX decimal tag values without going through BigDecimal.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class DecimalParser {
+
+    /**
+     * Radix.
+     */
+    private static final int TEN = 10;
+    /**
+     * Largest value that can take another digit without overflow.
+     */
+    private static final long MAX_BEFORE_DIGIT = Long.MAX_VALUE / TEN;
+    /**
+     * Largest digit that can follow MAX_BEFORE_DIGIT without overflow.
+     */
+    private static final long MAX_LAST_DIGIT = Long.MAX_VALUE % TEN;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private DecimalParser() {
+        // private constructor
+    }
+
+    /**
+     * Parse a FIX decimal value (e.g. MDEntryPx) into its unscaled
+     * digits, so "1.4335" gives 14335. Use scale() for the number
+     * of decimal places. No objects are created.
+     *
+     * @param value tag value
+     * @return unscaled value
+     */
+    public static long parseUnscaled(final String value) {
+
+        final int length = value.length();
+        int index = 0;
+        boolean negative = false;
+
+        if (length > 0 && value.charAt(0) == '-') {
+            negative = true;
+            index++;
+        }
+
+        if (index == length) {
+            throw new NumberFormatException(value);
+        }
+
+        long result = 0;
+        boolean point = false;
+
+        for (; index < length; index++) {
+            final char chr = value.charAt(index);
+
+            if (chr == '.' && !point) {
+                point = true;
+            } else if (chr >= '0' && chr <= '9') {
+                final int digit = chr - '0';
+
+                if (result > MAX_BEFORE_DIGIT
+                        || result == MAX_BEFORE_DIGIT
+                            && digit > MAX_LAST_DIGIT) {
+                    throw new NumberFormatException(value);
+                }
+                result = result * TEN + digit;
+            } else {
+                throw new NumberFormatException(value);
+            }
+        }
+
+        if (negative) {
+            result = -result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Number of decimal places in a FIX decimal value,
+     * so "1.4335" gives 4.
+     *
+     * @param value tag value
+     * @return decimal places
+     * @throws NumberFormatException if there are more than
+     *         FixedPoint.MAX_SCALE, a book could not hold the price
+     */
+    public static int scale(final String value) {
+
+        final int point = value.indexOf('.');
+
+        int scale = 0;
+
+        if (point >= 0) {
+            scale = value.length() - point - 1;
+        }
+
+        if (scale > FixedPoint.MAX_SCALE) {
+            throw new NumberFormatException(value);
+        }
+
+        return scale;
+    }
+
+    /**
+     * Parse a FIX quantity (e.g. MDEntrySize) into an int.
+     * Trailing zero decimals ("1000.00") are accepted, a
+     * fractional quantity is rejected.
+     *
+     * @param value tag value
+     * @return parsed value
+     */
+    public static int parseInt(final String value) {
+
+        final int length = value.length();
+        int index = 0;
+        long result = 0;
+
+        if (length == 0) {
+            throw new NumberFormatException(value);
+        }
+
+        for (; index < length; index++) {
+            final char chr = value.charAt(index);
+
+            if (chr == '.') {
+                break;
+            }
+            if (chr < '0' || chr > '9') {
+                throw new NumberFormatException(value);
+            }
+
+            result = result * TEN + (chr - '0');
+
+            if (result > Integer.MAX_VALUE) {
+                throw new NumberFormatException(value);
+            }
+        }
+
+        for (index++; index < length; index++) {
+            if (value.charAt(index) != '0') {
+                throw new NumberFormatException(value);
+            }
+        }
+
+        return (int) result;
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+/**
+ * How market data messages are decoded into depth updates.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public enum DecodeMode {
+
+    /**
+     * Typed QuickFIX/J groups and fields, a new object per entry.
+     */
+    STANDARD,
+    /**
+     * Raw tag reads into a reused per-thread entry, no allocation
+     * in steady state.
+     */
+    FLYWEIGHT
+}
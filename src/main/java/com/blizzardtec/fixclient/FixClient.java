@@ -3,37 +3,52 @@
  */
 package com.blizzardtec.fixclient;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+import com.blizzardtec.fixclient.depth.BookMode;
+import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.depth.InstrumentDepth;
+import com.blizzardtec.fixclient.depth.WaitStrategy;
+import com.blizzardtec.fixclient.journal.DepthJournal;
+import com.blizzardtec.fixclient.latency.LatencyRecorder;
+import com.blizzardtec.fixclient.latency.LatencyReporter;
 
 import quickfix.ConfigError;
+import quickfix.FieldConvertError;
 import quickfix.FileStoreFactory;
 import quickfix.Initiator;
 import quickfix.LogFactory;
 import quickfix.MessageStoreFactory;
 import quickfix.ScreenLogFactory;
+import quickfix.SessionID;
 import quickfix.SessionSettings;
-import quickfix.SocketInitiator;
-import quickfix.field.MDEntryType;
-import quickfix.field.MDReqID;
-import quickfix.field.MarketDepth;
-import quickfix.field.SubscriptionRequestType;
-import quickfix.field.Symbol;
+import quickfix.ThreadedSocketInitiator;
 import quickfix.fix44.MessageFactory;
-import quickfix.fix44.MarketDataRequest;
-import quickfix.Message;
-import quickfix.fix44.MarketDataRequest.NoMDEntryTypes;
-import quickfix.fix44.MarketDataRequest.NoRelatedSym;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Connects to every session in the configuration.
+ *
+ * Each session runs on its own thread, from a threaded initiator,
+ * and builds its own books, so the sessions can be different
+ * venues, or several local acceptors standing in for them under
+ * load, without one holding up another. Book and subscription
+ * settings are read per session, falling back to [default].
+ *
  * @author Barnaby Golden
  *
  */
-@SuppressWarnings("PMD.UnnecessaryFullyQualifiedName")
 public final class FixClient {
 
     /**
@@ -42,27 +57,126 @@ public final class FixClient {
     private static final Logger LOG =
         LoggerFactory.getLogger(FixClient.class);
 
-    /**
-     * Sleep time.
-     */
-    private static final int SLEEP_TIME = 3000;
     /**
      * Client configuration file.
      */
     private static final String CONFIG =
            "src/main/resources/fixconfig";
+    /**
+     * Session setting for the number of depth levels to subscribe
+     * to and keep, 0 for full depth.
+     */
+    private static final String MARKET_DEPTH = "MarketDepth";
+    /**
+     * Session setting for the most levels a full depth book keeps
+     * on each side.
+     */
+    private static final String MAX_FULL_DEPTH = "MaxFullDepth";
+    /**
+     * Session setting for how book levels are keyed, POSITION or PRICE.
+     */
+    private static final String BOOK_MODE = "BookMode";
+    /**
+     * Session setting for the wait strategy of the book building
+     * thread, BUSY_SPIN, YIELD or PARK. Without it books are built
+     * on the session thread.
+     */
+    private static final String WAIT_STRATEGY = "WaitStrategy";
+    /**
+     * Session setting for the number of book building threads.
+     */
+    private static final String BOOK_THREADS = "BookThreads";
+    /**
+     * Session setting for the instruments subscribed to, separated
+     * by commas.
+     */
+    private static final String SYMBOLS = "Symbols";
+    /**
+     * Session setting for a number of generated instruments, SYM0
+     * up, subscribed as well as those in Symbols. For load testing
+     * against the market data simulator, which accepts any symbol.
+     */
+    private static final String GENERATED_SYMBOLS = "GeneratedSymbols";
+    /**
+     * Prefix of generated instruments.
+     */
+    private static final String GENERATED_PREFIX = "SYM";
+    /**
+     * Session setting for the most instruments in one market data
+     * request.
+     */
+    private static final String SYMBOLS_PER_REQUEST = "SymbolsPerRequest";
+    /**
+     * Session setting for the most market data requests sent
+     * per second.
+     */
+    private static final String REQUESTS_PER_SECOND = "RequestsPerSecond";
+    /**
+     * Session setting, Y to merge the books of the session into the
+     * consolidated books over every consolidated session.
+     */
+    private static final String CONSOLIDATE = "Consolidate";
+    /**
+     * Session setting for the directory the applied depth entries
+     * are journalled to. Without it nothing is journalled.
+     */
+    private static final String JOURNAL_DIRECTORY = "JournalDirectory";
+    /**
+     * Session setting for the size of each journal file.
+     */
+    private static final String JOURNAL_SEGMENT_BYTES =
+                                        "JournalSegmentBytes";
+    /**
+     * Session setting, Y to record latency histograms from the
+     * SendingTime of each message to its entries being applied.
+     */
+    private static final String LATENCY_HISTOGRAMS = "LatencyHistograms";
+    /**
+     * Default setting for the seconds between latency reports.
+     */
+    private static final String LATENCY_REPORT_SECONDS =
+                                        "LatencyReportSeconds";
+    /**
+     * Session setting, Y to register feed and book metrics in JMX.
+     */
+    private static final String JMX_METRICS = "JmxMetrics";
+    /**
+     * Instrument subscribed to if none are configured.
+     */
+    private static final String DEFAULT_SYMBOL = "EUR/USD";
 
     /**
      * Run the fix client.
      */
     public void run() {
 
-        final ClientApplication application = new ClientApplication();
-
         try {
 
             final SessionSettings settings = getSettings();
 
+            final ClientApplication application =
+                new ClientApplication(DecodeMode.FLYWEIGHT);
+
+            final List<SubscriptionManager> subscriptions =
+                new ArrayList<SubscriptionManager>();
+
+            long reportMillis = LatencyReporter.DEFAULT_INTERVAL_MILLIS;
+
+            if (settings.isSetting(LATENCY_REPORT_SECONDS)) {
+                reportMillis = TimeUnit.SECONDS.toMillis(
+                        settings.getLong(LATENCY_REPORT_SECONDS));
+            }
+
+            final LatencyReporter latencyReporter =
+                                    new LatencyReporter(reportMillis);
+
+            final Iterator<SessionID> sections = settings.sectionIterator();
+
+            while (sections.hasNext()) {
+                subscriptions.add(createSession(application, settings,
+                                  sections.next(), latencyReporter));
+            }
+
             final MessageStoreFactory storeFactory =
                         new FileStoreFactory(settings);
 
@@ -72,142 +186,200 @@ public final class FixClient {
             final MessageFactory messageFactory = new MessageFactory();
 
             final Initiator initiator =
-                new SocketInitiator(application, storeFactory,
+                new ThreadedSocketInitiator(application, storeFactory,
                                         settings, logFactory, messageFactory);
 
             LOG.info("STARTING CLIENT...");
 
-            initiator.start();
+            application.start();
+            latencyReporter.start();
 
-            // short sleep to allow login to complete
-            Thread.sleep(SLEEP_TIME);
+            for (final SubscriptionManager subscription : subscriptions) {
+                subscription.start();
+            }
 
-            sendMarketDataRequests(application);
+            initiator.start();
 
             System.out.println("press <enter> to quit");
 
             System.in.read();
-            sendMarketDataCancels(application);
 
-            // short sleep to allow cancel request to complete
-            Thread.sleep(SLEEP_TIME);
+            // the cancels go out ahead of the logouts sent on stop
+            for (final SubscriptionManager subscription : subscriptions) {
+                subscription.stop();
+                subscription.unsubscribeAll();
+            }
 
             initiator.stop();
+            application.stop();
+            latencyReporter.stop();
 
         } catch (FileNotFoundException fnf) {
             LOG.error(fnf.getMessage());
         } catch (ConfigError ce) {
             LOG.error(ce.getMessage());
+        } catch (FieldConvertError fce) {
+            LOG.error(fce.getMessage());
         } catch (IOException e) {
             LOG.error(e.getMessage());
+        } catch (JMException e) {
+            LOG.error(e.getMessage());
         } catch (InterruptedException e1) {
             LOG.info(e1.getMessage());
         }
     }
 
     /**
-     * Cancel an existing MarketData request.
+     * Create the books and subscriptions of one session from its
+     * settings.
      *
      * @param application app
+     * @param settings session settings
+     * @param sessionID session
+     * @param latencyReporter reports the latency histograms
+     * @return subscription manager of the session
+     * @throws ConfigError thrown
+     * @throws FieldConvertError thrown if a setting cannot be read
+     * @throws IOException thrown if the journal cannot be created
+     * @throws JMException thrown if the metrics cannot be registered
      */
-    private void sendMarketDataCancels(final ClientApplication application) {
+    private SubscriptionManager createSession(
+            final ClientApplication application,
+            final SessionSettings settings,
+            final SessionID sessionID,
+            final LatencyReporter latencyReporter)
+            throws ConfigError, FieldConvertError, IOException,
+                   JMException {
+
+        WaitStrategy waitStrategy = null;
+
+        if (settings.isSetting(sessionID, WAIT_STRATEGY)) {
+            waitStrategy = WaitStrategy.valueOf(
+                settings.getString(sessionID, WAIT_STRATEGY));
+        }
 
-        // send a market data request
-        LOG.info("Sending CANCEL MarketDataRequests");
+        final SessionBooks session = application.createSession(
+                sessionID, waitStrategy,
+                getInt(settings, sessionID, BOOK_THREADS, 1));
+        final DepthManager manager = session.getDepthManager();
+
+        if (settings.isSetting(sessionID, JOURNAL_DIRECTORY)) {
+            // one set of files per session, named safely for any OS
+            session.setJournal(new DepthJournal(
+                new File(settings.getString(sessionID, JOURNAL_DIRECTORY)),
+                sessionID.toString().replaceAll("[^A-Za-z0-9.]", "_"),
+                getInt(settings, sessionID, JOURNAL_SEGMENT_BYTES,
+                       DepthJournal.DEFAULT_SEGMENT_BYTES)));
+        }
 
-        // send bid cancel
-        application.sendMessage(
-                application.getSessionId(),
-                buildMarketDataCancel(OrderType.BID));
+        if (settings.isSetting(sessionID, LATENCY_HISTOGRAMS)
+                && settings.getBool(sessionID, LATENCY_HISTOGRAMS)) {
+            final LatencyRecorder recorder =
+                            new LatencyRecorder(sessionID.toString());
+            session.setLatencyRecorder(recorder);
+            latencyReporter.add(recorder);
+        }
 
-        // send offer cancel
-        application.sendMessage(
-                application.getSessionId(),
-                buildMarketDataCancel(OrderType.OFFER));
-    }
+        if (settings.isSetting(sessionID, CONSOLIDATE)
+                && settings.getBool(sessionID, CONSOLIDATE)) {
+            application.consolidate(sessionID);
+        }
 
-    /**
-     * Build a market data cancel message.
-     * @param type order type (BID/OFFER)
-     * @return completed message
-     */
-    private Message buildMarketDataCancel(final char type) {
+        if (settings.isSetting(sessionID, JMX_METRICS)
+                && settings.getBool(sessionID, JMX_METRICS)) {
+            session.registerMetrics();
+        }
 
-        return buildMsg(
-           type,
-         SubscriptionRequestType.DISABLE_PREVIOUS_SNAPSHOT_PLUS_UPDATE_REQUEST);
-    }
+        if (settings.isSetting(sessionID, MARKET_DEPTH)) {
+            manager.setDefaultMarketDepth(
+                (int) settings.getLong(sessionID, MARKET_DEPTH));
+        }
 
-    /**
-     * Build the market data request message.
-     * @param type the message type (BID/OFFER)
-     * @return built message
-     */
-    private Message buildMarketDataRequest(final char type) {
+        manager.setMaxFullDepth(getInt(settings, sessionID,
+                MAX_FULL_DEPTH, InstrumentDepth.DEFAULT_MAX_FULL_DEPTH));
+
+        if (settings.isSetting(sessionID, BOOK_MODE)) {
+            manager.setBookMode(BookMode.valueOf(
+                settings.getString(sessionID, BOOK_MODE)));
+        }
+
+        final SubscriptionManager subscriptions =
+            new SubscriptionManager(application, sessionID, manager,
+                    getInt(settings, sessionID, SYMBOLS_PER_REQUEST,
+                        SubscriptionManager.DEFAULT_SYMBOLS_PER_REQUEST),
+                    getInt(settings, sessionID, REQUESTS_PER_SECOND,
+                        SubscriptionManager.DEFAULT_REQUESTS_PER_SECOND));
+
+        subscriptions.subscribe(getSymbols(settings, sessionID));
 
-        return buildMsg(
-                type, SubscriptionRequestType.SNAPSHOT_PLUS_UPDATES);
+        // requests go out as soon as the session logs on, and again
+        // after every reconnect
+        application.addSubscriptionManager(sessionID, subscriptions);
+
+        return subscriptions;
     }
 
     /**
-     * Build message.
-     * @param type the type
-     * @param subType the sub type
-     * @return msg
+     * Get a configured number.
+     *
+     * @param settings session settings
+     * @param sessionID session
+     * @param key setting name
+     * @param defaultValue value if not set
+     * @return number
+     * @throws ConfigError thrown
+     * @throws FieldConvertError thrown if the setting is not a number
      */
-    private Message buildMsg(final char type, final char subType) {
+    private int getInt(final SessionSettings settings,
+                       final SessionID sessionID, final String key,
+                       final int defaultValue)
+            throws ConfigError, FieldConvertError {
 
-        final Message msg = new MarketDataRequest();
-        // 262* Unique MDID
-        msg.setField(new MDReqID("EURUSD01"));
-        // 263* Subscription request type
-        msg.setField(
-          new SubscriptionRequestType(subType));
-        // 264* Market depth
-        msg.setField(new MarketDepth(1));
+        int value = defaultValue;
 
-        // * MD request group
-        msg.setField(new quickfix.field.NoMDEntryTypes('1'));
-        final NoMDEntryTypes entryGroup = new NoMDEntryTypes();
-
-        if (type == OrderType.OFFER) {
-            entryGroup.set(new quickfix.field.MDEntryType(MDEntryType.OFFER));
-        } else if (type == OrderType.BID) {
-            entryGroup.set(new quickfix.field.MDEntryType(MDEntryType.BID));
+        if (settings.isSetting(sessionID, key)) {
+            value = (int) settings.getLong(sessionID, key);
         }
 
-        msg.addGroup(entryGroup);
-
-        // * Instrument MD request group
-        msg.setField(new quickfix.field.NoRelatedSym('1'));
-        final NoRelatedSym symGroup = new NoRelatedSym();
-        //symGroup.set(new Symbol("EURUSD"));
-        symGroup.set(new Symbol("EUR/USD"));
-        msg.addGroup(symGroup);
-
-        return msg;
+        return value;
     }
 
     /**
-     * Send market data request messages for bid and offer for
-     * a given instrument.
+     * Get the configured instruments of a session.
      *
-     * @param application FIX application
-     */
-    private void sendMarketDataRequests(
-            final ClientApplication application) {
-
-        // send a bid market data request
-        LOG.info("Sending Bid MarketDataRequest");
-        application.sendMessage(
-                application.getSessionId(),
-                buildMarketDataRequest(OrderType.BID));
-
-        // now send the offer request
-        LOG.info("Sending Offer MarketDataRequest");
-        application.sendMessage(
-                application.getSessionId(),
-                buildMarketDataRequest(OrderType.OFFER));
+     * @param settings session settings
+     * @param sessionID session
+     * @return symbols
+     * @throws ConfigError thrown
+     * @throws FieldConvertError thrown if the setting cannot be read
+     */
+    private List<String> getSymbols(final SessionSettings settings,
+                                    final SessionID sessionID)
+            throws ConfigError, FieldConvertError {
+
+        final List<String> symbols = new ArrayList<String>();
+
+        if (settings.isSetting(sessionID, SYMBOLS)) {
+            for (final String symbol
+                    : settings.getString(sessionID, SYMBOLS).split(",")) {
+                if (!symbol.trim().isEmpty()) {
+                    symbols.add(symbol.trim());
+                }
+            }
+        }
+
+        final int generated =
+                        getInt(settings, sessionID, GENERATED_SYMBOLS, 0);
+
+        for (int i = 0; i < generated; i++) {
+            symbols.add(GENERATED_PREFIX + i);
+        }
+
+        if (symbols.isEmpty()) {
+            symbols.add(DEFAULT_SYMBOL);
+        }
+
+        return symbols;
     }
 
     /**
@@ -3,6 +3,9 @@
  */
 package com.blizzardtec.fixclient;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,10 +13,6 @@ import quickfix.Message;
 import quickfix.Session;
 import quickfix.SessionID;
 import quickfix.SessionNotFound;
-import quickfix.DataDictionaryProvider;
-import quickfix.FixVersions;
-import quickfix.MessageUtils;
-import quickfix.field.ApplVerID;
 
 
 /**
@@ -28,6 +27,12 @@ public final class FixHelper {
     private static final Logger LOG =
         LoggerFactory.getLogger(FixHelper.class);
 
+    /**
+     * Senders by session.
+     */
+    private static final ConcurrentMap<SessionID, SessionSender> SENDERS =
+                    new ConcurrentHashMap<SessionID, SessionSender>();
+
     /**
      * Private constructor for utility method.
      */
@@ -36,55 +41,66 @@ public final class FixHelper {
     }
 
     /**
-     * Send a message.
+     * Send a message. The data dictionary of the session is looked
+     * up on the first send to the session and then reused.
+     * @param sessionID id
+     * @param message message to send
+     * @return true if the session sent it, false if it failed
+     *         validation or could not be sent
+     */
+    public static boolean sendMessage(
+            final SessionID sessionID, final Message message) {
+        try {
+            return getSender(sessionID).send(message);
+        } catch (SessionNotFound e) {
+            LOG.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Send a message without validating it, for a message of a shape
+     * that has already been validated.
      * @param sessionID id
      * @param message message to send
+     * @return true if the session sent it
      */
-    public static void sendMessage(
+    public static boolean sendValidated(
             final SessionID sessionID, final Message message) {
         try {
-            final Session session = Session.lookupSession(sessionID);
-            if (session == null) {
-                throw new SessionNotFound(sessionID.toString());
-            }
-
-            final DataDictionaryProvider dictProvider =
-                                    session.getDataDictionaryProvider();
-
-            if (dictProvider != null) {
-                try {
-                    dictProvider.getApplicationDataDictionary(
-                            getApplVerID(session)).validate(message, true);
-                } catch (Exception e) {
-                    LOG.error("Outgoing message failed validation: "
-                            + e.getMessage());
-                    return;
-                }
-            }
-
-            session.send(message);
+            return getSender(sessionID).sendValidated(message);
         } catch (SessionNotFound e) {
             LOG.error(e.getMessage(), e);
+            return false;
         }
     }
 
     /**
-     * Get app version id.
-     * @param session session
-     * @return id
+     * Get the sender of a session, creating it on first use. The
+     * session is looked up on every call, a map read, so a sender
+     * for a session since removed or recreated is never used.
+     * @param sessionID id
+     * @return sender bound to the session
+     * @throws SessionNotFound thrown if the session does not exist
      */
-    private static ApplVerID getApplVerID(final Session session) {
+    public static SessionSender getSender(final SessionID sessionID)
+            throws SessionNotFound {
 
-        ApplVerID verId;
+        final Session session = Session.lookupSession(sessionID);
+
+        if (session == null) {
+            // do not keep a removed session reachable
+            SENDERS.remove(sessionID);
+            throw new SessionNotFound(sessionID.toString());
+        }
 
-        final String beginString = session.getSessionID().getBeginString();
+        SessionSender sender = SENDERS.get(sessionID);
 
-        if (FixVersions.BEGINSTRING_FIXT11.equals(beginString)) {
-            verId = new ApplVerID(ApplVerID.FIX50);
-        } else {
-            verId = MessageUtils.toApplVerID(beginString);
+        if (sender == null || sender.getSession() != session) {
+            sender = new SessionSender(session);
+            SENDERS.put(sessionID, sender);
         }
 
-        return verId;
+        return sender;
     }
 }
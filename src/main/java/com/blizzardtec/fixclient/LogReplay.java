@@ -0,0 +1,361 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.depth.InstrumentDepth;
+import com.blizzardtec.fixclient.depth.SymbolRegistry;
+
+import quickfix.ConfigError;
+import quickfix.DataDictionary;
+import quickfix.FieldConvertError;
+import quickfix.FieldNotFound;
+import quickfix.IncorrectDataFormat;
+import quickfix.IncorrectTagValue;
+import quickfix.InvalidMessage;
+import quickfix.Message;
+import quickfix.MessageUtils;
+import quickfix.SessionID;
+import quickfix.UnsupportedMessageType;
+import quickfix.field.SendingTime;
+import quickfix.field.converter.UtcTimestampConverter;
+import quickfix.fix44.MessageFactory;
+
+/**
+ * Replays a recorded FIX message log through the application,
+ * without a session, to rebuild the books offline, check them
+ * against a known result or measure throughput.
+ *
+ * Logs are read one message per line, as written by the
+ * QuickFIX/J file log, with or without its timestamp prefix, and
+ * with SOH or '|' between fields. Admin messages are skipped, as
+ * are application messages the application does not handle, such
+ * as the market data requests the log also holds. Each message is
+ * applied to the books of the session it was received on.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class LogReplay {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(LogReplay.class);
+
+    /**
+     * Data dictionary used if none is given, from the class path.
+     */
+    public static final String DEFAULT_DICTIONARY = "FIX44.xml";
+
+    /**
+     * Start of every message.
+     */
+    private static final String BEGIN = "8=FIX";
+    /**
+     * Field separator.
+     */
+    private static final char SOH = '\001';
+    /**
+     * Field separator of logs written for reading.
+     */
+    private static final char DISPLAY_SEPARATOR = '|';
+    /**
+     * End of the file log timestamp prefix.
+     */
+    private static final String TIMESTAMP_END = ": ";
+    /**
+     * Time of a message that has none.
+     */
+    private static final long NO_TIME = -1;
+    /**
+     * Index of the decode mode argument.
+     */
+    private static final int DECODE_MODE_ARG = 2;
+
+    /**
+     * Application messages are applied to.
+     */
+    private final transient ClientApplication application;
+    /**
+     * Dictionary repeating groups are parsed with.
+     */
+    private final transient DataDictionary dictionary;
+    /**
+     * Creates the typed messages the application cracks.
+     */
+    private final transient MessageFactory messageFactory =
+                                                new MessageFactory();
+    /**
+     * How fast messages are replayed.
+     */
+    private final transient ReplayMode mode;
+    /**
+     * Sessions messages were replayed on, in order of first sight.
+     */
+    private final transient Set<SessionID> sessions =
+                                new LinkedHashSet<SessionID>();
+
+    /**
+     * Constructor.
+     * @param application application messages are applied to
+     * @param dictionary dictionary messages are parsed with
+     * @param mode how fast messages are replayed
+     */
+    public LogReplay(final ClientApplication application,
+                     final DataDictionary dictionary,
+                     final ReplayMode mode) {
+        this.application = application;
+        this.dictionary = dictionary;
+        this.mode = mode;
+    }
+
+    /**
+     * Replay a log file.
+     * @param file log file
+     * @return throughput and latency of the replay
+     * @throws IOException thrown if the log cannot be read
+     */
+    public ReplayStats replay(final File file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(
+                file.toPath(), StandardCharsets.ISO_8859_1)) {
+            return replay(reader);
+        }
+    }
+
+    /**
+     * Replay a log.
+     * @param reader log lines
+     * @return throughput and latency of the replay
+     * @throws IOException thrown if the log cannot be read
+     */
+    public ReplayStats replay(final BufferedReader reader)
+            throws IOException {
+
+        final ReplayStats stats = new ReplayStats();
+        final long startNanos = System.nanoTime();
+
+        long firstTime = NO_TIME;
+        String line = reader.readLine();
+
+        while (line != null) {
+
+            final int begin = line.indexOf(BEGIN);
+            final Message message;
+
+            if (begin >= 0) {
+                message = parse(line.substring(begin));
+            } else {
+                message = null;
+            }
+
+            if (message == null) {
+                stats.skip();
+            } else {
+                if (mode == ReplayMode.ORIGINAL_TIMING) {
+                    final long time = recordedTime(line, begin, message);
+
+                    if (firstTime == NO_TIME) {
+                        firstTime = time;
+                    } else if (time != NO_TIME) {
+                        stats.late(waitUntil(startNanos
+                            + TimeUnit.MILLISECONDS.toNanos(
+                                    time - firstTime)));
+                    }
+                }
+
+                apply(message, stats);
+            }
+
+            line = reader.readLine();
+        }
+
+        stats.finish(System.nanoTime() - startNanos);
+
+        return stats;
+    }
+
+    /**
+     * Parse one message, unless it is an admin message.
+     * @param text message
+     * @return message, null if it is skipped
+     */
+    private Message parse(final String text) {
+
+        String fields = text;
+
+        if (fields.indexOf(SOH) < 0) {
+            fields = fields.replace(DISPLAY_SEPARATOR, SOH);
+        }
+
+        Message message = null;
+
+        try {
+            if (!MessageUtils.isAdminMessage(
+                    MessageUtils.getMessageType(fields))) {
+                message = MessageUtils.parse(messageFactory, dictionary,
+                                             fields);
+            }
+        } catch (InvalidMessage e) {
+            LOG.warn("Skipped unreadable message: " + e.getMessage());
+        }
+
+        return message;
+    }
+
+    /**
+     * Apply one message, timing how long the application takes.
+     * @param message message
+     * @param stats statistics
+     */
+    private void apply(final Message message, final ReplayStats stats) {
+
+        // received messages name the client as the target
+        final SessionID sessionID =
+                        MessageUtils.getReverseSessionID(message);
+
+        try {
+            final long before = System.nanoTime();
+
+            application.fromApp(message, sessionID);
+
+            stats.record(System.nanoTime() - before);
+            sessions.add(sessionID);
+        } catch (UnsupportedMessageType e) {
+            stats.skip();
+        } catch (FieldNotFound | IncorrectDataFormat
+                | IncorrectTagValue e) {
+            LOG.warn("Skipped message: " + e.getMessage());
+            stats.skip();
+        } catch (RuntimeException e) {
+            // one malformed record must not end the whole replay
+            LOG.warn("Skipped message: " + e, e);
+            stats.skip();
+        }
+    }
+
+    /**
+     * Get the time a message was recorded, from the file log
+     * timestamp, or the sending time if it has none.
+     * @param line log line
+     * @param begin start of the message in the line
+     * @param message message
+     * @return time, epoch millis, NO_TIME if it has none
+     */
+    private static long recordedTime(final String line, final int begin,
+                                     final Message message) {
+
+        try {
+            if (line.startsWith(TIMESTAMP_END, begin
+                                - TIMESTAMP_END.length())) {
+                return UtcTimestampConverter.convert(line.substring(0,
+                        begin - TIMESTAMP_END.length())).getTime();
+            }
+
+            return message.getHeader().getUtcTimeStamp(SendingTime.FIELD)
+                    .getTime();
+        } catch (FieldConvertError | FieldNotFound e) {
+            return NO_TIME;
+        }
+    }
+
+    /**
+     * Wait until a time.
+     * @param targetNanos System.nanoTime to wait until
+     * @return how far past the time it already was
+     */
+    private static long waitUntil(final long targetNanos) {
+
+        long remaining = targetNanos - System.nanoTime();
+
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = targetNanos - System.nanoTime();
+        }
+
+        return -remaining;
+    }
+
+    /**
+     * @return sessions messages were replayed on, in order of
+     *         first sight
+     */
+    public Set<SessionID> getSessions() {
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    /**
+     * Replay a log, print the throughput and latency, then print
+     * every book built, so replays can be compared.
+     * @param args log file, optional MAX_SPEED or ORIGINAL_TIMING,
+     *        optional STANDARD or FLYWEIGHT decoding
+     * @throws IOException thrown if the log cannot be read
+     * @throws ConfigError thrown if the dictionary cannot be loaded
+     * @throws InterruptedException thrown if interrupted while stopping
+     */
+    public static void main(final String[] args)
+            throws IOException, ConfigError, InterruptedException {
+
+        if (args.length == 0) {
+            System.err.println("Usage: LogReplay <log file>"
+                + " [MAX_SPEED|ORIGINAL_TIMING] [STANDARD|FLYWEIGHT]");
+            return;
+        }
+
+        ReplayMode replayMode = ReplayMode.MAX_SPEED;
+        DecodeMode decodeMode = DecodeMode.FLYWEIGHT;
+
+        if (args.length > 1) {
+            replayMode = ReplayMode.valueOf(args[1]);
+        }
+
+        if (args.length > DECODE_MODE_ARG) {
+            decodeMode = DecodeMode.valueOf(args[DECODE_MODE_ARG]);
+        }
+
+        final ClientApplication application =
+                                new ClientApplication(decodeMode);
+        final LogReplay replay = new LogReplay(application,
+                new DataDictionary(DEFAULT_DICTIONARY), replayMode);
+
+        application.start();
+        final ReplayStats stats = replay.replay(new File(args[0]));
+        application.stop();
+
+        System.out.println(stats);
+
+        for (final SessionID sessionID : replay.getSessions()) {
+
+            final DepthManager manager =
+                            application.getDepthManager(sessionID);
+            final SymbolRegistry registry = manager.getSymbolRegistry();
+
+            System.out.println(sessionID);
+
+            for (int id = 0; id < registry.size(); id++) {
+                final InstrumentDepth book = manager.getInstrumentDepth(
+                        registry.getSymbol(id));
+
+                if (book != null) {
+                    System.out.println(book.printDepth());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+/**
+ * Told when a session logs on or off.
+ *
+ * Called on the session thread, so should not block. Sending
+ * messages on the session that just logged on is fine.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public interface LogonListener {
+
+    /**
+     * A session has logged on or off.
+     * @param event logon event
+     */
+    void onLogonEvent(LogonEvent event);
+}
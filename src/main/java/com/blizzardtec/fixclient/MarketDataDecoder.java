@@ -0,0 +1,296 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blizzardtec.fixclient.depth.DepthUpdateHandler;
+import com.blizzardtec.fixclient.depth.PriceDepth;
+import com.blizzardtec.fixclient.depth.SymbolRegistry;
+import com.blizzardtec.fixclient.metrics.FeedMetrics;
+
+import quickfix.FieldMap;
+import quickfix.FieldNotFound;
+import quickfix.Group;
+import quickfix.field.MDEntryPositionNo;
+import quickfix.field.MDEntryPx;
+import quickfix.field.MDEntrySize;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDUpdateAction;
+import quickfix.field.NoMDEntries;
+import quickfix.field.RptSeq;
+import quickfix.field.Symbol;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+
+/**
+ * Allocation free decoder for market data messages.
+ *
+ * Groups are read in place from the parsed message rather than
+ * copied out, tag values are read as raw strings, prices are
+ * parsed straight into scaled longs, symbols are resolved to
+ * registry IDs, and every entry is written
+ * into a single per-thread PriceDepth that the depth manager
+ * copies from. A snapshot is passed between a beginSnapshot
+ * carrying its RptSeq and an endSnapshot, so the handler can build
+ * the new book aside and replace the old one in one go. If an entry
+ * cannot be read an abortSnapshot is passed instead, and the old
+ * book is kept.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class MarketDataDecoder {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(MarketDataDecoder.class);
+
+    /**
+     * Reused entry, one per decoding thread.
+     */
+    private static final ThreadLocal<PriceDepth> ENTRY =
+        new ThreadLocal<PriceDepth>() {
+            @Override
+            protected PriceDepth initialValue() {
+                return new PriceDepth();
+            }
+        };
+
+    /**
+     * Handler decoded entries are passed to.
+     */
+    private final transient DepthUpdateHandler handler;
+    /**
+     * Registry symbols are resolved with, null to leave entries
+     * without a symbol ID.
+     */
+    private final transient SymbolRegistry registry;
+    /**
+     * Counters of entries with an unknown action, null for none.
+     */
+    private final transient FeedMetrics metrics;
+
+    /**
+     * Constructor. Entries are passed on without symbol IDs.
+     * @param handler depth manager, or depth ring, updates are passed to
+     */
+    public MarketDataDecoder(final DepthUpdateHandler handler) {
+        this(handler, null);
+    }
+
+    /**
+     * Constructor.
+     * @param handler depth manager, or depth ring, updates are passed to
+     * @param registry registry of the depth manager, symbols are
+     *        resolved to its IDs
+     */
+    public MarketDataDecoder(final DepthUpdateHandler handler,
+                             final SymbolRegistry registry) {
+        this(handler, registry, null);
+    }
+
+    /**
+     * Constructor.
+     * @param handler depth manager, or depth ring, updates are passed to
+     * @param registry registry of the depth manager, symbols are
+     *        resolved to its IDs
+     * @param metrics counters entries with an unknown action are
+     *        counted in, null for none
+     */
+    public MarketDataDecoder(final DepthUpdateHandler handler,
+                             final SymbolRegistry registry,
+                             final FeedMetrics metrics) {
+        this.handler = handler;
+        this.registry = registry;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Decode a full snapshot and pass it to the handler.
+     * @param snapshot snapshot
+     * @throws FieldNotFound thrown if a required tag is missing
+     */
+    public void decode(final MarketDataSnapshotFullRefresh snapshot)
+            throws FieldNotFound {
+
+        final String symbol = snapshot.getString(Symbol.FIELD);
+        final int symbolId = resolve(symbol);
+        final List<Group> groups = snapshot.getGroups(NoMDEntries.FIELD);
+        final PriceDepth entry = ENTRY.get();
+
+        entry.setSymbol(symbol);
+        entry.setSymbolId(symbolId);
+        entry.setRptSeq(readRptSeq(snapshot));
+
+        handler.beginSnapshot(entry);
+
+        boolean complete = false;
+
+        try {
+            // indexed loop, an iterator would be garbage
+            for (int i = 0; i < groups.size(); i++) {
+
+                final Group group = groups.get(i);
+
+                readEntry(group, entry);
+                entry.setSymbol(symbol);
+                entry.setSymbolId(symbolId);
+                entry.setUpdateAction(MDUpdateAction.NEW);
+
+                handler.newDepthData(entry);
+            }
+
+            complete = true;
+        } finally {
+            entry.setSymbol(symbol);
+            entry.setSymbolId(symbolId);
+
+            // a bad entry must not publish the half built book, nor
+            // leave it building
+            if (complete) {
+                handler.endSnapshot(entry);
+            } else {
+                handler.abortSnapshot(entry);
+            }
+
+            handler.endOfMessage();
+        }
+    }
+
+    /**
+     * Decode an incremental refresh and pass it to the handler.
+     * The message is ended even if an entry cannot be read, so the
+     * entries before it are published.
+     * @param refresh refresh
+     * @throws FieldNotFound thrown if a required tag is missing
+     */
+    public void decode(final MarketDataIncrementalRefresh refresh)
+            throws FieldNotFound {
+
+        final List<Group> groups = refresh.getGroups(NoMDEntries.FIELD);
+        final PriceDepth entry = ENTRY.get();
+
+        try {
+            for (int i = 0; i < groups.size(); i++) {
+
+                final Group group = groups.get(i);
+
+                readEntry(group, entry);
+                final String symbol = group.getString(Symbol.FIELD);
+                entry.setSymbol(symbol);
+                entry.setSymbolId(resolve(symbol));
+                entry.setUpdateAction(group.getChar(MDUpdateAction.FIELD));
+
+                final char action = entry.getUpdateAction();
+
+                if (action == MDUpdateAction.CHANGE) {
+                    handler.updateDepthData(entry);
+                } else if (action == MDUpdateAction.DELETE) {
+                    handler.deleteDepthLevel(entry);
+                } else if (action == MDUpdateAction.NEW) {
+                    handler.newDepthData(entry);
+                } else {
+                    unknownAction(action, entry.getSymbol());
+                }
+            }
+        } finally {
+            handler.endOfMessage();
+        }
+    }
+
+    /**
+     * Count and log an entry skipped for an unknown action.
+     * @param action MDUpdateAction
+     * @param symbol instrument symbol
+     */
+    private void unknownAction(final char action, final String symbol) {
+
+        if (metrics != null) {
+            metrics.unknownAction();
+        }
+
+        if (LOG.isWarnEnabled()) {
+            LOG.warn("Unknown MDUpdateAction " + action + " for " + symbol);
+        }
+    }
+
+    /**
+     * Get the registry ID of a symbol.
+     * @param symbol instrument symbol
+     * @return ID, SymbolRegistry.NOT_FOUND if the symbol has not been
+     *         registered or there is no registry
+     */
+    private int resolve(final String symbol) {
+
+        int symbolId = SymbolRegistry.NOT_FOUND;
+
+        if (registry != null) {
+            symbolId = registry.getId(symbol);
+        }
+
+        return symbolId;
+    }
+
+    /**
+     * Read the RptSeq of a snapshot or refresh entry.
+     * @param fields message or MD entry group
+     * @return RptSeq, 0 if the venue does not send one
+     * @throws FieldNotFound thrown if a required tag is missing
+     */
+    private static int readRptSeq(final FieldMap fields)
+            throws FieldNotFound {
+
+        int rptSeq = 0;
+
+        if (fields.isSetField(RptSeq.FIELD)) {
+            rptSeq = DecimalParser.parseInt(fields.getString(RptSeq.FIELD));
+        }
+
+        return rptSeq;
+    }
+
+    /**
+     * Read the fields common to snapshot and refresh entries.
+     * Price and size are optional so that deletes can omit them,
+     * the position is optional for price keyed books.
+     * @param group MD entry group
+     * @param entry entry to populate
+     * @throws FieldNotFound thrown if a required tag is missing
+     */
+    private static void readEntry(final FieldMap group,
+                                  final PriceDepth entry)
+            throws FieldNotFound {
+
+        entry.setType(group.getChar(MDEntryType.FIELD));
+
+        if (group.isSetField(MDEntryPositionNo.FIELD)) {
+            entry.setLevel(group.getInt(MDEntryPositionNo.FIELD));
+        } else {
+            entry.setLevel(0);
+        }
+
+        if (group.isSetField(MDEntryPx.FIELD)) {
+            final String price = group.getString(MDEntryPx.FIELD);
+            entry.setPrice(DecimalParser.parseUnscaled(price));
+            entry.setPriceScale(DecimalParser.scale(price));
+        } else {
+            entry.setPrice(0);
+        }
+
+        if (group.isSetField(MDEntrySize.FIELD)) {
+            entry.setOrderSize(
+                DecimalParser.parseInt(group.getString(MDEntrySize.FIELD)));
+        } else {
+            entry.setOrderSize(0);
+        }
+
+        entry.setRptSeq(readRptSeq(group));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import java.util.List;
+
+import quickfix.Message;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDReqID;
+import quickfix.field.MarketDepth;
+import quickfix.field.SubscriptionRequestType;
+import quickfix.field.Symbol;
+import quickfix.fix44.MarketDataRequest;
+import quickfix.fix44.MarketDataRequest.NoMDEntryTypes;
+import quickfix.fix44.MarketDataRequest.NoRelatedSym;
+
+/**
+ * A MarketDataRequest for bids and offers on a fixed set of
+ * symbols, built once and reused for every subscribe and cancel of
+ * those symbols.
+ *
+ * The groups and market depth never change, so they are built
+ * when the template is made. Subscribing, or asking for a snapshot,
+ * patches MDReqID and the subscription request type, cancelling
+ * patches just the type.
+ * Once a request has been validated on the way out the template
+ * remembers it, and later sends can skip validation because the
+ * message keeps its shape. Not thread safe.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class MarketDataRequestTemplate {
+
+    /**
+     * Subscription request type of a cancel.
+     */
+    private static final char CANCEL =
+        SubscriptionRequestType.DISABLE_PREVIOUS_SNAPSHOT_PLUS_UPDATE_REQUEST;
+
+    /**
+     * Reused message.
+     */
+    private final transient MarketDataRequest message;
+    /**
+     * True once the message has been sent through validation.
+     */
+    private transient boolean validated;
+
+    /**
+     * Constructor.
+     * @param symbols instrument symbols
+     * @param marketDepth depth levels to request, 0 for full depth
+     */
+    public MarketDataRequestTemplate(final List<String> symbols,
+                                     final int marketDepth) {
+
+        message = new MarketDataRequest(
+                new MDReqID(""),
+                new SubscriptionRequestType(
+                        SubscriptionRequestType.SNAPSHOT_PLUS_UPDATES),
+                new MarketDepth(marketDepth));
+
+        final NoMDEntryTypes entryGroup = new NoMDEntryTypes();
+        entryGroup.set(new MDEntryType(MDEntryType.BID));
+        message.addGroup(entryGroup);
+        entryGroup.set(new MDEntryType(MDEntryType.OFFER));
+        message.addGroup(entryGroup);
+
+        final NoRelatedSym symGroup = new NoRelatedSym();
+
+        for (final String symbol : symbols) {
+            symGroup.set(new Symbol(symbol));
+            message.addGroup(symGroup);
+        }
+    }
+
+    /**
+     * Get the message subscribing under a request ID.
+     * @param mdReqId request ID
+     * @return the reused message
+     */
+    public Message subscribe(final String mdReqId) {
+
+        message.setString(MDReqID.FIELD, mdReqId);
+        message.setChar(SubscriptionRequestType.FIELD,
+                        SubscriptionRequestType.SNAPSHOT_PLUS_UPDATES);
+
+        return message;
+    }
+
+    /**
+     * Get the message asking for a snapshot alone, without updates,
+     * under a request ID.
+     * @param mdReqId request ID
+     * @return the reused message
+     */
+    public Message snapshot(final String mdReqId) {
+
+        message.setString(MDReqID.FIELD, mdReqId);
+        message.setChar(SubscriptionRequestType.FIELD,
+                        SubscriptionRequestType.SNAPSHOT);
+
+        return message;
+    }
+
+    /**
+     * Get the message cancelling the last subscribe.
+     * @return the reused message
+     */
+    public Message cancel() {
+
+        message.setChar(SubscriptionRequestType.FIELD, CANCEL);
+
+        return message;
+    }
+
+    /**
+     * @return true once the message has been sent through validation
+     */
+    public boolean isValidated() {
+        return validated;
+    }
+
+    /**
+     * Record that the message has been sent through validation.
+     */
+    public void setValidated() {
+        validated = true;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import quickfix.Message;
+import quickfix.SessionID;
+
+/**
+ * Sends messages on a session.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public interface MessageSender {
+
+    /**
+     * Validate a message and send it.
+     * @param sessionID id
+     * @param message message to send
+     * @return true if the session sent it, false if it failed
+     *         validation or could not be sent
+     */
+    boolean sendMessage(SessionID sessionID, Message message);
+
+    /**
+     * Send a message without validating it, for a message of a shape
+     * that has already been validated.
+     * @param sessionID id
+     * @param message message to send
+     * @return true if the session sent it
+     */
+    boolean sendValidated(SessionID sessionID, Message message);
+}
@@ -0,0 +1,23 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+/**
+ * How fast a recorded log is replayed.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public enum ReplayMode {
+
+    /**
+     * Each message as soon as the one before has been applied.
+     */
+    MAX_SPEED,
+    /**
+     * Each message at the same offset from the first as when it
+     * was recorded.
+     */
+    ORIGINAL_TIMING
+}
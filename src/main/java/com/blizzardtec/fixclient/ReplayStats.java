@@ -0,0 +1,187 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import java.util.Locale;
+
+import com.blizzardtec.fixclient.latency.HistogramSnapshot;
+import com.blizzardtec.fixclient.latency.LatencyHistogram;
+
+/**
+ * Throughput and latency of one log replay.
+ *
+ * The latency of a message is the time the application took to
+ * crack and apply it, or to hand it to the book building threads
+ * if it has them. Parsing the log line is not included, but is
+ * part of the elapsed time the throughput is worked out from.
+ * Latencies go into a fixed size histogram, so a replay of any
+ * length takes the same few kilobytes.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class ReplayStats {
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /**
+     * Nanoseconds per microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1e3;
+    /**
+     * Percentiles reported.
+     */
+    private static final double[] REPORTED = {50, 90, 99, 99.9};
+    /**
+     * Names of the percentiles reported.
+     */
+    private static final String[] LABELS = {"p50", "p90", "p99", "p99.9"};
+    /**
+     * Highest percentile.
+     */
+    private static final double ALL = 100;
+
+    /**
+     * Latencies of the messages applied.
+     */
+    private final transient LatencyHistogram latencies =
+                                    new LatencyHistogram();
+    /**
+     * Copy of the latencies, taken once finished.
+     */
+    private final transient HistogramSnapshot snapshot =
+                                    new HistogramSnapshot();
+    /**
+     * Messages applied.
+     */
+    private transient long messages;
+    /**
+     * Lines skipped: admin, unsupported or unreadable messages.
+     */
+    private transient long skipped;
+    /**
+     * Most a message was applied behind its original time.
+     */
+    private transient long maxLateNanos;
+    /**
+     * Time taken over the whole replay.
+     */
+    private transient long elapsedNanos;
+
+    /**
+     * Record a message applied.
+     * @param latencyNanos time taken to apply it
+     */
+    void record(final long latencyNanos) {
+        latencies.record(latencyNanos);
+        messages++;
+    }
+
+    /**
+     * Record a line skipped.
+     */
+    void skip() {
+        skipped++;
+    }
+
+    /**
+     * Record how far behind its original time a message was applied.
+     * @param lateNanos time behind
+     */
+    void late(final long lateNanos) {
+        maxLateNanos = Math.max(maxLateNanos, lateNanos);
+    }
+
+    /**
+     * Finish the replay.
+     * @param elapsed time taken over the whole replay
+     */
+    void finish(final long elapsed) {
+        elapsedNanos = elapsed;
+        latencies.copyTo(snapshot);
+    }
+
+    /**
+     * @return number of messages applied
+     */
+    public long getMessageCount() {
+        return messages;
+    }
+
+    /**
+     * @return number of lines skipped
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * @return time taken over the whole replay
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return most a message was applied behind its original time,
+     *         0 at max speed
+     */
+    public long getMaxLateNanos() {
+        return maxLateNanos;
+    }
+
+    /**
+     * @return messages applied per second
+     */
+    public double getMessagesPerSecond() {
+
+        double rate = 0;
+
+        if (elapsedNanos > 0) {
+            rate = messages * NANOS_PER_SECOND / elapsedNanos;
+        }
+
+        return rate;
+    }
+
+    /**
+     * Get a latency percentile, to the precision of the histogram,
+     * once finished.
+     * @param percentile percentile, 100 for the highest
+     * @return latency, 0 if nothing was applied
+     */
+    public long getLatencyNanos(final double percentile) {
+        return snapshot.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return summary of the replay
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder(String.format(
+                Locale.ROOT, "%d messages, %d skipped, in %.3f s,"
+                + " %.0f messages/s%nlatency us", messages, skipped,
+                elapsedNanos / NANOS_PER_SECOND, getMessagesPerSecond()));
+
+        for (int i = 0; i < REPORTED.length; i++) {
+            buffer.append(String.format(Locale.ROOT, " %s %.2f",
+                    LABELS[i], getLatencyNanos(REPORTED[i])
+                                    / NANOS_PER_MICRO));
+        }
+
+        buffer.append(String.format(Locale.ROOT, " max %.2f",
+                getLatencyNanos(ALL) / NANOS_PER_MICRO));
+
+        if (maxLateNanos > 0) {
+            buffer.append(String.format(Locale.ROOT, "%nmost late us %.2f",
+                    maxLateNanos / NANOS_PER_MICRO));
+        }
+
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blizzardtec.fixclient.depth.BookListener;
+import com.blizzardtec.fixclient.depth.ConflatingBookListener;
+import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.depth.DepthShards;
+import com.blizzardtec.fixclient.depth.DepthUpdateHandler;
+import com.blizzardtec.fixclient.depth.GapRecovery;
+import com.blizzardtec.fixclient.depth.SampledDepthLogger;
+import com.blizzardtec.fixclient.depth.WaitStrategy;
+import com.blizzardtec.fixclient.journal.DepthJournal;
+import com.blizzardtec.fixclient.latency.LatencyRecorder;
+import com.blizzardtec.fixclient.log.EventLog;
+import com.blizzardtec.fixclient.metrics.BookMetrics;
+import com.blizzardtec.fixclient.metrics.FeedMetrics;
+import com.blizzardtec.fixclient.metrics.MetricsNames;
+
+import quickfix.SessionID;
+
+/**
+ * The books of one session and the pipeline that builds them.
+ *
+ * Every session has its own depth manager, so its symbols and
+ * books are a namespace of their own, and its own decoder and book
+ * building threads. Nothing on the market data path is shared
+ * between sessions, so a slow venue only holds up its own books,
+ * and a gap in one book is recovered without holding up the rest.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class SessionBooks {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(SessionBooks.class);
+
+    /**
+     * Minimum time between logged dumps of one book.
+     */
+    private static final long DEPTH_DUMP_MILLIS = 1000L;
+
+    /**
+     * Session the books are built from.
+     */
+    private final transient SessionID sessionID;
+    /**
+     * Price depth manager.
+     */
+    private final transient DepthManager manager;
+    /**
+     * Book building threads, null if books are built on the
+     * session thread.
+     */
+    private final transient DepthShards shards;
+    /**
+     * Sequence checks in front of the shards or the depth manager.
+     */
+    private final transient GapRecovery recovery;
+    /**
+     * Where decoded entries go, the gap recovery.
+     */
+    private final transient DepthUpdateHandler handler;
+    /**
+     * Allocation free decoder, session thread only.
+     */
+    private final transient MarketDataDecoder decoder;
+    /**
+     * Sampled book dumps, null if they would not be logged.
+     */
+    private final transient ConflatingBookListener depthDumps;
+    /**
+     * Journal of the entries applied, null for none.
+     */
+    private transient DepthJournal journal;
+    /**
+     * Latency histograms of the session, null for none.
+     */
+    private transient LatencyRecorder latency;
+    /**
+     * Counters of the feed, always kept.
+     */
+    private final transient FeedMetrics feedMetrics = new FeedMetrics();
+    /**
+     * Names the metrics are registered under in JMX, empty if
+     * they are not.
+     */
+    private transient ObjectName[] metricsNames = new ObjectName[0];
+
+    /**
+     * Constructor.
+     * @param sessionID session the books are built from
+     * @param waitStrategy wait strategy of the book building threads,
+     *        null to build books on the session thread
+     * @param bookThreads number of book building threads
+     * @param eventLog hot path event log
+     */
+    public SessionBooks(final SessionID sessionID,
+                        final WaitStrategy waitStrategy,
+                        final int bookThreads,
+                        final EventLog eventLog) {
+
+        this.sessionID = sessionID;
+        manager = new DepthManager();
+
+        final DepthUpdateHandler books;
+
+        if (waitStrategy == null) {
+            shards = null;
+            books = manager;
+        } else {
+            shards = new DepthShards(manager, bookThreads, waitStrategy);
+            books = shards;
+        }
+
+        recovery = new GapRecovery(books, manager.getSymbolRegistry(),
+                                   feedMetrics);
+        manager.setGapListener(recovery);
+        handler = recovery;
+
+        decoder = new MarketDataDecoder(handler,
+                manager.getSymbolRegistry(), feedMetrics);
+        manager.setFeedMetrics(feedMetrics);
+
+        if (eventLog.isEnabled()) {
+            manager.setEventLog(eventLog);
+        }
+
+        // dump books off the update path, only if anyone will see it
+        if (SampledDepthLogger.isEnabled()) {
+            depthDumps = new ConflatingBookListener(
+                    new SampledDepthLogger(DEPTH_DUMP_MILLIS));
+            manager.addListener(depthDumps, BookListener.DEPTH);
+        } else {
+            depthDumps = null;
+        }
+    }
+
+    /**
+     * Start the book building and dump threads.
+     */
+    public void start() {
+        if (depthDumps != null) {
+            depthDumps.start();
+        }
+        if (shards != null) {
+            shards.start();
+        }
+    }
+
+    /**
+     * Stop the threads once they have applied everything received.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+        if (shards != null) {
+            shards.stop();
+        }
+        if (depthDumps != null) {
+            depthDumps.stop();
+        }
+        // after the book threads, so nothing is appended once stopped
+        if (journal != null) {
+            journal.stop();
+        }
+        unregisterMetrics();
+    }
+
+    /**
+     * Keep update counts and times of every book too, and register
+     * them and the feed counters in JMX.
+     * @throws JMException thrown if they cannot be registered
+     */
+    public void registerMetrics() throws JMException {
+
+        final BookMetrics bookMetrics = new BookMetrics();
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName[] names = {
+            MetricsNames.of(MetricsNames.FEED, sessionID.toString()),
+            MetricsNames.of(MetricsNames.BOOKS, sessionID.toString())};
+
+        // unregistered on stop even if the second one fails
+        server.registerMBean(feedMetrics, names[0]);
+        metricsNames = new ObjectName[] {names[0]};
+        server.registerMBean(bookMetrics, names[1]);
+        metricsNames = names;
+
+        manager.addListener(bookMetrics,
+                            BookListener.TOP_OF_BOOK | BookListener.DEPTH);
+    }
+
+    /**
+     * Take the metrics out of JMX, if they were registered.
+     */
+    private void unregisterMetrics() {
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (final ObjectName name : metricsNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                LOG.warn("Could not unregister " + name, e);
+            }
+        }
+
+        metricsNames = new ObjectName[0];
+    }
+
+    /**
+     * Start journalling every entry applied to the books. Call
+     * before any market data is received.
+     * @param depthJournal journal, not yet started
+     * @throws IOException thrown if the journal cannot be created
+     */
+    public void setJournal(final DepthJournal depthJournal)
+            throws IOException {
+        depthJournal.start();
+        journal = depthJournal;
+        manager.setJournal(depthJournal);
+    }
+
+    /**
+     * Start recording how long messages take from the venue to the
+     * books. Call before any market data is received.
+     * @param recorder latency histograms of the session
+     */
+    public void setLatencyRecorder(final LatencyRecorder recorder) {
+        latency = recorder;
+        manager.setLatencyRecorder(recorder);
+    }
+
+    /**
+     * @return latency histograms of the session, null if latency
+     *         is not recorded
+     */
+    public LatencyRecorder getLatencyRecorder() {
+        return latency;
+    }
+
+    /**
+     * @return counters of the feed
+     */
+    public FeedMetrics getFeedMetrics() {
+        return feedMetrics;
+    }
+
+    /**
+     * @return session the books are built from
+     */
+    public SessionID getSessionID() {
+        return sessionID;
+    }
+
+    /**
+     * @return the depth manager
+     */
+    public DepthManager getDepthManager() {
+        return manager;
+    }
+
+    /**
+     * @return the book building threads, null if books are built
+     *         on the session thread
+     */
+    public DepthShards getDepthShards() {
+        return shards;
+    }
+
+    /**
+     * @return sequence checks of the books, which recover a book
+     *         that misses an entry
+     */
+    public GapRecovery getGapRecovery() {
+        return recovery;
+    }
+
+    /**
+     * @return where decoded entries go
+     */
+    DepthUpdateHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * @return allocation free decoder
+     */
+    MarketDataDecoder getDecoder() {
+        return decoder;
+    }
+}
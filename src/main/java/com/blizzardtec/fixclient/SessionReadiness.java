@@ -0,0 +1,171 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import quickfix.SessionID;
+
+/**
+ * Tracks which sessions are logged on and tells listeners as soon
+ * as that changes, in place of sleeping for a guessed logon time.
+ *
+ * A listener is called for every logon, so it sees each reconnect
+ * as well as the first logon. A listener added while sessions are
+ * already logged on is called for them straight away, so there is
+ * no window in which a logon can be missed or reported twice.
+ *
+ * Each change and the calls it makes are done under one delivery
+ * lock, so every listener is told of the events in the order they
+ * happened, a catch-up logon included. Listeners may send on the
+ * session, but must not wait on another thread that is reporting
+ * a logon or logoff.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class SessionReadiness {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(SessionReadiness.class);
+
+    /**
+     * Sessions currently logged on.
+     */
+    private final transient Set<SessionID> loggedOn =
+                            ConcurrentHashMap.newKeySet();
+    /**
+     * Held while the logged on sessions change and the listeners are
+     * told, so no listener sees two events out of order.
+     */
+    private final transient Object deliveryLock = new Object();
+    /**
+     * Listeners told of logons and logoffs.
+     */
+    private final transient List<LogonListener> listeners =
+                            new CopyOnWriteArrayList<LogonListener>();
+    /**
+     * Completed with the first session to log on.
+     */
+    private final transient CompletableFuture<SessionID> firstLogon =
+                            new CompletableFuture<SessionID>();
+
+    /**
+     * Add a listener, calling it at once for each session already
+     * logged on.
+     * @param listener listener
+     */
+    public void addListener(final LogonListener listener) {
+
+        synchronized (deliveryLock) {
+            listeners.add(listener);
+
+            // copied, as a listener may log a session off in the call
+            final List<SessionID> current =
+                            new ArrayList<SessionID>(loggedOn);
+
+            for (final SessionID sessionID : current) {
+                notifyListener(listener, new LogonEvent(sessionID, true));
+            }
+        }
+    }
+
+    /**
+     * Remove a listener.
+     * @param listener listener
+     */
+    public void removeListener(final LogonListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Record a logon and tell the listeners.
+     * @param sessionID session
+     */
+    public void logon(final SessionID sessionID) {
+
+        synchronized (deliveryLock) {
+            loggedOn.add(sessionID);
+            fire(new LogonEvent(sessionID, true));
+        }
+
+        firstLogon.complete(sessionID);
+    }
+
+    /**
+     * Record a logoff and tell the listeners.
+     * @param sessionID session
+     */
+    public void logoff(final SessionID sessionID) {
+
+        synchronized (deliveryLock) {
+            if (loggedOn.remove(sessionID)) {
+                fire(new LogonEvent(sessionID, false));
+            }
+        }
+    }
+
+    /**
+     * @param sessionID session
+     * @return true if the session is logged on
+     */
+    public boolean isLoggedOn(final SessionID sessionID) {
+        return loggedOn.contains(sessionID);
+    }
+
+    /**
+     * @return true if any session is logged on
+     */
+    public boolean isAnyLoggedOn() {
+        return !loggedOn.isEmpty();
+    }
+
+    /**
+     * Get a future completed when the first session logs on. It
+     * stays complete after a later logoff.
+     * @return future of the first session to log on
+     */
+    public CompletableFuture<SessionID> whenLoggedOn() {
+        return firstLogon;
+    }
+
+    /**
+     * Tell the listeners of an event. Called holding the delivery
+     * lock.
+     * @param event logon event
+     */
+    private void fire(final LogonEvent event) {
+        // the copy on write list iterates the listeners as they
+        // were when the event happened
+        for (final LogonListener listener : listeners) {
+            notifyListener(listener, event);
+        }
+    }
+
+    /**
+     * Tell one listener of an event. A failing listener does not
+     * stop the others.
+     * @param listener listener
+     * @param event logon event
+     */
+    private static void notifyListener(final LogonListener listener,
+                                       final LogonEvent event) {
+        try {
+            listener.onLogonEvent(event);
+        } catch (RuntimeException e) {
+            LOG.error("Logon listener failed", e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import quickfix.DataDictionary;
+import quickfix.DataDictionaryProvider;
+import quickfix.FixVersions;
+import quickfix.Message;
+import quickfix.MessageUtils;
+import quickfix.Session;
+import quickfix.SessionID;
+import quickfix.SessionNotFound;
+import quickfix.field.ApplVerID;
+
+/**
+ * Sends messages on one session, with the session and its data
+ * dictionary looked up once instead of on every send.
+ *
+ * send validates each message against the cached dictionary, as
+ * FixHelper always has. A message sent over and over with a few
+ * fields changed, such as a MarketDataRequestTemplate, only needs
+ * validating once, and can then go through sendValidated, which is
+ * just Session.send.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class SessionSender {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(SessionSender.class);
+
+    /**
+     * Session sent on.
+     */
+    private final transient Session session;
+    /**
+     * Application data dictionary, null if the session has none.
+     */
+    private final transient DataDictionary dictionary;
+
+    /**
+     * Constructor.
+     * @param sessionID session to send on
+     * @throws SessionNotFound thrown if the session does not exist
+     */
+    public SessionSender(final SessionID sessionID) throws SessionNotFound {
+        this(lookup(sessionID));
+    }
+
+    /**
+     * Constructor.
+     * @param session session to send on
+     */
+    SessionSender(final Session session) {
+
+        this.session = session;
+
+        final DataDictionaryProvider dictProvider =
+                                session.getDataDictionaryProvider();
+
+        if (dictProvider == null) {
+            dictionary = null;
+        } else {
+            dictionary = dictProvider.getApplicationDataDictionary(
+                                getApplVerID(session));
+        }
+    }
+
+    /**
+     * Validate a message and send it.
+     * @param message message to send
+     * @return true if the message was sent, false if it failed
+     *         validation or the session did not send it
+     */
+    public boolean send(final Message message) {
+
+        if (dictionary != null) {
+            try {
+                dictionary.validate(message, true);
+            } catch (Exception e) {
+                LOG.error("Outgoing message failed validation: "
+                        + e.getMessage());
+                return false;
+            }
+        }
+
+        return session.send(message);
+    }
+
+    /**
+     * Send a message without validating it. Only for messages of a
+     * shape that has already been validated.
+     * @param message message to send
+     * @return true if the session sent it
+     */
+    public boolean sendValidated(final Message message) {
+        return session.send(message);
+    }
+
+    /**
+     * Look up a session.
+     * @param sessionID id
+     * @return session
+     * @throws SessionNotFound thrown if the session does not exist
+     */
+    private static Session lookup(final SessionID sessionID)
+            throws SessionNotFound {
+
+        final Session session = Session.lookupSession(sessionID);
+
+        if (session == null) {
+            throw new SessionNotFound(sessionID.toString());
+        }
+
+        return session;
+    }
+
+    /**
+     * @return the session sent on
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Get app version id.
+     * @param session session
+     * @return id
+     */
+    private static ApplVerID getApplVerID(final Session session) {
+
+        ApplVerID verId;
+
+        final String beginString = session.getSessionID().getBeginString();
+
+        if (FixVersions.BEGINSTRING_FIXT11.equals(beginString)) {
+            verId = new ApplVerID(ApplVerID.FIX50);
+        } else {
+            verId = MessageUtils.toApplVerID(beginString);
+        }
+
+        return verId;
+    }
+}
@@ -0,0 +1,603 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.depth.SnapshotRequester;
+
+import quickfix.Message;
+import quickfix.SessionID;
+
+/**
+ * Subscribes to market data for many symbols on one session.
+ *
+ * Symbols are packed into MarketDataRequests of up to a set number
+ * of NoRelatedSym entries, asking for bids and offers together,
+ * each request with its own MDReqID. Symbols with different market
+ * depths go in different requests. Requests are sent by a pacing
+ * thread at no more than a set rate, to stay inside venue limits,
+ * and never on the session thread.
+ *
+ * The state of every symbol is kept, and each request keeps its
+ * MarketDataRequestTemplate. On logoff every request not rejected
+ * goes back on the queue as it is, so on the next logon it is sent
+ * again with only a new MDReqID patched in, skipping the rebuild
+ * and the validation. Cancels reuse the same message.
+ *
+ * A book found stale asks for a snapshot of its symbol alone. The
+ * snapshot only request goes to the front of the queue, as the
+ * book is already in use, and only once until it is sent. On
+ * logoff queued snapshot requests are dropped, the subscriptions
+ * sent again on logon bring fresh snapshots of every book.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class SubscriptionManager
+        implements LogonListener, SnapshotRequester {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(SubscriptionManager.class);
+
+    /**
+     * Default number of symbols in one request.
+     */
+    public static final int DEFAULT_SYMBOLS_PER_REQUEST = 100;
+    /**
+     * Default number of requests sent per second.
+     */
+    public static final int DEFAULT_REQUESTS_PER_SECOND = 10;
+
+    /**
+     * Longest wait for the pacing thread to stop.
+     */
+    private static final long STOP_SECONDS = 5L;
+    /**
+     * Radix of the MDReqID prefix.
+     */
+    private static final int ID_RADIX = 36;
+    /**
+     * Most sent snapshot requests remembered, to match rejects.
+     */
+    private static final int MAX_SNAPSHOTS_SENT = 1000;
+
+    /**
+     * Where requests are sent.
+     */
+    private final transient MessageSender sender;
+    /**
+     * Session subscribed on.
+     */
+    private final transient SessionID sessionID;
+    /**
+     * Depth manager of the session, for market depths and symbol IDs.
+     */
+    private final transient DepthManager manager;
+    /**
+     * Most symbols in one request.
+     */
+    private final transient int symbolsPerRequest;
+    /**
+     * Time between requests.
+     */
+    private final transient long intervalNanos;
+    /**
+     * Start of every MDReqID, unique to this run.
+     */
+    private final transient String idPrefix;
+    /**
+     * State by symbol, in the order subscribed.
+     */
+    private final transient Map<String, SubscriptionState> states =
+                    new LinkedHashMap<String, SubscriptionState>();
+    /**
+     * Requests waiting to be sent.
+     */
+    private final transient Deque<Request> queue = new ArrayDeque<Request>();
+    /**
+     * Requests sent on the current session by MDReqID.
+     */
+    private final transient Map<String, Request> sent =
+                    new LinkedHashMap<String, Request>();
+    /**
+     * Symbols with a snapshot request queued.
+     */
+    private final transient Set<String> snapshotsQueued =
+                    new HashSet<String>();
+    /**
+     * Symbols of the latest snapshot requests sent by MDReqID.
+     */
+    private final transient Map<String, String> snapshotsSent =
+        new LinkedHashMap<String, String>() {
+            /**
+             * Serial version.
+             */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, String> eldest) {
+                return size() > MAX_SNAPSHOTS_SENT;
+            }
+        };
+    /**
+     * True while the session is logged on.
+     */
+    private transient boolean loggedOn;
+    /**
+     * Number of the next MDReqID.
+     */
+    private transient long nextId = 1;
+    /**
+     * Pacing thread, null until started.
+     */
+    private transient ScheduledExecutorService pacer;
+
+    /**
+     * One MarketDataRequest.
+     */
+    private static final class Request {
+        /**
+         * Symbols in the request.
+         */
+        private final List<String> symbols = new ArrayList<String>();
+        /**
+         * Market depth of every symbol.
+         */
+        private final int marketDepth;
+        /**
+         * True for a snapshot without updates.
+         */
+        private final boolean snapshot;
+        /**
+         * Request ID, set when sent.
+         */
+        private String mdReqId;
+        /**
+         * Message, built on first send.
+         */
+        private MarketDataRequestTemplate template;
+
+        /**
+         * Constructor.
+         * @param marketDepth market depth of every symbol
+         * @param snapshot true for a snapshot without updates
+         */
+        Request(final int marketDepth, final boolean snapshot) {
+            this.marketDepth = marketDepth;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param sender where requests are sent
+     * @param sessionID session subscribed on
+     * @param manager depth manager of the session, for market depths
+     *        and symbol IDs
+     * @param symbolsPerRequest most symbols in one request
+     * @param requestsPerSecond most requests sent per second
+     */
+    public SubscriptionManager(final MessageSender sender,
+                               final SessionID sessionID,
+                               final DepthManager manager,
+                               final int symbolsPerRequest,
+                               final int requestsPerSecond) {
+
+        if (symbolsPerRequest < 1 || requestsPerSecond < 1) {
+            throw new IllegalArgumentException(
+                    "Symbols per request and requests per second"
+                    + " must be positive");
+        }
+
+        this.sender = sender;
+        this.sessionID = sessionID;
+        this.manager = manager;
+        this.symbolsPerRequest = symbolsPerRequest;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        this.idPrefix =
+            Long.toString(System.currentTimeMillis(), ID_RADIX) + "-";
+    }
+
+    /**
+     * Start the pacing thread.
+     */
+    public synchronized void start() {
+
+        pacer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread =
+                            new Thread(runnable, "subscriptions");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        pacer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sendNext();
+            }
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop the pacing thread, waiting for a send in progress to
+     * finish. Queued requests are not sent.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+
+        final ScheduledExecutorService current;
+
+        synchronized (this) {
+            current = pacer;
+            pacer = null;
+        }
+
+        if (current != null) {
+            current.shutdown();
+            current.awaitTermination(STOP_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Subscribe to symbols. Symbols already subscribed are left
+     * alone, except rejected ones which are tried again.
+     * @param symbols instrument symbols
+     */
+    public synchronized void subscribe(final Collection<String> symbols) {
+
+        for (final String symbol : symbols) {
+
+            final SubscriptionState state = states.get(symbol);
+
+            if (state == null || state == SubscriptionState.REJECTED) {
+                // give the symbol its ID before any market data arrives
+                manager.getSymbolRegistry().register(symbol);
+                states.put(symbol, SubscriptionState.PENDING);
+            }
+        }
+
+        if (loggedOn) {
+            queuePending();
+        }
+    }
+
+    /**
+     * Cancel every request sent on the current session and forget
+     * every symbol. The cancels are sent at once, not paced.
+     */
+    public void unsubscribeAll() {
+
+        final List<Message> cancels = new ArrayList<Message>();
+        final boolean send;
+
+        synchronized (this) {
+            send = loggedOn;
+
+            for (final Request request : sent.values()) {
+                cancels.add(request.template.cancel());
+            }
+
+            sent.clear();
+            queue.clear();
+            states.clear();
+            snapshotsQueued.clear();
+            snapshotsSent.clear();
+        }
+
+        if (send) {
+            LOG.info("Cancelling " + cancels.size()
+                    + " market data requests on " + sessionID);
+
+            for (final Message cancel : cancels) {
+                sender.sendValidated(sessionID, cancel);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onLogonEvent(final LogonEvent event) {
+
+        if (!sessionID.equals(event.getSessionID())) {
+            return;
+        }
+
+        loggedOn = event.isLoggedOn();
+
+        if (loggedOn) {
+            queuePending();
+        } else {
+            dropSnapshots();
+
+            // sent requests go back ahead of the unsent ones, as they
+            // are, to be sent again on logon
+            final List<Request> requeued =
+                        new ArrayList<Request>(sent.values());
+            sent.clear();
+
+            for (int i = requeued.size() - 1; i >= 0; i--) {
+                final Request request = requeued.get(i);
+                queue.addFirst(request);
+
+                for (final String symbol : request.symbols) {
+                    states.put(symbol, SubscriptionState.QUEUED);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue a snapshot request for one symbol, ahead of the other
+     * requests. Ignored while logged off, or if one is already
+     * queued for the symbol.
+     * @param symbol instrument symbol
+     */
+    @Override
+    public synchronized void requestSnapshot(final String symbol) {
+
+        if (!loggedOn || !snapshotsQueued.add(symbol)) {
+            return;
+        }
+
+        final Request request =
+                    new Request(manager.getMarketDepth(symbol), true);
+
+        request.symbols.add(symbol);
+        queue.addFirst(request);
+    }
+
+    /**
+     * Drop the queued and sent snapshot requests.
+     */
+    private void dropSnapshots() {
+
+        final Iterator<Request> queued = queue.iterator();
+
+        while (queued.hasNext()) {
+            if (queued.next().snapshot) {
+                queued.remove();
+            }
+        }
+
+        snapshotsQueued.clear();
+        snapshotsSent.clear();
+    }
+
+    /**
+     * A request has been rejected, by a MarketDataRequestReject.
+     * Every symbol in it is marked rejected.
+     * @param mdReqId MDReqID of the request
+     * @param reason reject text, may be null
+     */
+    public synchronized void rejected(final String mdReqId,
+                                      final String reason) {
+
+        final Request request = sent.remove(mdReqId);
+
+        if (request == null) {
+            final String symbol = snapshotsSent.remove(mdReqId);
+
+            if (symbol == null) {
+                LOG.warn("Reject for unknown MDReqID " + mdReqId);
+            } else {
+                LOG.warn("Snapshot request " + mdReqId + " for " + symbol
+                        + " rejected: " + reason);
+            }
+            return;
+        }
+
+        for (final String symbol : request.symbols) {
+            states.put(symbol, SubscriptionState.REJECTED);
+        }
+
+        LOG.warn("MarketDataRequest " + mdReqId + " for "
+                + request.symbols.size() + " symbols rejected: " + reason);
+    }
+
+    /**
+     * Pack every pending symbol into queued requests.
+     */
+    private void queuePending() {
+
+        // one run of requests per market depth
+        final Map<Integer, Request> open = new TreeMap<Integer, Request>();
+
+        for (final Map.Entry<String, SubscriptionState> entry
+                : states.entrySet()) {
+
+            if (entry.getValue() != SubscriptionState.PENDING
+                    && entry.getValue() != SubscriptionState.FAILED) {
+                continue;
+            }
+
+            final String symbol = entry.getKey();
+            final int depth = manager.getMarketDepth(symbol);
+
+            Request request = open.get(depth);
+
+            if (request == null) {
+                request = new Request(depth, false);
+                open.put(depth, request);
+                queue.add(request);
+            }
+
+            request.symbols.add(symbol);
+            entry.setValue(SubscriptionState.QUEUED);
+
+            if (request.symbols.size() == symbolsPerRequest) {
+                open.remove(depth);
+            }
+        }
+    }
+
+    /**
+     * Send the next queued request, if logged on. Called by the
+     * pacing thread.
+     */
+    void sendNext() {
+
+        final Request request;
+        final Message message;
+        final boolean validated;
+
+        synchronized (this) {
+
+            if (!loggedOn || queue.isEmpty()) {
+                return;
+            }
+
+            request = queue.poll();
+
+            request.mdReqId = idPrefix + nextId++;
+
+            if (request.snapshot) {
+                final String symbol = request.symbols.get(0);
+
+                // sent once, so no need to keep the template
+                snapshotsQueued.remove(symbol);
+                snapshotsSent.put(request.mdReqId, symbol);
+                message = new MarketDataRequestTemplate(request.symbols,
+                        request.marketDepth).snapshot(request.mdReqId);
+                validated = false;
+            } else {
+                sent.put(request.mdReqId, request);
+
+                for (final String symbol : request.symbols) {
+                    states.put(symbol, SubscriptionState.REQUESTED);
+                }
+
+                if (request.template == null) {
+                    request.template = new MarketDataRequestTemplate(
+                            request.symbols, request.marketDepth);
+                }
+
+                message = request.template.subscribe(request.mdReqId);
+                validated = request.template.isValidated();
+            }
+        }
+
+        // send outside the lock, the session thread may want it
+        final boolean delivered;
+
+        if (validated) {
+            delivered = sender.sendValidated(sessionID, message);
+        } else {
+            delivered = sender.sendMessage(sessionID, message);
+        }
+
+        if (delivered) {
+            sendSucceeded(request);
+        } else {
+            sendFailed(request);
+        }
+    }
+
+    /**
+     * A request has been sent. Its template has now been through
+     * validation, so later sends of it can skip it.
+     * @param request request sent
+     */
+    private synchronized void sendSucceeded(final Request request) {
+        if (request.template != null) {
+            request.template.setValidated();
+        }
+    }
+
+    /**
+     * A request could not be sent. Its symbols are marked failed, to
+     * be requested again on the next logon, unless a logoff has
+     * already put the request back in the queue.
+     * @param request request not sent
+     */
+    private synchronized void sendFailed(final Request request) {
+
+        if (request.snapshot) {
+            snapshotsSent.remove(request.mdReqId);
+            LOG.warn("Snapshot request " + request.mdReqId
+                    + " not sent on " + sessionID);
+            return;
+        }
+
+        if (sent.remove(request.mdReqId) == null) {
+            return;
+        }
+
+        for (final String symbol : request.symbols) {
+            states.put(symbol, SubscriptionState.FAILED);
+        }
+
+        LOG.warn("MarketDataRequest " + request.mdReqId + " for "
+                + request.symbols.size() + " symbols not sent on "
+                + sessionID);
+    }
+
+    /**
+     * @param symbol instrument symbol
+     * @return state, null if the symbol is not subscribed
+     */
+    public synchronized SubscriptionState getState(final String symbol) {
+        return states.get(symbol);
+    }
+
+    /**
+     * @return number of symbols in each state
+     */
+    public synchronized Map<SubscriptionState, Integer> getStateCounts() {
+
+        final Map<SubscriptionState, Integer> counts =
+                    new HashMap<SubscriptionState, Integer>();
+
+        for (final SubscriptionState state : states.values()) {
+            final Integer count = counts.get(state);
+            if (count == null) {
+                counts.put(state, 1);
+            } else {
+                counts.put(state, count + 1);
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return number of requests waiting to be sent
+     */
+    public synchronized int getQueuedRequests() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of requests sent on the current session
+     */
+    public synchronized int getSentRequests() {
+        return sent.size();
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+/**
+ * Where the market data subscription of a symbol has got to.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public enum SubscriptionState {
+
+    /**
+     * Wanted, waiting for a session to log on.
+     */
+    PENDING,
+    /**
+     * In a request waiting to be sent.
+     */
+    QUEUED,
+    /**
+     * Request sent on the current session.
+     */
+    REQUESTED,
+    /**
+     * Request rejected by the venue, not sent again until the
+     * symbol is subscribed again.
+     */
+    REJECTED,
+    /**
+     * Request could not be sent, it failed validation or the session
+     * did not take it. Requested again on the next logon.
+     */
+    FAILED
+}
@@ -0,0 +1,35 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+/**
+ * Told when an instrument book changes, once per FIX message
+ * however many entries of the message touched the book.
+ *
+ * Listeners are called on the thread that applies the book's
+ * updates and must be quick; wrap a slow listener in a
+ * ConflatingBookListener.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public interface BookListener {
+
+    /**
+     * Change flag, the best bid or offer changed.
+     */
+    int TOP_OF_BOOK = 1;
+    /**
+     * Change flag, any level changed.
+     */
+    int DEPTH = 2;
+
+    /**
+     * A book has changed. Read it with snapshot or copyDepth, which
+     * give a consistent copy from any thread.
+     * @param book book that changed
+     * @param changes change flags, TOP_OF_BOOK and or DEPTH
+     */
+    void onBookChange(InstrumentDepth book, int changes);
+}
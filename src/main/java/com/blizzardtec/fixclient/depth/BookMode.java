@@ -0,0 +1,23 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+/**
+ * How incremental updates locate the level they apply to.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public enum BookMode {
+
+    /**
+     * Levels are addressed by MDEntryPositionNo.
+     */
+    POSITION,
+    /**
+     * Levels are addressed by MDEntryPx and kept in price order,
+     * best price first. MDEntryPositionNo is ignored.
+     */
+    PRICE
+}
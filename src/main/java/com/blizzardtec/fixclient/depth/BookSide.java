@@ -0,0 +1,387 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import java.util.Arrays;
+
+/**
+ * One side (bid or offer) of an instrument book held as parallel
+ * primitive arrays, one slot per depth level.
+ *
+ * Inserts and deletes shift the arrays with System.arraycopy, so
+ * no objects are created or moved when the book changes. Only the
+ * levels in use are shifted, so deep books with few levels filled
+ * stay cheap. A full depth side grows its arrays as levels arrive,
+ * up to a maximum, so a bad position number cannot make it allocate
+ * without bound.
+ *
+ * @author Barnaby Golden
+ *
+ */
+final class BookSide {
+
+    /**
+     * Flag set when a level holds a price.
+     */
+    static final byte PRESENT = 1;
+    /**
+     * Initial capacity of a full depth side.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * True if the side keeps every level it is sent.
+     */
+    private final transient boolean fullDepth;
+    /**
+     * Most levels the side holds, beyond it levels are dropped.
+     */
+    private final transient int maxLevels;
+    /**
+     * Price at each level as a scaled long.
+     */
+    private transient long[] prices;
+    /**
+     * Order size at each level.
+     */
+    private transient int[] sizes;
+    /**
+     * Flags for each level.
+     */
+    private transient byte[] flags;
+    /**
+     * Number of levels in use, one past the deepest level set.
+     */
+    private transient int count;
+
+    /**
+     * Constructor.
+     * @param levels number of depth levels to hold,
+     *        InstrumentDepth.FULL_DEPTH for an unbounded side
+     */
+    BookSide(final int levels) {
+        this(levels, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     * @param levels number of depth levels to hold,
+     *        InstrumentDepth.FULL_DEPTH for a side that grows
+     * @param maxFullDepth most levels a full depth side grows to
+     */
+    BookSide(final int levels, final int maxFullDepth) {
+
+        fullDepth = levels == InstrumentDepth.FULL_DEPTH;
+
+        int capacity = levels;
+
+        if (fullDepth) {
+            capacity = Math.min(INITIAL_CAPACITY, maxFullDepth);
+            maxLevels = maxFullDepth;
+        } else {
+            maxLevels = levels;
+        }
+
+        prices = new long[capacity];
+        sizes = new int[capacity];
+        flags = new byte[capacity];
+    }
+
+    /**
+     * Insert a level, moving lower levels down. A fixed depth side
+     * drops its bottom level off the book when full.
+     * @param index zero based level index
+     * @param price price
+     * @param size order size
+     */
+    void insert(final int index, final long price, final int size) {
+
+        if (index < count) {
+            // a full depth side at its maximum drops its bottom level
+            if (fullDepth && count < maxLevels) {
+                ensureCapacity(count + 1);
+            }
+
+            final int moved = Math.min(count, prices.length - 1) - index;
+
+            if (moved > 0) {
+                System.arraycopy(prices, index, prices, index + 1, moved);
+                System.arraycopy(sizes, index, sizes, index + 1, moved);
+                System.arraycopy(flags, index, flags, index + 1, moved);
+            }
+
+            count = Math.min(count + 1, prices.length);
+        }
+
+        update(index, price, size);
+    }
+
+    /**
+     * Overwrite a level.
+     * @param index zero based level index
+     * @param price price
+     * @param size order size
+     */
+    void update(final int index, final long price, final int size) {
+
+        if (fullDepth) {
+            ensureCapacity(index + 1);
+        }
+
+        prices[index] = price;
+        sizes[index] = size;
+        flags[index] = PRESENT;
+
+        if (index >= count) {
+            count = index + 1;
+        }
+    }
+
+    /**
+     * Delete a level, moving lower levels up and clearing the bottom.
+     * @param index zero based level index
+     */
+    void delete(final int index) {
+
+        if (index >= count) {
+            return;
+        }
+
+        final int last = count - 1;
+        final int moved = last - index;
+
+        if (moved > 0) {
+            System.arraycopy(prices, index + 1, prices, index, moved);
+            System.arraycopy(sizes, index + 1, sizes, index, moved);
+            System.arraycopy(flags, index + 1, flags, index, moved);
+        }
+
+        prices[last] = 0;
+        sizes[last] = 0;
+        flags[last] = 0;
+        count = last;
+    }
+
+    /**
+     * Clear every level in use.
+     */
+    void clear() {
+
+        Arrays.fill(prices, 0, count, 0L);
+        Arrays.fill(sizes, 0, count, 0);
+        Arrays.fill(flags, 0, count, (byte) 0);
+        count = 0;
+    }
+
+    /**
+     * Copy the levels in use from another side, which may be
+     * changing under the copy. The caller detects a torn copy
+     * (see InstrumentDepth), this method only has to stay in bounds.
+     * @param source side to copy from
+     */
+    void copyFrom(final BookSide source) {
+
+        final long[] sourcePrices = source.prices;
+        final int[] sourceSizes = source.sizes;
+        final byte[] sourceFlags = source.flags;
+
+        final int levels = Math.min(source.count, Math.min(
+            sourcePrices.length,
+            Math.min(sourceSizes.length, sourceFlags.length)));
+
+        ensureCapacity(levels);
+
+        System.arraycopy(sourcePrices, 0, prices, 0, levels);
+        System.arraycopy(sourceSizes, 0, sizes, 0, levels);
+        System.arraycopy(sourceFlags, 0, flags, 0, levels);
+
+        if (count > levels) {
+            Arrays.fill(flags, levels, count, (byte) 0);
+        }
+
+        count = levels;
+    }
+
+    /**
+     * Copy levels out to price depth objects, reusing any already in
+     * the array. Like copyFrom it may run while the side changes.
+     * @param depths array to copy into, empty levels are set to null
+     * @param symbol instrument symbol
+     * @param type order type (BID/OFFER)
+     * @param priceScale price scale
+     * @return number of levels copied
+     */
+    int copyTo(final PriceDepth[] depths, final String symbol,
+               final char type, final int priceScale) {
+
+        final long[] sourcePrices = prices;
+        final int[] sourceSizes = sizes;
+        final byte[] sourceFlags = flags;
+
+        final int inUse = Math.min(count, Math.min(sourcePrices.length,
+            Math.min(sourceSizes.length, sourceFlags.length)));
+        final int levels = Math.min(depths.length, getLevels());
+
+        for (int i = 0; i < levels; i++) {
+            if (i < inUse && (sourceFlags[i] & PRESENT) != 0) {
+                if (depths[i] == null) {
+                    depths[i] = new PriceDepth();
+                }
+                final PriceDepth pDepth = depths[i];
+                pDepth.setSymbol(symbol);
+                pDepth.setType(type);
+                pDepth.setLevel(i + 1);
+                pDepth.setPriceScale(priceScale);
+                pDepth.setPrice(sourcePrices[i]);
+                pDepth.setOrderSize(sourceSizes[i]);
+            } else {
+                depths[i] = null;
+            }
+        }
+
+        return levels;
+    }
+
+    /**
+     * Grow the arrays of a full depth side.
+     * @param capacity minimum number of levels required
+     */
+    private void ensureCapacity(final int capacity) {
+
+        if (fullDepth && capacity > prices.length) {
+            final int newCapacity = (int) Math.min(maxLevels,
+                Math.max(capacity, prices.length * 2L));
+
+            prices = Arrays.copyOf(prices, newCapacity);
+            sizes = Arrays.copyOf(sizes, newCapacity);
+            flags = Arrays.copyOf(flags, newCapacity);
+        }
+    }
+
+    /**
+     * @param index zero based level index
+     * @return true if the level holds a price
+     */
+    boolean isPresent(final int index) {
+        return index < count && (flags[index] & PRESENT) != 0;
+    }
+
+    /**
+     * @param index zero based level index
+     * @return price at the level as a scaled long
+     */
+    long getPrice(final int index) {
+        return prices[index];
+    }
+
+    /**
+     * Find the level holding a price.
+     * @param price price as a scaled long
+     * @return zero based level index, -1 if not in the book
+     */
+    int find(final long price) {
+
+        for (int i = 0; i < count; i++) {
+            if (prices[i] == price && (flags[i] & PRESENT) != 0) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Binary search a price ordered side for a price.
+     * @param price price as a scaled long
+     * @param descending true if better prices are higher (bids)
+     * @return zero based level index if found, otherwise
+     *         (-(insertion index) - 1) as for Arrays.binarySearch
+     */
+    int search(final long price, final boolean descending) {
+
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midPrice = prices[mid];
+
+            if (midPrice == price) {
+                return mid;
+            }
+
+            if ((midPrice < price) == descending) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * Total order size over the top levels.
+     * @param levels number of levels to add up
+     * @return total order size
+     */
+    long totalSize(final int levels) {
+
+        final int last = Math.min(levels, count);
+        long total = 0;
+
+        for (int i = 0; i < last; i++) {
+            total += sizes[i];
+        }
+
+        return total;
+    }
+
+    /**
+     * @param index zero based level index
+     * @return order size at the level
+     */
+    int getSize(final int index) {
+        return sizes[index];
+    }
+
+    /**
+     * Can a level be held by this side.
+     * @param index zero based level index
+     * @return true if the index is inside the depth of the side
+     */
+    boolean inRange(final int index) {
+        return index >= 0 && index < maxLevels;
+    }
+
+    /**
+     * @return true if the side keeps every level it is sent
+     */
+    boolean isFullDepth() {
+        return fullDepth;
+    }
+
+    /**
+     * @return number of levels in use
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Number of levels a reader should look at: the fixed depth,
+     * or the levels in use for a full depth side.
+     * @return number of depth levels
+     */
+    int getLevels() {
+
+        int levels = prices.length;
+
+        if (fullDepth) {
+            levels = count;
+        }
+
+        return levels;
+    }
+}
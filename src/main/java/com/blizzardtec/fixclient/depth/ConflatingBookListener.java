@@ -0,0 +1,250 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands book changes to a slow listener on its own thread.
+ *
+ * Changes are conflated per symbol: while a symbol is waiting to
+ * be delivered further changes only add to its change flags, and
+ * the listener reads the book as it is when it gets to it. The
+ * backlog is never more than one entry per symbol, whatever the
+ * update rate.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class ConflatingBookListener implements BookListener {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(ConflatingBookListener.class);
+
+    /**
+     * Initial number of symbols held.
+     */
+    private static final int INITIAL_SYMBOLS = 64;
+
+    /**
+     * Listener changes are delivered to.
+     */
+    private final transient BookListener delegate;
+    /**
+     * Guards the pending state.
+     */
+    private final transient Object lock = new Object();
+    /**
+     * Pending change flags by symbol ID, 0 if not pending.
+     */
+    private transient int[] pending = new int[INITIAL_SYMBOLS];
+    /**
+     * Books by symbol ID.
+     */
+    private transient InstrumentDepth[] books =
+                            new InstrumentDepth[INITIAL_SYMBOLS];
+    /**
+     * Symbol IDs waiting for delivery, in the order they changed.
+     */
+    private transient int[] queue = new int[INITIAL_SYMBOLS];
+    /**
+     * Number of IDs in the queue.
+     */
+    private transient int queued;
+    /**
+     * Changes folded into one already pending.
+     */
+    private transient long conflatedCount;
+    /**
+     * Delivery thread, null until started.
+     */
+    private transient Thread deliverer;
+    /**
+     * Cleared to stop the delivery thread.
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructor.
+     * @param delegate listener changes are delivered to
+     */
+    public ConflatingBookListener(final BookListener delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Start the delivery thread.
+     */
+    public void start() {
+
+        running = true;
+
+        deliverer = new Thread("book-listener") {
+            @Override
+            public void run() {
+                deliver();
+            }
+        };
+
+        deliverer.setDaemon(true);
+        deliverer.start();
+    }
+
+    /**
+     * Stop the delivery thread once it has delivered what is
+     * pending.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+
+        if (deliverer != null) {
+            deliverer.join();
+            deliverer = null;
+        }
+    }
+
+    /**
+     * Record a change. Called on the book's writer thread.
+     * @param book book that changed
+     * @param changes change flags
+     */
+    @Override
+    public void onBookChange(final InstrumentDepth book, final int changes) {
+
+        final int id = book.getSymbolId();
+
+        if (id < 0) {
+            return;
+        }
+
+        synchronized (lock) {
+
+            ensureCapacity(id);
+
+            if (pending[id] == 0) {
+                books[id] = book;
+                queue[queued++] = id;
+
+                if (queued == 1) {
+                    lock.notifyAll();
+                }
+            } else {
+                conflatedCount++;
+            }
+
+            pending[id] |= changes;
+        }
+    }
+
+    /**
+     * Grow the tables to hold a symbol ID.
+     * @param id symbol ID
+     */
+    private void ensureCapacity(final int id) {
+
+        if (id >= pending.length) {
+
+            int length = pending.length * 2;
+
+            while (length <= id) {
+                length = length * 2;
+            }
+
+            final int[] newPending = new int[length];
+            final InstrumentDepth[] newBooks = new InstrumentDepth[length];
+            final int[] newQueue = new int[length];
+
+            System.arraycopy(pending, 0, newPending, 0, pending.length);
+            System.arraycopy(books, 0, newBooks, 0, books.length);
+            System.arraycopy(queue, 0, newQueue, 0, queued);
+
+            pending = newPending;
+            books = newBooks;
+            queue = newQueue;
+        }
+    }
+
+    /**
+     * Delivery loop. Takes everything pending under the lock, then
+     * calls the listener without holding it.
+     */
+    private void deliver() {
+
+        int[] flags = new int[INITIAL_SYMBOLS];
+        InstrumentDepth[] changed = new InstrumentDepth[INITIAL_SYMBOLS];
+
+        while (true) {
+
+            int count;
+
+            synchronized (lock) {
+
+                while (queued == 0 && running) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                if (queued == 0) {
+                    return;
+                }
+
+                if (flags.length < queued) {
+                    flags = new int[queue.length];
+                    changed = new InstrumentDepth[queue.length];
+                }
+
+                count = queued;
+
+                for (int i = 0; i < count; i++) {
+                    final int id = queue[i];
+                    flags[i] = pending[id];
+                    changed[i] = books[id];
+                    pending[id] = 0;
+                }
+
+                queued = 0;
+            }
+
+            for (int i = 0; i < count; i++) {
+                try {
+                    delegate.onBookChange(changed[i], flags[i]);
+                } catch (RuntimeException e) {
+                    LOG.error("Book listener failed for "
+                            + changed[i].getSymbol(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of symbols waiting for delivery
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    /**
+     * @return number of changes folded into one already pending
+     */
+    public long getConflatedCount() {
+        synchronized (lock) {
+            return conflatedCount;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import java.lang.invoke.VarHandle;
+
+import com.blizzardtec.fixclient.OrderType;
+
+/**
+ * The books of one instrument at every venue merged by price.
+ *
+ * Venue changes are applied incrementally by the venue book
+ * threads, one at a time under the book lock, touching only the
+ * prices whose size changed. The best bid and offer are published
+ * under a version, as in InstrumentDepth, so copyTop reads them
+ * from any thread without locking and without blocking the writers.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class ConsolidatedBook {
+
+    /**
+     * Instrument symbol.
+     */
+    private final transient String symbol;
+    /**
+     * Number of decimal places prices are held to.
+     */
+    private final transient int priceScale;
+    /**
+     * Merged bids.
+     */
+    private final transient ConsolidatedSide bids =
+                                    new ConsolidatedSide(true);
+    /**
+     * Merged offers.
+     */
+    private final transient ConsolidatedSide offers =
+                                    new ConsolidatedSide(false);
+
+    /**
+     * Published best bid price.
+     */
+    private transient long bidPrice;
+    /**
+     * Published best bid size.
+     */
+    private transient long bidSize;
+    /**
+     * Published venues at the best bid.
+     */
+    private transient int bidVenues;
+    /**
+     * Published best offer price.
+     */
+    private transient long offerPrice;
+    /**
+     * Published best offer size.
+     */
+    private transient long offerSize;
+    /**
+     * Published venues at the best offer.
+     */
+    private transient int offerVenues;
+    /**
+     * Top of book version, odd while the top is being written.
+     */
+    private volatile long version;
+
+    /**
+     * Constructor.
+     * @param symbol instrument symbol
+     * @param priceScale number of decimal places prices are held to
+     */
+    public ConsolidatedBook(final String symbol, final int priceScale) {
+        this.symbol = symbol;
+        this.priceScale = priceScale;
+    }
+
+    /**
+     * Apply the current levels of a venue book. Called on the venue
+     * book's writer thread.
+     * @param venue venue index
+     * @param book venue book
+     * @return true if the consolidated top of book changed
+     */
+    synchronized boolean apply(final int venue,
+                               final InstrumentDepth book) {
+
+        boolean topChanged = bids.apply(venue, book, OrderType.BID,
+                                        priceScale);
+        topChanged |= offers.apply(venue, book, OrderType.OFFER,
+                                   priceScale);
+
+        if (topChanged) {
+            publishTop();
+        }
+
+        return topChanged;
+    }
+
+    /**
+     * Remove every level of a venue.
+     * @param venue venue index
+     * @return true if the consolidated top of book changed
+     */
+    synchronized boolean clear(final int venue) {
+
+        boolean topChanged = bids.clear(venue);
+        topChanged |= offers.clear(venue);
+
+        if (topChanged) {
+            publishTop();
+        }
+
+        return topChanged;
+    }
+
+    /**
+     * Publish the best bid and offer under a new version.
+     */
+    private void publishTop() {
+
+        version = version + 1;
+        VarHandle.storeStoreFence();
+
+        bidPrice = bids.getPrice(0);
+        bidSize = bids.getSize(0);
+        bidVenues = bids.getVenues(0);
+        offerPrice = offers.getPrice(0);
+        offerSize = offers.getSize(0);
+        offerVenues = offers.getVenues(0);
+
+        version = version + 1;
+    }
+
+    /**
+     * Take a consistent copy of the best bid and offer. Safe to call
+     * from any thread, it never blocks the writers.
+     * @param top top of book to copy into
+     */
+    public void copyTop(final TopOfBook top) {
+
+        long stable;
+
+        do {
+            stable = version;
+
+            while ((stable & 1L) != 0) {
+                Thread.onSpinWait();
+                stable = version;
+            }
+
+            top.setBid(bidPrice, bidSize, bidVenues);
+            top.setOffer(offerPrice, offerSize, offerVenues);
+
+            VarHandle.loadLoadFence();
+        } while (version != stable);
+
+        top.setScale(priceScale, stable);
+    }
+
+    /**
+     * Copy the merged levels of one side into a caller owned array,
+     * reusing any price depth objects already in it. Levels past
+     * the end of the side are set to null. Order sizes above
+     * Integer.MAX_VALUE are capped.
+     * @param type order type (BID/OFFER)
+     * @param depths array to copy into
+     * @return number of levels copied
+     */
+    public synchronized int copyDepth(final char type,
+                                      final PriceDepth[] depths) {
+
+        ConsolidatedSide side = offers;
+
+        if (type == OrderType.BID) {
+            side = bids;
+        }
+
+        final int levels = Math.min(side.getCount(), depths.length);
+
+        for (int i = 0; i < depths.length; i++) {
+
+            if (i >= levels) {
+                depths[i] = null;
+                continue;
+            }
+
+            if (depths[i] == null) {
+                depths[i] = new PriceDepth();
+            }
+
+            final PriceDepth depth = depths[i];
+            depth.setSymbol(symbol);
+            depth.setType(type);
+            depth.setLevel(i + 1);
+            depth.setPriceScale(priceScale);
+            depth.setPrice(side.getPrice(i));
+            depth.setOrderSize(
+                (int) Math.min(side.getSize(i), Integer.MAX_VALUE));
+        }
+
+        return levels;
+    }
+
+    /**
+     * @param type order type (BID/OFFER)
+     * @return number of merged levels on the side
+     */
+    public synchronized int getLevels(final char type) {
+
+        int levels = offers.getCount();
+
+        if (type == OrderType.BID) {
+            levels = bids.getCount();
+        }
+
+        return levels;
+    }
+
+    /**
+     * @return instrument symbol
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return number of decimal places prices are held to
+     */
+    public int getPriceScale() {
+        return priceScale;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consolidated books of every instrument over several venues, each
+ * venue being the depth manager of one session.
+ *
+ * A venue is added with addVenue, which listens to its depth
+ * manager. After every FIX message that changes a venue book the
+ * consolidated book of the symbol is brought up to date with just
+ * the prices that changed, on the venue's book thread. Books are
+ * matched across venues by symbol.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class ConsolidatedDepth {
+
+    /**
+     * Consolidated books by symbol.
+     */
+    private final transient ConcurrentMap<String, ConsolidatedBook> books =
+                    new ConcurrentHashMap<String, ConsolidatedBook>();
+    /**
+     * Number of decimal places consolidated prices are held to.
+     */
+    private final transient int priceScale;
+    /**
+     * Number of venues added.
+     */
+    private final transient AtomicInteger venues = new AtomicInteger();
+
+    /**
+     * Constructor. Prices are held to the default price scale.
+     */
+    public ConsolidatedDepth() {
+        this(PriceDepth.DEFAULT_PRICE_SCALE);
+    }
+
+    /**
+     * Constructor.
+     * @param priceScale number of decimal places consolidated prices
+     *        are held to, venue prices are rescaled to it
+     */
+    public ConsolidatedDepth(final int priceScale) {
+        this.priceScale = priceScale;
+    }
+
+    /**
+     * Add a venue, consolidating every book it builds from now on.
+     * @param manager depth manager of the venue
+     * @return venue index
+     */
+    public int addVenue(final DepthManager manager) {
+
+        final int venue = venues.getAndIncrement();
+
+        manager.addListener(new VenueListener(venue), BookListener.DEPTH);
+
+        return venue;
+    }
+
+    /**
+     * Remove every level of a venue, when its session is lost and
+     * its books can no longer be trusted.
+     * @param venue venue index
+     */
+    public void clearVenue(final int venue) {
+        for (final ConsolidatedBook book : books.values()) {
+            book.clear(venue);
+        }
+    }
+
+    /**
+     * @param symbol instrument symbol
+     * @return consolidated book, null if no venue has a book for it
+     */
+    public ConsolidatedBook getBook(final String symbol) {
+        return books.get(symbol);
+    }
+
+    /**
+     * @return number of venues added
+     */
+    public int getVenueCount() {
+        return venues.get();
+    }
+
+    /**
+     * Get the consolidated book of a symbol, creating it if needed.
+     * @param symbol instrument symbol
+     * @return consolidated book
+     */
+    private ConsolidatedBook bookFor(final String symbol) {
+
+        ConsolidatedBook book = books.get(symbol);
+
+        if (book == null) {
+            final ConsolidatedBook created =
+                new ConsolidatedBook(symbol, priceScale);
+            book = books.putIfAbsent(symbol, created);
+
+            if (book == null) {
+                book = created;
+            }
+        }
+
+        return book;
+    }
+
+    /**
+     * Applies the changed books of one venue.
+     */
+    private final class VenueListener implements BookListener {
+
+        /**
+         * Venue index.
+         */
+        private final transient int venue;
+
+        /**
+         * Constructor.
+         * @param venue venue index
+         */
+        VenueListener(final int venue) {
+            this.venue = venue;
+        }
+
+        @Override
+        public void onBookChange(final InstrumentDepth book,
+                                 final int changes) {
+            bookFor(book.getSymbol()).apply(venue, book);
+        }
+    }
+}
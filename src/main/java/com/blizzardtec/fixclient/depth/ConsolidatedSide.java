@@ -0,0 +1,363 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import java.util.Arrays;
+
+/**
+ * One side of a consolidated book: the levels of every venue merged
+ * by price, best first, with the size and number of venues at each
+ * price. Held as parallel primitive arrays like BookSide.
+ *
+ * The levels each venue last showed are kept, so a venue change is
+ * applied as a diff: only prices whose size at that venue changed
+ * touch the merged levels. Old and new levels are both best first,
+ * so the diff walks them together once.
+ *
+ * Not thread safe, ConsolidatedBook locks round it.
+ *
+ * @author Barnaby Golden
+ *
+ */
+final class ConsolidatedSide {
+
+    /**
+     * Initial number of merged levels and levels per venue.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * True if better prices are higher (bids).
+     */
+    private final transient boolean descending;
+    /**
+     * Merged prices, best first.
+     */
+    private transient long[] prices = new long[INITIAL_CAPACITY];
+    /**
+     * Total size at each merged price.
+     */
+    private transient long[] sizes = new long[INITIAL_CAPACITY];
+    /**
+     * Number of venues showing each merged price.
+     */
+    private transient int[] venues = new int[INITIAL_CAPACITY];
+    /**
+     * Number of merged levels.
+     */
+    private transient int count;
+
+    /**
+     * Prices each venue last showed, by venue.
+     */
+    private transient long[][] venuePrices = new long[0][];
+    /**
+     * Sizes each venue last showed, by venue.
+     */
+    private transient int[][] venueSizes = new int[0][];
+    /**
+     * Number of levels each venue last showed, by venue.
+     */
+    private transient int[] venueCounts = new int[0];
+
+    /**
+     * Levels read from the changed book.
+     */
+    private transient long[] nextPrices = new long[INITIAL_CAPACITY];
+    /**
+     * Sizes read from the changed book.
+     */
+    private transient int[] nextSizes = new int[INITIAL_CAPACITY];
+
+    /**
+     * Constructor.
+     * @param descending true if better prices are higher (bids)
+     */
+    ConsolidatedSide(final boolean descending) {
+        this.descending = descending;
+    }
+
+    /**
+     * Apply the current levels of one side of a venue book. Called
+     * on the venue book's writer thread, so its levels can be read
+     * directly.
+     * @param venue venue index
+     * @param book venue book
+     * @param type order type of this side (BID/OFFER)
+     * @param scale price scale of the consolidated book
+     * @return true if the best level changed
+     */
+    boolean apply(final int venue, final InstrumentDepth book,
+                  final char type, final int scale) {
+
+        ensureVenue(venue);
+
+        // read the venue side, skipping empty positions
+        final int levels = book.getLevelCount(type);
+        int next = 0;
+
+        ensureNext(levels);
+
+        for (int level = 1; level <= levels; level++) {
+            if (book.isLevelPresent(type, level)) {
+                nextPrices[next] = FixedPoint.rescale(
+                        book.getPrice(type, level),
+                        book.getPriceScale(), scale);
+                nextSizes[next] = book.getOrderSize(type, level);
+                next++;
+            }
+        }
+
+        return diff(venue, next);
+    }
+
+    /**
+     * Remove every level of one venue.
+     * @param venue venue index
+     * @return true if the best level changed
+     */
+    boolean clear(final int venue) {
+
+        if (venue >= venueCounts.length) {
+            return false;
+        }
+
+        return diff(venue, 0);
+    }
+
+    /**
+     * Apply the difference between the levels a venue last showed
+     * and the levels in nextPrices and nextSizes.
+     * @param venue venue index
+     * @param next number of new levels
+     * @return true if the best level changed
+     */
+    private boolean diff(final int venue, final int next) {
+
+        final long bestPrice = getPrice(0);
+        final long bestSize = getSize(0);
+        final int bestCount = count;
+
+        final long[] oldPrices = venuePrices[venue];
+        final int[] oldSizes = venueSizes[venue];
+        final int old = venueCounts[venue];
+
+        int i = 0;
+        int j = 0;
+
+        // merge by price; levels out of order are removed and added
+        // again rather than matched, which leaves the same totals
+        while (i < next || j < old) {
+            if (j == old
+                    || (i < next && isBetter(nextPrices[i], oldPrices[j]))) {
+                add(nextPrices[i], nextSizes[i], 1);
+                i++;
+            } else if (i == next || isBetter(oldPrices[j], nextPrices[i])) {
+                add(oldPrices[j], -oldSizes[j], -1);
+                j++;
+            } else {
+                if (oldSizes[j] != nextSizes[i]) {
+                    add(nextPrices[i], nextSizes[i] - oldSizes[j], 0);
+                }
+                i++;
+                j++;
+            }
+        }
+
+        // keep what the venue shows now for the next diff
+        if (oldPrices.length < next) {
+            venuePrices[venue] = Arrays.copyOf(nextPrices, nextPrices.length);
+            venueSizes[venue] = Arrays.copyOf(nextSizes, nextSizes.length);
+        } else {
+            System.arraycopy(nextPrices, 0, oldPrices, 0, next);
+            System.arraycopy(nextSizes, 0, oldSizes, 0, next);
+        }
+        venueCounts[venue] = next;
+
+        return getPrice(0) != bestPrice || getSize(0) != bestSize
+                || (count == 0) != (bestCount == 0);
+    }
+
+    /**
+     * @param price price
+     * @param other price to compare with
+     * @return true if price is better than other on this side
+     */
+    private boolean isBetter(final long price, final long other) {
+
+        boolean better = price < other;
+
+        if (descending) {
+            better = price > other;
+        }
+
+        return better;
+    }
+
+    /**
+     * Change the merged level at a price, adding or removing it.
+     * @param price price
+     * @param sizeChange change in total size
+     * @param venueChange change in the number of venues
+     */
+    private void add(final long price, final long sizeChange,
+                     final int venueChange) {
+
+        int index = search(price);
+
+        if (index < 0) {
+            if (venueChange <= 0) {
+                // nothing held at the price
+                return;
+            }
+
+            index = -index - 1;
+            ensureCapacity(count + 1);
+            System.arraycopy(prices, index, prices, index + 1, count - index);
+            System.arraycopy(sizes, index, sizes, index + 1, count - index);
+            System.arraycopy(venues, index, venues, index + 1, count - index);
+            prices[index] = price;
+            sizes[index] = 0;
+            venues[index] = 0;
+            count++;
+        }
+
+        sizes[index] += sizeChange;
+        venues[index] += venueChange;
+
+        if (venues[index] <= 0) {
+            count--;
+            System.arraycopy(prices, index + 1, prices, index, count - index);
+            System.arraycopy(sizes, index + 1, sizes, index, count - index);
+            System.arraycopy(venues, index + 1, venues, index, count - index);
+        }
+    }
+
+    /**
+     * Binary search the merged levels for a price.
+     * @param price price
+     * @return index if found, otherwise (-(insertion index) - 1)
+     */
+    private int search(final long price) {
+
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midPrice = prices[mid];
+
+            if (midPrice == price) {
+                return mid;
+            }
+
+            if ((midPrice < price) == descending) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * Make room for the levels of a venue.
+     * @param venue venue index
+     */
+    private void ensureVenue(final int venue) {
+
+        if (venue < venueCounts.length) {
+            return;
+        }
+
+        final int venueCount = venue + 1;
+        final int from = venueCounts.length;
+
+        venuePrices = Arrays.copyOf(venuePrices, venueCount);
+        venueSizes = Arrays.copyOf(venueSizes, venueCount);
+        venueCounts = Arrays.copyOf(venueCounts, venueCount);
+
+        for (int i = from; i < venueCount; i++) {
+            venuePrices[i] = new long[INITIAL_CAPACITY];
+            venueSizes[i] = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Make room to read a venue side.
+     * @param levels number of levels
+     */
+    private void ensureNext(final int levels) {
+        if (nextPrices.length < levels) {
+            nextPrices = new long[levels];
+            nextSizes = new int[levels];
+        }
+    }
+
+    /**
+     * Make room for merged levels.
+     * @param capacity number of levels
+     */
+    private void ensureCapacity(final int capacity) {
+        if (prices.length < capacity) {
+            final int grown = Math.max(capacity, prices.length * 2);
+            prices = Arrays.copyOf(prices, grown);
+            sizes = Arrays.copyOf(sizes, grown);
+            venues = Arrays.copyOf(venues, grown);
+        }
+    }
+
+    /**
+     * @return number of merged levels
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @param index zero based level index
+     * @return price, zero if there is no such level
+     */
+    long getPrice(final int index) {
+
+        long price = 0;
+
+        if (index < count) {
+            price = prices[index];
+        }
+
+        return price;
+    }
+
+    /**
+     * @param index zero based level index
+     * @return total size, zero if there is no such level
+     */
+    long getSize(final int index) {
+
+        long size = 0;
+
+        if (index < count) {
+            size = sizes[index];
+        }
+
+        return size;
+    }
+
+    /**
+     * @param index zero based level index
+     * @return number of venues at the level
+     */
+    int getVenues(final int index) {
+
+        int venueCount = 0;
+
+        if (index < count) {
+            venueCount = venues[index];
+        }
+
+        return venueCount;
+    }
+}
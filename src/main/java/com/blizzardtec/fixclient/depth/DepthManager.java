@@ -3,24 +3,35 @@
  */
 package com.blizzardtec.fixclient.depth;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.blizzardtec.fixclient.OrderType;
+import quickfix.field.MDUpdateAction;
+
+import com.blizzardtec.fixclient.journal.DepthJournal;
+import com.blizzardtec.fixclient.latency.LatencyRecorder;
+import com.blizzardtec.fixclient.metrics.FeedMetrics;
+import com.blizzardtec.fixclient.log.EventLog;
+import com.blizzardtec.fixclient.log.EventType;
 
 /**
+ * Holds the depth of every instrument.
+ *
+ * Each book has a single writer, the thread applying market data
+ * for its instrument: the FIX session thread, the consumer
+ * thread of a DepthRing, or the shard thread DepthShards maps
+ * the symbol to. Any number of other threads may read books
+ * at the same time without locking: getDepth, copyDepth and
+ * snapshot return a consistent copy of a book, retrying if the
+ * writer changed it part way through the copy.
+ *
  * @author Barnaby Golden
  *
  */
-public final class DepthManager
-        extends HashMap<String, InstrumentDepth> {
-
-    /**
-     *
-     */
-    private static final long serialVersionUID = 4442926059155101544L;
+public final class DepthManager implements DepthUpdateHandler {
 
     /**
      * Logger.
@@ -28,90 +39,788 @@ public final class DepthManager
     private static final Logger LOG =
         LoggerFactory.getLogger(DepthManager.class);
 
+    /**
+     * Depth levels for instruments without their own setting.
+     */
+    private volatile int defaultMarketDepth = InstrumentDepth.DEPTH_LEVELS;
+    /**
+     * How updates locate the level they apply to.
+     */
+    private volatile BookMode bookMode = BookMode.POSITION;
+    /**
+     * Most levels a full depth book keeps on each side.
+     */
+    private volatile int maxFullDepth = InstrumentDepth.DEFAULT_MAX_FULL_DEPTH;
+    /**
+     * Initial size of the book array.
+     */
+    private static final int INITIAL_BOOKS = 64;
+
+    /**
+     * No listeners.
+     */
+    private static final Registration[] NO_LISTENERS = new Registration[0];
+
+    /**
+     * Books changed by the message being applied, per writer thread.
+     */
+    private final transient ThreadLocal<ChangedBooks> changedBooks =
+        new ThreadLocal<ChangedBooks>() {
+            @Override
+            protected ChangedBooks initialValue() {
+                return new ChangedBooks();
+            }
+        };
+    /**
+     * Registered listeners, replaced whole when one is added or removed.
+     */
+    private volatile Registration[] listeners = NO_LISTENERS;
+    /**
+     * Log entries are recorded in, null for none.
+     */
+    private volatile EventLog eventLog;
+    /**
+     * Journal applied entries are appended to, null for none.
+     */
+    private volatile DepthJournal journal;
+    /**
+     * Recorder of the time taken to apply each entry, null for none.
+     */
+    private volatile LatencyRecorder latency;
+    /**
+     * Counters of the entries applied, null for none.
+     */
+    private volatile FeedMetrics metrics;
+    /**
+     * Told of entries skipped for a missing book, null for none.
+     */
+    private volatile GapListener gapListener;
+    /**
+     * Symbol IDs.
+     */
+    private final transient SymbolRegistry registry;
+    /**
+     * Instrument depths indexed by symbol ID, replaced by a larger
+     * copy when it fills up.
+     */
+    private volatile InstrumentDepth[] books =
+                        new InstrumentDepth[INITIAL_BOOKS];
+    /**
+     * Per instrument depth level settings.
+     */
+    private final transient ConcurrentMap<String, Integer> marketDepths =
+                                new ConcurrentHashMap<String, Integer>();
+    /**
+     * Per instrument price scale settings.
+     */
+    private final transient ConcurrentMap<String, Integer> priceScales =
+                                new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * A listener and the changes it wants to hear about.
+     */
+    private static final class Registration {
+        /**
+         * Listener.
+         */
+        private final BookListener listener;
+        /**
+         * Change flags the listener is interested in.
+         */
+        private final int interest;
+
+        /**
+         * Constructor.
+         * @param listener listener
+         * @param interest change flags the listener is interested in
+         */
+        Registration(final BookListener listener, final int interest) {
+            this.listener = listener;
+            this.interest = interest;
+        }
+    }
+
+    /**
+     * Books changed by the current message on one writer thread.
+     */
+    private static final class ChangedBooks {
+        /**
+         * Initial capacity.
+         */
+        private static final int INITIAL_BOOKS = 16;
+        /**
+         * Changed books.
+         */
+        private InstrumentDepth[] books = new InstrumentDepth[INITIAL_BOOKS];
+        /**
+         * Number of changed books.
+         */
+        private int count;
+
+        /**
+         * Add a book.
+         * @param book book
+         */
+        void add(final InstrumentDepth book) {
+            if (count == books.length) {
+                final InstrumentDepth[] larger =
+                    new InstrumentDepth[books.length * 2];
+                System.arraycopy(books, 0, larger, 0, count);
+                books = larger;
+            }
+            books[count++] = book;
+        }
+    }
+
+    /**
+     * Constructor.
+     */
+    public DepthManager() {
+        this(new SymbolRegistry());
+    }
+
+    /**
+     * Constructor.
+     * @param registry registry symbol IDs are taken from
+     */
+    public DepthManager(final SymbolRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Set the log every entry applied is recorded in. Entries are
+     * not logged otherwise.
+     * @param eventLog event log, null for none
+     */
+    public void setEventLog(final EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Set the journal every entry is appended to once it has been
+     * applied. Entries are not journalled otherwise.
+     * @param journal journal, null for none
+     */
+    public void setJournal(final DepthJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Set the recorder the time taken to apply each entry is
+     * recorded in, on whichever thread applies it. Entries are not
+     * timed otherwise.
+     * @param latency recorder, null for none
+     */
+    public void setLatencyRecorder(final LatencyRecorder latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Set the counters each entry applied is counted in.
+     * @param metrics counters, null for none
+     */
+    public void setFeedMetrics(final FeedMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the listener told of every update or delete skipped
+     * because there is no book for its symbol. Skipped entries are
+     * only logged otherwise.
+     * @param listener gap listener, null for none
+     */
+    public void setGapListener(final GapListener listener) {
+        this.gapListener = listener;
+    }
+
+    /**
+     * Add a book listener.
+     * @param listener listener
+     * @param interest change flags to be told about, BookListener
+     *        TOP_OF_BOOK, DEPTH or both
+     */
+    public synchronized void addListener(final BookListener listener,
+                                         final int interest) {
+
+        final Registration[] current = listeners;
+        final Registration[] next = new Registration[current.length + 1];
+
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = new Registration(listener, interest);
+
+        listeners = next;
+    }
+
+    /**
+     * Remove a book listener.
+     * @param listener listener
+     */
+    public synchronized void removeListener(final BookListener listener) {
+
+        final Registration[] current = listeners;
+        final Registration[] next = new Registration[current.length];
+
+        int count = 0;
+
+        for (final Registration registration : current) {
+            if (registration.listener != listener) {
+                next[count++] = registration;
+            }
+        }
+
+        final Registration[] trimmed = new Registration[count];
+        System.arraycopy(next, 0, trimmed, 0, count);
+
+        listeners = trimmed;
+    }
+
+    /**
+     * @return registry the symbol IDs of entries must come from
+     */
+    public SymbolRegistry getSymbolRegistry() {
+        return registry;
+    }
+
+    /**
+     * Set the number of depth levels kept for instruments without
+     * their own setting. Only affects books created afterwards.
+     * @param marketDepth depth levels, InstrumentDepth.FULL_DEPTH for all
+     */
+    public void setDefaultMarketDepth(final int marketDepth) {
+        this.defaultMarketDepth = marketDepth;
+    }
+
+    /**
+     * Set how updates locate the level they apply to, by position
+     * number or by price. Only affects books created afterwards.
+     * @param bookMode book mode
+     */
+    public void setBookMode(final BookMode bookMode) {
+        this.bookMode = bookMode;
+    }
+
+    /**
+     * Set the most levels a full depth book keeps on each side.
+     * Entries deeper than that are dropped, so a bad position number
+     * cannot grow a book without bound. Only affects books created
+     * afterwards.
+     * @param maxFullDepth most levels on each side
+     */
+    public void setMaxFullDepth(final int maxFullDepth) {
+        this.maxFullDepth = maxFullDepth;
+    }
+
+    /**
+     * @return how updates locate the level they apply to
+     */
+    public BookMode getBookMode() {
+        return bookMode;
+    }
+
+    /**
+     * Set the number of depth levels kept for one instrument.
+     * Only affects the book if it has not been created yet.
+     * @param symbol instrument symbol
+     * @param marketDepth depth levels, InstrumentDepth.FULL_DEPTH for all
+     */
+    public void setMarketDepth(final String symbol, final int marketDepth) {
+        marketDepths.put(symbol, marketDepth);
+    }
+
+    /**
+     * Get the number of depth levels kept for an instrument, which
+     * is also the MarketDepth to subscribe with.
+     * @param symbol instrument symbol
+     * @return depth levels, InstrumentDepth.FULL_DEPTH for all
+     */
+    public int getMarketDepth(final String symbol) {
+
+        final Integer marketDepth = marketDepths.get(symbol);
+
+        int depth = defaultMarketDepth;
+
+        if (marketDepth != null) {
+            depth = marketDepth;
+        }
+
+        return depth;
+    }
+
+    /**
+     * Set the number of decimal places prices are held to for one
+     * instrument. Only affects the book if it has not been created yet.
+     * @param symbol instrument symbol
+     * @param priceScale decimal places, up to FixedPoint.MAX_SCALE
+     */
+    public void setPriceScale(final String symbol, final int priceScale) {
+        priceScales.put(symbol, priceScale);
+    }
+
+    /**
+     * Get the number of decimal places prices are held to for an
+     * instrument.
+     * @param symbol instrument symbol
+     * @return decimal places
+     */
+    public int getPriceScale(final String symbol) {
+
+        final Integer priceScale = priceScales.get(symbol);
+
+        int scale = PriceDepth.DEFAULT_PRICE_SCALE;
+
+        if (priceScale != null) {
+            scale = priceScale;
+        }
+
+        return scale;
+    }
+
+    /**
+     * Start building a full refresh of a book, creating the book
+     * if the symbol has none. Readers keep seeing the old book
+     * until endSnapshot.
+     * @param priceDepth entry naming the book
+     */
+    @Override
+    public void beginSnapshot(final PriceDepth priceDepth) {
+
+        InstrumentDepth iDepth = findBook(priceDepth);
+
+        if (iDepth == null) {
+            iDepth = createBook(priceDepth.getSymbol());
+        }
+
+        iDepth.beginSnapshot();
+
+        // so a replay of the journal replaces the book too
+        journal(DepthJournal.BEGIN_SNAPSHOT, iDepth, priceDepth);
+    }
+
+    /**
+     * Publish the full refresh of a book in one swap.
+     * @param priceDepth entry naming the book
+     */
+    @Override
+    public void endSnapshot(final PriceDepth priceDepth) {
+
+        final InstrumentDepth iDepth = findBook(priceDepth);
+
+        if (iDepth != null) {
+            iDepth.endSnapshot();
+            journal(DepthJournal.END_SNAPSHOT, iDepth, priceDepth);
+            trackChange(iDepth);
+        }
+    }
+
+    /**
+     * Give up on the full refresh of a book, keeping the old book.
+     * @param priceDepth entry naming the book
+     */
+    @Override
+    public void abortSnapshot(final PriceDepth priceDepth) {
+
+        final InstrumentDepth iDepth = findBook(priceDepth);
+
+        if (iDepth != null) {
+            iDepth.abortSnapshot();
+            journal(DepthJournal.ABORT_SNAPSHOT, iDepth, priceDepth);
+        }
+    }
+
     /**
      * Add a new price depth entry.
      * @param priceDepth price depth
      */
+    @Override
     public void newDepthData(final PriceDepth priceDepth) {
 
-        final String symbol = priceDepth.getSymbol();
+        record(EventType.NEW_DEPTH, priceDepth);
 
-        if (priceDepth.getType() == OrderType.BID) {
-            LOG.info("New Bid price depth "
-                    + priceDepth.getLevel()
-                    + " data for " + symbol);
-        } else if (priceDepth.getType() == OrderType.OFFER) {
-            LOG.info("New Offer price depth "
-                    + priceDepth.getLevel()
-                    + " data for " + symbol);
-        }
+        final LatencyRecorder recorder = latency;
+        final long startNanos = startTiming(recorder);
 
-        InstrumentDepth iDepth = get(symbol);
+        InstrumentDepth iDepth = findBook(priceDepth);
 
         // if the depth for this instrument is null
         // then it needs to be initialised
         if (iDepth == null) {
-
-            iDepth = new InstrumentDepth(symbol);
-            put(symbol, iDepth);
+            iDepth = createBook(priceDepth.getSymbol());
         }
 
         iDepth.newDepth(priceDepth);
 
-        logDepth(symbol);
+        endTiming(recorder, MDUpdateAction.NEW, startNanos);
+        count(MDUpdateAction.NEW);
+
+        journal(MDUpdateAction.NEW, iDepth, priceDepth);
+
+        trackChange(iDepth);
     }
 
     /**
      * Update a given price depth level.
      * @param priceDepth price depth data
      */
+    @Override
     public void updateDepthData(final PriceDepth priceDepth) {
 
-        final String symbol = priceDepth.getSymbol();
+        record(EventType.UPDATE_DEPTH, priceDepth);
 
-        LOG.info("Update price depth "
-                + priceDepth.getLevel()
-                + " for " + symbol);
+        final LatencyRecorder recorder = latency;
+        final long startNanos = startTiming(recorder);
 
-        final InstrumentDepth iDepth = get(symbol);
+        final InstrumentDepth iDepth = findBook(priceDepth);
+
+        if (iDepth == null) {
+            missingBook(priceDepth);
+            return;
+        }
 
         iDepth.updateDepth(priceDepth);
 
-        logDepth(symbol);
+        endTiming(recorder, MDUpdateAction.CHANGE, startNanos);
+        count(MDUpdateAction.CHANGE);
+
+        journal(MDUpdateAction.CHANGE, iDepth, priceDepth);
+
+        trackChange(iDepth);
     }
 
     /**
      * Delete a given price depth level.
      * @param priceDepth price depth data
      */
+    @Override
     public void deleteDepthLevel(final PriceDepth priceDepth) {
 
-        final String symbol = priceDepth.getSymbol();
+        record(EventType.DELETE_DEPTH, priceDepth);
+
+        final LatencyRecorder recorder = latency;
+        final long startNanos = startTiming(recorder);
 
-        LOG.info("Delete price depth "
-                + priceDepth.getLevel()
-                + " for " + symbol);
+        final InstrumentDepth iDepth = findBook(priceDepth);
 
-        final InstrumentDepth iDepth = get(symbol);
+        if (iDepth == null) {
+            missingBook(priceDepth);
+            return;
+        }
 
         iDepth.deleteDepth(priceDepth);
 
-        logDepth(symbol);
+        endTiming(recorder, MDUpdateAction.DELETE, startNanos);
+        count(MDUpdateAction.DELETE);
+
+        journal(MDUpdateAction.DELETE, iDepth, priceDepth);
+
+        trackChange(iDepth);
+    }
+
+    /**
+     * Skip an entry for a symbol without a book, an earlier entry
+     * was missed, and tell the gap listener if there is one.
+     * @param priceDepth entry
+     */
+    private void missingBook(final PriceDepth priceDepth) {
+
+        final GapListener listener = gapListener;
+
+        if (listener != null) {
+            listener.onGap(priceDepth);
+        } else if (LOG.isWarnEnabled()) {
+            LOG.warn("No book for " + priceDepth.getSymbol()
+                    + ", entry skipped");
+        }
+    }
+
+    /**
+     * Record an entry in the event log, if there is one.
+     * @param type event type
+     * @param priceDepth entry
+     */
+    private void record(final EventType type, final PriceDepth priceDepth) {
+
+        final EventLog events = eventLog;
+
+        if (events != null) {
+            events.record(type, priceDepth.getSymbol(),
+                    priceDepth.getType(), priceDepth.getLevel(),
+                    priceDepth.getPrice(), priceDepth.getPriceScale(),
+                    priceDepth.getOrderSize());
+        }
+    }
+
+    /**
+     * Start timing an entry, if there is a recorder.
+     * @param recorder recorder, null for none
+     * @return System.nanoTime, 0 if not timed
+     */
+    private static long startTiming(final LatencyRecorder recorder) {
+
+        long startNanos = 0;
+
+        if (recorder != null) {
+            startNanos = System.nanoTime();
+        }
+
+        return startNanos;
+    }
+
+    /**
+     * Record the time taken to apply an entry, if there is a
+     * recorder.
+     * @param recorder recorder, null for none
+     * @param action MDUpdateAction NEW, CHANGE or DELETE
+     * @param startNanos System.nanoTime when the entry was started
+     */
+    private static void endTiming(final LatencyRecorder recorder,
+                                  final char action,
+                                  final long startNanos) {
+        if (recorder != null) {
+            recorder.recordApply(action, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Count an applied entry, if there are counters.
+     * @param action MDUpdateAction NEW, CHANGE or DELETE
+     */
+    private void count(final char action) {
+
+        final FeedMetrics counters = metrics;
+
+        if (counters != null) {
+            counters.applied(action);
+        }
+    }
+
+    /**
+     * Append an applied entry to the journal, if there is one.
+     * @param action MDUpdateAction NEW, CHANGE or DELETE, or a
+     *        DepthJournal snapshot action
+     * @param iDepth book the entry was applied to
+     * @param priceDepth entry
+     */
+    private void journal(final char action, final InstrumentDepth iDepth,
+                         final PriceDepth priceDepth) {
+
+        final DepthJournal target = journal;
+
+        if (target != null) {
+            target.append(action, iDepth.getSymbolId(), iDepth.getSymbol(),
+                    priceDepth);
+        }
+    }
+
+    /**
+     * Find the book for an entry, by its symbol ID if it has one.
+     * @param priceDepth entry
+     * @return book, null if there is none yet
+     */
+    private InstrumentDepth findBook(final PriceDepth priceDepth) {
+
+        int id = priceDepth.getSymbolId();
+
+        if (id == SymbolRegistry.NOT_FOUND) {
+            id = registry.getId(priceDepth.getSymbol());
+        }
+
+        return getInstrumentDepth(id);
+    }
+
+    /**
+     * Create the book for a symbol, registering the symbol if it
+     * was not subscribed to.
+     * @param symbol instrument symbol
+     * @return new book, or the existing one if another thread
+     *         created it first
+     */
+    private synchronized InstrumentDepth createBook(final String symbol) {
+
+        final int id = registry.register(symbol);
+
+        final InstrumentDepth[] current = books;
+
+        if (id < current.length && current[id] != null) {
+            return current[id];
+        }
+
+        // copy rather than fill in place, so a reader never sees a
+        // book before the volatile write below
+        final InstrumentDepth[] next = new InstrumentDepth[
+                Math.max(current.length, Integer.highestOneBit(id) * 2)];
+        System.arraycopy(current, 0, next, 0, current.length);
+
+        final InstrumentDepth iDepth = new InstrumentDepth(symbol,
+                getMarketDepth(symbol), getPriceScale(symbol), bookMode,
+                maxFullDepth);
+
+        iDepth.setSymbolId(id);
+        next[id] = iDepth;
+
+        // volatile write publishes the new book to other threads
+        books = next;
+
+        return iDepth;
+    }
+
+    /**
+     * Remember a changed book until the end of the message, if
+     * anyone is listening.
+     * @param iDepth book
+     */
+    private void trackChange(final InstrumentDepth iDepth) {
+
+        if (listeners.length > 0 && iDepth.hasChanges()
+                && !iDepth.isChangeQueued()) {
+            iDepth.setChangeQueued(true);
+            changedBooks.get().add(iDepth);
+        }
+    }
+
+    /**
+     * Tell the listeners about each book the message changed.
+     * Called on the thread that applied the message.
+     */
+    @Override
+    public void endOfMessage() {
+
+        final Registration[] current = listeners;
+
+        if (current.length == 0) {
+            return;
+        }
+
+        final ChangedBooks changed = changedBooks.get();
+
+        for (int i = 0; i < changed.count; i++) {
+
+            final InstrumentDepth iDepth = changed.books[i];
+            final int changes = iDepth.takeChanges();
+
+            iDepth.setChangeQueued(false);
+            changed.books[i] = null;
+
+            for (final Registration registration : current) {
+                if ((changes & registration.interest) != 0) {
+                    notifyListener(registration.listener,
+                                   iDepth, changes);
+                }
+            }
+        }
+
+        changed.count = 0;
+    }
+
+    /**
+     * Call a listener, a failing listener must not stop the others
+     * or the thread applying updates.
+     * @param listener listener
+     * @param iDepth book that changed
+     * @param changes change flags
+     */
+    private static void notifyListener(final BookListener listener,
+                                       final InstrumentDepth iDepth,
+                                       final int changes) {
+        try {
+            listener.onBookChange(iDepth, changes);
+        } catch (RuntimeException e) {
+            LOG.error("Book listener failed for " + iDepth.getSymbol(), e);
+        }
     }
 
     /**
      * Get the price depth for a given instrument and order type.
+     * The returned levels are a copy of the book.
      * @param symbol instrument symbol
      * @param type order type (bid or offer)
      * @return price depth information
      */
     public PriceDepth[] getDepth(final String symbol, final char type) {
 
-        final InstrumentDepth iDepth = get(symbol);
+        final InstrumentDepth iDepth = getInstrumentDepth(symbol);
 
         return iDepth.getDepth(symbol, type);
     }
 
+    /**
+     * Copy the price depth for a given instrument and order type
+     * into a caller owned array, reusing the objects already in it.
+     * @param symbol instrument symbol
+     * @param type order type (bid or offer)
+     * @param depths array to copy into
+     * @return number of levels copied
+     */
+    public int copyDepth(final String symbol, final char type,
+                         final PriceDepth[] depths) {
+
+        final InstrumentDepth iDepth = getInstrumentDepth(symbol);
+
+        return iDepth.copyDepth(type, depths);
+    }
+
+    /**
+     * Take a consistent copy of both sides of an instrument book,
+     * reusing the arrays already held by the snapshot.
+     * @param symbol instrument symbol
+     * @param snapshot snapshot to copy into
+     * @return false if there is no book for the symbol
+     */
+    public boolean snapshot(final String symbol,
+                            final DepthSnapshot snapshot) {
+        return snapshot(registry.getId(symbol), snapshot);
+    }
+
+    /**
+     * Take a consistent copy of both sides of an instrument book,
+     * reusing the arrays already held by the snapshot.
+     * @param symbolId symbol ID
+     * @param snapshot snapshot to copy into
+     * @return false if there is no book for the symbol
+     */
+    public boolean snapshot(final int symbolId,
+                            final DepthSnapshot snapshot) {
+
+        final InstrumentDepth iDepth = getInstrumentDepth(symbolId);
+
+        boolean found = false;
+
+        if (iDepth != null) {
+            iDepth.snapshot(snapshot);
+            found = true;
+        }
+
+        return found;
+    }
+
+    /**
+     * Get the book for an instrument. Only the writer thread for
+     * the instrument may change it.
+     * @param symbol instrument symbol
+     * @return instrument depth, null if none has been received
+     */
+    public InstrumentDepth getInstrumentDepth(final String symbol) {
+        return getInstrumentDepth(registry.getId(symbol));
+    }
+
+    /**
+     * Get the book for an instrument by symbol ID. Only the writer
+     * thread for the instrument may change it.
+     * @param symbolId symbol ID
+     * @return instrument depth, null if none has been received
+     */
+    public InstrumentDepth getInstrumentDepth(final int symbolId) {
+
+        final InstrumentDepth[] current = books;
+
+        InstrumentDepth iDepth = null;
+
+        if (symbolId >= 0 && symbolId < current.length) {
+            iDepth = current[symbolId];
+        }
+
+        return iDepth;
+    }
+
     /**
      * Print the depth information for a given instrument symbol.
      * @param symbol instrument symbol
@@ -119,19 +828,22 @@ public final class DepthManager
      */
     public String printDepth(final String symbol) {
 
-        final InstrumentDepth iDepth = get(symbol);
+        final InstrumentDepth iDepth = getInstrumentDepth(symbol);
 
         return iDepth.printDepth();
     }
 
     /**
      * Log the current price depths for a given symbol.
+     * The book is only rendered when INFO logging is enabled.
      * @param symbol the symbol to log information for
      */
     public void logDepth(final String symbol) {
 
-        final InstrumentDepth iDepth = get(symbol);
+        if (LOG.isInfoEnabled()) {
+            final InstrumentDepth iDepth = getInstrumentDepth(symbol);
 
-        LOG.info(iDepth.printDepth());
+            LOG.info(iDepth.printDepth());
+        }
     }
 }
@@ -0,0 +1,407 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import quickfix.field.MDUpdateAction;
+
+/**
+ * Single producer, single consumer ring of price depth entries
+ * between the FIX session thread and a book building thread.
+ *
+ * The session thread only copies each decoded entry into a
+ * pre-allocated slot, a whole message is published at once when
+ * endOfMessage is called. The consumer thread applies entries to
+ * the target handler, normally the depth manager, so book updates
+ * and depth logging never hold up heartbeats or socket reads.
+ *
+ * If the ring fills up the producer publishes what it has and
+ * waits for the consumer, entries are never dropped.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class DepthRing implements DepthUpdateHandler {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(DepthRing.class);
+
+    /**
+     * Default number of slots.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Action of a slot holding the start of a full refresh, not a
+     * MDUpdateAction.
+     */
+    private static final char BEGIN_SNAPSHOT = 'S';
+    /**
+     * Action of a slot holding the end of a full refresh.
+     */
+    private static final char END_SNAPSHOT = 'E';
+    /**
+     * Action of a slot holding a full refresh given up on.
+     */
+    private static final char ABORT_SNAPSHOT = 'A';
+
+    /**
+     * Entry slots, reused for the life of the ring.
+     */
+    private final transient PriceDepth[] slots;
+    /**
+     * Set on the last slot of each FIX message.
+     */
+    private final transient boolean[] messageEnds;
+    /**
+     * Mask mapping a sequence to a slot.
+     */
+    private final transient int mask;
+    /**
+     * Handler the consumer applies entries to.
+     */
+    private final transient DepthUpdateHandler target;
+    /**
+     * What the threads do while they wait.
+     */
+    private final transient WaitStrategy waitStrategy;
+    /**
+     * Sequence of the next slot the producer will fill.
+     * Producer thread only.
+     */
+    private transient long claimed;
+    /**
+     * Sequence up to which slots are visible to the consumer.
+     */
+    private final transient AtomicLong published = new AtomicLong();
+    /**
+     * Sequence up to which slots have been applied and can be reused.
+     */
+    private final transient AtomicLong consumed = new AtomicLong();
+    /**
+     * Largest queue depth seen at publish.
+     */
+    private volatile long maxQueueDepth;
+    /**
+     * Number of times the producer found the ring full.
+     */
+    private volatile long fullCount;
+    /**
+     * Consumer thread, null until started.
+     */
+    private transient Thread consumer;
+    /**
+     * Cleared to stop the consumer thread.
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructor.
+     * @param target handler entries are applied to
+     * @param waitStrategy what the threads do while they wait
+     */
+    public DepthRing(final DepthUpdateHandler target,
+                     final WaitStrategy waitStrategy) {
+        this(target, DEFAULT_CAPACITY, waitStrategy);
+    }
+
+    /**
+     * Constructor.
+     * @param target handler entries are applied to
+     * @param capacity number of slots, a power of two
+     * @param waitStrategy what the threads do while they wait
+     */
+    public DepthRing(final DepthUpdateHandler target, final int capacity,
+                     final WaitStrategy waitStrategy) {
+
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(
+                    "Ring capacity must be a power of two: " + capacity);
+        }
+
+        this.target = target;
+        this.waitStrategy = waitStrategy;
+        this.mask = capacity - 1;
+        this.slots = new PriceDepth[capacity];
+        this.messageEnds = new boolean[capacity];
+
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new PriceDepth();
+        }
+    }
+
+    /**
+     * Start the consumer thread.
+     */
+    public void start() {
+
+        running = true;
+
+        consumer = new Thread("depth-ring") {
+            @Override
+            public void run() {
+                consume();
+            }
+        };
+
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Stop the consumer thread once it has applied everything
+     * already published.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+
+        running = false;
+
+        if (consumer != null) {
+            consumer.join();
+            consumer = null;
+        }
+    }
+
+    /**
+     * Count one more idle pass, stopping at the largest int so a
+     * long idle thread stays backed off rather than wrapping round
+     * to busy spinning.
+     * @param idleCount idle passes so far
+     * @return idle passes including this one
+     */
+    static int nextIdle(final int idleCount) {
+
+        int next = idleCount;
+
+        if (next < Integer.MAX_VALUE) {
+            next++;
+        }
+
+        return next;
+    }
+
+    /**
+     * Consumer loop.
+     */
+    private void consume() {
+
+        int idleCount = 0;
+
+        while (running) {
+            if (poll() == 0) {
+                waitStrategy.idle(idleCount);
+                idleCount = nextIdle(idleCount);
+            } else {
+                idleCount = 0;
+            }
+        }
+
+        // drain anything published before the stop
+        while (poll() > 0) {
+            idleCount = 0;
+        }
+    }
+
+    /**
+     * Apply every published entry to the target. Called by the
+     * consumer thread, or directly when no thread has been started.
+     * @return number of entries applied
+     */
+    public int poll() {
+
+        final long available = published.get();
+        long sequence = consumed.get();
+
+        if (sequence == available) {
+            return 0;
+        }
+
+        final int applied = (int) (available - sequence);
+
+        while (sequence < available) {
+
+            final int index = (int) sequence & mask;
+
+            apply(slots[index]);
+
+            if (messageEnds[index]) {
+                target.endOfMessage();
+            }
+
+            sequence++;
+        }
+
+        consumed.lazySet(sequence);
+
+        return applied;
+    }
+
+    /**
+     * Apply one entry to the target.
+     * @param entry entry
+     */
+    private void apply(final PriceDepth entry) {
+
+        try {
+            final char action = entry.getUpdateAction();
+
+            if (action == MDUpdateAction.CHANGE) {
+                target.updateDepthData(entry);
+            } else if (action == MDUpdateAction.DELETE) {
+                target.deleteDepthLevel(entry);
+            } else if (action == BEGIN_SNAPSHOT) {
+                target.beginSnapshot(entry);
+            } else if (action == END_SNAPSHOT) {
+                target.endSnapshot(entry);
+            } else if (action == ABORT_SNAPSHOT) {
+                target.abortSnapshot(entry);
+            } else {
+                target.newDepthData(entry);
+            }
+        } catch (RuntimeException e) {
+            // one bad entry must not stop the consumer thread
+            LOG.error("Failed to apply depth entry for "
+                    + entry.getSymbol(), e);
+        }
+    }
+
+    @Override
+    public void beginSnapshot(final PriceDepth priceDepth) {
+        claim(priceDepth).setUpdateAction(BEGIN_SNAPSHOT);
+    }
+
+    @Override
+    public void endSnapshot(final PriceDepth priceDepth) {
+        claim(priceDepth).setUpdateAction(END_SNAPSHOT);
+    }
+
+    @Override
+    public void abortSnapshot(final PriceDepth priceDepth) {
+        claim(priceDepth).setUpdateAction(ABORT_SNAPSHOT);
+    }
+
+    @Override
+    public void newDepthData(final PriceDepth priceDepth) {
+        claim(priceDepth).setUpdateAction(MDUpdateAction.NEW);
+    }
+
+    @Override
+    public void updateDepthData(final PriceDepth priceDepth) {
+        claim(priceDepth).setUpdateAction(MDUpdateAction.CHANGE);
+    }
+
+    @Override
+    public void deleteDepthLevel(final PriceDepth priceDepth) {
+        claim(priceDepth).setUpdateAction(MDUpdateAction.DELETE);
+    }
+
+    /**
+     * Publish the entries of the current message to the consumer.
+     */
+    @Override
+    public void endOfMessage() {
+
+        if (claimed > published.get()) {
+            messageEnds[(int) (claimed - 1) & mask] = true;
+            publish();
+        }
+    }
+
+    /**
+     * Copy an entry into the next free slot, waiting for the
+     * consumer if the ring is full.
+     * @param priceDepth entry to copy
+     * @return the filled slot
+     */
+    private PriceDepth claim(final PriceDepth priceDepth) {
+
+        if (claimed - consumed.get() > mask) {
+
+            fullCount = fullCount + 1;
+
+            // let the consumer see the part message it is waiting on
+            publish();
+
+            int idleCount = 0;
+
+            while (claimed - consumed.get() > mask) {
+                waitStrategy.idle(idleCount);
+                idleCount = nextIdle(idleCount);
+            }
+        }
+
+        final int index = (int) claimed & mask;
+        final PriceDepth slot = slots[index];
+
+        slot.copy(priceDepth);
+        messageEnds[index] = false;
+        claimed++;
+
+        return slot;
+    }
+
+    /**
+     * Make every claimed slot visible to the consumer.
+     */
+    private void publish() {
+
+        published.lazySet(claimed);
+
+        final long depth = claimed - consumed.get();
+
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+    }
+
+    /**
+     * @return number of slots
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return entries published but not yet applied
+     */
+    public long getQueueDepth() {
+        return published.get() - consumed.get();
+    }
+
+    /**
+     * @return largest queue depth seen at publish
+     */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return total entries published
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * @return total entries applied
+     */
+    public long getConsumedCount() {
+        return consumed.get();
+    }
+
+    /**
+     * @return number of times the producer had to wait for space
+     */
+    public long getFullCount() {
+        return fullCount;
+    }
+}
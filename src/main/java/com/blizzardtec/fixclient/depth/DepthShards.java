@@ -0,0 +1,226 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+/**
+ * Spreads book building over several threads by symbol.
+ *
+ * Every symbol maps to one shard by its symbol ID, a depth ring
+ * with its own consumer thread, so each book is only ever written
+ * by its shard thread and needs no locking. Entries for a symbol
+ * go through a single ring and are applied in the order they were
+ * received; there is no ordering between symbols on different
+ * shards.
+ *
+ * There must be a single producer thread, as for DepthRing.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class DepthShards implements DepthUpdateHandler {
+
+    /**
+     * Registry symbol IDs are taken from, shared with the target.
+     */
+    private final transient SymbolRegistry registry;
+    /**
+     * One ring per shard.
+     */
+    private final transient DepthRing[] rings;
+    /**
+     * Shards given entries in the current message.
+     * Producer thread only.
+     */
+    private final transient boolean[] touched;
+    /**
+     * Indexes of the touched shards, in the order first touched.
+     * Producer thread only.
+     */
+    private final transient int[] touchedShards;
+    /**
+     * Number of entries in touchedShards.
+     */
+    private transient int touchedCount;
+
+    /**
+     * Constructor.
+     * @param manager depth manager entries are applied to
+     * @param shardCount number of shards and threads
+     * @param waitStrategy what the threads do while they wait
+     */
+    public DepthShards(final DepthManager manager,
+                       final int shardCount,
+                       final WaitStrategy waitStrategy) {
+        this(manager, manager.getSymbolRegistry(), shardCount,
+                DepthRing.DEFAULT_CAPACITY, waitStrategy);
+    }
+
+    /**
+     * Constructor.
+     * @param target handler entries are applied to, normally the
+     *        depth manager
+     * @param registry registry symbol IDs are taken from, the one
+     *        the target uses
+     * @param shardCount number of shards and threads
+     * @param capacity slots in each ring, a power of two
+     * @param waitStrategy what the threads do while they wait
+     */
+    public DepthShards(final DepthUpdateHandler target,
+                       final SymbolRegistry registry,
+                       final int shardCount,
+                       final int capacity,
+                       final WaitStrategy waitStrategy) {
+
+        if (shardCount < 1) {
+            throw new IllegalArgumentException(
+                    "At least one shard is needed: " + shardCount);
+        }
+
+        this.registry = registry;
+        rings = new DepthRing[shardCount];
+        touched = new boolean[shardCount];
+        touchedShards = new int[shardCount];
+
+        for (int i = 0; i < shardCount; i++) {
+            rings[i] = new DepthRing(target, capacity, waitStrategy);
+        }
+    }
+
+    /**
+     * Start the shard threads.
+     */
+    public void start() {
+        for (final DepthRing ring : rings) {
+            ring.start();
+        }
+    }
+
+    /**
+     * Stop the shard threads once they have applied everything
+     * already published.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+        for (final DepthRing ring : rings) {
+            ring.stop();
+        }
+    }
+
+    /**
+     * Get the shard a symbol is built on, registering the symbol
+     * if needed.
+     * @param symbol instrument symbol
+     * @return shard index
+     */
+    public int shardFor(final String symbol) {
+        return registry.register(symbol) % rings.length;
+    }
+
+    /**
+     * Get the ring for an entry, remembering it needs an end of
+     * message. An entry without a symbol ID is given one, so the
+     * shard thread does not look it up again.
+     * @param priceDepth entry
+     * @return ring
+     */
+    private DepthRing route(final PriceDepth priceDepth) {
+
+        int id = priceDepth.getSymbolId();
+
+        if (id == SymbolRegistry.NOT_FOUND) {
+            id = registry.getId(priceDepth.getSymbol());
+
+            if (id == SymbolRegistry.NOT_FOUND) {
+                id = registry.register(priceDepth.getSymbol());
+            }
+
+            priceDepth.setSymbolId(id);
+        }
+
+        // dense IDs spread evenly over the shards
+        final int shard = id % rings.length;
+
+        if (!touched[shard]) {
+            touched[shard] = true;
+            touchedShards[touchedCount++] = shard;
+        }
+
+        return rings[shard];
+    }
+
+    @Override
+    public void beginSnapshot(final PriceDepth priceDepth) {
+        route(priceDepth).beginSnapshot(priceDepth);
+    }
+
+    @Override
+    public void endSnapshot(final PriceDepth priceDepth) {
+        route(priceDepth).endSnapshot(priceDepth);
+    }
+
+    @Override
+    public void abortSnapshot(final PriceDepth priceDepth) {
+        route(priceDepth).abortSnapshot(priceDepth);
+    }
+
+    @Override
+    public void newDepthData(final PriceDepth priceDepth) {
+        route(priceDepth).newDepthData(priceDepth);
+    }
+
+    @Override
+    public void updateDepthData(final PriceDepth priceDepth) {
+        route(priceDepth).updateDepthData(priceDepth);
+    }
+
+    @Override
+    public void deleteDepthLevel(final PriceDepth priceDepth) {
+        route(priceDepth).deleteDepthLevel(priceDepth);
+    }
+
+    /**
+     * Publish the current message on every shard it touched.
+     */
+    @Override
+    public void endOfMessage() {
+
+        for (int i = 0; i < touchedCount; i++) {
+            final int shard = touchedShards[i];
+            touched[shard] = false;
+            rings[shard].endOfMessage();
+        }
+
+        touchedCount = 0;
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int getShardCount() {
+        return rings.length;
+    }
+
+    /**
+     * Get the ring of one shard, for its queue metrics.
+     * @param shard shard index
+     * @return ring
+     */
+    public DepthRing getShard(final int shard) {
+        return rings[shard];
+    }
+
+    /**
+     * @return entries published but not yet applied, over all shards
+     */
+    public long getQueueDepth() {
+
+        long depth = 0;
+
+        for (final DepthRing ring : rings) {
+            depth += ring.getQueueDepth();
+        }
+
+        return depth;
+    }
+}
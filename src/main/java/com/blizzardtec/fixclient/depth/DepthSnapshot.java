@@ -0,0 +1,188 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import com.blizzardtec.fixclient.OrderType;
+
+/**
+ * A consistent copy of both sides of an instrument book, taken
+ * without locking the book (see DepthManager.snapshot).
+ *
+ * A reader thread can keep one snapshot and refill it, the arrays
+ * are reused and only grow if the book gets deeper.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class DepthSnapshot {
+
+    /**
+     * Instrument symbol.
+     */
+    private String symbol;
+    /**
+     * Number of decimal places prices are held to.
+     */
+    private int priceScale;
+    /**
+     * Book version the copy was taken at.
+     */
+    private long version;
+    /**
+     * Bid levels.
+     */
+    private final transient BookSide bids =
+                                new BookSide(InstrumentDepth.FULL_DEPTH);
+    /**
+     * Offer levels.
+     */
+    private final transient BookSide offers =
+                                new BookSide(InstrumentDepth.FULL_DEPTH);
+    /**
+     * Number of bid levels in the book.
+     */
+    private transient int bidLevels;
+    /**
+     * Number of offer levels in the book.
+     */
+    private transient int offerLevels;
+
+    /**
+     * Fill this snapshot from the sides of a book. Called by
+     * InstrumentDepth inside its version check.
+     * @param sourceSymbol instrument symbol
+     * @param sourceScale price scale
+     * @param sourceBids bid side
+     * @param sourceOffers offer side
+     */
+    void copy(final String sourceSymbol, final int sourceScale,
+              final BookSide sourceBids, final BookSide sourceOffers) {
+
+        this.symbol = sourceSymbol;
+        this.priceScale = sourceScale;
+        bidLevels = sourceBids.getLevels();
+        offerLevels = sourceOffers.getLevels();
+        bids.copyFrom(sourceBids);
+        offers.copyFrom(sourceOffers);
+    }
+
+    /**
+     * @param bookVersion book version the copy was taken at
+     */
+    void setVersion(final long bookVersion) {
+        this.version = bookVersion;
+    }
+
+    /**
+     * @return book version the copy was taken at, it increases
+     *         every time the book changes
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the symbol
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return number of decimal places prices are held to
+     */
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    /**
+     * Number of levels on one side of the book.
+     * @param type order type (BID/OFFER)
+     * @return number of depth levels
+     */
+    public int getLevels(final char type) {
+
+        int levels = offerLevels;
+
+        if (type == OrderType.BID) {
+            levels = bidLevels;
+        }
+
+        return levels;
+    }
+
+    /**
+     * Is a price held at a given level.
+     * @param type order type (BID/OFFER)
+     * @param level one based depth level
+     * @return true if the level holds a price
+     */
+    public boolean isLevelPresent(final char type, final int level) {
+        return getSide(type).isPresent(level - 1);
+    }
+
+    /**
+     * Get the price at a given level.
+     * @param type order type (BID/OFFER)
+     * @param level one based depth level
+     * @return price scaled by the price scale, zero if the level is empty
+     */
+    public long getPrice(final char type, final int level) {
+
+        final BookSide side = getSide(type);
+
+        long price = 0;
+
+        if (level <= side.getCount()) {
+            price = side.getPrice(level - 1);
+        }
+
+        return price;
+    }
+
+    /**
+     * Get the price at a given level as a double, for display only.
+     * @param type order type (BID/OFFER)
+     * @param level one based depth level
+     * @return price, zero if the level is empty
+     */
+    public double getMidPrice(final char type, final int level) {
+        return FixedPoint.toDouble(getPrice(type, level), priceScale);
+    }
+
+    /**
+     * Get the order size at a given level.
+     * @param type order type (BID/OFFER)
+     * @param level one based depth level
+     * @return order size, zero if the level is empty
+     */
+    public int getOrderSize(final char type, final int level) {
+
+        final BookSide side = getSide(type);
+
+        int size = 0;
+
+        if (level <= side.getCount()) {
+            size = side.getSize(level - 1);
+        }
+
+        return size;
+    }
+
+    /**
+     * Get the side for an order type.
+     * @param type order type (BID/OFFER)
+     * @return side
+     */
+    private BookSide getSide(final char type) {
+
+        BookSide side = offers;
+
+        if (type == OrderType.BID) {
+            side = bids;
+        }
+
+        return side;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+/**
+ * Receives decoded market data entries. Implemented by the depth
+ * manager, which applies them straight to the books, and by the
+ * depth ring, which hands them to a book building thread.
+ *
+ * Entries are passed as flyweights, an implementation must copy
+ * any values it keeps before returning.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public interface DepthUpdateHandler {
+
+    /**
+     * A full refresh of a book starts: the new entries that follow,
+     * up to endSnapshot, replace everything in it.
+     * @param priceDepth entry naming the book, its RptSeq is the
+     *        sequence the refresh is taken at
+     */
+    void beginSnapshot(PriceDepth priceDepth);
+
+    /**
+     * The entries of a full refresh have all been passed, the book
+     * they built replaces the old one. Called after beginSnapshot,
+     * before the end of the message, unless the refresh is aborted.
+     * @param priceDepth entry naming the book
+     */
+    void endSnapshot(PriceDepth priceDepth);
+
+    /**
+     * A full refresh could not be read whole: the entries passed
+     * since beginSnapshot are thrown away and the old book is kept,
+     * though it is no longer known to be current. Called instead
+     * of endSnapshot.
+     * @param priceDepth entry naming the book
+     */
+    void abortSnapshot(PriceDepth priceDepth);
+
+    /**
+     * Add a new price depth entry.
+     * @param priceDepth price depth
+     */
+    void newDepthData(PriceDepth priceDepth);
+
+    /**
+     * Update a given price depth level.
+     * @param priceDepth price depth data
+     */
+    void updateDepthData(PriceDepth priceDepth);
+
+    /**
+     * Delete a given price depth level.
+     * @param priceDepth price depth data
+     */
+    void deleteDepthLevel(PriceDepth priceDepth);
+
+    /**
+     * All entries of the current FIX message have been passed.
+     */
+    void endOfMessage();
+}
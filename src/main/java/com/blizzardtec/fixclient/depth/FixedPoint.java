@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+/**
+ * Conversions for prices held as scaled longs, where a price of
+ * 1.4335 at scale 8 is held as 143350000.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class FixedPoint {
+
+    /**
+     * Largest supported scale.
+     */
+    public static final int MAX_SCALE = 18;
+    /**
+     * Radix.
+     */
+    private static final long TEN = 10L;
+
+    /**
+     * Powers of ten up to MAX_SCALE.
+     */
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * TEN;
+        }
+    }
+
+    /**
+     * Private constructor for utility class.
+     */
+    private FixedPoint() {
+        // private constructor
+    }
+
+    /**
+     * Ten to the power of a scale.
+     * @param scale scale between 0 and MAX_SCALE
+     * @return power of ten
+     */
+    public static long pow10(final int scale) {
+        return POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * Convert a scaled value to another scale. Digits below the
+     * target scale are rounded half away from zero.
+     * @param value scaled value
+     * @param fromScale scale of value, between 0 and MAX_SCALE
+     * @param toScale scale wanted, between 0 and MAX_SCALE
+     * @return value at toScale
+     * @throws ArithmeticException if the value does not fit in a
+     *         long at toScale
+     */
+    public static long rescale(final long value,
+                               final int fromScale,
+                               final int toScale) {
+
+        long result = value;
+
+        if (toScale > fromScale) {
+            result = Math.multiplyExact(value,
+                                        POWERS_OF_TEN[toScale - fromScale]);
+        } else if (toScale < fromScale) {
+            final long divisor = POWERS_OF_TEN[fromScale - toScale];
+            final long half = divisor / 2;
+
+            if (value < 0) {
+                result = (value - half) / divisor;
+            } else {
+                result = (value + half) / divisor;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Convert a scaled value to a double, for display only.
+     * @param value scaled value
+     * @param scale scale of value
+     * @return nearest double
+     */
+    public static double toDouble(final long value, final int scale) {
+        return (double) value / POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * Convert a double to a scaled value.
+     * @param value value
+     * @param scale scale wanted
+     * @return nearest scaled value
+     */
+    public static long fromDouble(final double value, final int scale) {
+        return Math.round(value * POWERS_OF_TEN[scale]);
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+/**
+ * Told when an entry cannot be applied because its book has missed
+ * earlier entries, so the book has to be recovered from a fresh
+ * snapshot.
+ *
+ * Called on the thread applying the entry, which may be a book
+ * building thread rather than the session thread.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public interface GapListener {
+
+    /**
+     * An entry could not be applied.
+     * @param priceDepth entry, a flyweight that must be copied
+     *        if kept
+     */
+    void onGap(PriceDepth priceDepth);
+}
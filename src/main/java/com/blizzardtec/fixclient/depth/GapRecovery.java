@@ -0,0 +1,594 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import quickfix.field.MDUpdateAction;
+
+import com.blizzardtec.fixclient.metrics.FeedMetrics;
+
+/**
+ * Checks the RptSeq of the entries of every book, and recovers a
+ * book that misses one from a snapshot of its symbol alone.
+ *
+ * Sits between the decoder and the books, on the session thread.
+ * Every entry of a book carries the next RptSeq of that book. When
+ * one jumps, or the depth manager finds an update for a symbol with
+ * no book, the book is marked stale and a snapshot of its symbol is
+ * requested. Until it lands the entries of that book are held back
+ * and every other book keeps flowing. The held entries the snapshot
+ * does not cover, those after its RptSeq, are then replayed on top
+ * of it before it is published, so neither listeners nor readers see
+ * the book in between. If they do not follow on from the snapshot
+ * the book stays stale and another snapshot is requested. A snapshot
+ * that cannot be read whole is dropped, and its book treated as if it
+ * had a gap.
+ *
+ * Entries without a RptSeq are passed straight on, so for a venue
+ * that does not send one a gap only shows up as a missing book.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class GapRecovery implements DepthUpdateHandler, GapListener {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(GapRecovery.class);
+
+    /**
+     * Default most entries held back for one stale book.
+     */
+    public static final int DEFAULT_MAX_HELD = 10000;
+
+    /**
+     * RptSeq of an entry or snapshot without one.
+     */
+    private static final int NO_SEQ = 0;
+    /**
+     * Initial number of symbols tracked.
+     */
+    private static final int INITIAL_SYMBOLS = 64;
+    /**
+     * Initial number of entries held for a stale book.
+     */
+    private static final int INITIAL_HELD = 16;
+
+    /**
+     * Handler entries are passed on to.
+     */
+    private final transient DepthUpdateHandler target;
+    /**
+     * Registry symbol IDs are taken from, shared with the target.
+     */
+    private final transient SymbolRegistry registry;
+    /**
+     * Counters of gaps and recoveries, null for none.
+     */
+    private final transient FeedMetrics metrics;
+    /**
+     * Most entries held back for one stale book.
+     */
+    private final transient int maxHeld;
+    /**
+     * Asks for snapshots, null to wait for one to arrive anyway.
+     */
+    private volatile SnapshotRequester requester;
+    /**
+     * Sequence of each book by symbol ID, replaced by a larger copy
+     * when full. Written by the session thread only.
+     */
+    private volatile BookSequence[] sequences =
+                            new BookSequence[INITIAL_SYMBOLS];
+    /**
+     * Symbols found without a book, by whichever thread applies
+     * their entries.
+     */
+    private final transient Queue<String> missingBooks =
+                            new ConcurrentLinkedQueue<String>();
+    /**
+     * Book of the snapshot being passed on, null outside one.
+     * Session thread only.
+     */
+    private transient BookSequence snapshotBook;
+    /**
+     * RptSeq of that snapshot.
+     */
+    private transient int snapshotSeq;
+
+    /**
+     * Sequence of one book.
+     */
+    private static final class BookSequence {
+        /**
+         * Instrument symbol.
+         */
+        private final String symbol;
+        /**
+         * RptSeq of the last entry passed on, NO_SEQ for none.
+         */
+        private int lastSeq;
+        /**
+         * True from a gap until the book is recovered.
+         */
+        private volatile boolean stale;
+        /**
+         * Copies of the entries held back, reused.
+         */
+        private PriceDepth[] held = new PriceDepth[0];
+        /**
+         * Number of entries held back.
+         */
+        private int heldCount;
+
+        /**
+         * Constructor.
+         * @param symbol instrument symbol
+         */
+        BookSequence(final String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Hold back a copy of an entry.
+         * @param priceDepth entry
+         * @param action MDUpdateAction of the entry
+         */
+        void hold(final PriceDepth priceDepth, final char action) {
+
+            if (heldCount == held.length) {
+                final PriceDepth[] larger = new PriceDepth[
+                        Math.max(INITIAL_HELD, held.length * 2)];
+                System.arraycopy(held, 0, larger, 0, heldCount);
+                held = larger;
+            }
+
+            if (held[heldCount] == null) {
+                held[heldCount] = new PriceDepth();
+            }
+
+            final PriceDepth copy = held[heldCount++];
+
+            copy.copy(priceDepth);
+            copy.setUpdateAction(action);
+        }
+
+        /**
+         * Drop the entries held back before an index, keeping the
+         * copies for reuse.
+         * @param index first entry kept
+         */
+        void dropHeld(final int index) {
+
+            for (int i = index; i < heldCount; i++) {
+                final PriceDepth kept = held[i];
+                held[i] = held[i - index];
+                held[i - index] = kept;
+            }
+
+            heldCount -= index;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param target handler entries are passed on to
+     * @param registry registry symbol IDs are taken from, the one
+     *        the target uses
+     * @param metrics counters of gaps and recoveries, null for none
+     */
+    public GapRecovery(final DepthUpdateHandler target,
+                       final SymbolRegistry registry,
+                       final FeedMetrics metrics) {
+        this(target, registry, metrics, DEFAULT_MAX_HELD);
+    }
+
+    /**
+     * Constructor.
+     * @param target handler entries are passed on to
+     * @param registry registry symbol IDs are taken from, the one
+     *        the target uses
+     * @param metrics counters of gaps and recoveries, null for none
+     * @param maxHeld most entries held back for one stale book,
+     *        beyond that they are dropped and the snapshot must
+     *        cover them
+     */
+    public GapRecovery(final DepthUpdateHandler target,
+                       final SymbolRegistry registry,
+                       final FeedMetrics metrics,
+                       final int maxHeld) {
+
+        if (maxHeld < 1) {
+            throw new IllegalArgumentException(
+                    "At least one entry must be held: " + maxHeld);
+        }
+
+        this.target = target;
+        this.registry = registry;
+        this.metrics = metrics;
+        this.maxHeld = maxHeld;
+    }
+
+    /**
+     * Set what asks for the snapshot of a stale book. Without one
+     * a stale book waits for a snapshot to arrive anyway.
+     * @param snapshotRequester requester, null for none
+     */
+    public void setSnapshotRequester(
+            final SnapshotRequester snapshotRequester) {
+        this.requester = snapshotRequester;
+    }
+
+    @Override
+    public void beginSnapshot(final PriceDepth priceDepth) {
+
+        snapshotBook = sequenceOf(priceDepth);
+        snapshotSeq = priceDepth.getRptSeq();
+
+        target.beginSnapshot(priceDepth);
+    }
+
+    @Override
+    public void newDepthData(final PriceDepth priceDepth) {
+
+        // the entries of a snapshot are not sequenced on their own
+        if (snapshotBook != null
+                || accept(priceDepth, MDUpdateAction.NEW)) {
+            target.newDepthData(priceDepth);
+        }
+    }
+
+    @Override
+    public void updateDepthData(final PriceDepth priceDepth) {
+        if (accept(priceDepth, MDUpdateAction.CHANGE)) {
+            target.updateDepthData(priceDepth);
+        }
+    }
+
+    @Override
+    public void deleteDepthLevel(final PriceDepth priceDepth) {
+        if (accept(priceDepth, MDUpdateAction.DELETE)) {
+            target.deleteDepthLevel(priceDepth);
+        }
+    }
+
+    /**
+     * Finish a snapshot by replaying what was held back for its
+     * book into it, then let the target publish it.
+     * @param priceDepth entry naming the book
+     */
+    @Override
+    public void endSnapshot(final PriceDepth priceDepth) {
+
+        if (snapshotBook != null) {
+            final BookSequence book = snapshotBook;
+
+            snapshotBook = null;
+            recover(book);
+        }
+
+        target.endSnapshot(priceDepth);
+    }
+
+    /**
+     * Give up on a snapshot that could not be read whole. The old
+     * book is kept but may have missed updates, so it is marked
+     * stale and its entries held back until another snapshot lands.
+     * @param priceDepth entry naming the book
+     */
+    @Override
+    public void abortSnapshot(final PriceDepth priceDepth) {
+
+        final BookSequence book = snapshotBook;
+
+        snapshotBook = null;
+        target.abortSnapshot(priceDepth);
+
+        if (book == null) {
+            return;
+        }
+
+        if (book.stale) {
+            request(book);
+        } else {
+            gap(book, "snapshot unreadable");
+        }
+    }
+
+    /**
+     * End the message and deal with any missing books found since
+     * the last one.
+     */
+    @Override
+    public void endOfMessage() {
+
+        target.endOfMessage();
+
+        String symbol = missingBooks.poll();
+
+        while (symbol != null) {
+            final BookSequence book = sequenceOf(registry.register(symbol),
+                                                 symbol);
+
+            if (!book.stale) {
+                gap(book, "no book");
+            }
+
+            symbol = missingBooks.poll();
+        }
+    }
+
+    /**
+     * Queue a symbol found without a book, to be marked stale on
+     * the session thread at the end of the next message.
+     * @param priceDepth entry that could not be applied
+     */
+    @Override
+    public void onGap(final PriceDepth priceDepth) {
+        missingBooks.add(priceDepth.getSymbol());
+    }
+
+    /**
+     * Check the RptSeq of an incremental entry.
+     * @param priceDepth entry
+     * @param action MDUpdateAction of the entry
+     * @return true if the entry is to be passed on
+     */
+    private boolean accept(final PriceDepth priceDepth, final char action) {
+
+        final BookSequence book = sequenceOf(priceDepth);
+        final int rptSeq = priceDepth.getRptSeq();
+
+        boolean accepted = true;
+
+        if (book.stale) {
+            hold(book, priceDepth, action);
+            accepted = false;
+        } else if (rptSeq != NO_SEQ) {
+            if (book.lastSeq != NO_SEQ && rptSeq <= book.lastSeq) {
+                duplicate();
+                accepted = false;
+            } else if (book.lastSeq != NO_SEQ
+                        && rptSeq != book.lastSeq + 1) {
+                gap(book, "RptSeq " + rptSeq + " after " + book.lastSeq);
+                hold(book, priceDepth, action);
+                accepted = false;
+            } else {
+                book.lastSeq = rptSeq;
+            }
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Hold back an entry of a stale book. If too many are held
+     * they are dropped, so the snapshot has to cover them, and
+     * the snapshot is asked for again in case it was lost.
+     * @param book stale book
+     * @param priceDepth entry
+     * @param action MDUpdateAction of the entry
+     */
+    private void hold(final BookSequence book, final PriceDepth priceDepth,
+                      final char action) {
+
+        if (book.heldCount == maxHeld) {
+            book.heldCount = 0;
+
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Dropped " + maxHeld + " entries held for "
+                        + book.symbol + ", requesting a snapshot again");
+            }
+
+            request(book);
+        }
+
+        book.hold(priceDepth, action);
+    }
+
+    /**
+     * Mark a book stale and ask for a snapshot of it.
+     * @param book book
+     * @param reason what was found, for the log
+     */
+    private void gap(final BookSequence book, final String reason) {
+
+        book.stale = true;
+
+        if (metrics != null) {
+            metrics.gap();
+        }
+
+        if (LOG.isWarnEnabled()) {
+            LOG.warn("Gap in " + book.symbol + ", " + reason
+                    + ", requesting a snapshot");
+        }
+
+        request(book);
+    }
+
+    /**
+     * Ask for a snapshot of a book, if there is a requester.
+     * @param book book
+     */
+    private void request(final BookSequence book) {
+
+        final SnapshotRequester current = requester;
+
+        if (current != null) {
+            current.requestSnapshot(book.symbol);
+        }
+    }
+
+    /**
+     * Take up the sequence of a snapshot just passed on, and replay
+     * the entries held back for its book that come after it.
+     * @param book book of the snapshot
+     */
+    private void recover(final BookSequence book) {
+
+        book.lastSeq = snapshotSeq;
+
+        if (!book.stale) {
+            return;
+        }
+
+        int next = 0;
+        int replayed = 0;
+
+        // without a RptSeq the snapshot was sent after every entry
+        // held, which it already covers
+        if (snapshotSeq == NO_SEQ) {
+            next = book.heldCount;
+        }
+
+        while (next < book.heldCount) {
+
+            final PriceDepth entry = book.held[next];
+            final int rptSeq = entry.getRptSeq();
+
+            if (rptSeq != NO_SEQ && rptSeq > book.lastSeq) {
+                if (rptSeq != book.lastSeq + 1) {
+                    break;
+                }
+
+                apply(entry);
+                book.lastSeq = rptSeq;
+                replayed++;
+            }
+
+            next++;
+        }
+
+        book.dropHeld(next);
+
+        if (book.heldCount > 0) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Snapshot of " + book.symbol + " at RptSeq "
+                        + snapshotSeq + " does not reach the entries"
+                        + " held, requesting another");
+            }
+
+            request(book);
+        } else {
+            book.stale = false;
+
+            if (metrics != null) {
+                metrics.recovered();
+            }
+
+            if (LOG.isInfoEnabled()) {
+                LOG.info("Recovered " + book.symbol + " at RptSeq "
+                        + book.lastSeq + ", " + replayed
+                        + " entries replayed");
+            }
+        }
+    }
+
+    /**
+     * Pass a held entry on to the target.
+     * @param entry entry
+     */
+    private void apply(final PriceDepth entry) {
+
+        final char action = entry.getUpdateAction();
+
+        if (action == MDUpdateAction.CHANGE) {
+            target.updateDepthData(entry);
+        } else if (action == MDUpdateAction.DELETE) {
+            target.deleteDepthLevel(entry);
+        } else {
+            target.newDepthData(entry);
+        }
+    }
+
+    /**
+     * Count an entry dropped as already applied.
+     */
+    private void duplicate() {
+        if (metrics != null) {
+            metrics.duplicate();
+        }
+    }
+
+    /**
+     * Get the sequence of the book of an entry. An entry without a
+     * symbol ID is given one, so the target does not look it up
+     * again.
+     * @param priceDepth entry
+     * @return sequence
+     */
+    private BookSequence sequenceOf(final PriceDepth priceDepth) {
+
+        int id = priceDepth.getSymbolId();
+
+        if (id == SymbolRegistry.NOT_FOUND) {
+            id = registry.register(priceDepth.getSymbol());
+            priceDepth.setSymbolId(id);
+        }
+
+        return sequenceOf(id, priceDepth.getSymbol());
+    }
+
+    /**
+     * Get the sequence of a book, creating it the first time.
+     * Session thread only.
+     * @param id symbol ID
+     * @param symbol instrument symbol
+     * @return sequence
+     */
+    private BookSequence sequenceOf(final int id, final String symbol) {
+
+        BookSequence[] current = sequences;
+
+        if (id >= current.length) {
+            // copy rather than grow in place, so readers only see
+            // whole sequences after the volatile write below
+            final BookSequence[] larger = new BookSequence[
+                    Math.max(current.length * 2,
+                             Integer.highestOneBit(id) * 2)];
+            System.arraycopy(current, 0, larger, 0, current.length);
+            sequences = larger;
+            current = larger;
+        }
+
+        BookSequence book = current[id];
+
+        if (book == null) {
+            book = new BookSequence(symbol);
+            current[id] = book;
+            // publish the new sequence to readers of isStale
+            sequences = current;
+        }
+
+        return book;
+    }
+
+    /**
+     * Is a book waiting for a snapshot after a gap. Safe to call
+     * from any thread.
+     * @param symbol instrument symbol
+     * @return true if the book is stale
+     */
+    public boolean isStale(final String symbol) {
+
+        final int id = registry.getId(symbol);
+        final BookSequence[] current = sequences;
+
+        boolean stale = false;
+
+        if (id >= 0 && id < current.length && current[id] != null) {
+            stale = current[id].stale;
+        }
+
+        return stale;
+    }
+}
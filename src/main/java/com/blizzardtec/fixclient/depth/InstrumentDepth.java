@@ -3,189 +3,746 @@
  */
 package com.blizzardtec.fixclient.depth;
 
+import java.lang.invoke.VarHandle;
+
 import com.blizzardtec.fixclient.OrderType;
 
 /**
+ * Bid and offer depth for one instrument.
+ *
+ * A book has a single writer thread. Readers on other threads use
+ * snapshot, copyDepth or getDepth, which are guarded by a seqlock:
+ * the writer bumps a version to odd before changing the book and
+ * back to even after, and a reader retries its copy if the version
+ * was odd or moved while it copied. Neither side takes a lock.
+ *
+ * A full refresh is built into a spare pair of sides that readers
+ * never see, then published by swapping the pairs in one write, so
+ * a reader sees the old book or the new one and nothing in between.
+ * The old pair becomes the spare for the next refresh.
+ *
  * @author Barnaby Golden
  *
  */
 public final class InstrumentDepth {
 
     /**
-     * Number of depth levels to maintain.
+     * Default number of depth levels to maintain.
      */
     public static final int DEPTH_LEVELS = 3;
+    /**
+     * Depth setting for a book that keeps every level (MarketDepth 0).
+     */
+    public static final int FULL_DEPTH = 0;
+    /**
+     * Default most levels a full depth book keeps on each side.
+     */
+    public static final int DEFAULT_MAX_FULL_DEPTH = 10000;
+    /**
+     * Level index returned when an update changes nothing.
+     */
+    private static final int NO_CHANGE = -1;
     /**
      * Instrument symbol.
      */
     private String symbol;
     /**
-     * List containing bid price depth levels.
+     * Bid price depth levels. Swapped only inside a write.
+     */
+    private transient BookSide bids;
+    /**
+     * Offer price depth levels. Swapped only inside a write.
+     */
+    private transient BookSide offers;
+    /**
+     * Bid levels a full refresh is built into. Writer thread only.
+     */
+    private transient BookSide spareBids;
+    /**
+     * Offer levels a full refresh is built into. Writer thread only.
+     */
+    private transient BookSide spareOffers;
+    /**
+     * Set while a full refresh is being built, updates then go to
+     * the spare sides. Writer thread only.
      */
-    private final transient PriceDepth[] bidPriceDepths;
+    private transient boolean building;
     /**
-     * List containing offer price depth levels.
+     * Number of depth levels maintained, FULL_DEPTH for all levels.
      */
-    private final transient PriceDepth[] offerPriceDepths;
+    private final transient int marketDepth;
+    /**
+     * Number of decimal places prices are held to.
+     */
+    private final transient int priceScale;
+    /**
+     * How updates locate the level they apply to.
+     */
+    private final transient BookMode bookMode;
+    /**
+     * Seqlock version, odd while the writer is changing the book.
+     */
+    private volatile long version;
+    /**
+     * ID of the symbol in the registry of the owning depth manager.
+     */
+    private transient int symbolId = SymbolRegistry.NOT_FOUND;
+    /**
+     * BookListener change flags since the last takeChanges.
+     * Writer thread only.
+     */
+    private transient int changes;
+    /**
+     * Set while the book is on its writer's list of books changed
+     * by the current message. Writer thread only.
+     */
+    private transient boolean changeQueued;
 
     /**
      * Constructor.
      * @param symbol the instrument symbol for this depth data
      */
     public InstrumentDepth(final String symbol) {
+        this(symbol, DEPTH_LEVELS);
+    }
+
+    /**
+     * Constructor.
+     * @param symbol the instrument symbol for this depth data
+     * @param marketDepth number of depth levels to maintain,
+     *        FULL_DEPTH to keep every level
+     */
+    public InstrumentDepth(final String symbol, final int marketDepth) {
+        this(symbol, marketDepth, PriceDepth.DEFAULT_PRICE_SCALE);
+    }
+
+    /**
+     * Constructor.
+     * @param symbol the instrument symbol for this depth data
+     * @param marketDepth number of depth levels to maintain,
+     *        FULL_DEPTH to keep every level
+     * @param priceScale number of decimal places prices are held to
+     */
+    public InstrumentDepth(final String symbol, final int marketDepth,
+                           final int priceScale) {
+        this(symbol, marketDepth, priceScale, BookMode.POSITION);
+    }
+
+    /**
+     * Constructor.
+     * @param symbol the instrument symbol for this depth data
+     * @param marketDepth number of depth levels to maintain,
+     *        FULL_DEPTH to keep every level
+     * @param priceScale number of decimal places prices are held to
+     * @param bookMode how updates locate the level they apply to
+     */
+    public InstrumentDepth(final String symbol, final int marketDepth,
+                           final int priceScale, final BookMode bookMode) {
+        this(symbol, marketDepth, priceScale, bookMode,
+             DEFAULT_MAX_FULL_DEPTH);
+    }
+
+    /**
+     * Constructor.
+     * @param symbol the instrument symbol for this depth data
+     * @param marketDepth number of depth levels to maintain,
+     *        FULL_DEPTH to keep every level
+     * @param priceScale number of decimal places prices are held to
+     * @param bookMode how updates locate the level they apply to
+     * @param maxFullDepth most levels a full depth book keeps on
+     *        each side, entries deeper than that are dropped
+     */
+    public InstrumentDepth(final String symbol, final int marketDepth,
+                           final int priceScale, final BookMode bookMode,
+                           final int maxFullDepth) {
+
+        if (marketDepth < FULL_DEPTH) {
+            throw new IllegalArgumentException(
+                    "Invalid market depth " + marketDepth);
+        }
+        if (maxFullDepth < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid maximum full depth " + maxFullDepth);
+        }
+        if (priceScale < 0 || priceScale > FixedPoint.MAX_SCALE) {
+            throw new IllegalArgumentException(
+                    "Invalid price scale " + priceScale);
+        }
 
         this.symbol = symbol;
+        this.marketDepth = marketDepth;
+        this.priceScale = priceScale;
+        this.bookMode = bookMode;
 
         // initialise the price depth levels
         // for both bid and offer
-        bidPriceDepths = new PriceDepth[DEPTH_LEVELS];
-        offerPriceDepths = new PriceDepth[DEPTH_LEVELS];
+        bids = new BookSide(marketDepth, maxFullDepth);
+        offers = new BookSide(marketDepth, maxFullDepth);
+        spareBids = new BookSide(marketDepth, maxFullDepth);
+        spareOffers = new BookSide(marketDepth, maxFullDepth);
     }
 
     /**
-     * Update a given price depth level.
+     * Update a given price depth level. In PRICE mode an update
+     * for a price not in the book is inserted.
+     * The values are copied, the caller may reuse priceDepth.
      * @param priceDepth price depth update
      */
     public void updateDepth(final PriceDepth priceDepth) {
 
-        if (priceDepth.getType() == OrderType.BID) {
-            bidPriceDepths[priceDepth.getLevel() - 1] = priceDepth;
-        } else if (priceDepth.getType() == OrderType.OFFER) {
-            offerPriceDepths[priceDepth.getLevel() - 1] = priceDepth;
+        final BookSide side = getWriteSide(priceDepth.getType());
+
+        if (side == null) {
+            return;
         }
+
+        final long price = toBookPrice(priceDepth);
+        int changed = NO_CHANGE;
+
+        beginWrite();
+        try {
+            if (bookMode == BookMode.PRICE) {
+                changed = upsertPrice(side, priceDepth.getType(),
+                        price, priceDepth.getOrderSize());
+            } else {
+                final int index = priceDepth.getLevel() - 1;
+
+                if (side.inRange(index)) {
+                    side.update(index, price, priceDepth.getOrderSize());
+                    changed = index;
+                }
+            }
+        } finally {
+            endWrite();
+        }
+
+        recordChange(changed);
     }
 
     /**
-     * Add a new price depth data entry.
+     * Add a new price depth data entry, moving lower levels down
+     * and dropping the bottom level off the book. In PRICE mode
+     * the level is found from the price and a price already in the
+     * book is updated.
+     * The values are copied, the caller may reuse priceDepth.
      * @param priceDepth price depth data
      */
     public void newDepth(final PriceDepth priceDepth) {
 
-        if (priceDepth.getType() == OrderType.BID) {
-            insertDepthLevel(bidPriceDepths, priceDepth);
-        } else if (priceDepth.getType() == OrderType.OFFER) {
-            insertDepthLevel(offerPriceDepths, priceDepth);
+        final BookSide side = getWriteSide(priceDepth.getType());
+
+        if (side == null) {
+            return;
         }
-    }
 
+        final long price = toBookPrice(priceDepth);
+        int changed = NO_CHANGE;
+
+        beginWrite();
+        try {
+            if (bookMode == BookMode.PRICE) {
+                changed = upsertPrice(side, priceDepth.getType(),
+                        price, priceDepth.getOrderSize());
+            } else {
+                final int index = priceDepth.getLevel() - 1;
+
+                if (side.inRange(index)) {
+                    side.insert(index, price, priceDepth.getOrderSize());
+                    changed = index;
+                }
+            }
+        } finally {
+            endWrite();
+        }
+
+        recordChange(changed);
+    }
 
     /**
-     * Insert a new depth level into a list of depth levels
-     * retaining order dropping level off the bottom.
-     * @param depths list of depths
-     * @param priceDepth new price depth to be inserted
+     * Delete a given price depth, moving lower levels up. In PRICE
+     * mode the level is found from the price.
+     * @param priceDepth price depth to remove
      */
-    private void insertDepthLevel(
-            final PriceDepth[] depths,
-            final PriceDepth priceDepth) {
+    public void deleteDepth(final PriceDepth priceDepth) {
+
+        final BookSide side = getWriteSide(priceDepth.getType());
+
+        if (side == null) {
+            return;
+        }
 
-        final int level = priceDepth.getLevel();
-        final int length = depths.length;
+        int index;
 
-        for (int i = (length - 1); i > (level - 1); i--) {
-            depths[i] = depths[i - 1];
-            if (depths[i] != null) {
-                depths[i].setLevel(i + 1);
+        if (bookMode == BookMode.PRICE) {
+            index = side.search(toBookPrice(priceDepth),
+                    priceDepth.getType() == OrderType.BID);
+        } else {
+            index = priceDepth.getLevel() - 1;
+        }
+
+        if (index >= 0 && index < side.getCount()) {
+            beginWrite();
+            try {
+                side.delete(index);
+            } finally {
+                endWrite();
             }
+
+            recordChange(index);
         }
+    }
+
+    /**
+     * Start building a full refresh. Until endSnapshot the updates
+     * go to empty spare sides and readers keep seeing the old book.
+     * Entries passed in level or price order are appended, so the
+     * build costs one write per entry.
+     */
+    public void beginSnapshot() {
 
-        depths[level - 1] = priceDepth;
+        spareBids.clear();
+        spareOffers.clear();
+        building = true;
     }
 
     /**
-     * Delete a given price depth.
-     * @param priceDepth price depth to remove
+     * Throw away the book built since beginSnapshot and keep the old
+     * one. The spare sides are cleared by the next beginSnapshot.
      */
-    public void deleteDepth(final PriceDepth priceDepth) {
+    public void abortSnapshot() {
+        building = false;
+    }
 
-        if (priceDepth.getType() == OrderType.BID) {
-            deleteDepthLevel(bidPriceDepths, priceDepth.getLevel());
-        } else if (priceDepth.getType() == OrderType.OFFER) {
-            deleteDepthLevel(offerPriceDepths, priceDepth.getLevel());
+    /**
+     * Publish the book built since beginSnapshot in place of the
+     * old one. Nothing is copied: the sides are swapped, and the old
+     * ones are kept to build the next refresh into.
+     */
+    public void endSnapshot() {
+
+        if (!building) {
+            return;
         }
+
+        final BookSide oldBids = bids;
+        final BookSide oldOffers = offers;
+
+        building = false;
+
+        beginWrite();
+        try {
+            bids = spareBids;
+            offers = spareOffers;
+        } finally {
+            endWrite();
+        }
+
+        spareBids = oldBids;
+        spareOffers = oldOffers;
+
+        recordChange(0);
     }
 
     /**
-     * Delete a given level from an array of price depths.
-     * @param depths price depths
-     * @param level level to remove
+     * Set the size at a price, inserting the price in order
+     * if it is not in the book.
+     * @param side book side
+     * @param type order type (BID/OFFER)
+     * @param price price at the book scale
+     * @param size order size
+     * @return index of the level changed, NO_CHANGE if the price
+     *         was dropped
      */
-    private void deleteDepthLevel(
-            final PriceDepth[] depths,
-            final int level) {
+    private static int upsertPrice(final BookSide side, final char type,
+                                   final long price, final int size) {
 
-        final int length = depths.length;
+        final int found = side.search(price, type == OrderType.BID);
 
-        for (int i = level; i < length; i++) {
-            depths[i - 1] = depths[i];
-            if (depths[i - 1] != null) {
-                depths[i - 1].setLevel(i);
+        int changed = NO_CHANGE;
+
+        if (found >= 0) {
+            side.update(found, price, size);
+            changed = found;
+        } else {
+            final int index = -found - 1;
+
+            // a price worse than a full fixed depth book is dropped
+            if (side.inRange(index)) {
+                side.insert(index, price, size);
+                changed = index;
             }
         }
 
-        depths[length - 1] = null;
+        return changed;
+    }
+
+    /**
+     * Record a change for book listeners.
+     * @param index index of the level changed, NO_CHANGE for none
+     */
+    private void recordChange(final int index) {
+
+        if (index == 0) {
+            changes |= BookListener.TOP_OF_BOOK;
+        }
+        if (index >= 0) {
+            changes |= BookListener.DEPTH;
+        }
+    }
+
+    /**
+     * Get and clear the changes since the last call.
+     * Writer thread only.
+     * @return BookListener change flags, 0 if nothing changed
+     */
+    int takeChanges() {
+
+        final int taken = changes;
+
+        changes = 0;
+
+        return taken;
+    }
+
+    /**
+     * @return true if the book has changed since the last takeChanges
+     */
+    boolean hasChanges() {
+        return changes != 0;
+    }
+
+    /**
+     * @return true if the book is on its writer's changed list
+     */
+    boolean isChangeQueued() {
+        return changeQueued;
+    }
+
+    /**
+     * @param queued true while the book is on its writer's changed list
+     */
+    void setChangeQueued(final boolean queued) {
+        this.changeQueued = queued;
+    }
+
+    /**
+     * Convert the price of an update to the scale of this book.
+     * @param priceDepth price depth update
+     * @return price at the book scale
+     */
+    private long toBookPrice(final PriceDepth priceDepth) {
+        return FixedPoint.rescale(priceDepth.getPrice(),
+                priceDepth.getPriceScale(), priceScale);
+    }
+
+    /**
+     * Mark the book as changing. The version goes odd and the
+     * fence keeps the level writes that follow from being seen
+     * before it. The spare sides of a refresh being built are not
+     * seen by readers, so writes to them are not marked.
+     */
+    private void beginWrite() {
+        if (!building) {
+            version = version + 1;
+            VarHandle.storeStoreFence();
+        }
+    }
+
+    /**
+     * Mark the book as stable. The volatile write of an even
+     * version publishes the level writes before it.
+     */
+    private void endWrite() {
+        if (!building) {
+            version = version + 1;
+        }
+    }
+
+    /**
+     * Wait for the writer to leave the book stable.
+     * @return the stable version
+     */
+    private long awaitStable() {
+
+        long current = version;
+
+        while ((current & 1L) != 0) {
+            Thread.onSpinWait();
+            current = version;
+        }
+
+        return current;
+    }
+
+    /**
+     * Has the book changed since a stable version was read.
+     * The fence keeps the reads of the copy before the check.
+     * @param stable version read before the copy
+     * @return true if the copy must be retried
+     */
+    private boolean changedSince(final long stable) {
+        VarHandle.loadLoadFence();
+        return version != stable;
+    }
+
+    /**
+     * Take a consistent copy of both sides of the book. Safe to
+     * call from any thread, it never blocks the writer.
+     * @param snapshot snapshot to copy into
+     */
+    public void snapshot(final DepthSnapshot snapshot) {
+
+        long stable;
+
+        do {
+            stable = awaitStable();
+            snapshot.copy(symbol, priceScale, bids, offers);
+        } while (changedSince(stable));
+
+        snapshot.setVersion(stable);
     }
 
     /**
      * Get the depth for a given instrument symbol and order type.
+     * The levels are copied out, empty levels are null.
      * @param symbol instrument symbol
      * @param type order type (BID/OFFER)
      * @return list of price depths
      */
     public PriceDepth[] getDepth(final String symbol, final char type) {
 
-        PriceDepth[] depths;
+        BookSide side = getSide(type);
 
-        if (type == OrderType.BID) {
-            depths = bidPriceDepths;
-        } else {
-            depths = offerPriceDepths;
+        if (side == null) {
+            side = offers;
         }
 
+        final PriceDepth[] depths = new PriceDepth[side.getLevels()];
+
+        copyDepth(type, depths);
+
         return depths;
     }
 
+    /**
+     * Copy the depth for a given order type into a caller owned array,
+     * reusing any price depth objects already in it. Empty levels
+     * are set to null. Safe to call from any thread.
+     * @param type order type (BID/OFFER)
+     * @param depths array to copy into
+     * @return number of levels copied
+     */
+    public int copyDepth(final char type, final PriceDepth[] depths) {
+
+        long stable;
+        int levels;
+
+        do {
+            stable = awaitStable();
+
+            // read inside the loop, a refresh swaps the sides
+            BookSide side = getSide(type);
+
+            if (side == null) {
+                side = offers;
+            }
+
+            levels = side.copyTo(depths, symbol, type, priceScale);
+        } while (changedSince(stable));
+
+        return levels;
+    }
+
+    /**
+     * Is a price held at a given level. Like the other single level
+     * getters this reads the live book, so only the writer thread
+     * gets a consistent answer; other threads should use snapshot.
+     * @param type order type (BID/OFFER)
+     * @param level one based depth level
+     * @return true if the level holds a price
+     */
+    public boolean isLevelPresent(final char type, final int level) {
+
+        final BookSide side = getSide(type);
+
+        return side != null && side.isPresent(level - 1);
+    }
+
+    /**
+     * Get the price at a given level.
+     * @param type order type (BID/OFFER)
+     * @param level one based depth level
+     * @return price scaled by the price scale, zero if the level is empty
+     */
+    public long getPrice(final char type, final int level) {
+        return getSide(type).getPrice(level - 1);
+    }
+
+    /**
+     * Get the price at a given level as a double, for display only.
+     * @param type order type (BID/OFFER)
+     * @param level one based depth level
+     * @return price, zero if the level is empty
+     */
+    public double getMidPrice(final char type, final int level) {
+        return FixedPoint.toDouble(getPrice(type, level), priceScale);
+    }
+
+    /**
+     * Find the level holding a price.
+     * @param type order type (BID/OFFER)
+     * @param price price scaled by the price scale
+     * @return one based depth level, 0 if the price is not in the book
+     */
+    public int findLevel(final char type, final long price) {
+        return getSide(type).find(price) + 1;
+    }
+
+    /**
+     * Total order size over the top levels of one side.
+     * @param type order type (BID/OFFER)
+     * @param levels number of levels to add up
+     * @return total order size
+     */
+    public long getTotalSize(final char type, final int levels) {
+        return getSide(type).totalSize(levels);
+    }
+
+    /**
+     * Get the order size at a given level.
+     * @param type order type (BID/OFFER)
+     * @param level one based depth level
+     * @return order size, zero if the level is empty
+     */
+    public int getOrderSize(final char type, final int level) {
+        return getSide(type).getSize(level - 1);
+    }
+
+    /**
+     * Number of levels in use on one side, one past the deepest
+     * level set. Writer thread only.
+     * @param type order type (BID/OFFER)
+     * @return number of levels
+     */
+    int getLevelCount(final char type) {
+        return getSide(type).getCount();
+    }
+
+    /**
+     * Get the side updates to an order type are written to, the
+     * spare side while a full refresh is being built.
+     * @param type order type (BID/OFFER)
+     * @return book side or null for an unknown type
+     */
+    private BookSide getWriteSide(final char type) {
+
+        BookSide side = getSide(type);
+
+        if (building && side == bids) {
+            side = spareBids;
+        } else if (building && side == offers) {
+            side = spareOffers;
+        }
+
+        return side;
+    }
+
+    /**
+     * Get the book side for an order type.
+     * @param type order type (BID/OFFER)
+     * @return book side or null for an unknown type
+     */
+    private BookSide getSide(final char type) {
+
+        BookSide side = null;
+
+        if (type == OrderType.BID) {
+            side = bids;
+        } else if (type == OrderType.OFFER) {
+            side = offers;
+        }
+
+        return side;
+    }
+
     /**
      * Returns a String containing depth level information.
+     * Safe to call from any thread.
      * @return depth level information
      */
     public String printDepth() {
 
+        final DepthSnapshot snapshot = new DepthSnapshot();
+
+        snapshot(snapshot);
+
         final String nwl = System.getProperty("line.separator");
 
         final StringBuilder buffer = new StringBuilder();
 
         buffer.append(nwl + this.symbol + " BID" + nwl);
 
-        for (int i = 0; i < bidPriceDepths.length; i++) {
-            final PriceDepth pDepth = bidPriceDepths[i];
-            if (pDepth == null) {
-                buffer.append("NULL");
-            } else {
-                buffer.append("Level " + pDepth.getLevel()
-                        + " "
-                        + pDepth.getOrderSize()
-                        + " at "
-                        + pDepth.getMidPrice() + nwl);
-            }
-        }
+        printSide(buffer, snapshot, OrderType.BID, nwl);
 
         buffer.append(nwl + symbol + " OFFER" + nwl);
 
-        for (int i = 0; i < offerPriceDepths.length; i++) {
-            final PriceDepth pDepth = offerPriceDepths[i];
-            if (pDepth == null) {
-                buffer.append("NULL" + nwl);
-            } else {
-                buffer.append("Level " + pDepth.getLevel()
+        printSide(buffer, snapshot, OrderType.OFFER, nwl);
+
+        return buffer.toString();
+    }
+
+    /**
+     * Append the levels of one side of the book.
+     * @param buffer buffer to append to
+     * @param snapshot copy of the book
+     * @param type order type (BID/OFFER)
+     * @param nwl line separator
+     */
+    private static void printSide(final StringBuilder buffer,
+                                  final DepthSnapshot snapshot,
+                                  final char type,
+                                  final String nwl) {
+
+        for (int level = 1; level <= snapshot.getLevels(type); level++) {
+            if (snapshot.isLevelPresent(type, level)) {
+                buffer.append("Level " + level
                         + " "
-                        + pDepth.getOrderSize()
+                        + snapshot.getOrderSize(type, level)
                         + " at "
-                        + pDepth.getMidPrice() + nwl);
+                        + snapshot.getMidPrice(type, level)
+                        + nwl);
+            } else {
+                buffer.append("NULL" + nwl);
             }
         }
+    }
 
-        return buffer.toString();
+    /**
+     * @return book version, it increases every time the book changes
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return number of depth levels maintained, FULL_DEPTH for all
+     */
+    public int getMarketDepth() {
+        return marketDepth;
+    }
+
+    /**
+     * @return how updates locate the level they apply to
+     */
+    public BookMode getBookMode() {
+        return bookMode;
+    }
+
+    /**
+     * @return number of decimal places prices are held to
+     */
+    public int getPriceScale() {
+        return priceScale;
     }
 
     /**
@@ -201,4 +758,20 @@ public final class InstrumentDepth {
     public void setSymbol(final String symbol) {
         this.symbol = symbol;
     }
+
+    /**
+     * @return ID of the symbol in the registry of the owning depth
+     *         manager, SymbolRegistry.NOT_FOUND for a standalone book
+     */
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    /**
+     * @param symbolId ID of the symbol, set by the depth manager
+     *        before the book is published
+     */
+    void setSymbolId(final int symbolId) {
+        this.symbolId = symbolId;
+    }
 }
@@ -9,14 +9,29 @@ package com.blizzardtec.fixclient.depth;
  */
 public final class PriceDepth {
 
+    /**
+     * Scale used for prices set as doubles and for books without
+     * their own price scale.
+     */
+    public static final int DEFAULT_PRICE_SCALE = 8;
+
     /**
      * Instrument symbol.
      */
     private String symbol;
     /**
-     * Mid price.
+     * Registry ID of the symbol, SymbolRegistry.NOT_FOUND if not
+     * resolved yet.
+     */
+    private int symbolId = SymbolRegistry.NOT_FOUND;
+    /**
+     * Mid price as a scaled long.
      */
-    private double midPrice;
+    private long price;
+    /**
+     * Number of decimal places in price.
+     */
+    private int priceScale = DEFAULT_PRICE_SCALE;
     /**
      * Price type.
      */
@@ -33,6 +48,26 @@ public final class PriceDepth {
      * Update action.
      */
     private char updateAction;
+    /**
+     * RptSeq of the entry, 0 if the venue does not send one.
+     */
+    private int rptSeq;
+
+    /**
+     * Copy all values from another price depth into this one.
+     * @param source price depth to copy from
+     */
+    public void copy(final PriceDepth source) {
+        this.symbol = source.symbol;
+        this.symbolId = source.symbolId;
+        this.price = source.price;
+        this.priceScale = source.priceScale;
+        this.type = source.type;
+        this.orderSize = source.orderSize;
+        this.level = source.level;
+        this.updateAction = source.updateAction;
+        this.rptSeq = source.rptSeq;
+    }
 
     /**
      * @return the symbol
@@ -41,22 +76,69 @@ public final class PriceDepth {
         return symbol;
     }
     /**
+     * Set the symbol. The symbol ID is cleared, set it afterwards
+     * if it is known.
      * @param symbol the symbol to set
      */
     public void setSymbol(final String symbol) {
         this.symbol = symbol;
+        this.symbolId = SymbolRegistry.NOT_FOUND;
+    }
+    /**
+     * @return the registry ID of the symbol, SymbolRegistry.NOT_FOUND
+     *         if not resolved yet
+     */
+    public int getSymbolId() {
+        return symbolId;
+    }
+    /**
+     * Set the registry ID of the symbol. It must come from the
+     * registry of the depth manager the entry is applied to.
+     * @param symbolId the symbol ID, SymbolRegistry.NOT_FOUND to
+     *        have it looked up from the symbol
+     */
+    public void setSymbolId(final int symbolId) {
+        this.symbolId = symbolId;
     }
     /**
+     * The mid price as a double, for display only.
      * @return the midPrice
      */
     public double getMidPrice() {
-        return midPrice;
+        return FixedPoint.toDouble(price, priceScale);
     }
     /**
+     * Set the mid price from a double, rounded to the price scale.
      * @param midPrice the midPrice to set
      */
     public void setMidPrice(final double midPrice) {
-        this.midPrice = midPrice;
+        this.price = FixedPoint.fromDouble(midPrice, priceScale);
+    }
+    /**
+     * @return the price as a scaled long
+     */
+    public long getPrice() {
+        return price;
+    }
+    /**
+     * @param price the price as a scaled long
+     */
+    public void setPrice(final long price) {
+        this.price = price;
+    }
+    /**
+     * @return the number of decimal places in price
+     */
+    public int getPriceScale() {
+        return priceScale;
+    }
+    /**
+     * Set the number of decimal places in price. The price
+     * itself is not converted.
+     * @param priceScale the number of decimal places in price
+     */
+    public void setPriceScale(final int priceScale) {
+        this.priceScale = priceScale;
     }
     /**
      * @return the type
@@ -106,4 +188,16 @@ public final class PriceDepth {
     public void setUpdateAction(final char updateAction) {
         this.updateAction = updateAction;
     }
+    /**
+     * @return RptSeq of the entry, 0 if there is none
+     */
+    public int getRptSeq() {
+        return rptSeq;
+    }
+    /**
+     * @param rptSeq RptSeq of the entry, 0 if there is none
+     */
+    public void setRptSeq(final int rptSeq) {
+        this.rptSeq = rptSeq;
+    }
 }
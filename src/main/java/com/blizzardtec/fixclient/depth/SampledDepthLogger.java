@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs whole books, at most once per interval for each symbol.
+ *
+ * Rendering a book is expensive, so this is meant to run behind a
+ * ConflatingBookListener, which calls it from a single thread away
+ * from the updates. Changes inside the interval are skipped.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class SampledDepthLogger implements BookListener {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(SampledDepthLogger.class);
+
+    /**
+     * Initial number of symbols held.
+     */
+    private static final int INITIAL_SYMBOLS = 64;
+
+    /**
+     * Minimum time between dumps of one book, 0 to dump every change.
+     */
+    private final transient long intervalMillis;
+    /**
+     * Time of the last dump by symbol ID.
+     */
+    private transient long[] lastDumps = new long[INITIAL_SYMBOLS];
+    /**
+     * Books dumped.
+     */
+    private transient long dumpCount;
+    /**
+     * Changes skipped inside the interval.
+     */
+    private transient long skippedCount;
+
+    /**
+     * Constructor.
+     * @param intervalMillis minimum time between dumps of one book,
+     *        0 to dump every change
+     */
+    public SampledDepthLogger(final long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * @return true if the logger would write the dumps
+     */
+    public static boolean isEnabled() {
+        return LOG.isInfoEnabled();
+    }
+
+    @Override
+    public void onBookChange(final InstrumentDepth book, final int changes) {
+
+        final int id = Math.max(book.getSymbolId(), 0);
+        final long now = System.currentTimeMillis();
+
+        if (id >= lastDumps.length) {
+            final long[] larger = new long[Math.max(lastDumps.length * 2,
+                                                    id + 1)];
+            System.arraycopy(lastDumps, 0, larger, 0, lastDumps.length);
+            lastDumps = larger;
+        }
+
+        if (lastDumps[id] == 0 || now - lastDumps[id] >= intervalMillis) {
+            lastDumps[id] = now;
+            dumpCount++;
+            LOG.info(book.printDepth());
+        } else {
+            skippedCount++;
+        }
+    }
+
+    /**
+     * @return number of books dumped
+     */
+    public long getDumpCount() {
+        return dumpCount;
+    }
+
+    /**
+     * @return number of changes skipped inside the interval
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+/**
+ * Asks the venue for a fresh snapshot of one book.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public interface SnapshotRequester {
+
+    /**
+     * Request a snapshot of one symbol. Called on the session
+     * thread, so the request must be sent later, not in the call.
+     * @param symbol instrument symbol
+     */
+    void requestSnapshot(String symbol);
+}
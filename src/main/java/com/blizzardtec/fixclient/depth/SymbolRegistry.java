@@ -0,0 +1,283 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+/**
+ * Assigns dense int IDs to instrument symbols, so books can be
+ * held in an array indexed by ID.
+ *
+ * Symbols are registered at subscription time, or on first sight
+ * of an unsubscribed symbol. Registration copies the tables and is
+ * synchronized; lookups read the current tables without locking
+ * and without creating objects, from a String or straight from the
+ * bytes of a tag 55 value.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class SymbolRegistry {
+
+    /**
+     * ID returned for a symbol that has not been registered.
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * Initial number of hash slots.
+     */
+    private static final int INITIAL_SLOTS = 64;
+    /**
+     * Multiplier of the symbol hash, as String.hashCode.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+    /**
+     * Mask reading a byte as an unsigned ASCII char.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Current tables, replaced whole on registration.
+     */
+    private volatile Tables tables = new Tables(INITIAL_SLOTS, 0);
+
+    /**
+     * Open addressing hash of symbol to ID, plus ID to symbol.
+     * Never changed once published.
+     */
+    private static final class Tables {
+        /**
+         * Symbols by hash slot, null for an empty slot.
+         */
+        private final String[] keys;
+        /**
+         * IDs by hash slot.
+         */
+        private final int[] ids;
+        /**
+         * Symbols by ID.
+         */
+        private final String[] symbols;
+        /**
+         * Number of registered symbols.
+         */
+        private final int size;
+
+        /**
+         * Constructor.
+         * @param slots number of hash slots, a power of two
+         * @param size number of symbols
+         */
+        Tables(final int slots, final int size) {
+            this.keys = new String[slots];
+            this.ids = new int[slots];
+            this.symbols = new String[Math.max(size, 1)];
+            this.size = size;
+        }
+    }
+
+    /**
+     * Register a symbol. Registering a symbol again returns the
+     * ID it already has.
+     * @param symbol instrument symbol
+     * @return ID, from 0 up in the order symbols are registered
+     */
+    public synchronized int register(final String symbol) {
+
+        final Tables current = tables;
+
+        int id = getId(symbol);
+
+        if (id == NOT_FOUND) {
+
+            id = current.size;
+
+            // keep the hash at most half full
+            int slots = current.keys.length;
+
+            while (slots < (id + 1) * 2) {
+                slots = slots * 2;
+            }
+
+            final Tables next = new Tables(slots, id + 1);
+
+            System.arraycopy(current.symbols, 0, next.symbols, 0, id);
+            next.symbols[id] = symbol;
+
+            for (int i = 0; i <= id; i++) {
+                insert(next, next.symbols[i], i);
+            }
+
+            tables = next;
+        }
+
+        return id;
+    }
+
+    /**
+     * Add a symbol to unpublished tables.
+     * @param next tables
+     * @param symbol symbol
+     * @param id ID
+     */
+    private static void insert(final Tables next, final String symbol,
+                               final int id) {
+
+        final int mask = next.keys.length - 1;
+        int slot = hash(symbol) & mask;
+
+        while (next.keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+
+        next.keys[slot] = symbol;
+        next.ids[slot] = id;
+    }
+
+    /**
+     * Get the ID of a symbol.
+     * @param symbol instrument symbol
+     * @return ID, NOT_FOUND if it has not been registered
+     */
+    public int getId(final CharSequence symbol) {
+
+        final Tables current = tables;
+        final int mask = current.keys.length - 1;
+        final int length = symbol.length();
+
+        int slot = hash(symbol) & mask;
+        String key = current.keys[slot];
+
+        while (key != null) {
+            if (key.length() == length && matches(key, symbol)) {
+                return current.ids[slot];
+            }
+            slot = (slot + 1) & mask;
+            key = current.keys[slot];
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Get the ID of a symbol from the ASCII bytes of its tag value.
+     * @param buffer buffer holding the value
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @return ID, NOT_FOUND if it has not been registered
+     */
+    public int getId(final byte[] buffer, final int offset,
+                     final int length) {
+
+        final Tables current = tables;
+        final int mask = current.keys.length - 1;
+
+        int hash = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            hash = HASH_MULTIPLIER * hash + (buffer[i] & BYTE_MASK);
+        }
+
+        int slot = spread(hash) & mask;
+        String key = current.keys[slot];
+
+        while (key != null) {
+            if (key.length() == length
+                    && matches(key, buffer, offset)) {
+                return current.ids[slot];
+            }
+            slot = (slot + 1) & mask;
+            key = current.keys[slot];
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Get the symbol of an ID.
+     * @param id ID
+     * @return symbol, null if no symbol has the ID
+     */
+    public String getSymbol(final int id) {
+
+        final Tables current = tables;
+
+        String symbol = null;
+
+        if (id >= 0 && id < current.size) {
+            symbol = current.symbols[id];
+        }
+
+        return symbol;
+    }
+
+    /**
+     * @return number of registered symbols, one more than the
+     *         highest ID
+     */
+    public int size() {
+        return tables.size;
+    }
+
+    /**
+     * Hash of a symbol, the same for its chars and its ASCII bytes.
+     * @param symbol symbol
+     * @return hash
+     */
+    private static int hash(final CharSequence symbol) {
+
+        int hash = 0;
+
+        for (int i = 0; i < symbol.length(); i++) {
+            hash = HASH_MULTIPLIER * hash + symbol.charAt(i);
+        }
+
+        return spread(hash);
+    }
+
+    /**
+     * Mix the high bits of a hash into the low bits used for slots.
+     * @param hash hash
+     * @return mixed hash
+     */
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> Short.SIZE);
+    }
+
+    /**
+     * Compare a key with a symbol of the same length.
+     * @param key registered symbol
+     * @param symbol symbol looked up
+     * @return true if they hold the same chars
+     */
+    private static boolean matches(final String key,
+                                   final CharSequence symbol) {
+
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != symbol.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Compare a key with ASCII bytes of the same length.
+     * @param key registered symbol
+     * @param buffer buffer holding the value
+     * @param offset offset of the first byte
+     * @return true if they hold the same chars
+     */
+    private static boolean matches(final String key, final byte[] buffer,
+                                   final int offset) {
+
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != (buffer[offset + i] & BYTE_MASK)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
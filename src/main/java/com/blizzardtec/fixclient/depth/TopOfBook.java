@@ -0,0 +1,140 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+/**
+ * A consistent copy of the best bid and offer of a consolidated
+ * book, taken without locking (see ConsolidatedBook.copyTop).
+ *
+ * A reader thread can keep one and refill it.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class TopOfBook {
+
+    /**
+     * Best bid price, zero if there are no bids.
+     */
+    private long bidPrice;
+    /**
+     * Total size at the best bid.
+     */
+    private long bidSize;
+    /**
+     * Number of venues at the best bid.
+     */
+    private int bidVenues;
+    /**
+     * Best offer price, zero if there are no offers.
+     */
+    private long offerPrice;
+    /**
+     * Total size at the best offer.
+     */
+    private long offerSize;
+    /**
+     * Number of venues at the best offer.
+     */
+    private int offerVenues;
+    /**
+     * Number of decimal places prices are held to.
+     */
+    private int priceScale;
+    /**
+     * Version the copy was taken at.
+     */
+    private long version;
+
+    /**
+     * Fill the bid. Called by ConsolidatedBook inside its version check.
+     * @param price best bid price
+     * @param size total size
+     * @param venues number of venues
+     */
+    void setBid(final long price, final long size, final int venues) {
+        this.bidPrice = price;
+        this.bidSize = size;
+        this.bidVenues = venues;
+    }
+
+    /**
+     * Fill the offer. Called by ConsolidatedBook inside its version
+     * check.
+     * @param price best offer price
+     * @param size total size
+     * @param venues number of venues
+     */
+    void setOffer(final long price, final long size, final int venues) {
+        this.offerPrice = price;
+        this.offerSize = size;
+        this.offerVenues = venues;
+    }
+
+    /**
+     * @param scale number of decimal places prices are held to
+     * @param topVersion version the copy was taken at
+     */
+    void setScale(final int scale, final long topVersion) {
+        this.priceScale = scale;
+        this.version = topVersion;
+    }
+
+    /**
+     * @return best bid price as a scaled long, zero if no bids
+     */
+    public long getBidPrice() {
+        return bidPrice;
+    }
+
+    /**
+     * @return total size at the best bid
+     */
+    public long getBidSize() {
+        return bidSize;
+    }
+
+    /**
+     * @return number of venues at the best bid
+     */
+    public int getBidVenues() {
+        return bidVenues;
+    }
+
+    /**
+     * @return best offer price as a scaled long, zero if no offers
+     */
+    public long getOfferPrice() {
+        return offerPrice;
+    }
+
+    /**
+     * @return total size at the best offer
+     */
+    public long getOfferSize() {
+        return offerSize;
+    }
+
+    /**
+     * @return number of venues at the best offer
+     */
+    public int getOfferVenues() {
+        return offerVenues;
+    }
+
+    /**
+     * @return number of decimal places prices are held to
+     */
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    /**
+     * @return version the copy was taken at, it increases every time
+     *         the top of book changes
+     */
+    public long getVersion() {
+        return version;
+    }
+}
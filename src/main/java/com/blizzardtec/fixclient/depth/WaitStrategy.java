@@ -0,0 +1,74 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a depth ring thread does while it has nothing to do, trading
+ * latency against CPU use.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spin on the CPU. Lowest latency, burns a core.
+     */
+    BUSY_SPIN {
+        @Override
+        public void idle(final int idleCount) {
+            Thread.onSpinWait();
+        }
+    },
+    /**
+     * Spin briefly, then yield the CPU to other threads.
+     */
+    YIELD {
+        @Override
+        public void idle(final int idleCount) {
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    },
+    /**
+     * Spin, then yield, then park for short periods. Least CPU,
+     * adds up to PARK_NANOS of latency once the ring goes quiet.
+     */
+    PARK {
+        @Override
+        public void idle(final int idleCount) {
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (idleCount < SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    /**
+     * Idle rounds spent spinning before backing off.
+     */
+    private static final int SPIN_TRIES = 100;
+    /**
+     * Idle rounds spent yielding before parking.
+     */
+    private static final int YIELD_TRIES = 100;
+    /**
+     * Time parked for each idle round once backed off.
+     */
+    private static final long PARK_NANOS = 50000L;
+
+    /**
+     * Wait once.
+     * @param idleCount number of idle rounds in a row so far
+     */
+    public abstract void idle(int idleCount);
+}
@@ -0,0 +1,540 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blizzardtec.fixclient.depth.PriceDepth;
+
+/**
+ * Append only journal of the depth entries applied to the books,
+ * so the state of a book can be rebuilt after the event.
+ *
+ * Entries are copied as fixed width binary records, see
+ * JournalFormat, into memory mapped segment files. Appending claims
+ * a slot with one atomic add and writes straight into the mapping,
+ * so book threads never block on the disk, and several of them may
+ * share a journal.
+ *
+ * A segment rolls when it is full. A roller thread keeps the next
+ * segment created and mapped ahead of time, and forces full
+ * segments to disk. If the next segment is not ready when one
+ * fills up the entry is dropped and counted rather than waiting.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class DepthJournal {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(DepthJournal.class);
+
+    /**
+     * Default size of a segment file.
+     */
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    /**
+     * Action of a record starting a full refresh of a book: the new
+     * entries up to the matching END_SNAPSHOT replace the book.
+     */
+    public static final char BEGIN_SNAPSHOT = 'B';
+    /**
+     * Action of a record ending a full refresh, the book built since
+     * BEGIN_SNAPSHOT is now the book.
+     */
+    public static final char END_SNAPSHOT = 'E';
+    /**
+     * Action of a record giving up on a full refresh, the book built
+     * since BEGIN_SNAPSHOT is thrown away and the old one kept.
+     */
+    public static final char ABORT_SNAPSHOT = 'A';
+
+    /**
+     * Time the roller parks for when there is nothing to do.
+     */
+    private static final long IDLE_NANOS = 1000000L;
+    /**
+     * Time the roller waits before retrying a failed segment.
+     */
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * Initial number of symbols tracked per segment.
+     */
+    private static final int INITIAL_SYMBOLS = 64;
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * Directory segment files are written to.
+     */
+    private final transient File directory;
+    /**
+     * Start of every segment file name.
+     */
+    private final transient String prefix;
+    /**
+     * Bytes in each segment file.
+     */
+    private final transient int segmentBytes;
+    /**
+     * Wall clock time the journal was created, epoch nanos.
+     */
+    private final transient long baseEpochNanos;
+    /**
+     * System.nanoTime when the journal was created.
+     */
+    private final transient long baseNanos;
+    /**
+     * Segment being appended to, null when stopped.
+     */
+    private final transient AtomicReference<Segment> current =
+                                new AtomicReference<Segment>();
+    /**
+     * Next segment, mapped ahead by the roller, null if not ready.
+     */
+    private final transient AtomicReference<Segment> spare =
+                                new AtomicReference<Segment>();
+    /**
+     * Full segments waiting to be forced to disk.
+     */
+    private final transient Queue<Segment> retired =
+                                new ConcurrentLinkedQueue<Segment>();
+    /**
+     * Number of the next segment created.
+     */
+    private final transient AtomicInteger segmentNumber =
+                                new AtomicInteger();
+    /**
+     * Entries appended.
+     */
+    private final transient AtomicLong appended = new AtomicLong();
+    /**
+     * Entries dropped because no segment was ready.
+     */
+    private final transient AtomicLong dropped = new AtomicLong();
+    /**
+     * Roller thread, null until started.
+     */
+    private transient Thread roller;
+    /**
+     * Cleared to stop the roller thread.
+     */
+    private volatile boolean running;
+
+    /**
+     * One mapped segment file.
+     */
+    private static final class Segment {
+        /**
+         * File.
+         */
+        private final File file;
+        /**
+         * Mapping of the whole file.
+         */
+        private final MappedByteBuffer buffer;
+        /**
+         * Offset of the next unclaimed record.
+         */
+        private final AtomicInteger position =
+                            new AtomicInteger(JournalFormat.HEADER_BYTES);
+        /**
+         * Symbol IDs whose names are written in this segment. A
+         * flag lost when another thread grows the array only means
+         * the name is written again.
+         */
+        private volatile boolean[] defined =
+                            new boolean[INITIAL_SYMBOLS];
+
+        /**
+         * Constructor.
+         * @param file file
+         * @param buffer mapping of the whole file
+         */
+        Segment(final File file, final MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param directory directory segment files are written to
+     * @param prefix start of every segment file name
+     */
+    public DepthJournal(final File directory, final String prefix) {
+        this(directory, prefix, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Constructor.
+     * @param directory directory segment files are written to
+     * @param prefix start of every segment file name
+     * @param segmentBytes bytes in each segment file
+     */
+    public DepthJournal(final File directory, final String prefix,
+                        final int segmentBytes) {
+
+        if (segmentBytes < JournalFormat.HEADER_BYTES
+                + JournalFormat.RECORD_BYTES * 2) {
+            throw new IllegalArgumentException(
+                    "Journal segment too small: " + segmentBytes);
+        }
+
+        this.directory = directory;
+        this.prefix = prefix;
+        // whole records only
+        this.segmentBytes = segmentBytes - (segmentBytes
+                - JournalFormat.HEADER_BYTES) % JournalFormat.RECORD_BYTES;
+
+        baseNanos = System.nanoTime();
+        baseEpochNanos = System.currentTimeMillis() * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Create the first segment and start the roller thread.
+     * @throws IOException thrown if the first segment cannot be created
+     */
+    public void start() throws IOException {
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory "
+                    + directory);
+        }
+
+        current.set(createSegment());
+        running = true;
+
+        roller = new Thread("journal-roller") {
+            @Override
+            public void run() {
+                while (running) {
+                    roll();
+                }
+                forceRetired();
+            }
+        };
+
+        roller.setDaemon(true);
+        roller.start();
+    }
+
+    /**
+     * Stop appending, force what has been written and stop the
+     * roller thread.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+
+        final Segment last = current.getAndSet(null);
+
+        if (last != null) {
+            retired.add(last);
+        }
+
+        running = false;
+
+        if (roller != null) {
+            LockSupport.unpark(roller);
+            roller.join();
+            roller = null;
+        }
+
+        forceRetired();
+
+        // the segment mapped ahead was never used
+        final Segment unused = spare.getAndSet(null);
+
+        if (unused != null && !unused.file.delete()) {
+            LOG.warn("Cannot delete unused journal segment {}",
+                    unused.file);
+        }
+    }
+
+    /**
+     * One pass of the roller: map the next segment if it is not
+     * ready, force full segments, then wait.
+     */
+    private void roll() {
+
+        long idle = IDLE_NANOS;
+
+        if (spare.get() == null) {
+            try {
+                spare.set(createSegment());
+            } catch (IOException e) {
+                LOG.error("Cannot create journal segment", e);
+                idle = RETRY_NANOS;
+            }
+        }
+
+        forceRetired();
+
+        LockSupport.parkNanos(this, idle);
+    }
+
+    /**
+     * Force every full segment to disk.
+     */
+    private void forceRetired() {
+
+        Segment full = retired.poll();
+
+        while (full != null) {
+            full.buffer.force();
+            LOG.info("Journal segment {} closed at {} bytes", full.file,
+                    full.position.get());
+            full = retired.poll();
+        }
+    }
+
+    /**
+     * Create and map a segment file and write its header.
+     * @return segment
+     * @throws IOException thrown if the file cannot be created
+     */
+    private Segment createSegment() throws IOException {
+
+        final int number = segmentNumber.getAndIncrement();
+        final long created = System.currentTimeMillis();
+        final File file = new File(directory, String.format(Locale.ROOT,
+                "%s-%d-%06d%s", prefix, baseEpochNanos / NANOS_PER_MILLI,
+                number, JournalFormat.SUFFIX));
+
+        final MappedByteBuffer buffer;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentBytes);
+            // the mapping stays valid once the file is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    0, segmentBytes);
+        }
+
+        buffer.order(JournalFormat.ORDER);
+        buffer.putInt(JournalFormat.VERSION_OFFSET, JournalFormat.VERSION);
+        buffer.putInt(JournalFormat.RECORD_BYTES_OFFSET,
+                JournalFormat.RECORD_BYTES);
+        buffer.putInt(JournalFormat.SEGMENT_OFFSET, number);
+        buffer.putLong(JournalFormat.CREATED_OFFSET, created);
+        buffer.putInt(0, JournalFormat.MAGIC);
+
+        return new Segment(file, buffer);
+    }
+
+    /**
+     * Append an applied entry.
+     * @param action MDUpdateAction NEW, CHANGE or DELETE, or
+     *        BEGIN_SNAPSHOT, END_SNAPSHOT or ABORT_SNAPSHOT
+     * @param symbolId symbol ID of the book
+     * @param symbol symbol of the book
+     * @param priceDepth entry
+     */
+    public void append(final char action, final int symbolId,
+                       final String symbol, final PriceDepth priceDepth) {
+
+        final long time = baseEpochNanos + System.nanoTime() - baseNanos;
+
+        Segment segment = current.get();
+
+        while (segment != null) {
+
+            final boolean define = !isDefined(segment, symbolId);
+            int records = 1;
+
+            if (define) {
+                records += chunks(symbol);
+            }
+
+            // only claim while there is room, so claims on a full
+            // segment cannot run on and wrap
+            int offset = segmentBytes;
+
+            if (segment.position.get() < segmentBytes) {
+                offset = segment.position.getAndAdd(
+                        records * JournalFormat.RECORD_BYTES);
+            }
+
+            if (offset + records * JournalFormat.RECORD_BYTES
+                    <= segmentBytes) {
+
+                if (define) {
+                    putSymbol(segment.buffer, offset, symbolId, symbol,
+                            time);
+                    setDefined(segment, symbolId);
+                }
+
+                putEntry(segment.buffer, offset + (records - 1)
+                        * JournalFormat.RECORD_BYTES, action, symbolId,
+                        priceDepth, time);
+                appended.incrementAndGet();
+                return;
+            }
+
+            segment = next(segment);
+        }
+    }
+
+    /**
+     * Move on from a full segment to the one mapped ahead.
+     * @param full full segment
+     * @return segment to append to, null to drop the entry
+     */
+    private Segment next(final Segment full) {
+
+        final Segment ready = spare.get();
+
+        if (ready == null || ready == full) {
+            dropped.incrementAndGet();
+            return null;
+        }
+
+        if (current.compareAndSet(full, ready)) {
+            spare.compareAndSet(ready, null);
+            retired.add(full);
+            LockSupport.unpark(roller);
+        }
+
+        return current.get();
+    }
+
+    /**
+     * @param segment segment
+     * @param symbolId symbol ID
+     * @return true if the name of the symbol is in the segment
+     */
+    private static boolean isDefined(final Segment segment,
+                                     final int symbolId) {
+        final boolean[] defined = segment.defined;
+        return symbolId < defined.length && defined[symbolId];
+    }
+
+    /**
+     * Note the name of a symbol is in a segment.
+     * @param segment segment
+     * @param symbolId symbol ID
+     */
+    private static void setDefined(final Segment segment,
+                                   final int symbolId) {
+
+        boolean[] defined = segment.defined;
+
+        if (symbolId >= defined.length) {
+            final boolean[] larger = new boolean[Math.max(
+                    defined.length * 2, symbolId + 1)];
+            System.arraycopy(defined, 0, larger, 0, defined.length);
+            defined = larger;
+        }
+
+        defined[symbolId] = true;
+        segment.defined = defined;
+    }
+
+    /**
+     * @param symbol symbol
+     * @return number of records holding the name
+     */
+    private static int chunks(final String symbol) {
+        return Math.max(1, (symbol.length() + JournalFormat.CHUNK_CHARS - 1)
+                / JournalFormat.CHUNK_CHARS);
+    }
+
+    /**
+     * Write the name of a symbol.
+     * @param buffer segment mapping
+     * @param offset offset of the first record
+     * @param symbolId symbol ID
+     * @param symbol symbol
+     * @param time time, epoch nanos
+     */
+    private static void putSymbol(final MappedByteBuffer buffer,
+                                  final int offset, final int symbolId,
+                                  final String symbol, final long time) {
+
+        final int count = chunks(symbol);
+
+        for (int chunk = 0; chunk < count; chunk++) {
+
+            final int record = offset + chunk * JournalFormat.RECORD_BYTES;
+            final int start = chunk * JournalFormat.CHUNK_CHARS;
+            final int length = Math.min(JournalFormat.CHUNK_CHARS,
+                    symbol.length() - start);
+
+            buffer.put(record + JournalFormat.SIDE, (byte) chunk);
+            buffer.put(record + JournalFormat.LENGTH, (byte) length);
+            buffer.putInt(record + JournalFormat.SYMBOL_ID, symbolId);
+            buffer.putLong(record + JournalFormat.TIME, time);
+
+            for (int i = 0; i < length; i++) {
+                buffer.put(record + JournalFormat.PRICE + i,
+                        (byte) symbol.charAt(start + i));
+            }
+
+            buffer.put(record, JournalFormat.SYMBOL);
+        }
+    }
+
+    /**
+     * Write an entry.
+     * @param buffer segment mapping
+     * @param record offset of the record
+     * @param action MDUpdateAction NEW, CHANGE or DELETE
+     * @param symbolId symbol ID
+     * @param priceDepth entry
+     * @param time time, epoch nanos
+     */
+    private static void putEntry(final MappedByteBuffer buffer,
+                                 final int record, final char action,
+                                 final int symbolId,
+                                 final PriceDepth priceDepth,
+                                 final long time) {
+
+        buffer.put(record + JournalFormat.SIDE,
+                (byte) priceDepth.getType());
+        buffer.put(record + JournalFormat.SCALE,
+                (byte) priceDepth.getPriceScale());
+        buffer.putInt(record + JournalFormat.SYMBOL_ID, symbolId);
+        buffer.putLong(record + JournalFormat.TIME, time);
+        buffer.putLong(record + JournalFormat.PRICE, priceDepth.getPrice());
+        buffer.putInt(record + JournalFormat.LEVEL, priceDepth.getLevel());
+        buffer.putInt(record + JournalFormat.SIZE,
+                priceDepth.getOrderSize());
+
+        // a record is complete once it has a type
+        buffer.put(record, (byte) action);
+    }
+
+    /**
+     * @return number of entries appended
+     */
+    public long getAppendedCount() {
+        return appended.get();
+    }
+
+    /**
+     * @return number of entries dropped because no segment was ready
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
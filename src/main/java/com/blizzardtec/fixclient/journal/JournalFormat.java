@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.journal;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of a depth journal file.
+ *
+ * A file is a header followed by fixed width records, little
+ * endian. Each record is one depth mutation, or a chunk of the name
+ * of a symbol ID, written before the ID is first used in the file,
+ * so every file can be read on its own. The type byte of a record
+ * is written last; the first record with a zero type is the end.
+ *
+ * <pre>
+ * header   0 int  MAGIC
+ *          4 int  VERSION
+ *          8 int  RECORD_BYTES
+ *         12 int  segment number
+ *         16 long created, epoch millis
+ *
+ * record   0 byte type, MDUpdateAction NEW/CHANGE/DELETE, SYMBOL,
+ *               or DepthJournal BEGIN/END/ABORT_SNAPSHOT
+ *          1 byte side (BID/OFFER), chunk number for SYMBOL
+ *          2 byte price scale
+ *          3 byte chars in the chunk for SYMBOL
+ *          4 int  symbol ID
+ *          8 long time, epoch nanos
+ *         16 long price as a scaled long, symbol chars for SYMBOL
+ *         24 int  level
+ *         28 int  order size
+ * </pre>
+ *
+ * @author Barnaby Golden
+ *
+ */
+final class JournalFormat {
+
+    /**
+     * File magic number, "FXDJ".
+     */
+    static final int MAGIC = 0x46584A44;
+    /**
+     * Format version. Version 2 added the snapshot records.
+     */
+    static final int VERSION = 2;
+    /**
+     * Oldest format version that can still be read.
+     */
+    static final int MIN_VERSION = 1;
+    /**
+     * Bytes of header before the first record.
+     */
+    static final int HEADER_BYTES = 64;
+    /**
+     * Bytes in each record.
+     */
+    static final int RECORD_BYTES = 32;
+    /**
+     * Byte order of every field.
+     */
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    /**
+     * File name suffix.
+     */
+    static final String SUFFIX = ".journal";
+
+    /**
+     * Record type of a symbol name chunk.
+     */
+    static final byte SYMBOL = 'S';
+    /**
+     * Record type of an unwritten slot.
+     */
+    static final byte EMPTY = 0;
+
+    /**
+     * Header offset of the format version.
+     */
+    static final int VERSION_OFFSET = 4;
+    /**
+     * Header offset of the record size.
+     */
+    static final int RECORD_BYTES_OFFSET = 8;
+    /**
+     * Header offset of the segment number.
+     */
+    static final int SEGMENT_OFFSET = 12;
+    /**
+     * Header offset of the creation time.
+     */
+    static final int CREATED_OFFSET = 16;
+
+    /**
+     * Record offset of the side, or chunk number.
+     */
+    static final int SIDE = 1;
+    /**
+     * Record offset of the price scale.
+     */
+    static final int SCALE = 2;
+    /**
+     * Record offset of the chunk length.
+     */
+    static final int LENGTH = 3;
+    /**
+     * Record offset of the symbol ID.
+     */
+    static final int SYMBOL_ID = 4;
+    /**
+     * Record offset of the time.
+     */
+    static final int TIME = 8;
+    /**
+     * Record offset of the price, or symbol chars.
+     */
+    static final int PRICE = 16;
+    /**
+     * Record offset of the level.
+     */
+    static final int LEVEL = 24;
+    /**
+     * Record offset of the order size.
+     */
+    static final int SIZE = 28;
+    /**
+     * Symbol chars in one chunk.
+     */
+    static final int CHUNK_CHARS = RECORD_BYTES - PRICE;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private JournalFormat() {
+        // private constructor
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import quickfix.field.MDUpdateAction;
+
+import com.blizzardtec.fixclient.depth.DepthUpdateHandler;
+import com.blizzardtec.fixclient.depth.PriceDepth;
+
+/**
+ * Reads the depth entries back out of journal segment files, in
+ * the order they were appended.
+ *
+ * Segments are read in file name order, which is the order they
+ * were written. Symbol names are resolved from the name records of
+ * each segment, so a single segment can be read on its own.
+ *
+ * replay applies the entries to a depth manager to rebuild the
+ * books. A full refresh is replayed as one, so the levels the book
+ * held before it are replaced rather than added to.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class JournalReader implements Closeable {
+
+    /**
+     * Initial number of symbols per segment.
+     */
+    private static final int INITIAL_SYMBOLS = 64;
+    /**
+     * Mask reading a byte as an unsigned value.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Segment files still to read, in order.
+     */
+    private final transient List<File> files;
+    /**
+     * Index of the next file to open.
+     */
+    private transient int nextFile;
+    /**
+     * Mapping of the segment being read, null before the first.
+     */
+    private transient MappedByteBuffer buffer;
+    /**
+     * Offset of the next record in the segment.
+     */
+    private transient int offset;
+    /**
+     * Symbols of the segment being read, by symbol ID.
+     */
+    private transient String[] symbols = new String[INITIAL_SYMBOLS];
+
+    /**
+     * Constructor.
+     * @param path a segment file, or a directory of segment files
+     */
+    public JournalReader(final File path) {
+
+        files = new ArrayList<File>();
+
+        if (path.isDirectory()) {
+            final File[] found = path.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(final File file) {
+                    return file.isFile() && file.getName()
+                                    .endsWith(JournalFormat.SUFFIX);
+                }
+            });
+
+            if (found != null) {
+                Arrays.sort(found);
+                files.addAll(Arrays.asList(found));
+            }
+        } else {
+            files.add(path);
+        }
+    }
+
+    /**
+     * Read the next entry.
+     * @param record record to fill in
+     * @return false if there are no more entries
+     * @throws IOException thrown if a segment cannot be read
+     */
+    public boolean next(final JournalRecord record) throws IOException {
+
+        while (true) {
+
+            if (buffer == null || offset + JournalFormat.RECORD_BYTES
+                                        > buffer.capacity()) {
+                if (!open()) {
+                    return false;
+                }
+            }
+
+            final byte type = buffer.get(offset);
+
+            if (type == JournalFormat.EMPTY) {
+                // the rest of the segment was never written
+                buffer = null;
+            } else if (type == JournalFormat.SYMBOL) {
+                readSymbol();
+                offset += JournalFormat.RECORD_BYTES;
+            } else {
+                final int symbolId =
+                    buffer.getInt(offset + JournalFormat.SYMBOL_ID);
+
+                record.set((char) type, symbolId, symbol(symbolId),
+                    buffer.getLong(offset + JournalFormat.TIME),
+                    (char) buffer.get(offset + JournalFormat.SIDE),
+                    buffer.getInt(offset + JournalFormat.LEVEL),
+                    buffer.getLong(offset + JournalFormat.PRICE),
+                    buffer.get(offset + JournalFormat.SCALE),
+                    buffer.getInt(offset + JournalFormat.SIZE));
+
+                offset += JournalFormat.RECORD_BYTES;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Apply every entry still to read to a handler, in order.
+     * @param handler handler, usually a depth manager with no
+     *        journal of its own
+     * @return number of entries applied
+     * @throws IOException thrown if a segment cannot be read
+     */
+    public long replay(final DepthUpdateHandler handler)
+            throws IOException {
+
+        final JournalRecord record = new JournalRecord();
+        final PriceDepth priceDepth = new PriceDepth();
+
+        long applied = 0;
+
+        while (next(record)) {
+
+            record.copyTo(priceDepth);
+
+            final char action = record.getAction();
+
+            if (action == DepthJournal.BEGIN_SNAPSHOT) {
+                handler.beginSnapshot(priceDepth);
+            } else if (action == DepthJournal.END_SNAPSHOT) {
+                handler.endSnapshot(priceDepth);
+            } else if (action == DepthJournal.ABORT_SNAPSHOT) {
+                handler.abortSnapshot(priceDepth);
+            } else if (action == MDUpdateAction.CHANGE) {
+                handler.updateDepthData(priceDepth);
+            } else if (action == MDUpdateAction.DELETE) {
+                handler.deleteDepthLevel(priceDepth);
+            } else {
+                handler.newDepthData(priceDepth);
+            }
+
+            applied++;
+        }
+
+        handler.endOfMessage();
+
+        return applied;
+    }
+
+    /**
+     * Open the next segment.
+     * @return false if there are no more segments
+     * @throws IOException thrown if the segment cannot be read
+     */
+    private boolean open() throws IOException {
+
+        buffer = null;
+
+        if (nextFile >= files.size()) {
+            return false;
+        }
+
+        final File file = files.get(nextFile++);
+        final MappedByteBuffer mapped;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    0, raf.length());
+        }
+
+        mapped.order(JournalFormat.ORDER);
+
+        if (mapped.capacity() < JournalFormat.HEADER_BYTES
+                || mapped.getInt(0) != JournalFormat.MAGIC) {
+            throw new IOException("Not a depth journal: " + file);
+        }
+
+        final int version = mapped.getInt(JournalFormat.VERSION_OFFSET);
+
+        if (version < JournalFormat.MIN_VERSION
+                || version > JournalFormat.VERSION
+                || mapped.getInt(JournalFormat.RECORD_BYTES_OFFSET)
+                    != JournalFormat.RECORD_BYTES) {
+            throw new IOException("Unsupported depth journal version: "
+                    + file);
+        }
+
+        buffer = mapped;
+        offset = JournalFormat.HEADER_BYTES;
+        Arrays.fill(symbols, null);
+
+        return true;
+    }
+
+    /**
+     * Read a chunk of a symbol name. The first chunk starts the
+     * name and later chunks add to it.
+     */
+    private void readSymbol() {
+
+        final int symbolId = buffer.getInt(offset + JournalFormat.SYMBOL_ID);
+        final int chunk = buffer.get(offset + JournalFormat.SIDE);
+        final int length = buffer.get(offset + JournalFormat.LENGTH);
+
+        final StringBuilder name = new StringBuilder();
+
+        if (chunk > 0 && symbol(symbolId) != null) {
+            name.append(symbol(symbolId));
+        }
+
+        for (int i = 0; i < length; i++) {
+            name.append((char) (buffer.get(offset + JournalFormat.PRICE + i)
+                                & BYTE_MASK));
+        }
+
+        if (symbolId >= symbols.length) {
+            symbols = Arrays.copyOf(symbols, Math.max(symbols.length * 2,
+                                                      symbolId + 1));
+        }
+
+        symbols[symbolId] = name.toString();
+    }
+
+    /**
+     * @param symbolId symbol ID
+     * @return symbol, null if the segment has no name for it
+     */
+    private String symbol(final int symbolId) {
+
+        String symbol = null;
+
+        if (symbolId >= 0 && symbolId < symbols.length) {
+            symbol = symbols[symbolId];
+        }
+
+        return symbol;
+    }
+
+    /**
+     * Stop reading. The mappings are released when collected.
+     */
+    @Override
+    public void close() {
+        buffer = null;
+        nextFile = files.size();
+    }
+
+    /**
+     * Print every entry in a journal.
+     * @param args a segment file or a directory of segment files
+     * @throws IOException thrown if a segment cannot be read
+     */
+    public static void main(final String[] args) throws IOException {
+
+        if (args.length != 1) {
+            System.err.println("Usage: JournalReader <file or directory>");
+            return;
+        }
+
+        final JournalRecord record = new JournalRecord();
+        final StringBuilder line = new StringBuilder();
+
+        try (JournalReader reader = new JournalReader(new File(args[0]))) {
+            while (reader.next(record)) {
+                line.setLength(0);
+                System.out.println(record.format(line));
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.journal;
+
+import com.blizzardtec.fixclient.depth.PriceDepth;
+import com.blizzardtec.fixclient.log.EventLog;
+
+/**
+ * One depth entry read back from a journal. Reused for every
+ * entry read, so the fields are only valid until the next read.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class JournalRecord {
+
+    /**
+     * MDUpdateAction NEW, CHANGE or DELETE, or a DepthJournal
+     * snapshot action.
+     */
+    private transient char action;
+    /**
+     * Symbol ID in the journal.
+     */
+    private transient int symbolId;
+    /**
+     * Symbol.
+     */
+    private transient String symbol;
+    /**
+     * Time the entry was applied, epoch nanos.
+     */
+    private transient long time;
+    /**
+     * Order type (BID/OFFER).
+     */
+    private transient char side;
+    /**
+     * Depth level.
+     */
+    private transient int level;
+    /**
+     * Unscaled price.
+     */
+    private transient long price;
+    /**
+     * Decimal places in the price.
+     */
+    private transient int priceScale;
+    /**
+     * Order size.
+     */
+    private transient int size;
+
+    /**
+     * Set every field.
+     * @param action MDUpdateAction NEW, CHANGE or DELETE, or a
+     *        DepthJournal snapshot action
+     * @param symbolId symbol ID
+     * @param symbol symbol
+     * @param time time, epoch nanos
+     * @param side order type
+     * @param level depth level
+     * @param price unscaled price
+     * @param priceScale decimal places in the price
+     * @param size order size
+     */
+    void set(final char action, final int symbolId, final String symbol,
+             final long time, final char side, final int level,
+             final long price, final int priceScale, final int size) {
+        this.action = action;
+        this.symbolId = symbolId;
+        this.symbol = symbol;
+        this.time = time;
+        this.side = side;
+        this.level = level;
+        this.price = price;
+        this.priceScale = priceScale;
+        this.size = size;
+    }
+
+    /**
+     * Copy the entry into a price depth, to apply it to a book.
+     * @param priceDepth price depth to fill in
+     */
+    public void copyTo(final PriceDepth priceDepth) {
+        priceDepth.setSymbol(symbol);
+        priceDepth.setUpdateAction(action);
+        priceDepth.setType(side);
+        priceDepth.setLevel(level);
+        priceDepth.setPrice(price);
+        priceDepth.setPriceScale(priceScale);
+        priceDepth.setOrderSize(size);
+    }
+
+    /**
+     * Append the entry as one line of text.
+     * @param buffer buffer
+     * @return the buffer
+     */
+    public StringBuilder format(final StringBuilder buffer) {
+
+        buffer.append(time).append(' ').append(action).append(' ')
+            .append(symbol).append(" side ").append(side)
+            .append(" level ").append(level).append(' ').append(size)
+            .append(" at ");
+        EventLog.appendDecimal(buffer, price, priceScale);
+
+        return buffer;
+    }
+
+    /**
+     * @return MDUpdateAction NEW, CHANGE or DELETE, or
+     *         DepthJournal BEGIN_SNAPSHOT, END_SNAPSHOT or
+     *         ABORT_SNAPSHOT
+     */
+    public char getAction() {
+        return action;
+    }
+
+    /**
+     * @return symbol ID in the journal
+     */
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    /**
+     * @return symbol
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return time the entry was applied, epoch nanos
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return order type (BID/OFFER)
+     */
+    public char getSide() {
+        return side;
+    }
+
+    /**
+     * @return depth level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return unscaled price
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    /**
+     * @return decimal places in the price
+     */
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    /**
+     * @return order size
+     */
+    public int getSize() {
+        return size;
+    }
+}
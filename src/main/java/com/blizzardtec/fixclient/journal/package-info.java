@@ -0,0 +1,8 @@
+/**
+ * journal.
+ *
+ * @since 1.0
+ * @author Barnaby
+ * @version 1.0
+ */
+package com.blizzardtec.fixclient.journal;
@@ -0,0 +1,160 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.latency;
+
+import java.util.Locale;
+
+/**
+ * A copy of a latency histogram, or of the part of it recorded in
+ * one interval, that percentiles are read from. Not thread safe,
+ * each reader keeps its own.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class HistogramSnapshot {
+
+    /**
+     * Highest percentile.
+     */
+    private static final double ALL = 100;
+    /**
+     * Nanoseconds per microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1e3;
+    /**
+     * Percentiles reported by format.
+     */
+    private static final double[] REPORTED = {50, 99, 99.9};
+    /**
+     * Names of the percentiles reported.
+     */
+    private static final String[] LABELS = {"p50", "p99", "p99.9"};
+
+    /**
+     * Values by bucket.
+     */
+    private final transient long[] counts =
+                            new long[LatencyHistogram.BUCKETS];
+    /**
+     * Number of values.
+     */
+    private transient long count;
+    /**
+     * Largest value.
+     */
+    private transient long max;
+
+    /**
+     * Set the count of one bucket.
+     * @param bucket bucket
+     * @param bucketCount values in the bucket
+     */
+    void setBucket(final int bucket, final long bucketCount) {
+        counts[bucket] = bucketCount;
+    }
+
+    /**
+     * Set the totals.
+     * @param valueCount number of values
+     * @param maxValue largest value
+     */
+    void setTotals(final long valueCount, final long maxValue) {
+        count = valueCount;
+        max = maxValue;
+    }
+
+    /**
+     * Make this the values recorded between two copies of the same
+     * histogram.
+     * @param later later copy
+     * @param earlier earlier copy
+     * @param intervalMax largest value recorded in between
+     */
+    public void setInterval(final HistogramSnapshot later,
+                            final HistogramSnapshot earlier,
+                            final long intervalMax) {
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = later.counts[i] - earlier.counts[i];
+        }
+
+        count = later.count - earlier.count;
+        max = intervalMax;
+    }
+
+    /**
+     * @return number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return largest value, exact
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get a percentile, to the precision of the buckets.
+     * @param percentile percentile, 100 for the highest
+     * @return highest value of the bucket the percentile is in,
+     *         0 if there are no values
+     */
+    public long getValueAtPercentile(final double percentile) {
+
+        if (count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.min(Math.max(
+                (long) Math.ceil(percentile / ALL * count), 1), count);
+
+        long seen = 0;
+        int bucket = 0;
+
+        while (bucket < counts.length - 1) {
+            seen += counts[bucket];
+
+            if (seen >= rank) {
+                break;
+            }
+
+            bucket++;
+        }
+
+        return Math.min(LatencyHistogram.highestValue(bucket), max);
+    }
+
+    /**
+     * Write the count, p50, p99, p99.9 and max, in microseconds.
+     * @param buffer buffer to append to
+     */
+    public void format(final StringBuilder buffer) {
+
+        buffer.append("count ").append(count);
+
+        for (int i = 0; i < REPORTED.length; i++) {
+            buffer.append(String.format(Locale.ROOT, " %s %.2f", LABELS[i],
+                    getValueAtPercentile(REPORTED[i]) / NANOS_PER_MICRO));
+        }
+
+        buffer.append(String.format(Locale.ROOT, " max %.2f us",
+                max / NANOS_PER_MICRO));
+    }
+
+    /**
+     * @return count, percentiles and max
+     */
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder();
+        format(buffer);
+
+        return buffer.toString();
+    }
+}
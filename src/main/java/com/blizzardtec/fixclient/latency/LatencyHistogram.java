@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.latency;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free, fixed size histogram of latencies in nanoseconds.
+ *
+ * Buckets are log-linear: values below 64 get a bucket each, and
+ * above that every power of two is split into 32 buckets, so any
+ * value is held to within about 3% in the same few kilobytes
+ * whatever the range. Recording is an atomic increment and two
+ * reads, with no allocation and no lock, from any number of
+ * threads.
+ *
+ * Readers take copies with copyTo while recording carries on, so
+ * a copy may hold a value that is not yet in its max, or the
+ * other way round. That is fine for reporting.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Bits of a value kept exactly, one more than the bits of the
+     * buckets in each power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+    /**
+     * Buckets in each power of two above the linear range.
+     */
+    private static final int HALF = 1 << (SUB_BUCKET_BITS - 1);
+    /**
+     * Number of buckets, enough for any positive long.
+     */
+    static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * HALF;
+
+    /**
+     * Values recorded by bucket.
+     */
+    private final transient AtomicLongArray counts =
+                                    new AtomicLongArray(BUCKETS);
+    /**
+     * Largest value recorded.
+     */
+    private final transient AtomicLong max = new AtomicLong();
+    /**
+     * Largest value recorded since the last takeIntervalMax.
+     */
+    private final transient AtomicLong intervalMax = new AtomicLong();
+
+    /**
+     * Record a latency. Negative values, from clocks out of step,
+     * are recorded as 0.
+     * @param nanos latency
+     */
+    public void record(final long nanos) {
+
+        final long value = Math.max(nanos, 0);
+
+        counts.incrementAndGet(bucket(value));
+        raise(max, value);
+        raise(intervalMax, value);
+    }
+
+    /**
+     * Raise a maximum to a value, if it is higher.
+     * @param maximum maximum
+     * @param value value
+     */
+    private static void raise(final AtomicLong maximum, final long value) {
+
+        long current = maximum.get();
+
+        while (value > current && !maximum.compareAndSet(current, value)) {
+            current = maximum.get();
+        }
+    }
+
+    /**
+     * Copy the counts and the largest value recorded so far.
+     * @param target copy to fill in
+     */
+    public void copyTo(final HistogramSnapshot target) {
+
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            final long bucketCount = counts.get(i);
+            target.setBucket(i, bucketCount);
+            count += bucketCount;
+        }
+
+        target.setTotals(count, max.get());
+    }
+
+    /**
+     * Get the largest value recorded since the last call, and start
+     * a new interval.
+     * @return largest value in the interval
+     */
+    public long takeIntervalMax() {
+        return intervalMax.getAndSet(0);
+    }
+
+    /**
+     * @param value non-negative value
+     * @return bucket the value is counted in
+     */
+    static int bucket(final long value) {
+
+        final int shift = Math.max(Long.SIZE
+                - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS, 0);
+
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * @param bucket bucket
+     * @return highest value counted in the bucket
+     */
+    static long highestValue(final int bucket) {
+
+        if (bucket < HALF * 2) {
+            return bucket;
+        }
+
+        final int shift = bucket / HALF - 1;
+        final long subBucket = bucket - shift * HALF;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
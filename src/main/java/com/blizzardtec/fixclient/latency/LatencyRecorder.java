@@ -0,0 +1,302 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.latency;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import quickfix.field.MDUpdateAction;
+
+/**
+ * Latency histograms of one session, by stage and message type.
+ *
+ * Message stages are kept by MsgType, the apply stage by update
+ * action (NEW, CHANGE, DELETE), each histogram created the first
+ * time its type is seen. The wire stage parses SendingTime itself,
+ * without allocating, and is only called from the session thread.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class LatencyRecorder {
+
+    /**
+     * Time of a message whose SendingTime cannot be read.
+     */
+    private static final long NO_TIME = -1;
+    /**
+     * Length of the date part of a UTC timestamp, yyyyMMdd.
+     */
+    private static final int DATE_LENGTH = 8;
+    /**
+     * Offset of the hours in a UTC timestamp, after "yyyyMMdd-".
+     */
+    private static final int HOURS = 9;
+    /**
+     * Offset of the minutes.
+     */
+    private static final int MINUTES = 12;
+    /**
+     * Offset of the seconds.
+     */
+    private static final int SECONDS = 15;
+    /**
+     * Offset of the fraction of a second, after the '.'.
+     */
+    private static final int FRACTION = 18;
+    /**
+     * Digits of the fraction used, to the millisecond.
+     */
+    private static final int FRACTION_DIGITS = 3;
+    /**
+     * Decimal base.
+     */
+    private static final int TEN = 10;
+    /**
+     * Apply stage type of a NEW entry.
+     */
+    private static final String NEW = "NEW";
+    /**
+     * Apply stage type of a CHANGE entry.
+     */
+    private static final String CHANGE = "CHANGE";
+    /**
+     * Apply stage type of a DELETE entry.
+     */
+    private static final String DELETE = "DELETE";
+
+    /**
+     * Name reported, the session.
+     */
+    private final transient String name;
+    /**
+     * Histograms by type, by stage.
+     */
+    private final transient Map<LatencyStage,
+        ConcurrentNavigableMap<String, LatencyHistogram>> histograms =
+            new EnumMap<LatencyStage,
+                ConcurrentNavigableMap<String, LatencyHistogram>>(
+                        LatencyStage.class);
+    /**
+     * Apply stage histogram of NEW entries.
+     */
+    private final transient LatencyHistogram applyNew;
+    /**
+     * Apply stage histogram of CHANGE entries.
+     */
+    private final transient LatencyHistogram applyChange;
+    /**
+     * Apply stage histogram of DELETE entries.
+     */
+    private final transient LatencyHistogram applyDelete;
+    /**
+     * Date part of the last SendingTime read, session thread only.
+     */
+    private transient String lastDate = "";
+    /**
+     * Epoch millis at the start of lastDate, session thread only.
+     */
+    private transient long dayStartMillis;
+
+    /**
+     * Constructor.
+     * @param name name reported, the session
+     */
+    public LatencyRecorder(final String name) {
+
+        this.name = name;
+
+        for (final LatencyStage stage : LatencyStage.values()) {
+            histograms.put(stage,
+                    new ConcurrentSkipListMap<String, LatencyHistogram>());
+        }
+
+        applyNew = getOrCreate(LatencyStage.APPLY, NEW);
+        applyChange = getOrCreate(LatencyStage.APPLY, CHANGE);
+        applyDelete = getOrCreate(LatencyStage.APPLY, DELETE);
+    }
+
+    /**
+     * Record the wire stage of a message from its SendingTime.
+     * Session thread only.
+     * @param msgType message type
+     * @param sendingTime SendingTime, yyyyMMdd-HH:mm:ss[.sss]
+     * @param receivedMillis System.currentTimeMillis when received
+     */
+    public void recordWire(final String msgType, final String sendingTime,
+                           final long receivedMillis) {
+
+        final long sentMillis = parseMillis(sendingTime);
+
+        if (sentMillis != NO_TIME) {
+            record(LatencyStage.WIRE, msgType, TimeUnit.MILLISECONDS
+                    .toNanos(receivedMillis - sentMillis));
+        }
+    }
+
+    /**
+     * Record a latency.
+     * @param stage stage
+     * @param type message type, or update action for APPLY
+     * @param nanos latency
+     */
+    public void record(final LatencyStage stage, final String type,
+                       final long nanos) {
+        getOrCreate(stage, type).record(nanos);
+    }
+
+    /**
+     * Record the time taken to apply one entry.
+     * @param action MDUpdateAction NEW, CHANGE or DELETE
+     * @param nanos time taken
+     */
+    public void recordApply(final char action, final long nanos) {
+
+        if (action == MDUpdateAction.NEW) {
+            applyNew.record(nanos);
+        } else if (action == MDUpdateAction.CHANGE) {
+            applyChange.record(nanos);
+        } else {
+            applyDelete.record(nanos);
+        }
+    }
+
+    /**
+     * Get a histogram, creating it the first time.
+     * @param stage stage
+     * @param type message type, or update action for APPLY
+     * @return histogram
+     */
+    private LatencyHistogram getOrCreate(final LatencyStage stage,
+                                         final String type) {
+
+        final ConcurrentNavigableMap<String, LatencyHistogram> byType =
+                                                    histograms.get(stage);
+
+        LatencyHistogram histogram = byType.get(type);
+
+        if (histogram == null) {
+            final LatencyHistogram created = new LatencyHistogram();
+
+            histogram = byType.putIfAbsent(type, created);
+
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Read a UTC timestamp, working out the date only when it
+     * changes.
+     * @param timestamp yyyyMMdd-HH:mm:ss[.sss...]
+     * @return epoch millis, NO_TIME if it cannot be read
+     */
+    private long parseMillis(final String timestamp) {
+
+        if (timestamp == null || timestamp.length() < FRACTION - 1) {
+            return NO_TIME;
+        }
+
+        if (lastDate.length() != DATE_LENGTH
+                || !timestamp.startsWith(lastDate)) {
+            try {
+                final String date = timestamp.substring(0, DATE_LENGTH);
+
+                dayStartMillis = TimeUnit.DAYS.toMillis(LocalDate.parse(
+                        date, DateTimeFormatter.BASIC_ISO_DATE).toEpochDay());
+                lastDate = date;
+            } catch (DateTimeParseException e) {
+                return NO_TIME;
+            }
+        }
+
+        final int hours = digits(timestamp, HOURS, 2);
+        final int minutes = digits(timestamp, MINUTES, 2);
+        final int seconds = digits(timestamp, SECONDS, 2);
+
+        if (hours < 0 || minutes < 0 || seconds < 0) {
+            return NO_TIME;
+        }
+
+        int millis = 0;
+
+        // pad or cut the fraction to milliseconds
+        for (int i = 0; i < FRACTION_DIGITS; i++) {
+            int digit = 0;
+
+            if (FRACTION + i < timestamp.length()) {
+                digit = Math.max(digits(timestamp, FRACTION + i, 1), 0);
+            }
+
+            millis = millis * TEN + digit;
+        }
+
+        return dayStartMillis + TimeUnit.HOURS.toMillis(hours)
+                + TimeUnit.MINUTES.toMillis(minutes)
+                + TimeUnit.SECONDS.toMillis(seconds) + millis;
+    }
+
+    /**
+     * Read a run of decimal digits.
+     * @param text text
+     * @param start first digit
+     * @param count number of digits
+     * @return value, -1 if any is not a digit
+     */
+    private static int digits(final String text, final int start,
+                              final int count) {
+
+        int value = 0;
+
+        for (int i = start; i < start + count; i++) {
+            final int digit = Character.digit(text.charAt(i), TEN);
+
+            if (digit < 0) {
+                return -1;
+            }
+
+            value = value * TEN + digit;
+        }
+
+        return value;
+    }
+
+    /**
+     * @return name reported, the session
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get a histogram.
+     * @param stage stage
+     * @param type message type, or update action for APPLY
+     * @return histogram, null if nothing of the type was recorded
+     */
+    public LatencyHistogram getHistogram(final LatencyStage stage,
+                                         final String type) {
+        return histograms.get(stage).get(type);
+    }
+
+    /**
+     * @param stage stage
+     * @return histograms of the stage by type, in type order
+     */
+    public SortedMap<String, LatencyHistogram> getHistograms(
+            final LatencyStage stage) {
+        return Collections.unmodifiableSortedMap(histograms.get(stage));
+    }
+}
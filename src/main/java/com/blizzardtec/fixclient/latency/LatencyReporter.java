@@ -0,0 +1,276 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.latency;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the latencies of every session at a fixed interval.
+ *
+ * Each report covers only what was recorded since the one before,
+ * so a spike shows up in the interval it happened in rather than
+ * being lost in the totals, which are logged once on stop. Reports
+ * are built on the reporter's own thread, from copies of the
+ * histograms, and never hold up recording.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class LatencyReporter {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(LatencyReporter.class);
+
+    /**
+     * Default time between reports.
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 10000L;
+
+    /**
+     * No recorders.
+     */
+    private static final LatencyRecorder[] NO_RECORDERS =
+                                            new LatencyRecorder[0];
+
+    /**
+     * Time between reports.
+     */
+    private final transient long intervalMillis;
+    /**
+     * Recorders reported, replaced whole when one is added.
+     */
+    private volatile LatencyRecorder[] recorders = NO_RECORDERS;
+    /**
+     * Copies of each histogram, reporting thread only.
+     */
+    private final transient Map<LatencyHistogram, Copies> copies =
+                    new IdentityHashMap<LatencyHistogram, Copies>();
+    /**
+     * Reporter thread, null until started.
+     */
+    private transient Thread reporter;
+    /**
+     * Cleared to stop the reporter thread.
+     */
+    private volatile boolean running;
+
+    /**
+     * The copies of one histogram taken at the last two reports,
+     * and the interval between them.
+     */
+    private static final class Copies {
+        /**
+         * Copy taken at the last report.
+         */
+        private HistogramSnapshot last = new HistogramSnapshot();
+        /**
+         * Copy taken at this report.
+         */
+        private HistogramSnapshot current = new HistogramSnapshot();
+        /**
+         * Values recorded in between.
+         */
+        private final HistogramSnapshot interval = new HistogramSnapshot();
+
+        /**
+         * Take a copy and work out the interval since the last one.
+         * @param histogram histogram
+         * @return values recorded since the last call
+         */
+        HistogramSnapshot next(final LatencyHistogram histogram) {
+
+            final HistogramSnapshot previous = last;
+
+            histogram.copyTo(current);
+            interval.setInterval(current, previous,
+                                 histogram.takeIntervalMax());
+            last = current;
+            current = previous;
+
+            return interval;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param intervalMillis time between reports
+     */
+    public LatencyReporter(final long intervalMillis) {
+
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid report interval " + intervalMillis);
+        }
+
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Add a recorder to the reports.
+     * @param recorder recorder
+     */
+    public synchronized void add(final LatencyRecorder recorder) {
+
+        final LatencyRecorder[] current = recorders;
+        final LatencyRecorder[] next =
+                        Arrays.copyOf(current, current.length + 1);
+
+        next[current.length] = recorder;
+        recorders = next;
+    }
+
+    /**
+     * Start the reporter thread.
+     */
+    public void start() {
+
+        running = true;
+
+        reporter = new Thread("latency-reporter") {
+            @Override
+            public void run() {
+                report();
+            }
+        };
+
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Stop the reporter thread, then log the totals.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+
+        running = false;
+
+        if (reporter != null) {
+            LockSupport.unpark(reporter);
+            reporter.join();
+            reporter = null;
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Latency since start" + totalReport());
+        }
+    }
+
+    /**
+     * Log a report every interval until stopped.
+     */
+    private void report() {
+
+        final long intervalNanos =
+                    TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+
+        long next = System.nanoTime() + intervalNanos;
+
+        while (running) {
+
+            final long remaining = next - System.nanoTime();
+
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+                continue;
+            }
+
+            next += intervalNanos;
+
+            final String report = intervalReport();
+
+            if (!report.isEmpty() && LOG.isInfoEnabled()) {
+                LOG.info("Latency" + report);
+            }
+        }
+    }
+
+    /**
+     * Report the values recorded since the last interval report,
+     * one line per histogram with any. Reporting thread only,
+     * or before the reporter is started.
+     * @return report, empty if nothing was recorded
+     */
+    public String intervalReport() {
+
+        final StringBuilder buffer = new StringBuilder();
+
+        for (final LatencyRecorder recorder : recorders) {
+            for (final LatencyStage stage : LatencyStage.values()) {
+                for (final Map.Entry<String, LatencyHistogram> entry
+                        : recorder.getHistograms(stage).entrySet()) {
+
+                    Copies histogramCopies = copies.get(entry.getValue());
+
+                    if (histogramCopies == null) {
+                        histogramCopies = new Copies();
+                        copies.put(entry.getValue(), histogramCopies);
+                    }
+
+                    final HistogramSnapshot interval =
+                            histogramCopies.next(entry.getValue());
+
+                    if (interval.getCount() > 0) {
+                        line(buffer, recorder, stage, entry.getKey());
+                        interval.format(buffer);
+                    }
+                }
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * Report every value recorded since start.
+     * @return report, empty if nothing was recorded
+     */
+    public String totalReport() {
+
+        final StringBuilder buffer = new StringBuilder();
+        final HistogramSnapshot total = new HistogramSnapshot();
+
+        for (final LatencyRecorder recorder : recorders) {
+            for (final LatencyStage stage : LatencyStage.values()) {
+                for (final Map.Entry<String, LatencyHistogram> entry
+                        : recorder.getHistograms(stage).entrySet()) {
+
+                    entry.getValue().copyTo(total);
+
+                    if (total.getCount() > 0) {
+                        line(buffer, recorder, stage, entry.getKey());
+                        total.format(buffer);
+                    }
+                }
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * Start a report line.
+     * @param buffer report
+     * @param recorder recorder
+     * @param stage stage
+     * @param type message type or update action
+     */
+    private static void line(final StringBuilder buffer,
+                             final LatencyRecorder recorder,
+                             final LatencyStage stage, final String type) {
+        buffer.append(System.lineSeparator()).append(recorder.getName())
+              .append(' ').append(stage).append(' ').append(type)
+              .append(' ');
+    }
+}
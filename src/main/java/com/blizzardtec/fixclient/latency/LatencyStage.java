@@ -0,0 +1,33 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.latency;
+
+/**
+ * A stage of the path from a message leaving the venue to its
+ * entries being in the books.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public enum LatencyStage {
+
+    /**
+     * From the SendingTime of a message to the application being
+     * handed it, so network, session and parsing time. Only as
+     * good as the resolution of SendingTime and the clock sync
+     * with the venue.
+     */
+    WIRE,
+    /**
+     * From the application being handed a message to it being
+     * cracked: decoding, and applying the entries too if books are
+     * built on the session thread.
+     */
+    CRACK,
+    /**
+     * Applying one entry to its book, on whichever thread builds
+     * the books, by update action.
+     */
+    APPLY
+}
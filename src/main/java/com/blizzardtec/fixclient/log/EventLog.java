@@ -0,0 +1,360 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Garbage free event log for the market data hot path.
+ *
+ * Events are written as binary records, primitive fields copied
+ * into pre-allocated slots, by any number of threads. A writer
+ * thread turns them into text and passes them to the logger. When
+ * the logger is not enabled for INFO nothing is recorded at all,
+ * so a disabled log costs one field read per event.
+ *
+ * Recording never blocks: if the writer falls behind and the ring
+ * is full the event is dropped and counted.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class EventLog {
+
+    /**
+     * Logger events are written to.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(EventLog.class);
+
+    /**
+     * Default number of record slots.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * Time the writer parks for when there is nothing to write.
+     */
+    private static final long IDLE_NANOS = 1000000L;
+    /**
+     * Initial size of the line buffer.
+     */
+    private static final int LINE_LENGTH = 128;
+
+    /**
+     * True if events are recorded.
+     */
+    private final transient boolean enabled;
+    /**
+     * Mask mapping a sequence to a slot.
+     */
+    private final transient int mask;
+    /**
+     * Event type by slot.
+     */
+    private final transient EventType[] types;
+    /**
+     * Symbol by slot.
+     */
+    private final transient String[] symbols;
+    /**
+     * Side (BID/OFFER) by slot.
+     */
+    private final transient char[] sides;
+    /**
+     * Depth level by slot.
+     */
+    private final transient int[] levels;
+    /**
+     * Unscaled price by slot.
+     */
+    private final transient long[] prices;
+    /**
+     * Price scale by slot.
+     */
+    private final transient int[] priceScales;
+    /**
+     * Order size, or entry count, by slot.
+     */
+    private final transient int[] sizes;
+    /**
+     * Time recorded by slot, System.currentTimeMillis.
+     */
+    private final transient long[] times;
+    /**
+     * Sequence plus one of the record in each slot, written last.
+     */
+    private final transient AtomicLongArray published;
+    /**
+     * Next sequence to claim.
+     */
+    private final transient AtomicLong claimed = new AtomicLong();
+    /**
+     * Sequence up to which records have been written out.
+     */
+    private final transient AtomicLong consumed = new AtomicLong();
+    /**
+     * Events dropped because the ring was full.
+     */
+    private final transient AtomicLong dropped = new AtomicLong();
+    /**
+     * Line buffer, writer thread only.
+     */
+    private final transient StringBuilder line =
+                                new StringBuilder(LINE_LENGTH);
+    /**
+     * Writer thread, null until started.
+     */
+    private transient Thread writer;
+    /**
+     * Cleared to stop the writer thread.
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructor. Events are recorded if the logger is enabled
+     * for INFO.
+     * @param capacity number of record slots, a power of two
+     */
+    public EventLog(final int capacity) {
+        this(capacity, LOG.isInfoEnabled());
+    }
+
+    /**
+     * Constructor.
+     * @param capacity number of record slots, a power of two
+     * @param enabled true to record events
+     */
+    public EventLog(final int capacity, final boolean enabled) {
+
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(
+                    "Event log capacity must be a power of two: "
+                    + capacity);
+        }
+
+        this.enabled = enabled;
+        this.mask = capacity - 1;
+
+        types = new EventType[capacity];
+        symbols = new String[capacity];
+        sides = new char[capacity];
+        levels = new int[capacity];
+        prices = new long[capacity];
+        priceScales = new int[capacity];
+        sizes = new int[capacity];
+        times = new long[capacity];
+        published = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * @return true if events are recorded
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record a message event.
+     * @param type event type
+     * @param symbol instrument symbol, null if the message has none
+     * @param count number of entries in the message
+     */
+    public void record(final EventType type, final String symbol,
+                       final int count) {
+        record(type, symbol, ' ', 0, 0, 0, count);
+    }
+
+    /**
+     * Record a depth event.
+     * @param type event type
+     * @param symbol instrument symbol
+     * @param side order type (BID/OFFER)
+     * @param level depth level
+     * @param price unscaled price
+     * @param priceScale decimal places in price
+     * @param size order size
+     */
+    public void record(final EventType type, final String symbol,
+                       final char side, final int level,
+                       final long price, final int priceScale,
+                       final int size) {
+
+        if (!enabled) {
+            return;
+        }
+
+        long sequence;
+
+        do {
+            sequence = claimed.get();
+
+            if (sequence - consumed.get() > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        final int index = (int) sequence & mask;
+
+        types[index] = type;
+        symbols[index] = symbol;
+        sides[index] = side;
+        levels[index] = level;
+        prices[index] = price;
+        priceScales[index] = priceScale;
+        sizes[index] = size;
+        times[index] = System.currentTimeMillis();
+
+        // the ordered write publishes the fields above
+        published.lazySet(index, sequence + 1);
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    public void start() {
+
+        if (!enabled) {
+            return;
+        }
+
+        running = true;
+
+        writer = new Thread("event-log") {
+            @Override
+            public void run() {
+                while (running) {
+                    if (poll() == 0) {
+                        LockSupport.parkNanos(IDLE_NANOS);
+                    }
+                }
+                poll();
+            }
+        };
+
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stop the writer thread once it has written what is recorded.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+
+        running = false;
+
+        if (writer != null) {
+            writer.join();
+            writer = null;
+        }
+    }
+
+    /**
+     * Write out every complete record to the logger.
+     * @return number of records written
+     */
+    public int poll() {
+        return poll(null);
+    }
+
+    /**
+     * Write out every complete record.
+     * @param out buffer to append lines to, null to log them
+     * @return number of records written
+     */
+    int poll(final StringBuilder out) {
+
+        long sequence = consumed.get();
+        int count = 0;
+
+        while (true) {
+
+            final int index = (int) sequence & mask;
+
+            if (published.get(index) != sequence + 1) {
+                break;
+            }
+
+            line.setLength(0);
+            format(index);
+
+            // free the slot before the slow part
+            symbols[index] = null;
+            sequence++;
+            count++;
+            consumed.lazySet(sequence);
+
+            if (out == null) {
+                LOG.info(line.toString());
+            } else {
+                out.append(line).append('\n');
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Format one record into the line buffer.
+     * @param index slot
+     */
+    private void format(final int index) {
+
+        line.append(times[index]).append(' ')
+            .append(types[index].getDescription());
+
+        if (symbols[index] != null) {
+            line.append(' ').append(symbols[index]);
+        }
+
+        if (sides[index] == ' ') {
+            line.append(" entries ").append(sizes[index]);
+        } else {
+            line.append(" side ").append(sides[index])
+                .append(" level ").append(levels[index])
+                .append(' ').append(sizes[index]).append(" at ");
+            appendDecimal(line, prices[index], priceScales[index]);
+        }
+    }
+
+    /**
+     * Append an unscaled value as a decimal.
+     * @param buffer buffer
+     * @param unscaled unscaled value
+     * @param scale decimal places
+     */
+    public static void appendDecimal(final StringBuilder buffer,
+                                     final long unscaled,
+                                     final int scale) {
+
+        if (unscaled < 0) {
+            buffer.append('-');
+        }
+
+        final int start = buffer.length();
+
+        buffer.append(Math.abs(unscaled));
+
+        if (scale > 0) {
+            while (buffer.length() - start <= scale) {
+                buffer.insert(start, '0');
+            }
+            buffer.insert(buffer.length() - scale, '.');
+        }
+    }
+
+    /**
+     * @return number of events dropped because the ring was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.log;
+
+/**
+ * Kinds of hot path event record.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public enum EventType {
+
+    /**
+     * Market data snapshot received, the size is the entry count.
+     */
+    SNAPSHOT("Snapshot"),
+    /**
+     * Market data incremental refresh received, the size is the
+     * entry count.
+     */
+    REFRESH("Refresh"),
+    /**
+     * New depth level applied.
+     */
+    NEW_DEPTH("New depth"),
+    /**
+     * Depth level updated.
+     */
+    UPDATE_DEPTH("Update depth"),
+    /**
+     * Depth level deleted.
+     */
+    DELETE_DEPTH("Delete depth");
+
+    /**
+     * Text written for the event.
+     */
+    private final String description;
+
+    /**
+     * Constructor.
+     * @param description text written for the event
+     */
+    EventType(final String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return text written for the event
+     */
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * log.
+ *
+ * @since 1.0
+ * @author Barnaby
+ * @version 1.0
+ */
+package com.blizzardtec.fixclient.log;
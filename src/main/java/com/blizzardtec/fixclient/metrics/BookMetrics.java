@@ -0,0 +1,224 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.blizzardtec.fixclient.depth.BookListener;
+import com.blizzardtec.fixclient.depth.InstrumentDepth;
+
+/**
+ * Update counts and times of the books of one session, kept by
+ * listening for book changes.
+ *
+ * Each book is changed by one thread only, the session thread or
+ * the book building thread its symbol is sharded to, so its
+ * counters are plain volatile fields with a single writer: no
+ * atomic instruction on the update path, and JMX reads them from
+ * any thread.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class BookMetrics implements BookListener, BookMetricsMXBean {
+
+    /**
+     * Initial number of symbols held.
+     */
+    private static final int INITIAL_SYMBOLS = 64;
+
+    /**
+     * Counters by symbol ID, replaced by a larger copy when full.
+     */
+    private volatile SymbolCounters[] counters =
+                            new SymbolCounters[INITIAL_SYMBOLS];
+
+    /**
+     * Counters of one book.
+     */
+    private static final class SymbolCounters {
+        /**
+         * Instrument symbol.
+         */
+        private final String symbol;
+        /**
+         * Rate of updates, read side only.
+         */
+        private final RateMeter rate = new RateMeter();
+        /**
+         * Updates, written by the book's thread only.
+         */
+        private volatile long updates;
+        /**
+         * System.currentTimeMillis of the last update, written by
+         * the book's thread only.
+         */
+        private volatile long lastUpdateMillis;
+
+        /**
+         * Constructor.
+         * @param symbol instrument symbol
+         */
+        SymbolCounters(final String symbol) {
+            this.symbol = symbol;
+            lastUpdateMillis = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void onBookChange(final InstrumentDepth book, final int changes) {
+
+        final int id = Math.max(book.getSymbolId(), 0);
+        final SymbolCounters[] current = counters;
+
+        SymbolCounters symbolCounters = null;
+
+        if (id < current.length) {
+            symbolCounters = current[id];
+        }
+
+        if (symbolCounters == null) {
+            symbolCounters = create(id, book.getSymbol());
+        }
+
+        // single writer, so no lost updates
+        symbolCounters.updates = symbolCounters.updates + 1;
+        symbolCounters.lastUpdateMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Create the counters of a book.
+     * @param id symbol ID
+     * @param symbol instrument symbol
+     * @return counters
+     */
+    private synchronized SymbolCounters create(final int id,
+                                               final String symbol) {
+
+        final SymbolCounters[] current = counters;
+
+        if (id < current.length && current[id] != null) {
+            return current[id];
+        }
+
+        // copy rather than fill in place, so readers only see whole
+        // counters after the volatile write below
+        final SymbolCounters[] next = new SymbolCounters[
+                Math.max(current.length, Integer.highestOneBit(id) * 2)];
+        System.arraycopy(current, 0, next, 0, current.length);
+
+        final SymbolCounters created = new SymbolCounters(symbol);
+        next[id] = created;
+        counters = next;
+
+        return created;
+    }
+
+    @Override
+    public int getBookCount() {
+
+        int count = 0;
+
+        for (final SymbolCounters symbolCounters : counters) {
+            if (symbolCounters != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public Map<String, Long> getUpdateCounts() {
+
+        final Map<String, Long> counts = new TreeMap<String, Long>();
+
+        for (final SymbolCounters symbolCounters : counters) {
+            if (symbolCounters != null) {
+                counts.put(symbolCounters.symbol, symbolCounters.updates);
+            }
+        }
+
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getUpdatesPerSecond() {
+
+        final Map<String, Double> rates = new TreeMap<String, Double>();
+
+        for (final SymbolCounters symbolCounters : counters) {
+            if (symbolCounters != null) {
+                rates.put(symbolCounters.symbol,
+                        symbolCounters.rate.rate(symbolCounters.updates));
+            }
+        }
+
+        return rates;
+    }
+
+    @Override
+    public Map<String, Long> getUpdateAgesMillis() {
+
+        final long now = System.currentTimeMillis();
+        final Map<String, Long> ages = new TreeMap<String, Long>();
+
+        for (final SymbolCounters symbolCounters : counters) {
+            if (symbolCounters != null) {
+                ages.put(symbolCounters.symbol,
+                         now - symbolCounters.lastUpdateMillis);
+            }
+        }
+
+        return ages;
+    }
+
+    @Override
+    public long getMaxUpdateAgeMillis() {
+
+        final SymbolCounters stalest = stalest();
+
+        long age = 0;
+
+        if (stalest != null) {
+            age = System.currentTimeMillis() - stalest.lastUpdateMillis;
+        }
+
+        return age;
+    }
+
+    @Override
+    public String getStalestSymbol() {
+
+        final SymbolCounters stalest = stalest();
+
+        String symbol = null;
+
+        if (stalest != null) {
+            symbol = stalest.symbol;
+        }
+
+        return symbol;
+    }
+
+    /**
+     * @return counters of the least recently updated book, null if
+     *         there are no books
+     */
+    private SymbolCounters stalest() {
+
+        SymbolCounters stalest = null;
+
+        for (final SymbolCounters symbolCounters : counters) {
+            if (symbolCounters != null && (stalest == null
+                    || symbolCounters.lastUpdateMillis
+                        < stalest.lastUpdateMillis)) {
+                stalest = symbolCounters;
+            }
+        }
+
+        return stalest;
+    }
+}
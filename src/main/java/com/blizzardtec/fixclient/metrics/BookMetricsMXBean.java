@@ -0,0 +1,47 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.metrics;
+
+import java.util.Map;
+
+/**
+ * Health of the books of one session, by symbol, over JMX.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public interface BookMetricsMXBean {
+
+    /**
+     * @return number of books updated at least once
+     */
+    int getBookCount();
+
+    /**
+     * @return updates of each book, one per message that changed it
+     */
+    Map<String, Long> getUpdateCounts();
+
+    /**
+     * @return updates per second of each book
+     */
+    Map<String, Double> getUpdatesPerSecond();
+
+    /**
+     * @return milliseconds since each book was last updated
+     */
+    Map<String, Long> getUpdateAgesMillis();
+
+    /**
+     * @return milliseconds since the least recently updated book
+     *         was updated, 0 if there are no books
+     */
+    long getMaxUpdateAgeMillis();
+
+    /**
+     * @return symbol of the least recently updated book, null if
+     *         there are no books
+     */
+    String getStalestSymbol();
+}
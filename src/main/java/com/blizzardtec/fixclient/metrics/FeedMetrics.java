@@ -0,0 +1,248 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import quickfix.field.MDUpdateAction;
+
+/**
+ * Counters of the market data feed of one session.
+ *
+ * Counters are striped LongAdders: the session thread and every
+ * book building thread add to their own cell, so counting costs
+ * an uncontended add on the hot path and the sum is only worked
+ * out when JMX reads it. Rates are worked out on read as well.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class FeedMetrics implements FeedMetricsMXBean {
+
+    /**
+     * Snapshots received.
+     */
+    private final transient LongAdder snapshots = new LongAdder();
+    /**
+     * Incremental refreshes received.
+     */
+    private final transient LongAdder refreshes = new LongAdder();
+    /**
+     * Request rejects received.
+     */
+    private final transient LongAdder rejects = new LongAdder();
+    /**
+     * NEW entries applied.
+     */
+    private final transient LongAdder newEntries = new LongAdder();
+    /**
+     * CHANGE entries applied.
+     */
+    private final transient LongAdder changeEntries = new LongAdder();
+    /**
+     * DELETE entries applied.
+     */
+    private final transient LongAdder deleteEntries = new LongAdder();
+    /**
+     * Entries with an unknown MDUpdateAction.
+     */
+    private final transient LongAdder unknownActions = new LongAdder();
+    /**
+     * Messages missing a required field.
+     */
+    private final transient LongAdder fieldNotFounds = new LongAdder();
+    /**
+     * Messages with a value that could not be parsed.
+     */
+    private final transient LongAdder malformedMessages = new LongAdder();
+    /**
+     * Gaps found.
+     */
+    private final transient LongAdder gaps = new LongAdder();
+    /**
+     * Books recovered after a gap.
+     */
+    private final transient LongAdder recoveries = new LongAdder();
+    /**
+     * Entries dropped as already applied.
+     */
+    private final transient LongAdder duplicates = new LongAdder();
+    /**
+     * Rate of snapshots.
+     */
+    private final transient RateMeter snapshotRate = new RateMeter();
+    /**
+     * Rate of refreshes.
+     */
+    private final transient RateMeter refreshRate = new RateMeter();
+    /**
+     * Rate of entries applied.
+     */
+    private final transient RateMeter entryRate = new RateMeter();
+
+    /**
+     * Count a snapshot received.
+     */
+    public void snapshot() {
+        snapshots.increment();
+    }
+
+    /**
+     * Count an incremental refresh received.
+     */
+    public void refresh() {
+        refreshes.increment();
+    }
+
+    /**
+     * Count a market data request reject received.
+     */
+    public void reject() {
+        rejects.increment();
+    }
+
+    /**
+     * Count an entry applied.
+     * @param action MDUpdateAction NEW, CHANGE or DELETE
+     */
+    public void applied(final char action) {
+        if (action == MDUpdateAction.NEW) {
+            newEntries.increment();
+        } else if (action == MDUpdateAction.CHANGE) {
+            changeEntries.increment();
+        } else {
+            deleteEntries.increment();
+        }
+    }
+
+    /**
+     * Count an entry skipped for an unknown MDUpdateAction.
+     */
+    public void unknownAction() {
+        unknownActions.increment();
+    }
+
+    /**
+     * Count a message dropped for a missing required field.
+     */
+    public void fieldNotFound() {
+        fieldNotFounds.increment();
+    }
+
+    /**
+     * Count a message cut short by a value that could not be parsed,
+     * such as a price with too many digits.
+     */
+    public void malformed() {
+        malformedMessages.increment();
+    }
+
+    /**
+     * Count a gap found in the entries of a book, which is stale
+     * until recovered.
+     */
+    public void gap() {
+        gaps.increment();
+    }
+
+    /**
+     * Count a stale book recovered from a snapshot.
+     */
+    public void recovered() {
+        recoveries.increment();
+    }
+
+    /**
+     * Count an entry dropped as already applied.
+     */
+    public void duplicate() {
+        duplicates.increment();
+    }
+
+    @Override
+    public long getSnapshotCount() {
+        return snapshots.sum();
+    }
+
+    @Override
+    public double getSnapshotsPerSecond() {
+        return snapshotRate.rate(getSnapshotCount());
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    @Override
+    public double getRefreshesPerSecond() {
+        return refreshRate.rate(getRefreshCount());
+    }
+
+    @Override
+    public long getRejectCount() {
+        return rejects.sum();
+    }
+
+    @Override
+    public long getEntriesApplied() {
+        return getNewCount() + getChangeCount() + getDeleteCount();
+    }
+
+    @Override
+    public double getEntriesPerSecond() {
+        return entryRate.rate(getEntriesApplied());
+    }
+
+    @Override
+    public long getNewCount() {
+        return newEntries.sum();
+    }
+
+    @Override
+    public long getChangeCount() {
+        return changeEntries.sum();
+    }
+
+    @Override
+    public long getDeleteCount() {
+        return deleteEntries.sum();
+    }
+
+    @Override
+    public long getUnknownActionCount() {
+        return unknownActions.sum();
+    }
+
+    @Override
+    public long getFieldNotFoundCount() {
+        return fieldNotFounds.sum();
+    }
+
+    @Override
+    public long getMalformedCount() {
+        return malformedMessages.sum();
+    }
+
+    @Override
+    public long getGapCount() {
+        return gaps.sum();
+    }
+
+    @Override
+    public long getRecoveryCount() {
+        return recoveries.sum();
+    }
+
+    @Override
+    public long getStaleBookCount() {
+        // sums taken apart, so never below zero when read mid update
+        return Math.max(getGapCount() - getRecoveryCount(), 0);
+    }
+
+    @Override
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.metrics;
+
+/**
+ * Health of the market data feed of one session, over JMX.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public interface FeedMetricsMXBean {
+
+    /**
+     * @return snapshots received
+     */
+    long getSnapshotCount();
+
+    /**
+     * @return snapshots received per second
+     */
+    double getSnapshotsPerSecond();
+
+    /**
+     * @return incremental refreshes received
+     */
+    long getRefreshCount();
+
+    /**
+     * @return incremental refreshes received per second
+     */
+    double getRefreshesPerSecond();
+
+    /**
+     * @return market data request rejects received
+     */
+    long getRejectCount();
+
+    /**
+     * @return entries applied to the books
+     */
+    long getEntriesApplied();
+
+    /**
+     * @return entries applied per second
+     */
+    double getEntriesPerSecond();
+
+    /**
+     * @return NEW entries applied
+     */
+    long getNewCount();
+
+    /**
+     * @return CHANGE entries applied
+     */
+    long getChangeCount();
+
+    /**
+     * @return DELETE entries applied
+     */
+    long getDeleteCount();
+
+    /**
+     * @return entries skipped for an unknown MDUpdateAction
+     */
+    long getUnknownActionCount();
+
+    /**
+     * @return messages dropped for a missing required field
+     */
+    long getFieldNotFoundCount();
+
+    /**
+     * @return messages cut short by a value that could not be parsed
+     */
+    long getMalformedCount();
+
+    /**
+     * @return gaps found in the entries of a book
+     */
+    long getGapCount();
+
+    /**
+     * @return books recovered from a snapshot after a gap
+     */
+    long getRecoveryCount();
+
+    /**
+     * @return books waiting for a snapshot after a gap
+     */
+    long getStaleBookCount();
+
+    /**
+     * @return entries dropped as already applied
+     */
+    long getDuplicateCount();
+}
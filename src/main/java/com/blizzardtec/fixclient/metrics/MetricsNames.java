@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.metrics;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Names the metrics are registered under in JMX.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class MetricsNames {
+
+    /**
+     * JMX domain of every metric.
+     */
+    public static final String DOMAIN = "com.blizzardtec.fixclient";
+    /**
+     * Type of the feed metrics.
+     */
+    public static final String FEED = "Feed";
+    /**
+     * Type of the book metrics.
+     */
+    public static final String BOOKS = "Books";
+
+    /**
+     * Utility class.
+     */
+    private MetricsNames() {
+        // private constructor
+    }
+
+    /**
+     * Get the name of the metrics of one session.
+     * @param type FEED or BOOKS
+     * @param session session
+     * @return name, the session quoted as it holds ':'
+     * @throws MalformedObjectNameException thrown if the name is invalid
+     */
+    public static ObjectName of(final String type, final String session)
+            throws MalformedObjectNameException {
+
+        return new ObjectName(DOMAIN + ":type=" + type
+                              + ",session=" + ObjectName.quote(session));
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out a rate from a running count each time it is read,
+ * over the time since the last reading at least a second before,
+ * so readers polling quickly still see a steady rate.
+ *
+ * @author Barnaby Golden
+ *
+ */
+final class RateMeter {
+
+    /**
+     * Shortest time a rate is worked out over.
+     */
+    private static final long MIN_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Count at the start of the window.
+     */
+    private transient long lastCount;
+    /**
+     * System.nanoTime at the start of the window.
+     */
+    private transient long lastNanos = System.nanoTime();
+    /**
+     * Rate over the last whole window.
+     */
+    private transient double rate;
+
+    /**
+     * Read the rate.
+     * @param count running count
+     * @return count per second over the last whole window, 0 until
+     *         a second after the meter was created
+     */
+    synchronized double rate(final long count) {
+
+        final long now = System.nanoTime();
+        final long elapsed = now - lastNanos;
+
+        if (elapsed >= MIN_WINDOW_NANOS) {
+            rate = (count - lastCount) * NANOS_PER_SECOND / elapsed;
+            lastCount = count;
+            lastNanos = now;
+        }
+
+        return rate;
+    }
+}
@@ -0,0 +1,431 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import quickfix.Session;
+import quickfix.SessionID;
+import quickfix.field.MDEntryPositionNo;
+import quickfix.field.MDEntryPx;
+import quickfix.field.MDEntrySize;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDReqID;
+import quickfix.field.MDUpdateAction;
+import quickfix.field.NoMDEntries;
+import quickfix.field.RptSeq;
+import quickfix.field.Symbol;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+
+import com.blizzardtec.fixclient.depth.PriceDepth;
+import com.blizzardtec.fixclient.log.EventLog;
+
+/**
+ * Streams synthetic market data to one session.
+ *
+ * Each subscribed symbol gets a snapshot of its book when it is
+ * requested, then joins the stream. A publisher thread sends
+ * incremental refreshes over every streamed symbol in turn, paced
+ * to the traffic profile, and logs the rate it managed every few
+ * seconds. With no pacing it sends as fast as the session can
+ * take them, to drive a client to saturation. A snapshot only
+ * request gets a snapshot of the books as they stand, which stay
+ * in the stream, as a venue answers a client recovering from a gap.
+ *
+ * @author Barnaby Golden
+ *
+ */
+final class MarketDataPublisher {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(MarketDataPublisher.class);
+
+    /**
+     * No symbols.
+     */
+    private static final SyntheticBook[] NO_BOOKS = new SyntheticBook[0];
+    /**
+     * Time the publisher parks for with nothing subscribed.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /**
+     * Time between rate reports.
+     */
+    private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Session streamed to.
+     */
+    private final transient SessionID sessionID;
+    /**
+     * Shape of the traffic.
+     */
+    private final transient TrafficProfile profile;
+    /**
+     * Book of every symbol ever requested, by symbol.
+     */
+    private final transient ConcurrentMap<String, SyntheticBook> books =
+                    new ConcurrentHashMap<String, SyntheticBook>();
+    /**
+     * Symbols by request ID, for cancels.
+     */
+    private final transient ConcurrentMap<String, List<String>> requests =
+                    new ConcurrentHashMap<String, List<String>>();
+    /**
+     * Books streamed, replaced whole when symbols join or leave.
+     */
+    private volatile SyntheticBook[] streamed = NO_BOOKS;
+    /**
+     * Random source of the publisher thread.
+     */
+    private final transient Random random = new Random();
+    /**
+     * Messages sent.
+     */
+    private volatile long messageCount;
+    /**
+     * Refreshes dropped to make gaps.
+     */
+    private volatile long droppedCount;
+    /**
+     * Publisher thread, null until started.
+     */
+    private transient Thread publisher;
+    /**
+     * Cleared to stop the publisher thread.
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructor.
+     * @param sessionID session streamed to
+     * @param profile shape of the traffic
+     */
+    MarketDataPublisher(final SessionID sessionID,
+                        final TrafficProfile profile) {
+        this.sessionID = sessionID;
+        this.profile = profile;
+    }
+
+    /**
+     * Start the publisher thread.
+     */
+    void start() {
+
+        running = true;
+
+        publisher = new Thread("publisher-" + sessionID.getTargetCompID()) {
+            @Override
+            public void run() {
+                publish();
+            }
+        };
+
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    /**
+     * Stop the publisher thread.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    void stop() throws InterruptedException {
+
+        running = false;
+
+        if (publisher != null) {
+            publisher.join();
+            publisher = null;
+        }
+    }
+
+    /**
+     * Subscribe symbols: send a snapshot of each, then stream it.
+     * @param mdReqId request ID
+     * @param symbols symbols
+     * @param marketDepth levels requested, 0 for full depth
+     */
+    void subscribe(final String mdReqId, final List<String> symbols,
+                   final int marketDepth) {
+
+        final Session session = Session.lookupSession(sessionID);
+
+        requests.put(mdReqId, symbols);
+
+        for (final String symbol : symbols) {
+
+            final SyntheticBook book = book(symbol, marketDepth);
+
+            // out of the stream while the snapshot goes, so no
+            // refresh can overtake it
+            remove(book);
+            sendSnapshot(session, mdReqId, book, marketDepth);
+            add(book);
+        }
+    }
+
+    /**
+     * Send a snapshot of each symbol without changing the stream.
+     * Refreshes may overtake the snapshot, the client drops those
+     * it covers by their RptSeq.
+     * @param mdReqId request ID
+     * @param symbols symbols
+     * @param marketDepth levels requested, 0 for full depth
+     */
+    void snapshot(final String mdReqId, final List<String> symbols,
+                  final int marketDepth) {
+
+        final Session session = Session.lookupSession(sessionID);
+
+        for (final String symbol : symbols) {
+            sendSnapshot(session, mdReqId, book(symbol, marketDepth),
+                         marketDepth);
+        }
+    }
+
+    /**
+     * Get the book of a symbol, creating it the first time.
+     * @param symbol symbol
+     * @param marketDepth levels requested, 0 for full depth
+     * @return book
+     */
+    private SyntheticBook book(final String symbol, final int marketDepth) {
+
+        SyntheticBook book = books.get(symbol);
+
+        if (book == null) {
+            int depth = profile.getBookDepth();
+
+            if (marketDepth > 0) {
+                depth = Math.min(depth, marketDepth);
+            }
+
+            book = new SyntheticBook(symbol, depth, new Random());
+            books.put(symbol, book);
+        }
+
+        return book;
+    }
+
+    /**
+     * Send a snapshot of a book.
+     * @param session session, null if it has gone
+     * @param mdReqId request ID
+     * @param book book
+     * @param marketDepth levels requested, 0 for full depth
+     */
+    private static void sendSnapshot(final Session session,
+                                     final String mdReqId,
+                                     final SyntheticBook book,
+                                     final int marketDepth) {
+
+        final MarketDataSnapshotFullRefresh snapshot =
+                                new MarketDataSnapshotFullRefresh();
+        snapshot.setString(MDReqID.FIELD, mdReqId);
+        book.snapshot(snapshot, marketDepth);
+
+        if (session != null) {
+            session.send(snapshot);
+        }
+    }
+
+    /**
+     * Stop streaming the symbols of a request.
+     * @param mdReqId request ID
+     */
+    void cancel(final String mdReqId) {
+
+        final List<String> symbols = requests.remove(mdReqId);
+
+        if (symbols != null) {
+            for (final String symbol : symbols) {
+                final SyntheticBook book = books.get(symbol);
+
+                if (book != null) {
+                    remove(book);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a book to the stream.
+     * @param book book
+     */
+    private synchronized void add(final SyntheticBook book) {
+
+        final SyntheticBook[] current = streamed;
+        final SyntheticBook[] next =
+                        Arrays.copyOf(current, current.length + 1);
+
+        next[current.length] = book;
+        streamed = next;
+    }
+
+    /**
+     * Take a book out of the stream.
+     * @param book book
+     */
+    private synchronized void remove(final SyntheticBook book) {
+
+        final List<SyntheticBook> next =
+                        new ArrayList<SyntheticBook>(Arrays.asList(streamed));
+
+        if (next.remove(book)) {
+            streamed = next.toArray(NO_BOOKS);
+        }
+    }
+
+    /**
+     * Send refreshes until stopped.
+     */
+    private void publish() {
+
+        final Session session = Session.lookupSession(sessionID);
+        final MarketDataIncrementalRefresh refresh =
+                                    new MarketDataIncrementalRefresh();
+        final MarketDataIncrementalRefresh.NoMDEntries group =
+                new MarketDataIncrementalRefresh.NoMDEntries();
+        final PriceDepth entry = new PriceDepth();
+        final StringBuilder price = new StringBuilder();
+
+        long burstNanos = 0;
+
+        if (profile.getUpdatesPerSecond() > 0) {
+            burstNanos = (long) (NANOS_PER_SECOND * profile.getBurstSize()
+                                 / profile.getUpdatesPerSecond());
+        }
+
+        long next = System.nanoTime();
+        long reportAt = next + REPORT_NANOS;
+        long reported = 0;
+        long built = 0;
+        int cursor = 0;
+
+        while (running) {
+
+            final SyntheticBook[] current = streamed;
+
+            if (current.length == 0 || session == null
+                    || !session.isLoggedOn()) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                next = System.nanoTime();
+                continue;
+            }
+
+            for (int i = 0; i < profile.getBurstSize(); i++) {
+
+                refresh.removeGroup(NoMDEntries.FIELD);
+
+                for (int j = 0; j < profile.getEntriesPerMessage(); j++) {
+                    cursor = (cursor + 1) % current.length;
+                    current[cursor].next(random, profile, entry);
+                    setEntry(group, price, entry);
+                    refresh.addGroup(group);
+                }
+
+                built++;
+
+                if (profile.getDropEvery() > 0
+                        && built % profile.getDropEvery() == 0) {
+                    droppedCount++;
+                } else if (session.send(refresh)) {
+                    messageCount++;
+                }
+            }
+
+            final long now = System.nanoTime();
+
+            if (now >= reportAt) {
+                LOG.info(sessionID + " sent " + Math.round(
+                        (messageCount - reported) * NANOS_PER_SECOND
+                        / (now - reportAt + REPORT_NANOS)) + " messages/s, "
+                        + droppedCount + " dropped");
+                reported = messageCount;
+                reportAt = now + REPORT_NANOS;
+            }
+
+            if (burstNanos > 0) {
+                next += burstNanos;
+
+                // a publisher that falls behind does not race to
+                // catch up, it carries on at the configured pace
+                if (now - next > burstNanos) {
+                    next = now;
+                }
+
+                waitUntil(next);
+            }
+        }
+    }
+
+    /**
+     * Set the fields of a refresh entry.
+     * @param group entry
+     * @param price reused price buffer
+     * @param entry change made to a book
+     */
+    private static void setEntry(
+            final MarketDataIncrementalRefresh.NoMDEntries group,
+            final StringBuilder price, final PriceDepth entry) {
+
+        price.setLength(0);
+        EventLog.appendDecimal(price, entry.getPrice(),
+                               entry.getPriceScale());
+
+        group.setChar(MDUpdateAction.FIELD, entry.getUpdateAction());
+        group.setChar(MDEntryType.FIELD, entry.getType());
+        group.setString(Symbol.FIELD, entry.getSymbol());
+        group.setInt(MDEntryPositionNo.FIELD, entry.getLevel());
+        group.setString(MDEntryPx.FIELD, price.toString());
+        group.setInt(MDEntrySize.FIELD, entry.getOrderSize());
+        group.setInt(RptSeq.FIELD, entry.getRptSeq());
+    }
+
+    /**
+     * Wait until a time.
+     * @param targetNanos System.nanoTime to wait until
+     */
+    private static void waitUntil(final long targetNanos) {
+
+        long remaining = targetNanos - System.nanoTime();
+
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = targetNanos - System.nanoTime();
+        }
+    }
+
+    /**
+     * @return messages sent
+     */
+    long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return refreshes dropped to make gaps
+     */
+    long getDroppedCount() {
+        return droppedCount;
+    }
+}
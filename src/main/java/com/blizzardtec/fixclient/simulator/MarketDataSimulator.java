@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.simulator;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import quickfix.Acceptor;
+import quickfix.ConfigError;
+import quickfix.MemoryStoreFactory;
+import quickfix.ScreenLogFactory;
+import quickfix.SessionSettings;
+import quickfix.SocketAcceptor;
+import quickfix.fix44.MessageFactory;
+
+/**
+ * Stand in venue for load testing the client on one box.
+ *
+ * Accepts the sessions in the simulator configuration, answers
+ * market data requests with snapshots, then streams incremental
+ * refreshes shaped by each session's traffic profile. Messages are
+ * kept in memory and only session events are logged, so the
+ * simulator spends its time sending.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class MarketDataSimulator {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(MarketDataSimulator.class);
+
+    /**
+     * Simulator configuration file.
+     */
+    private static final String CONFIG =
+           "src/main/resources/simulatorconfig";
+
+    /**
+     * Run the simulator until enter is pressed.
+     */
+    public void run() {
+
+        try (FileInputStream config = new FileInputStream(CONFIG)) {
+
+            final SessionSettings settings = new SessionSettings(config);
+            final SimulatorApplication application =
+                                new SimulatorApplication(settings);
+
+            final Acceptor acceptor = new SocketAcceptor(application,
+                    new MemoryStoreFactory(), settings,
+                    new ScreenLogFactory(false, false, true),
+                    new MessageFactory());
+
+            LOG.info("STARTING SIMULATOR...");
+
+            acceptor.start();
+
+            System.out.println("press <enter> to quit");
+
+            System.in.read();
+
+            application.stop();
+            acceptor.stop();
+
+        } catch (FileNotFoundException fnf) {
+            LOG.error(fnf.getMessage());
+        } catch (ConfigError ce) {
+            LOG.error(ce.getMessage());
+        } catch (IOException e) {
+            LOG.error(e.getMessage());
+        } catch (InterruptedException e) {
+            LOG.info(e.getMessage());
+        }
+    }
+}
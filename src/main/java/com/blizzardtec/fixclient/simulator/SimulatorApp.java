@@ -0,0 +1,33 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.simulator;
+
+/**
+ * Market data simulator main class.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class SimulatorApp {
+
+    /**
+     * Utility class has private constructor.
+     */
+    private SimulatorApp() {
+        // private constructor
+    }
+
+    /**
+     * Main app start.
+     *
+     * @param args
+     *            command line args
+     */
+    public static void main(final String[] args) {
+
+        final MarketDataSimulator simulator = new MarketDataSimulator();
+
+        simulator.run();
+    }
+}
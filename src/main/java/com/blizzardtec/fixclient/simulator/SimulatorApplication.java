@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import quickfix.Application;
+import quickfix.ConfigError;
+import quickfix.DoNotSend;
+import quickfix.FieldConvertError;
+import quickfix.FieldNotFound;
+import quickfix.Group;
+import quickfix.IncorrectDataFormat;
+import quickfix.IncorrectTagValue;
+import quickfix.Message;
+import quickfix.RejectLogon;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+import quickfix.UnsupportedMessageType;
+import quickfix.field.MDReqID;
+import quickfix.field.MarketDepth;
+import quickfix.field.NoRelatedSym;
+import quickfix.field.SubscriptionRequestType;
+import quickfix.field.Symbol;
+import quickfix.fix44.MarketDataRequest;
+import quickfix.fix44.MessageCracker;
+
+/**
+ * Acceptor side of the simulator: answers market data requests
+ * and streams to each logged on session.
+ *
+ * Every symbol requested is accepted. Each session gets its own
+ * publisher, with the traffic profile from its settings, started
+ * on logon and stopped on logout.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class SimulatorApplication
+            extends MessageCracker implements Application {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(SimulatorApplication.class);
+
+    /**
+     * Settings the traffic profiles are read from.
+     */
+    private final transient SessionSettings settings;
+    /**
+     * Publisher of each logged on session.
+     */
+    private final transient ConcurrentMap<SessionID, MarketDataPublisher>
+        publishers =
+                new ConcurrentHashMap<SessionID, MarketDataPublisher>();
+
+    /**
+     * Constructor.
+     * @param settings settings the traffic profiles are read from
+     */
+    public SimulatorApplication(final SessionSettings settings) {
+        super();
+        this.settings = settings;
+    }
+
+    @Override
+    public void onCreate(final SessionID sessionID) {
+        // publishers are created on logon
+    }
+
+    @Override
+    public void onLogon(final SessionID sessionID) {
+
+        try {
+            final TrafficProfile profile =
+                        TrafficProfile.fromSettings(settings, sessionID);
+            final MarketDataPublisher publisher =
+                        new MarketDataPublisher(sessionID, profile);
+
+            LOG.info(sessionID + " logged on, streaming " + profile);
+
+            publisher.start();
+
+            final MarketDataPublisher previous =
+                        publishers.put(sessionID, publisher);
+
+            if (previous != null) {
+                previous.stop();
+            }
+        } catch (ConfigError | FieldConvertError e) {
+            LOG.error(sessionID + " traffic profile: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onLogout(final SessionID sessionID) {
+
+        final MarketDataPublisher publisher = publishers.remove(sessionID);
+
+        if (publisher != null) {
+            try {
+                publisher.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void toAdmin(final Message message, final SessionID sessionID) {
+        // nothing to add
+    }
+
+    @Override
+    public void fromAdmin(final Message message, final SessionID sessionID)
+            throws FieldNotFound, IncorrectDataFormat, IncorrectTagValue,
+            RejectLogon {
+        // every logon is accepted
+    }
+
+    @Override
+    public void toApp(final Message message, final SessionID sessionID)
+            throws DoNotSend {
+        // nothing to add
+    }
+
+    @Override
+    public void fromApp(final Message message, final SessionID sessionID)
+            throws FieldNotFound, IncorrectDataFormat, IncorrectTagValue,
+            UnsupportedMessageType {
+
+        crack(message, sessionID);
+    }
+
+    /**
+     * Handle a market data request: subscribe or cancel its symbols.
+     * @param request request
+     * @param sessionID session
+     * @throws FieldNotFound thrown if a required field is missing
+     */
+    public void onMessage(final MarketDataRequest request,
+                          final SessionID sessionID) throws FieldNotFound {
+
+        final MarketDataPublisher publisher = publishers.get(sessionID);
+
+        if (publisher == null) {
+            return;
+        }
+
+        final String mdReqId = request.getString(MDReqID.FIELD);
+
+        if (request.getChar(SubscriptionRequestType.FIELD)
+                == SubscriptionRequestType
+                    .DISABLE_PREVIOUS_SNAPSHOT_PLUS_UPDATE_REQUEST) {
+            publisher.cancel(mdReqId);
+            return;
+        }
+
+        final List<String> symbols = new ArrayList<String>();
+
+        for (final Group group : request.getGroups(NoRelatedSym.FIELD)) {
+            symbols.add(group.getString(Symbol.FIELD));
+        }
+
+        int marketDepth = 0;
+
+        if (request.isSetField(MarketDepth.FIELD)) {
+            marketDepth = request.getInt(MarketDepth.FIELD);
+        }
+
+        if (request.getChar(SubscriptionRequestType.FIELD)
+                == SubscriptionRequestType.SNAPSHOT) {
+            publisher.snapshot(mdReqId, symbols, marketDepth);
+        } else {
+            publisher.subscribe(mdReqId, symbols, marketDepth);
+        }
+    }
+
+    /**
+     * Stop every publisher.
+     * @throws InterruptedException thrown if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+        for (final SessionID sessionID : publishers.keySet()) {
+            final MarketDataPublisher publisher =
+                                publishers.remove(sessionID);
+            if (publisher != null) {
+                publisher.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.simulator;
+
+import java.util.Random;
+
+import quickfix.field.MDEntryPositionNo;
+import quickfix.field.MDEntryPx;
+import quickfix.field.MDEntrySize;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDUpdateAction;
+import quickfix.field.RptSeq;
+import quickfix.field.Symbol;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+
+import com.blizzardtec.fixclient.OrderType;
+import com.blizzardtec.fixclient.depth.PriceDepth;
+import com.blizzardtec.fixclient.log.EventLog;
+
+/**
+ * The book of one simulated instrument, moved on one random entry
+ * at a time.
+ *
+ * Levels are kept the way a client keyed by position keeps them:
+ * a new level moves the levels below it down and drops the bottom
+ * one off a full book, a delete moves them up. Prices stay in
+ * strict order either side of a fixed mid, so a client keyed by
+ * price builds the same book. Every entry carries the next RptSeq
+ * of the book, and a snapshot the RptSeq of the last entry in it.
+ *
+ * @author Barnaby Golden
+ *
+ */
+final class SyntheticBook {
+
+    /**
+     * Decimal places in prices.
+     */
+    static final int PRICE_SCALE = 5;
+
+    /**
+     * Mid price, 1.43350.
+     */
+    private static final long MID = 143350L;
+    /**
+     * Ticks between the levels of a new book.
+     */
+    private static final long GAP = 10L;
+    /**
+     * Smallest order size.
+     */
+    private static final int MIN_SIZE = 100000;
+    /**
+     * Number of order size steps.
+     */
+    private static final int SIZE_STEPS = 50;
+    /**
+     * Gap needed to insert a price between two levels.
+     */
+    private static final long MIN_GAP = 2L;
+
+    /**
+     * Instrument symbol.
+     */
+    private final transient String symbol;
+    /**
+     * Levels on each side.
+     */
+    private final transient int depth;
+    /**
+     * Bid prices, best first.
+     */
+    private final transient long[] bidPrices;
+    /**
+     * Bid sizes, best first.
+     */
+    private final transient int[] bidSizes;
+    /**
+     * Offer prices, best first.
+     */
+    private final transient long[] offerPrices;
+    /**
+     * Offer sizes, best first.
+     */
+    private final transient int[] offerSizes;
+    /**
+     * Bid levels in the book.
+     */
+    private transient int bidCount;
+    /**
+     * Offer levels in the book.
+     */
+    private transient int offerCount;
+    /**
+     * RptSeq of the last entry.
+     */
+    private transient int rptSeq;
+
+    /**
+     * Constructor. The book starts full.
+     * @param symbol instrument symbol
+     * @param depth levels on each side
+     * @param random source of the order sizes
+     */
+    SyntheticBook(final String symbol, final int depth,
+                  final Random random) {
+
+        this.symbol = symbol;
+        this.depth = depth;
+
+        bidPrices = new long[depth];
+        bidSizes = new int[depth];
+        offerPrices = new long[depth];
+        offerSizes = new int[depth];
+
+        for (int i = 0; i < depth; i++) {
+            bidPrices[i] = MID - GAP * (i + 1);
+            bidSizes[i] = size(random);
+            offerPrices[i] = MID + GAP * (i + 1);
+            offerSizes[i] = size(random);
+        }
+
+        bidCount = depth;
+        offerCount = depth;
+    }
+
+    /**
+     * @param random random source
+     * @return a random order size
+     */
+    private static int size(final Random random) {
+        return MIN_SIZE * (random.nextInt(SIZE_STEPS) + 1);
+    }
+
+    /**
+     * @return instrument symbol
+     */
+    String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Fill in a snapshot of the whole book, limited to a depth.
+     * @param snapshot snapshot to add the levels to
+     * @param marketDepth most levels to include, 0 for all
+     */
+    synchronized void snapshot(final MarketDataSnapshotFullRefresh snapshot,
+                               final int marketDepth) {
+
+        int levels = depth;
+
+        if (marketDepth > 0) {
+            levels = Math.min(depth, marketDepth);
+        }
+
+        snapshot.setString(Symbol.FIELD, symbol);
+        snapshot.setInt(RptSeq.FIELD, rptSeq);
+
+        final MarketDataSnapshotFullRefresh.NoMDEntries group =
+                new MarketDataSnapshotFullRefresh.NoMDEntries();
+        final StringBuilder price = new StringBuilder();
+
+        for (int i = 0; i < levels; i++) {
+            if (i < bidCount) {
+                setEntry(group, price, OrderType.BID, i + 1,
+                         bidPrices[i], bidSizes[i]);
+                snapshot.addGroup(group);
+            }
+            if (i < offerCount) {
+                setEntry(group, price, OrderType.OFFER, i + 1,
+                         offerPrices[i], offerSizes[i]);
+                snapshot.addGroup(group);
+            }
+        }
+    }
+
+    /**
+     * Set the fields of a snapshot entry.
+     * @param group entry
+     * @param price reused price buffer
+     * @param type order type
+     * @param level level
+     * @param unscaled price at PRICE_SCALE
+     * @param size order size
+     */
+    private static void setEntry(
+            final MarketDataSnapshotFullRefresh.NoMDEntries group,
+            final StringBuilder price, final char type, final int level,
+            final long unscaled, final int size) {
+
+        price.setLength(0);
+        EventLog.appendDecimal(price, unscaled, PRICE_SCALE);
+
+        group.setChar(MDEntryType.FIELD, type);
+        group.setInt(MDEntryPositionNo.FIELD, level);
+        group.setString(MDEntryPx.FIELD, price.toString());
+        group.setInt(MDEntrySize.FIELD, size);
+    }
+
+    /**
+     * Move the book on by one random entry.
+     * @param random random source
+     * @param profile update mix
+     * @param entry entry to fill in with the change made
+     */
+    synchronized void next(final Random random,
+                           final TrafficProfile profile,
+                           final PriceDepth entry) {
+
+        final boolean bid = random.nextBoolean();
+        final int count = count(bid);
+        final int roll = random.nextInt(TrafficProfile.ALL_PERCENT);
+
+        char action = MDUpdateAction.CHANGE;
+        int level = random.nextInt(Math.max(count, 1)) + 1;
+
+        if (count == 0 || (roll >= profile.getChangePercent()
+                && roll < profile.getChangePercent()
+                            + profile.getNewPercent())) {
+            level = random.nextInt(Math.min(count + 1, depth)) + 1;
+            action = MDUpdateAction.NEW;
+        } else if (roll >= profile.getChangePercent()
+                            + profile.getNewPercent() && count > 1) {
+            action = MDUpdateAction.DELETE;
+        }
+
+        long[] prices = offerPrices;
+        int[] sizes = offerSizes;
+        char type = OrderType.OFFER;
+
+        if (bid) {
+            prices = bidPrices;
+            sizes = bidSizes;
+            type = OrderType.BID;
+        }
+
+        final int index = level - 1;
+
+        if (action == MDUpdateAction.NEW) {
+            final long price = between(bid, prices, count, index);
+
+            if (price == 0) {
+                // no room between the neighbours, change instead
+                action = MDUpdateAction.CHANGE;
+                level = random.nextInt(count) + 1;
+            } else {
+                final int moved = Math.min(count, depth - 1) - index;
+                System.arraycopy(prices, index, prices, index + 1, moved);
+                System.arraycopy(sizes, index, sizes, index + 1, moved);
+                prices[index] = price;
+                sizes[index] = size(random);
+                setCount(bid, Math.min(count + 1, depth));
+            }
+        }
+
+        entry.setSymbol(symbol);
+        entry.setUpdateAction(action);
+        entry.setType(type);
+        entry.setLevel(level);
+        entry.setPriceScale(PRICE_SCALE);
+        rptSeq++;
+        entry.setRptSeq(rptSeq);
+
+        if (action == MDUpdateAction.CHANGE) {
+            sizes[level - 1] = size(random);
+        }
+
+        entry.setPrice(prices[level - 1]);
+        entry.setOrderSize(sizes[level - 1]);
+
+        if (action == MDUpdateAction.DELETE) {
+            final int moved = count - level;
+            System.arraycopy(prices, level, prices, level - 1, moved);
+            System.arraycopy(sizes, level, sizes, level - 1, moved);
+            setCount(bid, count - 1);
+        }
+    }
+
+    /**
+     * Pick a price for a level inserted at an index.
+     * @param bid true for the bid side
+     * @param prices prices of the side
+     * @param count levels on the side
+     * @param index index inserted at
+     * @return price, 0 if there is no room
+     */
+    private static long between(final boolean bid, final long[] prices,
+                                final int count, final int index) {
+
+        // prices move away from the mid going down the book
+        long away = GAP;
+        long inside = MID;
+
+        if (bid) {
+            away = -GAP;
+        }
+
+        if (index > 0) {
+            inside = prices[index - 1];
+        }
+
+        long outside = inside + away;
+
+        if (index < count) {
+            outside = prices[index];
+        }
+
+        long price = 0;
+
+        if (Math.abs(outside - inside) >= MIN_GAP) {
+            price = (inside + outside) / 2;
+        }
+
+        return price;
+    }
+
+    /**
+     * Get the levels on one side.
+     * @param bid true for the bid side
+     * @return levels
+     */
+    private int count(final boolean bid) {
+
+        int count = offerCount;
+
+        if (bid) {
+            count = bidCount;
+        }
+
+        return count;
+    }
+
+    /**
+     * Set the levels on one side.
+     * @param bid true for the bid side
+     * @param count levels
+     */
+    private void setCount(final boolean bid, final int count) {
+        if (bid) {
+            bidCount = count;
+        } else {
+            offerCount = count;
+        }
+    }
+
+    /**
+     * Get a level, for checking a client book against.
+     * @param type order type (BID/OFFER)
+     * @param level level, from 1
+     * @return price at PRICE_SCALE, 0 if the level is empty
+     */
+    synchronized long getPrice(final char type, final int level) {
+
+        long price = 0;
+
+        if (type == OrderType.BID && level <= bidCount) {
+            price = bidPrices[level - 1];
+        } else if (type == OrderType.OFFER && level <= offerCount) {
+            price = offerPrices[level - 1];
+        }
+
+        return price;
+    }
+
+    /**
+     * Get the size of a level, for checking a client book against.
+     * @param type order type (BID/OFFER)
+     * @param level level, from 1
+     * @return order size, 0 if the level is empty
+     */
+    synchronized int getSize(final char type, final int level) {
+
+        int size = 0;
+
+        if (type == OrderType.BID && level <= bidCount) {
+            size = bidSizes[level - 1];
+        } else if (type == OrderType.OFFER && level <= offerCount) {
+            size = offerSizes[level - 1];
+        }
+
+        return size;
+    }
+}
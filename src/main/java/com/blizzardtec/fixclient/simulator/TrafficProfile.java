@@ -0,0 +1,285 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.simulator;
+
+import quickfix.ConfigError;
+import quickfix.FieldConvertError;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+
+/**
+ * Shape of the market data a simulated session streams.
+ *
+ * Messages go out in bursts of burstSize back to back, with the
+ * bursts spaced so that on average updatesPerSecond messages are
+ * sent. Each message holds entriesPerMessage entries, each for the
+ * next subscribed symbol in turn. The update mix gives the share
+ * of changes, new levels and deletes, in percent.
+ *
+ * @author Barnaby Golden
+ *
+ */
+public final class TrafficProfile {
+
+    /**
+     * Session setting for the levels on each side of a book.
+     */
+    public static final String BOOK_DEPTH = "BookDepth";
+    /**
+     * Session setting for the messages sent per second, 0 to send
+     * as fast as possible. Sends queue up in the session if the
+     * client cannot keep up.
+     */
+    public static final String UPDATES_PER_SECOND = "UpdatesPerSecond";
+    /**
+     * Session setting for the entries in each message.
+     */
+    public static final String ENTRIES_PER_MESSAGE = "EntriesPerMessage";
+    /**
+     * Session setting for the percent of changes, new levels and
+     * deletes, separated by commas.
+     */
+    public static final String UPDATE_MIX = "UpdateMix";
+    /**
+     * Session setting for the messages sent back to back in a burst.
+     */
+    public static final String BURST_SIZE = "BurstSize";
+    /**
+     * Session setting for dropping one refresh in so many instead
+     * of sending it, 0 to send them all. The books still move on,
+     * so the client sees a gap in RptSeq.
+     */
+    public static final String DROP_EVERY = "DropEvery";
+
+    /**
+     * Default levels on each side of a book.
+     */
+    public static final int DEFAULT_BOOK_DEPTH = 10;
+    /**
+     * Default messages sent per second.
+     */
+    public static final int DEFAULT_UPDATES_PER_SECOND = 1000;
+    /**
+     * Default percent of changes.
+     */
+    public static final int DEFAULT_CHANGE_PERCENT = 80;
+    /**
+     * Default percent of new levels.
+     */
+    public static final int DEFAULT_NEW_PERCENT = 10;
+    /**
+     * Whole of the update mix.
+     */
+    public static final int ALL_PERCENT = 100;
+
+    /**
+     * Levels on each side of a book.
+     */
+    private final transient int bookDepth;
+    /**
+     * Messages sent per second, 0 for as fast as possible.
+     */
+    private final transient int updatesPerSecond;
+    /**
+     * Entries in each message.
+     */
+    private final transient int entriesPerMessage;
+    /**
+     * Percent of entries that change a level.
+     */
+    private final transient int changePercent;
+    /**
+     * Percent of entries that add a level.
+     */
+    private final transient int newPercent;
+    /**
+     * Messages sent back to back in a burst.
+     */
+    private final transient int burstSize;
+    /**
+     * One refresh in this many is dropped, 0 for none.
+     */
+    private final transient int dropEvery;
+
+    /**
+     * Constructor.
+     * @param bookDepth levels on each side of a book
+     * @param updatesPerSecond messages sent per second, 0 for as
+     *        fast as possible
+     * @param entriesPerMessage entries in each message
+     * @param changePercent percent of entries that change a level
+     * @param newPercent percent of entries that add a level, the
+     *        rest delete one
+     * @param burstSize messages sent back to back in a burst
+     */
+    public TrafficProfile(final int bookDepth, final int updatesPerSecond,
+                          final int entriesPerMessage,
+                          final int changePercent, final int newPercent,
+                          final int burstSize) {
+        this(bookDepth, updatesPerSecond, entriesPerMessage, changePercent,
+             newPercent, burstSize, 0);
+    }
+
+    /**
+     * Constructor.
+     * @param bookDepth levels on each side of a book
+     * @param updatesPerSecond messages sent per second, 0 for as
+     *        fast as possible
+     * @param entriesPerMessage entries in each message
+     * @param changePercent percent of entries that change a level
+     * @param newPercent percent of entries that add a level, the
+     *        rest delete one
+     * @param burstSize messages sent back to back in a burst
+     * @param dropEvery one refresh in this many is dropped, 0 for none
+     */
+    public TrafficProfile(final int bookDepth, final int updatesPerSecond,
+                          final int entriesPerMessage,
+                          final int changePercent, final int newPercent,
+                          final int burstSize, final int dropEvery) {
+
+        if (bookDepth < 1 || updatesPerSecond < 0 || entriesPerMessage < 1
+                || burstSize < 1 || dropEvery < 0) {
+            throw new IllegalArgumentException("Invalid traffic profile");
+        }
+        if (changePercent < 0 || newPercent < 0
+                || changePercent + newPercent > ALL_PERCENT) {
+            throw new IllegalArgumentException(
+                    "Invalid update mix " + changePercent + ","
+                    + newPercent);
+        }
+
+        this.bookDepth = bookDepth;
+        this.updatesPerSecond = updatesPerSecond;
+        this.entriesPerMessage = entriesPerMessage;
+        this.changePercent = changePercent;
+        this.newPercent = newPercent;
+        this.burstSize = burstSize;
+        this.dropEvery = dropEvery;
+    }
+
+    /**
+     * Read the profile of a session, falling back to the defaults.
+     * @param settings session settings
+     * @param sessionID session
+     * @return profile
+     * @throws ConfigError thrown
+     * @throws FieldConvertError thrown if a setting cannot be read
+     */
+    public static TrafficProfile fromSettings(
+            final SessionSettings settings, final SessionID sessionID)
+            throws ConfigError, FieldConvertError {
+
+        int changes = DEFAULT_CHANGE_PERCENT;
+        int inserts = DEFAULT_NEW_PERCENT;
+
+        if (settings.isSetting(sessionID, UPDATE_MIX)) {
+            final String[] mix =
+                settings.getString(sessionID, UPDATE_MIX).split(",");
+
+            if (mix.length < 2) {
+                throw new FieldConvertError(
+                        UPDATE_MIX + " needs change,new,delete percents");
+            }
+
+            try {
+                changes = Integer.parseInt(mix[0].trim());
+                inserts = Integer.parseInt(mix[1].trim());
+            } catch (NumberFormatException e) {
+                throw new FieldConvertError(UPDATE_MIX + ": "
+                        + e.getMessage());
+            }
+        }
+
+        return new TrafficProfile(
+                getInt(settings, sessionID, BOOK_DEPTH, DEFAULT_BOOK_DEPTH),
+                getInt(settings, sessionID, UPDATES_PER_SECOND,
+                       DEFAULT_UPDATES_PER_SECOND),
+                getInt(settings, sessionID, ENTRIES_PER_MESSAGE, 1),
+                changes, inserts,
+                getInt(settings, sessionID, BURST_SIZE, 1),
+                getInt(settings, sessionID, DROP_EVERY, 0));
+    }
+
+    /**
+     * Get a configured number.
+     * @param settings session settings
+     * @param sessionID session
+     * @param key setting
+     * @param defaultValue value if it is not set
+     * @return number
+     * @throws ConfigError thrown
+     * @throws FieldConvertError thrown if the setting is not a number
+     */
+    private static int getInt(final SessionSettings settings,
+                              final SessionID sessionID, final String key,
+                              final int defaultValue)
+            throws ConfigError, FieldConvertError {
+
+        int value = defaultValue;
+
+        if (settings.isSetting(sessionID, key)) {
+            value = (int) settings.getLong(sessionID, key);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return levels on each side of a book
+     */
+    public int getBookDepth() {
+        return bookDepth;
+    }
+
+    /**
+     * @return messages sent per second, 0 for as fast as possible
+     */
+    public int getUpdatesPerSecond() {
+        return updatesPerSecond;
+    }
+
+    /**
+     * @return entries in each message
+     */
+    public int getEntriesPerMessage() {
+        return entriesPerMessage;
+    }
+
+    /**
+     * @return percent of entries that change a level
+     */
+    public int getChangePercent() {
+        return changePercent;
+    }
+
+    /**
+     * @return percent of entries that add a level
+     */
+    public int getNewPercent() {
+        return newPercent;
+    }
+
+    /**
+     * @return messages sent back to back in a burst
+     */
+    public int getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * @return one refresh in this many is dropped, 0 for none
+     */
+    public int getDropEvery() {
+        return dropEvery;
+    }
+
+    @Override
+    public String toString() {
+        return "depth " + bookDepth + ", " + updatesPerSecond
+            + " messages/s, " + entriesPerMessage + " entries/message, mix "
+            + changePercent + "/" + newPercent + "/"
+            + (ALL_PERCENT - changePercent - newPercent) + ", burst "
+            + burstSize + ", drop every " + dropEvery;
+    }
+}
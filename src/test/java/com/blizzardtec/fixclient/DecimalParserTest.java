@@ -0,0 +1,91 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.blizzardtec.fixclient.depth.FixedPoint;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class DecimalParserTest {
+
+    /**
+     * Test the largest long parses and one more is rejected rather
+     * than wrapping.
+     */
+    @Test
+    public void overflowTest() {
+
+        assertEquals("Long.MAX_VALUE", Long.MAX_VALUE,
+                DecimalParser.parseUnscaled("9223372036854775807"));
+        assertEquals("Long.MAX_VALUE with a point", Long.MAX_VALUE,
+                DecimalParser.parseUnscaled("922337203.6854775807"));
+
+        assertRejected("9223372036854775808");
+        assertRejected("9223372036854775809");
+        assertRejected("92233720368547758070");
+    }
+
+    /**
+     * Test a value with more decimal places than a book can hold
+     * is rejected.
+     */
+    @Test
+    public void scaleTest() {
+
+        assertEquals("Scale", FixedPoint.MAX_SCALE,
+                DecimalParser.scale("0.123456789012345678"));
+
+        boolean rejected = false;
+
+        try {
+            DecimalParser.scale("0.1234567890123456789");
+        } catch (NumberFormatException e) {
+            rejected = true;
+        }
+
+        assertTrue("Scale past MAX_SCALE not rejected", rejected);
+    }
+
+    /**
+     * Test scaling up a price past the range of a long is rejected
+     * rather than wrapping.
+     */
+    @Test
+    public void rescaleOverflowTest() {
+
+        boolean rejected = false;
+
+        try {
+            FixedPoint.rescale(Long.MAX_VALUE / 2, 0, 1);
+        } catch (ArithmeticException e) {
+            rejected = true;
+        }
+
+        assertTrue("Overflow not rejected", rejected);
+    }
+
+    /**
+     * Assert a value cannot be parsed.
+     * @param value tag value
+     */
+    private static void assertRejected(final String value) {
+
+        boolean rejected = false;
+
+        try {
+            DecimalParser.parseUnscaled(value);
+        } catch (NumberFormatException e) {
+            rejected = true;
+        }
+
+        assertTrue(value + " not rejected", rejected);
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.latency.HistogramSnapshot;
+import com.blizzardtec.fixclient.latency.LatencyRecorder;
+import com.blizzardtec.fixclient.latency.LatencyStage;
+
+import quickfix.DataDictionary;
+import quickfix.Message;
+import quickfix.SessionID;
+import quickfix.field.MDEntryPositionNo;
+import quickfix.field.MDEntryPx;
+import quickfix.field.MDEntrySize;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDUpdateAction;
+import quickfix.field.MsgSeqNum;
+import quickfix.field.NoMDEntries;
+import quickfix.field.SenderCompID;
+import quickfix.field.SendingTime;
+import quickfix.field.Symbol;
+import quickfix.field.TargetCompID;
+import quickfix.fix44.Heartbeat;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class LogReplayTest {
+
+    /**
+     *
+     */
+    private static final String SYMBOL = "EUR/USD";
+    /**
+     *
+     */
+    private static final String DICTIONARY = "src/main/resources/FIX44.xml";
+    /**
+     *
+     */
+    private static final String CLIENT = "FIXCLIENT";
+    /**
+     *
+     */
+    private static final String SERVER = "FIXSERVER";
+    /**
+     *
+     */
+    private static final long GAP_MILLIS = 100L;
+    /**
+     *
+     */
+    private static final String[] TIMES = {
+        "20261018-10:00:00.000", "20261018-10:00:00.100",
+        "20261018-10:00:00.200", "20261018-10:00:00.300"};
+
+    /**
+     *
+     */
+    private final SessionID sessionID =
+                        new SessionID("FIX.4.4", CLIENT, SERVER);
+
+    /**
+     * Test a file log replays into the same book as the live feed
+     * would build, skipping admin messages and requests.
+     * @throws Exception thrown
+     */
+    @Test
+    public void maxSpeedTest() throws Exception {
+
+        final ClientApplication application =
+                            new ClientApplication(DecodeMode.FLYWEIGHT);
+        final LogReplay replay = new LogReplay(application,
+                new DataDictionary(DICTIONARY), ReplayMode.MAX_SPEED);
+
+        final ReplayStats stats = replay.replay(log(false));
+
+        assertEquals("Applied", 2, stats.getMessageCount());
+        assertEquals("Skipped", 2, stats.getSkippedCount());
+        assertTrue("Rate", stats.getMessagesPerSecond() > 0);
+        assertTrue("Latency", stats.getLatencyNanos(100)
+                                >= stats.getLatencyNanos(50));
+        assertEquals("Sessions", 1, replay.getSessions().size());
+        assertTrue("Session", replay.getSessions().contains(sessionID));
+
+        final DepthManager manager = application.getDepthManager(sessionID);
+
+        assertEquals("Bid", 143390000L, manager.getInstrumentDepth(SYMBOL)
+                .getPrice(OrderType.BID, 1));
+        assertEquals("Offer", 143360000L, manager.getInstrumentDepth(SYMBOL)
+                .getPrice(OrderType.OFFER, 1));
+    }
+
+    /**
+     * Test a record the application fails on is skipped and the
+     * rest of the log still replays.
+     * @throws Exception thrown
+     */
+    @Test
+    public void malformedTest() throws Exception {
+
+        final ClientApplication application =
+                            new ClientApplication(DecodeMode.FLYWEIGHT);
+        final LogReplay replay = new LogReplay(application,
+                new DataDictionary(DICTIONARY), ReplayMode.MAX_SPEED);
+
+        final MarketDataIncrementalRefresh bad = buildRefresh();
+        bad.getGroups(NoMDEntries.FIELD).get(0)
+           .setString(MDEntryPositionNo.FIELD, "x");
+        bad.getHeader().setString(SenderCompID.FIELD, SERVER);
+        bad.getHeader().setString(TargetCompID.FIELD, CLIENT);
+        bad.getHeader().setInt(MsgSeqNum.FIELD, 1);
+        bad.getHeader().setString(SendingTime.FIELD, TIMES[0]);
+
+        final StringBuilder log = new StringBuilder();
+        log.append(TIMES[0]).append(": ").append(bad).append('\n');
+
+        final BufferedReader rest = log(false);
+        String line = rest.readLine();
+
+        while (line != null) {
+            log.append(line).append('\n');
+            line = rest.readLine();
+        }
+
+        final ReplayStats stats = replay.replay(
+                new BufferedReader(new StringReader(log.toString())));
+
+        assertEquals("Applied", 2, stats.getMessageCount());
+        assertEquals("Skipped", 3, stats.getSkippedCount());
+        assertEquals("Bid", 143390000L, application
+                .getDepthManager(sessionID).getInstrumentDepth(SYMBOL)
+                .getPrice(OrderType.BID, 1));
+    }
+
+    /**
+     * Test messages are spaced out as they were recorded, from a
+     * log with '|' between fields.
+     * @throws Exception thrown
+     */
+    @Test
+    public void originalTimingTest() throws Exception {
+
+        final ClientApplication application =
+                            new ClientApplication(DecodeMode.FLYWEIGHT);
+        final LogReplay replay = new LogReplay(application,
+                new DataDictionary(DICTIONARY), ReplayMode.ORIGINAL_TIMING);
+
+        final ReplayStats stats = replay.replay(log(true));
+
+        assertEquals("Applied", 2, stats.getMessageCount());
+        assertTrue("Elapsed " + stats.getElapsedNanos(),
+                stats.getElapsedNanos()
+                    >= TimeUnit.MILLISECONDS.toNanos(GAP_MILLIS * 2));
+        assertEquals("Bid", 143390000L, application
+                .getDepthManager(sessionID).getInstrumentDepth(SYMBOL)
+                .getPrice(OrderType.BID, 1));
+    }
+
+    /**
+     * Test every stage is timed by message type when the session
+     * records latency.
+     * @throws Exception thrown
+     */
+    @Test
+    public void latencyTest() throws Exception {
+
+        final ClientApplication application =
+                            new ClientApplication(DecodeMode.FLYWEIGHT);
+        final LatencyRecorder recorder =
+                            new LatencyRecorder(sessionID.toString());
+        final LogReplay replay = new LogReplay(application,
+                new DataDictionary(DICTIONARY), ReplayMode.MAX_SPEED);
+
+        application.getSessionBooks(sessionID).setLatencyRecorder(recorder);
+        replay.replay(log(false));
+
+        assertEquals("Wire snapshot", 1,
+                count(recorder, LatencyStage.WIRE, "W"));
+        assertEquals("Cracked refresh", 1,
+                count(recorder, LatencyStage.CRACK, "X"));
+        assertEquals("Applied new", 2,
+                count(recorder, LatencyStage.APPLY, "NEW"));
+        assertEquals("Applied change", 1,
+                count(recorder, LatencyStage.APPLY, "CHANGE"));
+        assertEquals("Applied delete", 0,
+                count(recorder, LatencyStage.APPLY, "DELETE"));
+    }
+
+    /**
+     * @param recorder recorder
+     * @param stage stage
+     * @param type message type or update action
+     * @return number of latencies recorded
+     */
+    private static long count(final LatencyRecorder recorder,
+                              final LatencyStage stage, final String type) {
+
+        final HistogramSnapshot snapshot = new HistogramSnapshot();
+        recorder.getHistogram(stage, type).copyTo(snapshot);
+
+        return snapshot.getCount();
+    }
+
+    /**
+     * Build a file log: a heartbeat, a snapshot, an outgoing
+     * request and a refresh, a tenth of a second apart.
+     * @param display true for '|' between fields
+     * @return log lines
+     */
+    private BufferedReader log(final boolean display) {
+
+        final Message[] messages = {new Heartbeat(), buildSnapshot(),
+            new MarketDataRequestTemplate(Collections.singletonList(
+                    SYMBOL), 1).subscribe("1"),
+            buildRefresh()};
+
+        final StringBuilder log = new StringBuilder();
+
+        for (int i = 0; i < messages.length; i++) {
+
+            final Message message = messages[i];
+
+            if (i == 2) {
+                message.getHeader().setString(SenderCompID.FIELD, CLIENT);
+                message.getHeader().setString(TargetCompID.FIELD, SERVER);
+            } else {
+                message.getHeader().setString(SenderCompID.FIELD, SERVER);
+                message.getHeader().setString(TargetCompID.FIELD, CLIENT);
+            }
+            message.getHeader().setInt(MsgSeqNum.FIELD, i + 1);
+            message.getHeader().setString(SendingTime.FIELD, TIMES[i]);
+
+            String text = message.toString();
+
+            if (display) {
+                text = text.replace('\001', '|');
+            }
+
+            log.append(TIMES[i]).append(": ").append(text).append('\n');
+        }
+
+        return new BufferedReader(new StringReader(log.toString()));
+    }
+
+    /**
+     * Build a one level snapshot.
+     * @return snapshot
+     */
+    private static MarketDataSnapshotFullRefresh buildSnapshot() {
+
+        final MarketDataSnapshotFullRefresh snapshot =
+                                    new MarketDataSnapshotFullRefresh();
+        snapshot.setString(Symbol.FIELD, SYMBOL);
+        snapshot.addGroup(buildEntry(OrderType.BID, "1.4335"));
+        snapshot.addGroup(buildEntry(OrderType.OFFER, "1.4336"));
+
+        return snapshot;
+    }
+
+    /**
+     * Build a snapshot entry at level 1.
+     * @param type bid or offer
+     * @param price price
+     * @return entry group
+     */
+    private static MarketDataSnapshotFullRefresh.NoMDEntries buildEntry(
+            final char type, final String price) {
+
+        final MarketDataSnapshotFullRefresh.NoMDEntries group =
+                new MarketDataSnapshotFullRefresh.NoMDEntries();
+        group.setChar(MDEntryType.FIELD, type);
+        group.setString(MDEntryPx.FIELD, price);
+        group.setString(MDEntrySize.FIELD, "1000");
+        group.setInt(MDEntryPositionNo.FIELD, 1);
+
+        return group;
+    }
+
+    /**
+     * Build a refresh changing the level 1 bid.
+     * @return refresh
+     */
+    private static MarketDataIncrementalRefresh buildRefresh() {
+
+        final MarketDataIncrementalRefresh refresh =
+                                    new MarketDataIncrementalRefresh();
+        final MarketDataIncrementalRefresh.NoMDEntries group =
+                new MarketDataIncrementalRefresh.NoMDEntries();
+        group.setChar(MDUpdateAction.FIELD, MDUpdateAction.CHANGE);
+        group.setChar(MDEntryType.FIELD, OrderType.BID);
+        group.setString(Symbol.FIELD, SYMBOL);
+        group.setInt(MDEntryPositionNo.FIELD, 1);
+        group.setString(MDEntryPx.FIELD, "1.4339");
+        group.setString(MDEntrySize.FIELD, "500");
+        refresh.addGroup(group);
+
+        return refresh;
+    }
+}
@@ -0,0 +1,360 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.depth.DepthRing;
+import com.blizzardtec.fixclient.depth.GapRecovery;
+import com.blizzardtec.fixclient.depth.PriceDepth;
+import com.blizzardtec.fixclient.depth.SnapshotRequester;
+import com.blizzardtec.fixclient.depth.WaitStrategy;
+
+import quickfix.SessionID;
+import quickfix.field.MDEntryPositionNo;
+import quickfix.field.MDEntryPx;
+import quickfix.field.MDEntrySize;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDUpdateAction;
+import quickfix.field.Symbol;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class MarketDataDecoderTest {
+
+    /**
+     *
+     */
+    private static final String SYMBOL = "EUR/USD";
+    /**
+     *
+     */
+    private static final String[] BID_PRICES = {"1.4335", "1.4334", "1.4333"};
+    /**
+     *
+     */
+    private static final String[] OFFER_PRICES =
+                                        {"1.4336", "1.4337", "1.4338"};
+    /**
+     *
+     */
+    private static final String BAD_PRICE = "1.4300";
+    /**
+     *
+     */
+    private static final int RING_CAPACITY = 64;
+    /**
+     *
+     */
+    private static final int WARMUP = 200000;
+    /**
+     *
+     */
+    private static final int MESSAGES = 100000;
+    /**
+     *
+     */
+    private static final long MAX_BYTES_PER_MESSAGE = 8;
+    /**
+     *
+     */
+    private final SessionID sessionID =
+                        new SessionID("FIX.4.4", "FIXCLIENT", "FIXSERVER");
+
+    /**
+     * Flyweight decoding must give the same book as standard decoding.
+     * @throws Exception thrown
+     */
+    @Test
+    public void decodeTest() throws Exception {
+
+        final ClientApplication application =
+                            new ClientApplication(DecodeMode.FLYWEIGHT);
+
+        application.onMessage(buildSnapshot(), sessionID);
+        application.onMessage(
+            buildRefresh(MDUpdateAction.CHANGE, "1.4339", "500"), sessionID);
+
+        final DepthManager manager = application.getDepthManager(sessionID);
+        final PriceDepth[] bids = manager.getDepth(SYMBOL, OrderType.BID);
+        final PriceDepth[] offers = manager.getDepth(SYMBOL, OrderType.OFFER);
+
+        assertEquals("Bid price does not match",
+                1.4339, bids[0].getMidPrice(), 0.0);
+        assertEquals("Bid size does not match", 500, bids[0].getOrderSize());
+        assertEquals("Bid level 2 price does not match",
+                1.4334, bids[1].getMidPrice(), 0.0);
+        assertEquals("Offer price does not match",
+                1.4336, offers[0].getMidPrice(), 0.0);
+        assertEquals("Bid price not held as a scaled long",
+                143390000L, bids[0].getPrice());
+        assertEquals("Bid price not found by value", 1,
+                manager.getInstrumentDepth(SYMBOL)
+                    .findLevel(OrderType.BID, 143390000L));
+
+        application.onMessage(
+            buildRefresh(MDUpdateAction.DELETE, null, null), sessionID);
+
+        assertEquals("Level 2 bid not moved to level 1",
+                1.4334,
+                manager.getDepth(SYMBOL, OrderType.BID)[0].getMidPrice(), 0.0);
+    }
+
+    /**
+     * Each session builds its own books.
+     * @throws Exception thrown
+     */
+    @Test
+    public void sessionTest() throws Exception {
+
+        final SessionID other =
+                        new SessionID("FIX.4.4", "FIXCLIENT", "FIXSERVER2");
+
+        final ClientApplication application =
+                            new ClientApplication(DecodeMode.FLYWEIGHT);
+
+        application.onCreate(other);
+        application.onMessage(buildSnapshot(), sessionID);
+
+        assertNotNull("Book not built",
+                application.getDepthManager(sessionID)
+                    .getInstrumentDepth(SYMBOL));
+        assertNull("Book built in the other session",
+                application.getDepthManager(other)
+                    .getInstrumentDepth(SYMBOL));
+    }
+
+    /**
+     * A snapshot with a bad entry is thrown away: the old levels
+     * stay visible, and the book is marked stale and asked for
+     * again.
+     * @throws Exception thrown
+     */
+    @Test
+    public void badSnapshotTest() throws Exception {
+
+        final ClientApplication application =
+                            new ClientApplication(DecodeMode.FLYWEIGHT);
+
+        application.onMessage(buildSnapshot(), sessionID);
+
+        final GapRecovery recovery =
+            application.getSessionBooks(sessionID).getGapRecovery();
+        final List<String> requested = new ArrayList<String>();
+
+        recovery.setSnapshotRequester(new SnapshotRequester() {
+            @Override
+            public void requestSnapshot(final String symbol) {
+                requested.add(symbol);
+            }
+        });
+
+        final MarketDataSnapshotFullRefresh bad =
+                                    new MarketDataSnapshotFullRefresh();
+        bad.setString(Symbol.FIELD, SYMBOL);
+        bad.addGroup(buildEntry(OrderType.BID, 1, BAD_PRICE));
+
+        // the second entry has no MDEntryType
+        final MarketDataSnapshotFullRefresh.NoMDEntries broken =
+                buildEntry(OrderType.OFFER, 1, BAD_PRICE);
+        broken.removeField(MDEntryType.FIELD);
+        bad.addGroup(broken);
+
+        application.onMessage(bad, sessionID);
+
+        final PriceDepth[] bids = application.getDepthManager(sessionID)
+                                             .getDepth(SYMBOL, OrderType.BID);
+
+        assertEquals("Old levels not kept", BID_PRICES.length, bids.length);
+        assertEquals("Half built book published",
+                1.4335, bids[0].getMidPrice(), 0.0);
+        assertTrue("Book not stale", recovery.isStale(SYMBOL));
+        assertEquals("Snapshot not requested",
+                Arrays.asList(SYMBOL), requested);
+
+        application.onMessage(buildSnapshot(), sessionID);
+
+        assertFalse("Book not recovered", recovery.isStale(SYMBOL));
+    }
+
+    /**
+     * A refresh with a bad second entry still publishes the first to
+     * the book thread.
+     * @throws Exception thrown
+     */
+    @Test
+    public void badRefreshTest() throws Exception {
+
+        final DepthManager manager = new DepthManager();
+        final DepthRing ring =
+            new DepthRing(manager, RING_CAPACITY, WaitStrategy.YIELD);
+        final MarketDataDecoder decoder = new MarketDataDecoder(ring);
+
+        ring.start();
+        decoder.decode(buildSnapshot());
+
+        final MarketDataIncrementalRefresh refresh =
+                buildRefresh(MDUpdateAction.CHANGE, "1.4339", "500");
+        final MarketDataIncrementalRefresh.NoMDEntries bad =
+                new MarketDataIncrementalRefresh.NoMDEntries();
+        bad.setChar(MDUpdateAction.FIELD, MDUpdateAction.CHANGE);
+        bad.setChar(MDEntryType.FIELD, OrderType.OFFER);
+        bad.setString(Symbol.FIELD, SYMBOL);
+        bad.setInt(MDEntryPositionNo.FIELD, 1);
+        bad.setString(MDEntryPx.FIELD, "1.43x6");
+        bad.setString(MDEntrySize.FIELD, "500");
+        refresh.addGroup(bad);
+
+        boolean rejected = false;
+
+        try {
+            decoder.decode(refresh);
+        } catch (NumberFormatException e) {
+            rejected = true;
+        }
+
+        // stopping drains what was published to the book thread
+        ring.stop();
+
+        assertTrue("Bad price not rejected", rejected);
+        assertEquals("First entry not published", 500,
+                manager.getDepth(SYMBOL, OrderType.BID)[0].getOrderSize());
+    }
+
+    /**
+     * Applying an incremental update in steady state allocates nothing.
+     * @throws Exception thrown
+     */
+    @Test
+    public void allocationTest() throws Exception {
+
+        final ClientApplication application =
+                            new ClientApplication(DecodeMode.FLYWEIGHT);
+
+        application.onMessage(buildSnapshot(), sessionID);
+
+        final MarketDataIncrementalRefresh change =
+                buildRefresh(MDUpdateAction.CHANGE, "1.4339", "500");
+        final MarketDataIncrementalRefresh insert =
+                buildRefresh(MDUpdateAction.NEW, "1.4340", "700");
+        final MarketDataIncrementalRefresh delete =
+                buildRefresh(MDUpdateAction.DELETE, null, null);
+
+        for (int i = 0; i < WARMUP; i++) {
+            application.onMessage(change, sessionID);
+            application.onMessage(insert, sessionID);
+            application.onMessage(delete, sessionID);
+        }
+
+        final long before = allocatedBytes();
+
+        for (int i = 0; i < MESSAGES; i++) {
+            application.onMessage(change, sessionID);
+            application.onMessage(insert, sessionID);
+            application.onMessage(delete, sessionID);
+        }
+
+        final long perMessage =
+                (allocatedBytes() - before) / (MESSAGES * 3L);
+
+        assertTrue("Allocated " + perMessage + " bytes per message",
+                perMessage <= MAX_BYTES_PER_MESSAGE);
+    }
+
+    /**
+     * Bytes allocated so far by the current thread.
+     * @return allocated bytes
+     */
+    private static long allocatedBytes() {
+
+        final com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Build a three level snapshot.
+     * @return snapshot
+     */
+    private static MarketDataSnapshotFullRefresh buildSnapshot() {
+
+        final MarketDataSnapshotFullRefresh snapshot =
+                                    new MarketDataSnapshotFullRefresh();
+        snapshot.setString(Symbol.FIELD, SYMBOL);
+
+        for (int i = 0; i < BID_PRICES.length; i++) {
+            snapshot.addGroup(
+                buildEntry(OrderType.BID, i + 1, BID_PRICES[i]));
+            snapshot.addGroup(
+                buildEntry(OrderType.OFFER, i + 1, OFFER_PRICES[i]));
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Build a snapshot entry.
+     * @param type bid or offer
+     * @param level level
+     * @param price price
+     * @return entry group
+     */
+    private static MarketDataSnapshotFullRefresh.NoMDEntries buildEntry(
+            final char type, final int level, final String price) {
+
+        final MarketDataSnapshotFullRefresh.NoMDEntries group =
+                new MarketDataSnapshotFullRefresh.NoMDEntries();
+        group.setChar(MDEntryType.FIELD, type);
+        group.setString(MDEntryPx.FIELD, price);
+        group.setString(MDEntrySize.FIELD, "1000");
+        group.setInt(MDEntryPositionNo.FIELD, level);
+
+        return group;
+    }
+
+    /**
+     * Build a single entry refresh for bid level 1.
+     * @param action update action
+     * @param price price, null to omit
+     * @param size size, null to omit
+     * @return refresh
+     */
+    private static MarketDataIncrementalRefresh buildRefresh(
+            final char action, final String price, final String size) {
+
+        final MarketDataIncrementalRefresh refresh =
+                                    new MarketDataIncrementalRefresh();
+        final MarketDataIncrementalRefresh.NoMDEntries group =
+                new MarketDataIncrementalRefresh.NoMDEntries();
+        group.setChar(MDUpdateAction.FIELD, action);
+        group.setChar(MDEntryType.FIELD, OrderType.BID);
+        group.setString(Symbol.FIELD, SYMBOL);
+        group.setInt(MDEntryPositionNo.FIELD, 1);
+        if (price != null) {
+            group.setString(MDEntryPx.FIELD, price);
+            group.setString(MDEntrySize.FIELD, size);
+        }
+        refresh.addGroup(group);
+
+        return refresh;
+    }
+}
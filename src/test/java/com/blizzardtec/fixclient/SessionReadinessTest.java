@@ -0,0 +1,167 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import quickfix.SessionID;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class SessionReadinessTest {
+
+    /**
+     *
+     */
+    private static final SessionID SESSION =
+        new SessionID("FIX.4.4", "CLIENT", "SERVER");
+    /**
+     *
+     */
+    private static final long WAIT_MILLIS = 200L;
+
+    /**
+     * Test every logon is reported, including reconnects.
+     */
+    @Test
+    public void reconnectTest() {
+
+        final SessionReadiness readiness = new SessionReadiness();
+        final RecordingListener listener = new RecordingListener();
+
+        readiness.addListener(listener);
+        assertFalse("Future done early", readiness.whenLoggedOn().isDone());
+
+        readiness.logon(SESSION);
+        assertTrue("Logged on", readiness.isLoggedOn(SESSION));
+        assertEquals("First logon", SESSION,
+                readiness.whenLoggedOn().getNow(null));
+
+        readiness.logoff(SESSION);
+        assertFalse("Logged off", readiness.isAnyLoggedOn());
+
+        // a logoff without a logon is not reported
+        readiness.logoff(SESSION);
+
+        readiness.logon(SESSION);
+
+        assertEquals("Events", 3, listener.events.size());
+        assertTrue("Logon", listener.events.get(0).isLoggedOn());
+        assertFalse("Logoff", listener.events.get(1).isLoggedOn());
+        assertTrue("Reconnect", listener.events.get(2).isLoggedOn());
+    }
+
+    /**
+     * Test a listener added after logon is told of it at once.
+     */
+    @Test
+    public void lateListenerTest() {
+
+        final SessionReadiness readiness = new SessionReadiness();
+        readiness.logon(SESSION);
+
+        final RecordingListener listener = new RecordingListener();
+        readiness.addListener(listener);
+
+        assertEquals("Events", 1, listener.events.size());
+        assertEquals("Session", SESSION,
+                listener.events.get(0).getSessionID());
+    }
+
+    /**
+     * Test a logoff racing the catch-up logon of a new listener
+     * reaches it after that logon, not before.
+     * @throws InterruptedException thrown if the wait is interrupted
+     */
+    @Test
+    public void catchUpOrderTest() throws InterruptedException {
+
+        final SessionReadiness readiness = new SessionReadiness();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Boolean> events = new ArrayList<Boolean>();
+
+        readiness.logon(SESSION);
+
+        // records each event as its call returns
+        final LogonListener listener = new LogonListener() {
+            @Override
+            public void onLogonEvent(final LogonEvent event) {
+                if (event.isLoggedOn()) {
+                    entered.countDown();
+                    awaitQuietly(release);
+                }
+                synchronized (events) {
+                    events.add(event.isLoggedOn());
+                }
+            }
+        };
+
+        final Thread adder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readiness.addListener(listener);
+            }
+        });
+        adder.start();
+        entered.await();
+
+        final Thread remover = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readiness.logoff(SESSION);
+            }
+        });
+        remover.start();
+        // long enough for an unordered logoff to overtake the logon
+        remover.join(WAIT_MILLIS);
+
+        release.countDown();
+        adder.join();
+        remover.join();
+
+        synchronized (events) {
+            assertEquals("Events", 2, events.size());
+            assertTrue("Logon first", events.get(0));
+            assertFalse("Logoff second", events.get(1));
+        }
+    }
+
+    /**
+     * Wait for a latch, giving up if interrupted.
+     * @param latch latch
+     */
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records the events it is given.
+     */
+    private static final class RecordingListener implements LogonListener {
+        /**
+         *
+         */
+        private final List<LogonEvent> events = new ArrayList<LogonEvent>();
+
+        @Override
+        public void onLogonEvent(final LogonEvent event) {
+            events.add(event);
+        }
+    }
+}
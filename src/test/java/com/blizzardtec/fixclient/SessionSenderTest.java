@@ -0,0 +1,173 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import quickfix.ConfigError;
+import quickfix.DefaultSessionFactory;
+import quickfix.MemoryStoreFactory;
+import quickfix.Message;
+import quickfix.ScreenLogFactory;
+import quickfix.Session;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDReqID;
+import quickfix.field.MarketDepth;
+import quickfix.field.SubscriptionRequestType;
+import quickfix.field.Symbol;
+import quickfix.fix44.MarketDataRequest;
+import quickfix.fix44.MessageFactory;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class SessionSenderTest {
+
+    /**
+     *
+     */
+    private static final SessionID SESSION =
+        new SessionID("FIX.4.4", "SENDERTEST", "FIXSERVER");
+    /**
+     *
+     */
+    private static final SessionID RECREATED =
+        new SessionID("FIX.4.4", "RECREATED", "FIXSERVER");
+
+    /**
+     *
+     */
+    private static Session session;
+
+    /**
+     * Create an unconnected session with a data dictionary.
+     * @throws ConfigError thrown if the session cannot be created
+     */
+    @BeforeClass
+    public static void createSession() throws ConfigError {
+        session = createSession(SESSION);
+    }
+
+    /**
+     * Remove the session.
+     * @throws Exception thrown if the session cannot be closed
+     */
+    @AfterClass
+    public static void closeSession() throws Exception {
+        session.close();
+    }
+
+    /**
+     * Test messages failing validation are not sent.
+     * @throws Exception thrown
+     */
+    @Test
+    public void validationTest() throws Exception {
+
+        final SessionSender sender = FixHelper.getSender(SESSION);
+
+        assertSame("Sender not cached", sender, FixHelper.getSender(SESSION));
+
+        final int sequence = session.getStore().getNextSenderMsgSeqNum();
+
+        // no NoMDEntryTypes or NoRelatedSym groups
+        assertFalse("Invalid message sent",
+                sender.send(new MarketDataRequest(new MDReqID("1"),
+                        new SubscriptionRequestType(
+                            SubscriptionRequestType.SNAPSHOT_PLUS_UPDATES),
+                        new MarketDepth(1))));
+        assertEquals("Invalid message stored", sequence,
+                session.getStore().getNextSenderMsgSeqNum());
+
+        // while logged off a valid message is stored for resend
+        sender.send(request("2"));
+        assertEquals("Valid message not stored", sequence + 1,
+                session.getStore().getNextSenderMsgSeqNum());
+    }
+
+    /**
+     * Test a cached sender is replaced when its session is recreated.
+     * @throws Exception thrown
+     */
+    @Test
+    public void recreatedSessionTest() throws Exception {
+
+        final Session first = createSession(RECREATED);
+        final SessionSender sender = FixHelper.getSender(RECREATED);
+
+        first.close();
+
+        final Session second = createSession(RECREATED);
+
+        try {
+            assertNotSame("Stale sender", sender,
+                          FixHelper.getSender(RECREATED));
+            assertSame("New session", second,
+                       FixHelper.getSender(RECREATED).getSession());
+        } finally {
+            second.close();
+        }
+    }
+
+    /**
+     * Build a valid market data request.
+     * @param mdReqId request ID
+     * @return request
+     */
+    static Message request(final String mdReqId) {
+
+        final MarketDataRequest msg = new MarketDataRequest(
+                new MDReqID(mdReqId),
+                new SubscriptionRequestType(
+                        SubscriptionRequestType.SNAPSHOT_PLUS_UPDATES),
+                new MarketDepth(1));
+
+        final MarketDataRequest.NoMDEntryTypes entryGroup =
+                new MarketDataRequest.NoMDEntryTypes();
+        entryGroup.set(new MDEntryType(MDEntryType.BID));
+        msg.addGroup(entryGroup);
+
+        final MarketDataRequest.NoRelatedSym symGroup =
+                new MarketDataRequest.NoRelatedSym();
+        symGroup.set(new Symbol("EUR/USD"));
+        msg.addGroup(symGroup);
+
+        return msg;
+    }
+
+    /**
+     * Create an unconnected session. The data dictionary is read
+     * from the project resources.
+     * @param sessionID session
+     * @return session
+     * @throws ConfigError thrown if the session cannot be created
+     */
+    static Session createSession(final SessionID sessionID)
+            throws ConfigError {
+
+        final SessionSettings settings = new SessionSettings();
+        settings.setString(sessionID, "ConnectionType", "initiator");
+        settings.setString(sessionID, "StartTime", "00:00:00");
+        settings.setString(sessionID, "EndTime", "00:00:00");
+        settings.setString(sessionID, "HeartBtInt", "30");
+        settings.setString(sessionID, "UseDataDictionary", "Y");
+        settings.setString(sessionID, "DataDictionary",
+                           "src/main/resources/FIX44.xml");
+
+        return new DefaultSessionFactory(new ClientApplication(),
+                new MemoryStoreFactory(), new ScreenLogFactory(false, false,
+                        false), new MessageFactory())
+                .create(sessionID, settings);
+    }
+}
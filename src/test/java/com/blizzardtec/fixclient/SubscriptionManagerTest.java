@@ -0,0 +1,248 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.blizzardtec.fixclient.depth.DepthManager;
+
+import quickfix.FieldNotFound;
+import quickfix.Message;
+import quickfix.SessionID;
+import quickfix.field.MDReqID;
+import quickfix.field.NoMDEntryTypes;
+import quickfix.field.NoRelatedSym;
+import quickfix.field.SubscriptionRequestType;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class SubscriptionManagerTest {
+
+    /**
+     *
+     */
+    private static final SessionID SESSION =
+        new SessionID("FIX.4.4", "CLIENT", "SERVER");
+    /**
+     *
+     */
+    private static final int SYMBOLS = 250;
+    /**
+     *
+     */
+    private static final int PER_REQUEST = 100;
+    /**
+     *
+     */
+    private static final int REQUESTS = 3;
+    /**
+     *
+     */
+    private static final int RATE = 1000;
+
+    /**
+     * Test symbols are packed into requests with unique IDs.
+     * @throws FieldNotFound thrown if a request is incomplete
+     */
+    @Test
+    public void packingTest() throws FieldNotFound {
+
+        final RecordingSender sender = new RecordingSender();
+        final SubscriptionManager subscriptions = subscribed(sender);
+
+        // nothing goes out before logon
+        subscriptions.sendNext();
+        assertEquals("Sent before logon", 0, sender.messages.size());
+
+        subscriptions.onLogonEvent(new LogonEvent(SESSION, true));
+        assertEquals("Queued", REQUESTS, subscriptions.getQueuedRequests());
+
+        sendAll(subscriptions);
+
+        assertEquals("Requests", REQUESTS, sender.messages.size());
+        assertEquals("First", PER_REQUEST,
+                sender.messages.get(0).getInt(NoRelatedSym.FIELD));
+        assertEquals("Last", SYMBOLS - 2 * PER_REQUEST,
+                sender.messages.get(2).getInt(NoRelatedSym.FIELD));
+        assertEquals("Entry types", 2,
+                sender.messages.get(0).getInt(NoMDEntryTypes.FIELD));
+        assertEquals("State", SubscriptionState.REQUESTED,
+                subscriptions.getState(symbol(0)));
+        assertEquals("IDs", REQUESTS, sender.ids().size());
+    }
+
+    /**
+     * Test everything but rejected symbols is requested again after
+     * a reconnect, under new IDs.
+     * @throws FieldNotFound thrown if a request is incomplete
+     */
+    @Test
+    public void reconnectTest() throws FieldNotFound {
+
+        final RecordingSender sender = new RecordingSender();
+        final SubscriptionManager subscriptions = subscribed(sender);
+
+        subscriptions.onLogonEvent(new LogonEvent(SESSION, true));
+        sendAll(subscriptions);
+
+        subscriptions.rejected(
+                sender.messages.get(2).getString(MDReqID.FIELD), "Unknown");
+        assertEquals("Rejected", SubscriptionState.REJECTED,
+                subscriptions.getState(symbol(SYMBOLS - 1)));
+
+        subscriptions.onLogonEvent(new LogonEvent(SESSION, false));
+        assertEquals("Requeued", SubscriptionState.QUEUED,
+                subscriptions.getState(symbol(0)));
+        assertEquals("Queued", 2, subscriptions.getQueuedRequests());
+
+        subscriptions.onLogonEvent(new LogonEvent(SESSION, true));
+        sendAll(subscriptions);
+
+        assertEquals("Requests", REQUESTS + 2, sender.messages.size());
+        assertEquals("IDs", REQUESTS + 2, sender.ids().size());
+        assertEquals("Resent without validation", 2, sender.validated);
+
+        subscriptions.unsubscribeAll();
+
+        // one cancel per live request, under the request's own ID
+        assertEquals("Cancels", REQUESTS + 2 + 2, sender.messages.size());
+        assertEquals("Cancel",
+         SubscriptionRequestType.DISABLE_PREVIOUS_SNAPSHOT_PLUS_UPDATE_REQUEST,
+                sender.messages.get(REQUESTS + 2).getChar(
+                        SubscriptionRequestType.FIELD));
+        assertEquals("Cancel IDs", REQUESTS + 2, sender.ids().size());
+    }
+
+    /**
+     * Test a request that could not be sent is not recorded as
+     * requested, and is validated again when it is next sent.
+     */
+    @Test
+    public void sendFailedTest() {
+
+        final RecordingSender sender = new RecordingSender();
+        final SubscriptionManager subscriptions = subscribed(sender);
+
+        sender.failing = true;
+        subscriptions.onLogonEvent(new LogonEvent(SESSION, true));
+        sendAll(subscriptions);
+
+        assertEquals("Failed", SubscriptionState.FAILED,
+                subscriptions.getState(symbol(0)));
+        assertEquals("Nothing sent", 0, subscriptions.getSentRequests());
+
+        sender.failing = false;
+        subscriptions.onLogonEvent(new LogonEvent(SESSION, false));
+        subscriptions.onLogonEvent(new LogonEvent(SESSION, true));
+        sendAll(subscriptions);
+
+        assertEquals("Requested", SubscriptionState.REQUESTED,
+                subscriptions.getState(symbol(0)));
+        assertEquals("Requests", REQUESTS, sender.messages.size());
+        assertEquals("Validated again", 0, sender.validated);
+    }
+
+    /**
+     * @param sender sender
+     * @return manager subscribed to every test symbol
+     */
+    private static SubscriptionManager subscribed(
+            final RecordingSender sender) {
+
+        final SubscriptionManager subscriptions =
+            new SubscriptionManager(sender, SESSION, new DepthManager(),
+                                    PER_REQUEST, RATE);
+
+        final List<String> symbols = new ArrayList<String>();
+
+        for (int i = 0; i < SYMBOLS; i++) {
+            symbols.add(symbol(i));
+        }
+
+        subscriptions.subscribe(symbols);
+
+        return subscriptions;
+    }
+
+    /**
+     * @param subscriptions manager to drain
+     */
+    private static void sendAll(final SubscriptionManager subscriptions) {
+        while (subscriptions.getQueuedRequests() > 0) {
+            subscriptions.sendNext();
+        }
+    }
+
+    /**
+     * @param index symbol index
+     * @return symbol
+     */
+    private static String symbol(final int index) {
+        return "SYM" + index;
+    }
+
+    /**
+     * Records copies of the messages it is given.
+     */
+    private static final class RecordingSender implements MessageSender {
+        /**
+         *
+         */
+        private final List<Message> messages = new ArrayList<Message>();
+        /**
+         *
+         */
+        private int validated;
+
+        /**
+         *
+         */
+        private boolean failing;
+
+        @Override
+        public boolean sendMessage(final SessionID sessionID,
+                                   final Message message) {
+            if (failing) {
+                return false;
+            }
+            messages.add((Message) message.clone());
+            return true;
+        }
+
+        @Override
+        public boolean sendValidated(final SessionID sessionID,
+                                     final Message message) {
+            if (failing) {
+                return false;
+            }
+            messages.add((Message) message.clone());
+            validated++;
+            return true;
+        }
+
+        /**
+         * @return distinct MDReqIDs sent
+         * @throws FieldNotFound thrown if a message has no MDReqID
+         */
+        private Set<String> ids() throws FieldNotFound {
+
+            final Set<String> ids = new HashSet<String>();
+
+            for (final Message message : messages) {
+                ids.add(message.getString(MDReqID.FIELD));
+            }
+
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.blizzardtec.fixclient.OrderType;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class BookListenerTest {
+
+    /**
+     *
+     */
+    private static final String SYMBOL = "EURUSD";
+    /**
+     *
+     */
+    private static final int MESSAGES = 1000;
+
+    /**
+     * Test listeners hear once per message, with the right flags.
+     */
+    @Test
+    public void perMessageTest() {
+
+        final DepthManager manager = new DepthManager();
+        final Recorder all = new Recorder();
+        final Recorder top = new Recorder();
+
+        manager.addListener(all, BookListener.DEPTH);
+        manager.addListener(top, BookListener.TOP_OF_BOOK);
+
+        // one message filling three levels
+        for (int level = 1; level <= InstrumentDepth.DEPTH_LEVELS; level++) {
+            manager.newDepthData(bid(level, level));
+        }
+        manager.endOfMessage();
+
+        assertEquals("Full depth calls", 1, all.calls);
+        assertEquals("Top of book calls", 1, top.calls);
+        assertEquals("Flags", BookListener.TOP_OF_BOOK | BookListener.DEPTH,
+                all.changes);
+
+        // a change below the top
+        manager.updateDepthData(bid(2, 2));
+        manager.endOfMessage();
+
+        assertEquals("Full depth calls", 2, all.calls);
+        assertEquals("Top of book told of a lower level", 1, top.calls);
+        assertEquals("Flags", BookListener.DEPTH, all.changes);
+
+        // a message that changes nothing
+        manager.deleteDepthLevel(bid(InstrumentDepth.DEPTH_LEVELS + 1, 0));
+        manager.endOfMessage();
+
+        assertEquals("Told of no change", 2, all.calls);
+
+        manager.removeListener(all);
+        manager.updateDepthData(bid(1, 1));
+        manager.endOfMessage();
+
+        assertEquals("Removed listener called", 2, all.calls);
+        assertEquals("Top of book calls", 2, top.calls);
+    }
+
+    /**
+     * Test a slow listener gets the latest state, not every change.
+     * @throws InterruptedException thrown if interrupted
+     */
+    @Test
+    public void conflationTest() throws InterruptedException {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final Recorder slow = new Recorder() {
+            @Override
+            public void onBookChange(final InstrumentDepth book,
+                                     final int changes) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onBookChange(book, changes);
+            }
+        };
+
+        final ConflatingBookListener conflating =
+            new ConflatingBookListener(slow);
+
+        final DepthManager manager = new DepthManager();
+        manager.addListener(conflating, BookListener.DEPTH);
+
+        conflating.start();
+
+        for (int i = 1; i <= MESSAGES; i++) {
+            manager.newDepthData(bid(1, i));
+            manager.endOfMessage();
+        }
+
+        assertTrue("Backlog grew", conflating.getPendingCount() <= 1);
+
+        release.countDown();
+        conflating.stop();
+
+        assertTrue("Not conflated", slow.calls <= 2);
+        assertEquals("Not the latest price", MESSAGES, slow.topPrice);
+        assertEquals("Conflated count",
+                MESSAGES - slow.calls, conflating.getConflatedCount());
+    }
+
+    /**
+     * Test depth dumps are sampled per symbol.
+     */
+    @Test
+    public void samplingTest() {
+
+        final SampledDepthLogger sampler =
+            new SampledDepthLogger(Long.MAX_VALUE);
+
+        final DepthManager manager = new DepthManager();
+        manager.addListener(sampler, BookListener.DEPTH);
+
+        for (int i = 1; i <= MESSAGES; i++) {
+            manager.newDepthData(bid(1, i));
+            manager.endOfMessage();
+        }
+
+        assertEquals("Dumps", 1, sampler.getDumpCount());
+        assertEquals("Skipped", MESSAGES - 1, sampler.getSkippedCount());
+    }
+
+    /**
+     * Build a bid.
+     * @param level level
+     * @param price price and size
+     * @return price depth
+     */
+    private static PriceDepth bid(final int level, final int price) {
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(SYMBOL);
+        priceDepth.setType(OrderType.BID);
+        priceDepth.setLevel(level);
+        priceDepth.setPrice(price);
+        priceDepth.setOrderSize(price);
+
+        return priceDepth;
+    }
+
+    /**
+     * Records what it is told.
+     */
+    private static class Recorder implements BookListener {
+        /**
+         *
+         */
+        private volatile int calls;
+        /**
+         *
+         */
+        private volatile int changes;
+        /**
+         *
+         */
+        private volatile long topPrice;
+
+        @Override
+        public void onBookChange(final InstrumentDepth book,
+                                 final int bookChanges) {
+            calls++;
+            changes = bookChanges;
+
+            final DepthSnapshot snapshot = new DepthSnapshot();
+            book.snapshot(snapshot);
+            topPrice = snapshot.getPrice(OrderType.BID, 1);
+        }
+    }
+}
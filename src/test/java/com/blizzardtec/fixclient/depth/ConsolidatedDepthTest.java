@@ -0,0 +1,214 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.blizzardtec.fixclient.OrderType;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class ConsolidatedDepthTest {
+
+    /**
+     *
+     */
+    private static final String SYMBOL = "EURUSD";
+    /**
+     *
+     */
+    private static final int VENUES = 3;
+    /**
+     *
+     */
+    private static final int ROUNDS = 2000;
+    /**
+     *
+     */
+    private static final int PRICES = 20;
+    /**
+     *
+     */
+    private static final int BASE_PRICE = 100;
+    /**
+     *
+     */
+    private static final int MAX_SIZE = 50;
+    /**
+     *
+     */
+    private static final long SEED = 42L;
+
+    /**
+     * Test venue levels are merged by price.
+     */
+    @Test
+    public void mergeTest() {
+
+        final ConsolidatedDepth consolidated = new ConsolidatedDepth();
+        final DepthManager first = new DepthManager();
+        final DepthManager second = new DepthManager();
+
+        consolidated.addVenue(first);
+        final int secondVenue = consolidated.addVenue(second);
+
+        apply(first, OrderType.BID, 1, BASE_PRICE, 10, false);
+        apply(first, OrderType.BID, 2, BASE_PRICE - 1, 5, false);
+        apply(second, OrderType.BID, 1, BASE_PRICE, 7, false);
+        apply(second, OrderType.BID, 2, BASE_PRICE - 2, 3, false);
+        apply(first, OrderType.OFFER, 1, BASE_PRICE + 1, 4, false);
+
+        final ConsolidatedBook book = consolidated.getBook(SYMBOL);
+        final TopOfBook top = new TopOfBook();
+
+        book.copyTop(top);
+        assertEquals("Best bid", BASE_PRICE, top.getBidPrice());
+        assertEquals("Best bid size", 17, top.getBidSize());
+        assertEquals("Best bid venues", 2, top.getBidVenues());
+        assertEquals("Best offer", BASE_PRICE + 1, top.getOfferPrice());
+        assertEquals("Bid levels", 3, book.getLevels(OrderType.BID));
+
+        // the first venue pulls its best bid
+        apply(first, OrderType.BID, 1, 0, 0, true);
+
+        book.copyTop(top);
+        assertEquals("Best bid size", 7, top.getBidSize());
+        assertEquals("Best bid venues", 1, top.getBidVenues());
+
+        consolidated.clearVenue(secondVenue);
+
+        book.copyTop(top);
+        assertEquals("Best bid", BASE_PRICE - 1, top.getBidPrice());
+        assertEquals("Best bid size", 5, top.getBidSize());
+
+        final PriceDepth[] depths = new PriceDepth[2];
+        assertEquals("Copied", 1, book.copyDepth(OrderType.BID, depths));
+        assertNull("Past the end", depths[1]);
+    }
+
+    /**
+     * Test the incremental merge matches merging from scratch after
+     * random changes.
+     */
+    @Test
+    public void randomTest() {
+
+        final Random random = new Random(SEED);
+        final ConsolidatedDepth consolidated = new ConsolidatedDepth();
+        final DepthManager[] managers = new DepthManager[VENUES];
+
+        for (int i = 0; i < VENUES; i++) {
+            managers[i] = new DepthManager();
+            consolidated.addVenue(managers[i]);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+
+            final DepthManager manager = managers[random.nextInt(VENUES)];
+            char type = OrderType.OFFER;
+
+            if (random.nextBoolean()) {
+                type = OrderType.BID;
+            }
+
+            final int level =
+                1 + random.nextInt(InstrumentDepth.DEPTH_LEVELS);
+
+            apply(manager, type, level,
+                    BASE_PRICE + random.nextInt(PRICES),
+                    1 + random.nextInt(MAX_SIZE),
+                    random.nextInt(VENUES) == 0
+                        && manager.getInstrumentDepth(SYMBOL) != null);
+
+            check(consolidated.getBook(SYMBOL), managers, OrderType.BID);
+            check(consolidated.getBook(SYMBOL), managers, OrderType.OFFER);
+        }
+    }
+
+    /**
+     * Compare one consolidated side with a merge from scratch.
+     * @param book consolidated book
+     * @param managers venues
+     * @param type order type (BID/OFFER)
+     */
+    private static void check(final ConsolidatedBook book,
+                              final DepthManager[] managers,
+                              final char type) {
+
+        final Map<Long, Long> expected = new TreeMap<Long, Long>();
+
+        for (final DepthManager manager : managers) {
+
+            final InstrumentDepth depth = manager.getInstrumentDepth(SYMBOL);
+
+            if (depth == null) {
+                continue;
+            }
+
+            for (final PriceDepth level : depth.getDepth(SYMBOL, type)) {
+                if (level != null) {
+                    final Long size = expected.get(level.getPrice());
+                    long total = level.getOrderSize();
+                    if (size != null) {
+                        total += size;
+                    }
+                    expected.put(level.getPrice(), total);
+                }
+            }
+        }
+
+        final PriceDepth[] depths = new PriceDepth[expected.size() + 1];
+        final int levels = book.copyDepth(type, depths);
+
+        assertEquals("Levels", expected.size(), levels);
+
+        for (int i = 0; i < levels; i++) {
+            assertEquals("Size at " + depths[i].getPrice(),
+                    expected.get(depths[i].getPrice()).longValue(),
+                    depths[i].getOrderSize());
+            if (i > 0) {
+                assertEquals("Order", type == OrderType.BID,
+                        depths[i].getPrice() < depths[i - 1].getPrice());
+            }
+        }
+    }
+
+    /**
+     * Apply one entry as a message.
+     * @param manager venue
+     * @param type order type (BID/OFFER)
+     * @param level level
+     * @param price price
+     * @param size size
+     * @param delete true to delete the level
+     */
+    private static void apply(final DepthManager manager, final char type,
+                              final int level, final long price,
+                              final int size, final boolean delete) {
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(SYMBOL);
+        priceDepth.setType(type);
+        priceDepth.setLevel(level);
+        priceDepth.setPrice(price);
+        priceDepth.setOrderSize(size);
+
+        if (delete) {
+            manager.deleteDepthLevel(priceDepth);
+        } else {
+            manager.newDepthData(priceDepth);
+        }
+
+        manager.endOfMessage();
+    }
+}
@@ -5,6 +5,10 @@ package com.blizzardtec.fixclient.depth;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -40,6 +44,18 @@ public final class DepthManagerTest {
      *
      */
     private static final String SYMBOL = "EURUSD";
+    /**
+     *
+     */
+    private static final int WRITES = 5000;
+    /**
+     *
+     */
+    private static final int SNAPSHOTS = 2000;
+    /**
+     *
+     */
+    private static final int SNAPSHOT_LEVELS = 10;
 
     /**
      * Test the adding of depth information.
@@ -146,4 +162,348 @@ public final class DepthManagerTest {
         assertEquals("level 2 price not at level 1",
                 offerDepths[0].getMidPrice(), level2Price, 0.0);
     }
+
+    /**
+     * Test a full depth book grows beyond the default depth levels.
+     */
+    @Test
+    public void fullDepthTest() {
+
+        final int levels = 40;
+
+        final DepthManager manager = new DepthManager();
+        manager.setMarketDepth(SYMBOL, InstrumentDepth.FULL_DEPTH);
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(SYMBOL);
+        priceDepth.setOrderSize(SIZE);
+        priceDepth.setType(OrderType.BID);
+
+        // always insert at the top so every level shifts down
+        for (int i = 0; i < levels; i++) {
+            priceDepth.setMidPrice(i);
+            priceDepth.setLevel(1);
+            manager.newDepthData(priceDepth);
+        }
+
+        PriceDepth[] bidDepths = manager.getDepth(SYMBOL, OrderType.BID);
+
+        assertEquals("All levels not kept", levels, bidDepths.length);
+        assertEquals("Top level price does not match",
+                levels - 1, bidDepths[0].getMidPrice(), 0.0);
+        assertEquals("Bottom level price does not match",
+                0, bidDepths[levels - 1].getMidPrice(), 0.0);
+
+        manager.deleteDepthLevel(priceDepth);
+
+        bidDepths = manager.getDepth(SYMBOL, OrderType.BID);
+
+        assertEquals("Level not deleted", levels - 1, bidDepths.length);
+        assertEquals("Level 2 price not at level 1",
+                levels - 2, bidDepths[0].getMidPrice(), 0.0);
+    }
+
+    /**
+     * Test prices are rescaled to the price scale of the instrument.
+     */
+    @Test
+    public void priceScaleTest() {
+
+        final DepthManager manager = new DepthManager();
+        manager.setPriceScale(SYMBOL, 5);
+
+        // 1.4335 as sent on the wire
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(SYMBOL);
+        priceDepth.setPrice(14335L);
+        priceDepth.setPriceScale(4);
+        priceDepth.setOrderSize(SIZE);
+        priceDepth.setType(OrderType.OFFER);
+        priceDepth.setLevel(1);
+        manager.newDepthData(priceDepth);
+
+        final PriceDepth[] offerDepths =
+                    manager.getDepth(SYMBOL, OrderType.OFFER);
+
+        assertEquals("Price not rescaled", 143350L, offerDepths[0].getPrice());
+        assertEquals("Price scale does not match",
+                5, offerDepths[0].getPriceScale());
+        assertEquals("Display price does not match",
+                1.4335, offerDepths[0].getMidPrice(), 0.0);
+        assertEquals("Price not found", 1,
+                manager.getInstrumentDepth(SYMBOL)
+                    .findLevel(OrderType.OFFER, 143350L));
+    }
+
+    /**
+     * Test a price keyed book keeps both sides in price order.
+     */
+    @Test
+    public void priceModeTest() {
+
+        final double[] bidPrices = {1.4333, 1.4335, 1.4331, 1.4334};
+        final double[] offerPrices = {1.4338, 1.4336, 1.4339, 1.4337};
+
+        final DepthManager manager = new DepthManager();
+        manager.setBookMode(BookMode.PRICE);
+
+        // no position numbers, arriving out of order
+        for (int i = 0; i < bidPrices.length; i++) {
+            manager.newDepthData(
+                    priceOnly(OrderType.BID, bidPrices[i], SIZE));
+            manager.newDepthData(
+                    priceOnly(OrderType.OFFER, offerPrices[i], SIZE));
+        }
+
+        PriceDepth[] bidDepths = manager.getDepth(SYMBOL, OrderType.BID);
+        final PriceDepth[] offerDepths =
+                    manager.getDepth(SYMBOL, OrderType.OFFER);
+
+        // the worst price of each side falls off the three level book
+        assertEquals("Best bid not first",
+                1.4335, bidDepths[0].getMidPrice(), 0.0);
+        assertEquals("Bid level 3 does not match",
+                1.4333, bidDepths[2].getMidPrice(), 0.0);
+        assertEquals("Best offer not first",
+                1.4336, offerDepths[0].getMidPrice(), 0.0);
+        assertEquals("Offer level 3 does not match",
+                1.4338, offerDepths[2].getMidPrice(), 0.0);
+
+        // change the size at a price
+        manager.updateDepthData(priceOnly(OrderType.BID, 1.4334, NEWSIZE1));
+
+        bidDepths = manager.getDepth(SYMBOL, OrderType.BID);
+        assertEquals("Size not updated at price",
+                NEWSIZE1, bidDepths[1].getOrderSize());
+
+        // delete the best bid by price
+        manager.deleteDepthLevel(priceOnly(OrderType.BID, 1.4335, 0));
+
+        bidDepths = manager.getDepth(SYMBOL, OrderType.BID);
+        assertEquals("Bid not deleted by price",
+                1.4334, bidDepths[0].getMidPrice(), 0.0);
+        assertNull("Bottom bid not cleared", bidDepths[2]);
+    }
+
+    /**
+     * Test a full depth book stops growing at its maximum: a huge
+     * position number is dropped rather than allocated for, and an
+     * insert into a full book drops its bottom level.
+     */
+    @Test
+    public void maxFullDepthTest() {
+
+        final int maxLevels = 20;
+
+        final DepthManager manager = new DepthManager();
+        manager.setMarketDepth(SYMBOL, InstrumentDepth.FULL_DEPTH);
+        manager.setMaxFullDepth(maxLevels);
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(SYMBOL);
+        priceDepth.setOrderSize(SIZE);
+        priceDepth.setType(OrderType.BID);
+
+        for (int i = 0; i <= maxLevels; i++) {
+            priceDepth.setMidPrice(i);
+            priceDepth.setLevel(1);
+            manager.newDepthData(priceDepth);
+        }
+
+        priceDepth.setLevel(Integer.MAX_VALUE);
+        manager.newDepthData(priceDepth);
+        manager.updateDepthData(priceDepth);
+
+        final PriceDepth[] bidDepths = manager.getDepth(SYMBOL, OrderType.BID);
+
+        assertEquals("Book grew past its maximum", maxLevels,
+                     bidDepths.length);
+        assertEquals("Top level price does not match",
+                maxLevels, bidDepths[0].getMidPrice(), 0.0);
+        assertEquals("Bottom level not dropped",
+                1, bidDepths[maxLevels - 1].getMidPrice(), 0.0);
+    }
+
+    /**
+     * Test a reader thread only ever sees whole book states while
+     * the writer is inserting. Each insert pushes price and size k
+     * on top of the bids, so a consistent copy holds descending
+     * consecutive prices with the size equal to the price.
+     * @throws InterruptedException thrown if the join is interrupted
+     */
+    @Test
+    public void concurrentReadTest() throws InterruptedException {
+
+        final DepthManager manager = new DepthManager();
+        manager.setMarketDepth(SYMBOL, InstrumentDepth.FULL_DEPTH);
+
+        final PriceDepth first = new PriceDepth();
+        first.setSymbol(SYMBOL);
+        first.setType(OrderType.BID);
+        first.setLevel(1);
+        manager.newDepthData(first);
+
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        final Thread reader = new Thread() {
+            @Override
+            public void run() {
+
+                final DepthSnapshot snapshot = new DepthSnapshot();
+                long version = -1;
+
+                while (version < 2L * WRITES && failure.get() == null) {
+
+                    manager.snapshot(SYMBOL, snapshot);
+
+                    if (snapshot.getVersion() < version) {
+                        failure.set("Version went backwards");
+                    }
+                    version = snapshot.getVersion();
+
+                    final long top = snapshot.getPrice(OrderType.BID, 1);
+
+                    for (int level = 1;
+                            snapshot.isLevelPresent(OrderType.BID, level);
+                            level++) {
+
+                        final long price =
+                            snapshot.getPrice(OrderType.BID, level);
+
+                        if (price != top - level + 1
+                            || snapshot.getOrderSize(OrderType.BID, level)
+                                != price) {
+                            failure.set("Torn read at version " + version);
+                        }
+                    }
+                }
+            }
+        };
+
+        reader.start();
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(SYMBOL);
+        priceDepth.setType(OrderType.BID);
+        priceDepth.setLevel(1);
+
+        for (int k = 1; k <= WRITES; k++) {
+            priceDepth.setPrice(k);
+            priceDepth.setOrderSize(k);
+            manager.newDepthData(priceDepth);
+        }
+
+        reader.join();
+
+        assertNull(failure.get(), failure.get());
+        assertTrue("Book not deep enough", manager.getInstrumentDepth(SYMBOL)
+                .isLevelPresent(OrderType.BID, WRITES));
+    }
+
+    /**
+     * Test a reader thread never sees a full refresh half applied.
+     * Refresh k sets every level to price k, so a consistent copy
+     * is empty or full with one price throughout, and each refresh
+     * moves the version on by one write.
+     * @throws InterruptedException thrown if the join is interrupted
+     */
+    @Test
+    public void snapshotSwapTest() throws InterruptedException {
+
+        final DepthManager manager = new DepthManager();
+        manager.setMarketDepth(SYMBOL, InstrumentDepth.FULL_DEPTH);
+
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        final Thread reader = new Thread() {
+            @Override
+            public void run() {
+
+                final DepthSnapshot snapshot = new DepthSnapshot();
+                long version = -1;
+
+                while (version < 2L * SNAPSHOTS && failure.get() == null) {
+
+                    manager.snapshot(SYMBOL, snapshot);
+                    version = snapshot.getVersion();
+
+                    final long top = snapshot.getPrice(OrderType.BID, 1);
+                    int levels = 0;
+
+                    while (snapshot.isLevelPresent(OrderType.BID,
+                                                   levels + 1)) {
+                        levels++;
+
+                        if (snapshot.getPrice(OrderType.BID, levels)
+                                != top) {
+                            failure.set("Mixed refreshes at version "
+                                        + version);
+                        }
+                    }
+
+                    if (levels != 0 && levels != SNAPSHOT_LEVELS) {
+                        failure.set(levels + " levels at version "
+                                    + version);
+                    }
+                }
+            }
+        };
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(SYMBOL);
+        priceDepth.setType(OrderType.BID);
+
+        // the book must exist before the reader asks for it
+        manager.beginSnapshot(priceDepth);
+        manager.endSnapshot(priceDepth);
+
+        reader.start();
+
+        for (int k = 1; k <= SNAPSHOTS; k++) {
+
+            manager.beginSnapshot(priceDepth);
+
+            for (int level = 1; level <= SNAPSHOT_LEVELS; level++) {
+                priceDepth.setLevel(level);
+                priceDepth.setPrice(k);
+                priceDepth.setOrderSize(level);
+                manager.newDepthData(priceDepth);
+            }
+
+            manager.endSnapshot(priceDepth);
+        }
+
+        reader.join();
+
+        assertNull(failure.get(), failure.get());
+
+        final InstrumentDepth iDepth = manager.getInstrumentDepth(SYMBOL);
+
+        assertEquals("One write per refresh", 2L * (SNAPSHOTS + 1),
+                     iDepth.getVersion());
+        assertEquals("Replaced, not added to", SNAPSHOT_LEVELS,
+                     iDepth.getLevelCount(OrderType.BID));
+        assertEquals("Last refresh", SNAPSHOTS,
+                     iDepth.getPrice(OrderType.BID, SNAPSHOT_LEVELS));
+    }
+
+    /**
+     * Build a price depth without a position number.
+     * @param type bid or offer
+     * @param price price
+     * @param size size
+     * @return price depth
+     */
+    private static PriceDepth priceOnly(final char type,
+                                        final double price,
+                                        final int size) {
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(SYMBOL);
+        priceDepth.setType(type);
+        priceDepth.setMidPrice(price);
+        priceDepth.setOrderSize(size);
+
+        return priceDepth;
+    }
 }
@@ -0,0 +1,229 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.blizzardtec.fixclient.OrderType;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class DepthRingTest {
+
+    /**
+     *
+     */
+    private static final String SYMBOL = "EURUSD";
+    /**
+     *
+     */
+    private static final int CAPACITY = 8;
+    /**
+     *
+     */
+    private static final int WRITES = 20000;
+    /**
+     *
+     */
+    private static final int MESSAGE_ENTRIES = 20;
+
+    /**
+     * Test entries only reach the book once their message is
+     * published and polled.
+     */
+    @Test
+    public void pollTest() {
+
+        final DepthManager manager = new DepthManager();
+        final DepthRing ring =
+            new DepthRing(manager, CAPACITY, WaitStrategy.BUSY_SPIN);
+
+        final PriceDepth priceDepth = bid(1, 1);
+
+        ring.newDepthData(priceDepth);
+        priceDepth.setLevel(2);
+        ring.newDepthData(priceDepth);
+
+        assertEquals("Entries published before end of message",
+                0, ring.getQueueDepth());
+        assertEquals("Nothing to poll", 0, ring.poll());
+
+        ring.endOfMessage();
+
+        assertEquals("Queue depth", 2, ring.getQueueDepth());
+        assertEquals("Entries not applied", 2, ring.poll());
+        assertEquals("Queue not drained", 0, ring.getQueueDepth());
+        assertEquals("Max queue depth", 2, ring.getMaxQueueDepth());
+
+        // the flyweight was copied, changing it does not change the book
+        priceDepth.setOrderSize(2);
+        assertEquals("Level 2 size", 1, manager.getInstrumentDepth(SYMBOL)
+                .getOrderSize(OrderType.BID, 2));
+
+        ring.deleteDepthLevel(priceDepth);
+        ring.endOfMessage();
+        ring.poll();
+
+        assertTrue("Level 2 not deleted", !manager.getInstrumentDepth(SYMBOL)
+                .isLevelPresent(OrderType.BID, 2));
+    }
+
+    /**
+     * Test a consumer thread applies every entry in order when the
+     * producer keeps filling a small ring.
+     * @throws InterruptedException thrown if the stop is interrupted
+     */
+    @Test
+    public void threadedTest() throws InterruptedException {
+
+        final DepthManager manager = new DepthManager();
+        manager.setMarketDepth(SYMBOL, InstrumentDepth.FULL_DEPTH);
+
+        final DepthRing ring =
+            new DepthRing(manager, CAPACITY, WaitStrategy.YIELD);
+
+        ring.start();
+
+        final PriceDepth priceDepth = bid(1, 0);
+
+        for (int k = 1; k <= WRITES; k++) {
+            priceDepth.setPrice(k);
+            priceDepth.setOrderSize(k);
+
+            // replace the top level, then insert over it
+            if (k > 1) {
+                ring.updateDepthData(priceDepth);
+            }
+            ring.newDepthData(priceDepth);
+            ring.endOfMessage();
+        }
+
+        ring.stop();
+
+        final InstrumentDepth iDepth = manager.getInstrumentDepth(SYMBOL);
+
+        assertEquals("Every entry not applied",
+                ring.getPublishedCount(), ring.getConsumedCount());
+        assertEquals("Top price", WRITES, iDepth.getPrice(OrderType.BID, 1));
+        assertEquals("Level 2 price", WRITES,
+                iDepth.getPrice(OrderType.BID, 2));
+        assertEquals("Level 3 price", WRITES - 1,
+                iDepth.getPrice(OrderType.BID, 3));
+        assertTrue("Queue depth above capacity",
+                ring.getMaxQueueDepth() <= CAPACITY);
+    }
+
+    /**
+     * Test a message larger than the ring is still delivered whole
+     * with a single end of message.
+     * @throws InterruptedException thrown if the stop is interrupted
+     */
+    @Test
+    public void largeMessageTest() throws InterruptedException {
+
+        final CountingHandler counter = new CountingHandler();
+        final DepthRing ring =
+            new DepthRing(counter, CAPACITY, WaitStrategy.PARK);
+
+        ring.start();
+
+        final PriceDepth priceDepth = bid(1, 1);
+
+        for (int i = 0; i < MESSAGE_ENTRIES; i++) {
+            ring.newDepthData(priceDepth);
+        }
+        ring.endOfMessage();
+
+        ring.stop();
+
+        assertEquals("Entries", MESSAGE_ENTRIES, counter.entries);
+        assertEquals("Message ends", 1, counter.messages);
+        assertTrue("Ring never filled", ring.getFullCount() > 0);
+    }
+
+    /**
+     * Test the idle count of a long idle thread stops at the largest
+     * int rather than wrapping to a count that busy spins again.
+     */
+    @Test
+    public void idleCountTest() {
+
+        assertEquals("Counts up", 1, DepthRing.nextIdle(0));
+        assertEquals("Saturates", Integer.MAX_VALUE,
+                     DepthRing.nextIdle(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Build a bid.
+     * @param level level
+     * @param size size and price
+     * @return price depth
+     */
+    private static PriceDepth bid(final int level, final int size) {
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(SYMBOL);
+        priceDepth.setType(OrderType.BID);
+        priceDepth.setLevel(level);
+        priceDepth.setPrice(size);
+        priceDepth.setOrderSize(size);
+
+        return priceDepth;
+    }
+
+    /**
+     * Counts what it is handed.
+     */
+    private static final class CountingHandler
+                                    implements DepthUpdateHandler {
+        /**
+         *
+         */
+        private int entries;
+        /**
+         *
+         */
+        private int messages;
+
+        @Override
+        public void beginSnapshot(final PriceDepth priceDepth) {
+            entries++;
+        }
+
+        @Override
+        public void endSnapshot(final PriceDepth priceDepth) {
+            entries++;
+        }
+
+        @Override
+        public void abortSnapshot(final PriceDepth priceDepth) {
+            entries++;
+        }
+
+        @Override
+        public void newDepthData(final PriceDepth priceDepth) {
+            entries++;
+        }
+
+        @Override
+        public void updateDepthData(final PriceDepth priceDepth) {
+            entries++;
+        }
+
+        @Override
+        public void deleteDepthLevel(final PriceDepth priceDepth) {
+            entries++;
+        }
+
+        @Override
+        public void endOfMessage() {
+            messages++;
+        }
+    }
+}
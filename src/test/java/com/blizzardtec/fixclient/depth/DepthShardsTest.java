@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.blizzardtec.fixclient.OrderType;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class DepthShardsTest {
+
+    /**
+     *
+     */
+    private static final int SHARDS = 4;
+    /**
+     *
+     */
+    private static final int SYMBOLS = 100;
+    /**
+     *
+     */
+    private static final int ROUNDS = 500;
+    /**
+     *
+     */
+    private static final int CAPACITY = 64;
+
+    /**
+     * Test each symbol is built on one thread, in order.
+     * @throws InterruptedException thrown if the stop is interrupted
+     */
+    @Test
+    public void orderingTest() throws InterruptedException {
+
+        final OrderingHandler checker = new OrderingHandler();
+        final DepthShards shards =
+            new DepthShards(checker, new SymbolRegistry(), SHARDS,
+                            CAPACITY, WaitStrategy.YIELD);
+
+        shards.start();
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setType(OrderType.BID);
+        priceDepth.setLevel(1);
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            // several symbols per message, as in an incremental refresh
+            for (int i = 0; i < SYMBOLS; i++) {
+                priceDepth.setSymbol(symbol(i));
+                priceDepth.setPrice(round);
+                shards.updateDepthData(priceDepth);
+            }
+            shards.endOfMessage();
+        }
+
+        shards.stop();
+
+        assertNull(checker.failure.get(), checker.failure.get());
+        assertEquals("Symbols", SYMBOLS, checker.lastPrices.size());
+
+        for (int i = 0; i < SYMBOLS; i++) {
+            assertEquals("Last price", Long.valueOf(ROUNDS),
+                    checker.lastPrices.get(symbol(i)));
+        }
+    }
+
+    /**
+     * Test books built on shard threads are readable from the
+     * depth manager.
+     * @throws InterruptedException thrown if the stop is interrupted
+     */
+    @Test
+    public void bookTest() throws InterruptedException {
+
+        final DepthManager manager = new DepthManager();
+        final DepthShards shards =
+            new DepthShards(manager, SHARDS, WaitStrategy.PARK);
+
+        shards.start();
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setType(OrderType.OFFER);
+
+        for (int i = 0; i < SYMBOLS; i++) {
+            priceDepth.setSymbol(symbol(i));
+            priceDepth.setLevel(1);
+            priceDepth.setPrice(i);
+            priceDepth.setOrderSize(i);
+            shards.newDepthData(priceDepth);
+        }
+        shards.endOfMessage();
+
+        shards.stop();
+
+        final boolean[] used = new boolean[SHARDS];
+
+        for (int i = 0; i < SYMBOLS; i++) {
+            assertEquals("Offer price", i, manager.getInstrumentDepth(
+                    symbol(i)).getPrice(OrderType.OFFER, 1));
+            used[shards.shardFor(symbol(i))] = true;
+        }
+
+        for (int i = 0; i < SHARDS; i++) {
+            assertTrue("Shard " + i + " unused", used[i]);
+        }
+    }
+
+    /**
+     * @param index symbol index
+     * @return symbol
+     */
+    private static String symbol(final int index) {
+        return "SYM" + index;
+    }
+
+    /**
+     * Fails if a symbol moves thread or its prices go backwards.
+     */
+    private static final class OrderingHandler
+                                    implements DepthUpdateHandler {
+        /**
+         *
+         */
+        private final ConcurrentMap<String, Thread> threads =
+                            new ConcurrentHashMap<String, Thread>();
+        /**
+         *
+         */
+        private final ConcurrentMap<String, Long> lastPrices =
+                            new ConcurrentHashMap<String, Long>();
+        /**
+         *
+         */
+        private final AtomicReference<String> failure =
+                            new AtomicReference<String>();
+
+        @Override
+        public void beginSnapshot(final PriceDepth priceDepth) {
+            check(priceDepth);
+        }
+
+        @Override
+        public void endSnapshot(final PriceDepth priceDepth) {
+            check(priceDepth);
+        }
+
+        @Override
+        public void abortSnapshot(final PriceDepth priceDepth) {
+            check(priceDepth);
+        }
+
+        @Override
+        public void newDepthData(final PriceDepth priceDepth) {
+            check(priceDepth);
+        }
+
+        @Override
+        public void updateDepthData(final PriceDepth priceDepth) {
+            check(priceDepth);
+        }
+
+        @Override
+        public void deleteDepthLevel(final PriceDepth priceDepth) {
+            check(priceDepth);
+        }
+
+        @Override
+        public void endOfMessage() {
+            // not checked
+        }
+
+        /**
+         * @param priceDepth entry
+         */
+        private void check(final PriceDepth priceDepth) {
+
+            final String symbol = priceDepth.getSymbol();
+            final Thread owner =
+                threads.putIfAbsent(symbol, Thread.currentThread());
+
+            if (owner != null && owner != Thread.currentThread()) {
+                failure.set(symbol + " applied on two threads");
+            }
+
+            final Long last = lastPrices.put(symbol, priceDepth.getPrice());
+
+            if (last != null && last + 1 != priceDepth.getPrice()) {
+                failure.set(symbol + " out of order at " + last);
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blizzardtec.fixclient.OrderType;
+import com.blizzardtec.fixclient.metrics.FeedMetrics;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class GapRecoveryTest {
+
+    /**
+     *
+     */
+    private static final String SYMBOL = "EUR/USD";
+    /**
+     *
+     */
+    private static final String OTHER_SYMBOL = "GBP/USD";
+    /**
+     *
+     */
+    private static final String MISSING_SYMBOL = "USD/JPY";
+    /**
+     *
+     */
+    private static final int SNAPSHOT_SEQ = 10;
+    /**
+     *
+     */
+    private static final int OTHER_SEQ = 5;
+    /**
+     *
+     */
+    private static final int SIZE = 100;
+    /**
+     *
+     */
+    private static final int RECOVERED_SIZE = 500;
+    /**
+     *
+     */
+    private static final int MAX_HELD = 3;
+
+    /**
+     * Test a jump in RptSeq holds back only that book until its
+     * snapshot lands, then replays what came after the snapshot.
+     */
+    @Test
+    public void gapTest() {
+
+        final DepthManager manager = new DepthManager();
+        final FeedMetrics metrics = new FeedMetrics();
+        final GapRecovery recovery = new GapRecovery(manager,
+                manager.getSymbolRegistry(), metrics);
+        final List<String> requested = requester(recovery);
+
+        snapshot(recovery, SYMBOL, SNAPSHOT_SEQ, SIZE);
+        snapshot(recovery, OTHER_SYMBOL, OTHER_SEQ, SIZE);
+
+        // in sequence
+        change(recovery, SYMBOL, SNAPSHOT_SEQ + 1, SIZE + 1);
+        // SNAPSHOT_SEQ + 2 is lost
+        change(recovery, SYMBOL, SNAPSHOT_SEQ + 3, SIZE + 3);
+        change(recovery, SYMBOL, SNAPSHOT_SEQ + 4, SIZE + 4);
+        change(recovery, OTHER_SYMBOL, OTHER_SEQ + 1, SIZE + 1);
+
+        assertTrue("Stale", recovery.isStale(SYMBOL));
+        assertFalse("Other not stale", recovery.isStale(OTHER_SYMBOL));
+        assertEquals("Requested", Arrays.asList(SYMBOL), requested);
+        assertEquals("Held back", SIZE + 1, bidSize(manager, SYMBOL));
+        assertEquals("Other flows", SIZE + 1,
+                     bidSize(manager, OTHER_SYMBOL));
+        assertEquals("Stale count", 1L, metrics.getStaleBookCount());
+
+        // the snapshot covers up to the lost entry
+        snapshot(recovery, SYMBOL, SNAPSHOT_SEQ + 2, RECOVERED_SIZE);
+
+        assertFalse("Recovered", recovery.isStale(SYMBOL));
+        assertEquals("Replayed", SIZE + 4, bidSize(manager, SYMBOL));
+        assertEquals("One level", 1, levels(manager, SYMBOL));
+
+        change(recovery, SYMBOL, SNAPSHOT_SEQ + 4, SIZE);
+
+        assertEquals("Duplicate dropped", SIZE + 4,
+                     bidSize(manager, SYMBOL));
+        assertEquals("Gaps", 1L, metrics.getGapCount());
+        assertEquals("Recoveries", 1L, metrics.getRecoveryCount());
+        assertEquals("Stale count", 0L, metrics.getStaleBookCount());
+        assertEquals("Duplicates", 1L, metrics.getDuplicateCount());
+    }
+
+    /**
+     * Test a snapshot older than the entries held back leaves the
+     * book stale and asks again, and entries held past the limit
+     * are dropped for a later snapshot to cover.
+     */
+    @Test
+    public void oldSnapshotTest() {
+
+        final DepthManager manager = new DepthManager();
+        final GapRecovery recovery = new GapRecovery(manager,
+                manager.getSymbolRegistry(), null, MAX_HELD);
+        final List<String> requested = requester(recovery);
+
+        snapshot(recovery, SYMBOL, SNAPSHOT_SEQ, SIZE);
+        change(recovery, SYMBOL, SNAPSHOT_SEQ + 2, SIZE + 2);
+
+        snapshot(recovery, SYMBOL, SNAPSHOT_SEQ, RECOVERED_SIZE);
+
+        assertTrue("Still stale", recovery.isStale(SYMBOL));
+        assertEquals("Asked again", Arrays.asList(SYMBOL, SYMBOL),
+                     requested);
+
+        for (int seq = SNAPSHOT_SEQ + 3; seq <= SNAPSHOT_SEQ + 2 + MAX_HELD;
+                seq++) {
+            change(recovery, SYMBOL, seq, seq);
+        }
+
+        assertEquals("Asked again when full", MAX_HELD, requested.size());
+
+        // the dropped entries are covered, the last one held is not
+        snapshot(recovery, SYMBOL, SNAPSHOT_SEQ + 1 + MAX_HELD,
+                 RECOVERED_SIZE);
+
+        assertFalse("Recovered", recovery.isStale(SYMBOL));
+        assertEquals("Last held replayed", SNAPSHOT_SEQ + 2 + MAX_HELD,
+                     bidSize(manager, SYMBOL));
+    }
+
+    /**
+     * Test an update for a symbol without a book is skipped rather
+     * than failing, and the book is recovered from a snapshot.
+     */
+    @Test
+    public void missingBookTest() {
+
+        final DepthManager manager = new DepthManager();
+        final GapRecovery recovery = new GapRecovery(manager,
+                manager.getSymbolRegistry(), null);
+        final List<String> requested = requester(recovery);
+
+        manager.setGapListener(recovery);
+
+        change(recovery, MISSING_SYMBOL, 0, SIZE);
+        final PriceDepth delete = bid(MISSING_SYMBOL, 0, SIZE);
+        recovery.deleteDepthLevel(delete);
+        recovery.endOfMessage();
+
+        assertTrue("Stale", recovery.isStale(MISSING_SYMBOL));
+        assertEquals("Requested once", Arrays.asList(MISSING_SYMBOL),
+                     requested);
+
+        snapshot(recovery, MISSING_SYMBOL, 0, RECOVERED_SIZE);
+
+        assertFalse("Recovered", recovery.isStale(MISSING_SYMBOL));
+        assertEquals("Snapshot", RECOVERED_SIZE,
+                     bidSize(manager, MISSING_SYMBOL));
+    }
+
+    /**
+     * @param recovery gap recovery
+     * @return symbols whose snapshots are requested
+     */
+    private static List<String> requester(final GapRecovery recovery) {
+
+        final List<String> requested = new ArrayList<String>();
+
+        recovery.setSnapshotRequester(new SnapshotRequester() {
+            @Override
+            public void requestSnapshot(final String symbol) {
+                requested.add(symbol);
+            }
+        });
+
+        return requested;
+    }
+
+    /**
+     * Pass a one level bid snapshot.
+     * @param handler handler
+     * @param symbol symbol
+     * @param rptSeq RptSeq of the snapshot
+     * @param size size of the level
+     */
+    private static void snapshot(final DepthUpdateHandler handler,
+                                 final String symbol, final int rptSeq,
+                                 final int size) {
+
+        final PriceDepth entry = bid(symbol, rptSeq, size);
+
+        handler.beginSnapshot(entry);
+        entry.setRptSeq(0);
+        handler.newDepthData(entry);
+        handler.endSnapshot(entry);
+        handler.endOfMessage();
+    }
+
+    /**
+     * Pass a one entry refresh changing the level 1 bid.
+     * @param handler handler
+     * @param symbol symbol
+     * @param rptSeq RptSeq of the entry
+     * @param size new size
+     */
+    private static void change(final DepthUpdateHandler handler,
+                               final String symbol, final int rptSeq,
+                               final int size) {
+        handler.updateDepthData(bid(symbol, rptSeq, size));
+        handler.endOfMessage();
+    }
+
+    /**
+     * @param symbol symbol
+     * @param rptSeq RptSeq
+     * @param size size, also the price
+     * @return level 1 bid
+     */
+    private static PriceDepth bid(final String symbol, final int rptSeq,
+                                  final int size) {
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(symbol);
+        priceDepth.setType(OrderType.BID);
+        priceDepth.setLevel(1);
+        priceDepth.setPrice(size);
+        priceDepth.setOrderSize(size);
+        priceDepth.setRptSeq(rptSeq);
+
+        return priceDepth;
+    }
+
+    /**
+     * @param manager depth manager
+     * @param symbol symbol
+     * @return size of the level 1 bid
+     */
+    private static int bidSize(final DepthManager manager,
+                               final String symbol) {
+        return manager.getInstrumentDepth(symbol)
+                      .getOrderSize(OrderType.BID, 1);
+    }
+
+    /**
+     * @param manager depth manager
+     * @param symbol symbol
+     * @return bid levels in the book
+     */
+    private static int levels(final DepthManager manager,
+                              final String symbol) {
+
+        int levels = 0;
+
+        for (final PriceDepth level
+                : manager.getDepth(symbol, OrderType.BID)) {
+            if (level != null) {
+                levels++;
+            }
+        }
+
+        return levels;
+    }
+}
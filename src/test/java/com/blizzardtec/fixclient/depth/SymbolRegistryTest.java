@@ -0,0 +1,88 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.depth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class SymbolRegistryTest {
+
+    /**
+     *
+     */
+    private static final int SYMBOLS = 1000;
+
+    /**
+     * Test IDs are dense, stable and found from chars and bytes.
+     */
+    @Test
+    public void registryTest() {
+
+        final SymbolRegistry registry = new SymbolRegistry();
+
+        assertEquals("Unregistered symbol found",
+                SymbolRegistry.NOT_FOUND, registry.getId("EUR/USD"));
+
+        for (int i = 0; i < SYMBOLS; i++) {
+            assertEquals("ID not dense", i, registry.register("SYM" + i));
+        }
+
+        assertEquals("Size", SYMBOLS, registry.size());
+        assertEquals("ID changed on register",
+                2, registry.register("SYM2"));
+
+        final byte[] message =
+            "55=SYM123\u0001".getBytes(StandardCharsets.US_ASCII);
+
+        for (int i = 0; i < SYMBOLS; i++) {
+            final String symbol = "SYM" + i;
+            assertEquals("ID from chars", i,
+                    registry.getId(new StringBuilder(symbol)));
+            assertEquals("Symbol from ID", symbol, registry.getSymbol(i));
+        }
+
+        assertEquals("ID from bytes", 123, registry.getId(message, 3, 6));
+        assertEquals("Shorter value", 12, registry.getId(message, 3, 5));
+        assertEquals("Unregistered bytes found", SymbolRegistry.NOT_FOUND,
+                registry.getId(message, 4, 5));
+        assertNull("Symbol for unknown ID", registry.getSymbol(SYMBOLS));
+    }
+
+    /**
+     * Test books are held by symbol ID.
+     */
+    @Test
+    public void bookIdTest() {
+
+        final DepthManager manager = new DepthManager();
+        final int id = manager.getSymbolRegistry().register("GBP/USD");
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol("GBP/USD");
+        priceDepth.setSymbolId(id);
+        priceDepth.setType('0');
+        priceDepth.setLevel(1);
+        priceDepth.setPrice(1);
+        manager.newDepthData(priceDepth);
+
+        // an unsubscribed symbol is registered when its book is made
+        priceDepth.setSymbol("USD/JPY");
+        manager.newDepthData(priceDepth);
+
+        assertEquals("Book by ID", "GBP/USD",
+                manager.getInstrumentDepth(id).getSymbol());
+        assertEquals("New symbol ID", id + 1,
+                manager.getSymbolRegistry().getId("USD/JPY"));
+        assertEquals("Book by symbol", "USD/JPY",
+                manager.getInstrumentDepth("USD/JPY").getSymbol());
+    }
+}
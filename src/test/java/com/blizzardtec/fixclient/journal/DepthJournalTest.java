@@ -0,0 +1,264 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import quickfix.field.MDUpdateAction;
+
+import com.blizzardtec.fixclient.OrderType;
+import com.blizzardtec.fixclient.depth.DepthManager;
+import com.blizzardtec.fixclient.depth.InstrumentDepth;
+import com.blizzardtec.fixclient.depth.PriceDepth;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class DepthJournalTest {
+
+    /**
+     *
+     */
+    private static final int SEGMENT_BYTES = 1024;
+    /**
+     *
+     */
+    private static final int ENTRIES = 200;
+    /**
+     *
+     */
+    private static final int PAUSE_EVERY = 10;
+    /**
+     *
+     */
+    private static final long PAUSE_MILLIS = 5L;
+    /**
+     *
+     */
+    private static final long PRICE = 14335L;
+    /**
+     *
+     */
+    private static final int SCALE = 4;
+    /**
+     *
+     */
+    private static final double MID_PRICE = 1.4335;
+    /**
+     *
+     */
+    private static final int SIZE = 1000;
+    /**
+     *
+     */
+    private static final String LONG_SYMBOL = "EUR/USD.SPOT.VENUE-ONE.T+2";
+
+    /**
+     * Test entries applied by the depth manager are read back as
+     * they were applied, with names longer than one record.
+     * @throws IOException thrown if the journal cannot be written
+     * @throws InterruptedException thrown if the stop is interrupted
+     */
+    @Test
+    public void depthManagerTest()
+            throws IOException, InterruptedException {
+
+        final File directory = createDirectory();
+        final DepthJournal journal = new DepthJournal(directory, "test");
+        final DepthManager manager = new DepthManager();
+
+        journal.start();
+        manager.setJournal(journal);
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(LONG_SYMBOL);
+        priceDepth.setType(OrderType.OFFER);
+        priceDepth.setLevel(1);
+        priceDepth.setPrice(PRICE);
+        priceDepth.setPriceScale(SCALE);
+        priceDepth.setOrderSize(SIZE);
+
+        manager.newDepthData(priceDepth);
+        priceDepth.setOrderSize(SIZE * 2);
+        manager.updateDepthData(priceDepth);
+        manager.deleteDepthLevel(priceDepth);
+
+        journal.stop();
+
+        final char[] actions = {MDUpdateAction.NEW, MDUpdateAction.CHANGE,
+                                MDUpdateAction.DELETE};
+        final JournalRecord record = new JournalRecord();
+        final JournalReader reader = new JournalReader(directory);
+
+        for (final char action : actions) {
+            assertTrue("Entry " + action, reader.next(record));
+            assertEquals("Action", action, record.getAction());
+            assertEquals("Symbol", LONG_SYMBOL, record.getSymbol());
+            assertEquals("Side", OrderType.OFFER, record.getSide());
+            assertEquals("Level", 1, record.getLevel());
+            assertEquals("Price", PRICE, record.getPrice());
+            assertEquals("Scale", SCALE, record.getPriceScale());
+        }
+
+        assertEquals("Size", SIZE * 2, record.getSize());
+        assertFalse("No more entries", reader.next(record));
+        reader.close();
+
+        final StringBuilder line = new StringBuilder();
+        record.format(line);
+        assertTrue(line.toString(), line.toString().endsWith(
+                "2 " + LONG_SYMBOL + " side 1 level 1 2000 at 1.4335"));
+
+        delete(directory);
+    }
+
+    /**
+     * Test a book rebuilt from the journal after a full refresh holds
+     * the refresh alone, not the refresh on top of the levels before.
+     * @throws IOException thrown if the journal cannot be written
+     * @throws InterruptedException thrown if the stop is interrupted
+     */
+    @Test
+    public void snapshotReplayTest()
+            throws IOException, InterruptedException {
+
+        final File directory = createDirectory();
+        final DepthJournal journal = new DepthJournal(directory, "test");
+        final DepthManager manager = new DepthManager();
+
+        journal.start();
+        manager.setJournal(journal);
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setSymbol(LONG_SYMBOL);
+        priceDepth.setType(OrderType.BID);
+        priceDepth.setPriceScale(SCALE);
+        priceDepth.setOrderSize(SIZE);
+
+        // stale levels from before a gap
+        for (int level = 1; level <= 2; level++) {
+            priceDepth.setLevel(level);
+            priceDepth.setPrice(PRICE - level);
+            manager.newDepthData(priceDepth);
+        }
+
+        manager.beginSnapshot(priceDepth);
+        priceDepth.setLevel(1);
+        priceDepth.setPrice(PRICE);
+        manager.newDepthData(priceDepth);
+        manager.endSnapshot(priceDepth);
+
+        journal.stop();
+
+        final DepthManager rebuilt = new DepthManager();
+        final JournalReader reader = new JournalReader(directory);
+
+        assertEquals("Records applied", 2 + 2 + 1,
+                     reader.replay(rebuilt));
+        reader.close();
+
+        final InstrumentDepth book = rebuilt.getInstrumentDepth(LONG_SYMBOL);
+
+        assertEquals("Price", MID_PRICE,
+                     book.getMidPrice(OrderType.BID, 1), 0.0);
+        assertFalse("Stale level kept",
+                    book.isLevelPresent(OrderType.BID, 2));
+
+        delete(directory);
+    }
+
+    /**
+     * Test the journal rolls over small segments and every entry
+     * appended is read back in order.
+     * @throws IOException thrown if the journal cannot be written
+     * @throws InterruptedException thrown if the stop is interrupted
+     */
+    @Test
+    public void rollTest() throws IOException, InterruptedException {
+
+        final File directory = createDirectory();
+        final DepthJournal journal =
+            new DepthJournal(directory, "test", SEGMENT_BYTES);
+
+        journal.start();
+
+        final PriceDepth priceDepth = new PriceDepth();
+        priceDepth.setType(OrderType.BID);
+
+        for (int i = 0; i < ENTRIES; i++) {
+            priceDepth.setPrice(i);
+            journal.append(MDUpdateAction.CHANGE, i % 2, symbol(i),
+                    priceDepth);
+
+            // give the roller time to map the next segment
+            if (i % PAUSE_EVERY == 0) {
+                Thread.sleep(PAUSE_MILLIS);
+            }
+        }
+
+        journal.stop();
+
+        assertEquals("Entries", ENTRIES,
+                journal.getAppendedCount() + journal.getDroppedCount());
+        assertTrue("Segments", directory.list().length > 2);
+
+        final JournalRecord record = new JournalRecord();
+        final JournalReader reader = new JournalReader(directory);
+
+        long count = 0;
+        long last = -1;
+        long lastTime = 0;
+
+        while (reader.next(record)) {
+            assertTrue("In order", record.getPrice() > last);
+            assertTrue("Time", record.getTime() >= lastTime);
+            assertEquals("Symbol", symbol((int) record.getPrice()),
+                    record.getSymbol());
+            last = record.getPrice();
+            lastTime = record.getTime();
+            count++;
+        }
+
+        reader.close();
+
+        assertEquals("Read back", journal.getAppendedCount(), count);
+
+        delete(directory);
+    }
+
+    /**
+     * @param index entry index
+     * @return symbol of the entry
+     */
+    private static String symbol(final int index) {
+        return "SYM" + (index % 2);
+    }
+
+    /**
+     * @return new empty directory
+     * @throws IOException thrown if it cannot be created
+     */
+    private static File createDirectory() throws IOException {
+        return Files.createTempDirectory("journal").toFile();
+    }
+
+    /**
+     * @param directory directory to delete with its files
+     */
+    private static void delete(final File directory) {
+        for (final File file : directory.listFiles()) {
+            assertTrue("Deleted " + file, file.delete());
+        }
+        assertTrue("Deleted " + directory, directory.delete());
+    }
+}
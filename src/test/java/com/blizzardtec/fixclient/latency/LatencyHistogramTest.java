@@ -0,0 +1,175 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.latency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import quickfix.field.MDUpdateAction;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class LatencyHistogramTest {
+
+    /**
+     *
+     */
+    private static final int VALUES = 100000;
+    /**
+     *
+     */
+    private static final long RANGE = TimeUnit.MILLISECONDS.toNanos(10);
+    /**
+     *
+     */
+    private static final double PRECISION = 1.0 / 32;
+    /**
+     *
+     */
+    private static final double[] PERCENTILES = {1, 50, 90, 99, 99.9};
+    /**
+     *
+     */
+    private static final long SPIKE = TimeUnit.SECONDS.toNanos(3);
+    /**
+     *
+     */
+    private static final String SENDING_TIME = "20261018-10:00:00.250";
+    /**
+     *
+     */
+    private static final long RECEIVED_MILLIS = 1792317600253L;
+    /**
+     *
+     */
+    private static final long WIRE_MILLIS = 253L;
+    /**
+     *
+     */
+    private static final double ALL = 100;
+
+    /**
+     * Test every bucket holds the values that map to it and the
+     * buckets cover any long.
+     */
+    @Test
+    public void bucketTest() {
+
+        long low = 0;
+
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            final long high = LatencyHistogram.highestValue(bucket);
+
+            assertEquals("Low " + bucket, bucket,
+                         LatencyHistogram.bucket(low));
+            assertEquals("High " + bucket, bucket,
+                         LatencyHistogram.bucket(high));
+            assertTrue("Precision " + bucket,
+                       high - low <= Math.max(low * PRECISION, 0));
+            low = high + 1;
+        }
+
+        assertEquals("Covers every long", Long.MAX_VALUE,
+                LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1));
+    }
+
+    /**
+     * Test percentiles are within the bucket precision of the exact
+     * ones, and the max is exact.
+     */
+    @Test
+    public void percentileTest() {
+
+        final Random random = new Random(1);
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final long[] values = new long[VALUES];
+
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = (long) (random.nextDouble() * RANGE);
+            histogram.record(values[i]);
+        }
+
+        Arrays.sort(values);
+
+        final HistogramSnapshot snapshot = new HistogramSnapshot();
+        histogram.copyTo(snapshot);
+
+        assertEquals("Count", VALUES, snapshot.getCount());
+        assertEquals("Max", values[VALUES - 1], snapshot.getMax());
+        assertEquals("p100", values[VALUES - 1],
+                     snapshot.getValueAtPercentile(ALL));
+
+        for (final double percentile : PERCENTILES) {
+            final long exact = values[(int) Math.ceil(
+                    percentile / ALL * VALUES) - 1];
+            final long value = snapshot.getValueAtPercentile(percentile);
+
+            assertTrue("p" + percentile + " " + value + " " + exact,
+                    value >= exact && value <= exact * (1 + PRECISION));
+        }
+    }
+
+    /**
+     * Test each interval report covers only what was recorded in it.
+     */
+    @Test
+    public void intervalTest() {
+
+        final LatencyRecorder recorder = new LatencyRecorder("session");
+        final LatencyReporter reporter = new LatencyReporter(1);
+
+        reporter.add(recorder);
+        recorder.recordApply(MDUpdateAction.NEW, SPIKE);
+
+        String report = reporter.intervalReport();
+
+        assertTrue(report, report.contains("session APPLY NEW count 1 "));
+        assertTrue(report, report.endsWith("max 3000000.00 us"));
+
+        recorder.recordApply(MDUpdateAction.NEW, 1);
+        recorder.recordApply(MDUpdateAction.NEW, 1);
+
+        report = reporter.intervalReport();
+
+        assertTrue(report, report.endsWith(
+            "session APPLY NEW count 2 p50 0.00 p99 0.00 p99.9 0.00"
+            + " max 0.00 us"));
+        assertTrue("Nothing new", reporter.intervalReport().isEmpty());
+        assertTrue(reporter.totalReport(),
+                   reporter.totalReport().contains("NEW count 3 "));
+    }
+
+    /**
+     * Test the wire stage is measured from SendingTime, and bad
+     * times are skipped.
+     */
+    @Test
+    public void wireTest() {
+
+        final LatencyRecorder recorder = new LatencyRecorder("session");
+
+        recorder.recordWire("X", SENDING_TIME, RECEIVED_MILLIS);
+        recorder.recordWire("X", "20261018-10:00:00", RECEIVED_MILLIS);
+        recorder.recordWire("X", "bad", RECEIVED_MILLIS);
+        recorder.recordWire("X", "2026101x-10:00:00", RECEIVED_MILLIS);
+
+        final HistogramSnapshot snapshot = new HistogramSnapshot();
+        recorder.getHistogram(LatencyStage.WIRE, "X").copyTo(snapshot);
+
+        assertEquals("Count", 2, snapshot.getCount());
+        assertEquals("Max", TimeUnit.MILLISECONDS.toNanos(WIRE_MILLIS),
+                     snapshot.getMax());
+        assertNull("No snapshots",
+                   recorder.getHistogram(LatencyStage.WIRE, "W"));
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class EventLogTest {
+
+    /**
+     *
+     */
+    private static final int CAPACITY = 8;
+    /**
+     *
+     */
+    private static final long PRICE = 14335L;
+    /**
+     *
+     */
+    private static final int SCALE = 4;
+    /**
+     *
+     */
+    private static final int SIZE = 1000;
+    /**
+     *
+     */
+    private static final int ROUNDS = 100000;
+    /**
+     *
+     */
+    private static final String SYMBOL = "EUR/USD";
+
+    /**
+     * Test records are written out as text.
+     */
+    @Test
+    public void formatTest() {
+
+        final EventLog log = new EventLog(CAPACITY, true);
+
+        log.record(EventType.SNAPSHOT, SYMBOL, 2);
+        log.record(EventType.NEW_DEPTH, SYMBOL, '0', 1, PRICE, SCALE, SIZE);
+        log.record(EventType.DELETE_DEPTH, SYMBOL, '1', 2, -5, 2, 0);
+
+        final StringBuilder out = new StringBuilder();
+
+        assertEquals("Records written", 3, log.poll(out));
+
+        final String[] lines = out.toString().split("\n");
+
+        assertTrue(lines[0], lines[0].endsWith("Snapshot EUR/USD entries 2"));
+        assertTrue(lines[1], lines[1].endsWith(
+                "New depth EUR/USD side 0 level 1 1000 at 1.4335"));
+        assertTrue(lines[2], lines[2].endsWith(
+                "Delete depth EUR/USD side 1 level 2 0 at -0.05"));
+    }
+
+    /**
+     * Test a full ring drops rather than blocks, and a disabled log
+     * records nothing.
+     */
+    @Test
+    public void dropTest() {
+
+        final EventLog log = new EventLog(CAPACITY, true);
+
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            log.record(EventType.REFRESH, null, i);
+        }
+
+        assertEquals("Dropped", 2, log.getDroppedCount());
+        assertEquals("Kept", CAPACITY, log.poll(new StringBuilder()));
+
+        final EventLog disabled = new EventLog(CAPACITY, false);
+
+        disabled.record(EventType.REFRESH, null, 1);
+
+        assertEquals("Disabled log recorded", 0,
+                disabled.poll(new StringBuilder()));
+    }
+
+    /**
+     * Test recording, and writing into a buffer, does not allocate.
+     */
+    @Test
+    public void allocationTest() {
+
+        final EventLog log = new EventLog(CAPACITY, true);
+        final StringBuilder out = new StringBuilder();
+
+        // warm up, then measure
+        for (int i = 0; i < ROUNDS; i++) {
+            log.record(EventType.UPDATE_DEPTH, SYMBOL, '0', 1, i, 0, i);
+            log.poll(out);
+            out.setLength(0);
+        }
+
+        final long before = allocatedBytes();
+
+        for (int i = 0; i < ROUNDS; i++) {
+            log.record(EventType.UPDATE_DEPTH, SYMBOL, '0', 1, i, 0, i);
+            log.poll(out);
+            out.setLength(0);
+        }
+
+        final long allocated = allocatedBytes() - before;
+
+        assertTrue("Recording allocated " + allocated + " bytes",
+                allocated < ROUNDS);
+        assertEquals("Dropped", 0, log.getDroppedCount());
+    }
+
+    /**
+     * @return bytes allocated by this thread
+     */
+    private static long allocatedBytes() {
+
+        final com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
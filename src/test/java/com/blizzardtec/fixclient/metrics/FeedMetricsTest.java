@@ -0,0 +1,189 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+import quickfix.SessionID;
+import quickfix.field.MDEntryPositionNo;
+import quickfix.field.MDEntryPx;
+import quickfix.field.MDEntrySize;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDUpdateAction;
+import quickfix.field.Symbol;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+
+import com.blizzardtec.fixclient.ClientApplication;
+import com.blizzardtec.fixclient.DecodeMode;
+import com.blizzardtec.fixclient.OrderType;
+import com.blizzardtec.fixclient.SessionBooks;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class FeedMetricsTest {
+
+    /**
+     *
+     */
+    private static final String SYMBOL = "EUR/USD";
+    /**
+     *
+     */
+    private static final String OTHER_SYMBOL = "GBP/USD";
+    /**
+     *
+     */
+    private static final char UNKNOWN_ACTION = '9';
+    /**
+     *
+     */
+    private static final String PRICE = "1.4336";
+    /**
+     *
+     */
+    private static final String BAD_PRICE = "1.43x6";
+    /**
+     *
+     */
+    private static final long PAUSE_MILLIS = 5L;
+
+    /**
+     * Test messages and entries are counted, and the counters and
+     * book updates can be read over JMX.
+     * @throws Exception thrown
+     */
+    @Test
+    public void jmxTest() throws Exception {
+
+        final SessionID sessionID =
+                        new SessionID("FIX.4.4", "FIXCLIENT", "FIXSERVER");
+        final ClientApplication application =
+                        new ClientApplication(DecodeMode.FLYWEIGHT);
+        final SessionBooks session = application.getSessionBooks(sessionID);
+
+        session.registerMetrics();
+
+        application.fromApp(snapshot(SYMBOL), sessionID);
+        application.fromApp(snapshot(OTHER_SYMBOL), sessionID);
+        // so the refreshes leave the other book the stalest
+        Thread.sleep(PAUSE_MILLIS);
+        application.fromApp(refresh(MDUpdateAction.CHANGE, PRICE),
+                            sessionID);
+        application.fromApp(refresh(MDUpdateAction.DELETE, PRICE),
+                            sessionID);
+        application.fromApp(refresh(UNKNOWN_ACTION, PRICE), sessionID);
+        application.fromApp(refresh(MDUpdateAction.CHANGE, BAD_PRICE),
+                            sessionID);
+        application.fromApp(new MarketDataSnapshotFullRefresh(), sessionID);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName feed =
+                MetricsNames.of(MetricsNames.FEED, sessionID.toString());
+        final ObjectName books =
+                MetricsNames.of(MetricsNames.BOOKS, sessionID.toString());
+
+        assertEquals("Snapshots", 3L,
+                     server.getAttribute(feed, "SnapshotCount"));
+        assertEquals("Refreshes", 4L,
+                     server.getAttribute(feed, "RefreshCount"));
+        assertEquals("Entries", 4L,
+                     server.getAttribute(feed, "EntriesApplied"));
+        assertEquals("New", 2L, server.getAttribute(feed, "NewCount"));
+        assertEquals("Change", 1L, server.getAttribute(feed, "ChangeCount"));
+        assertEquals("Delete", 1L, server.getAttribute(feed, "DeleteCount"));
+        assertEquals("Unknown", 1L,
+                     server.getAttribute(feed, "UnknownActionCount"));
+        assertEquals("Field not found", 1L,
+                     server.getAttribute(feed, "FieldNotFoundCount"));
+        assertEquals("Malformed", 1L,
+                     server.getAttribute(feed, "MalformedCount"));
+
+        assertEquals("Books", 2, server.getAttribute(books, "BookCount"));
+        assertEquals("Updates", 3L, updates(
+                (TabularData) server.getAttribute(books, "UpdateCounts"),
+                SYMBOL));
+        assertEquals("Stalest", OTHER_SYMBOL,
+                     server.getAttribute(books, "StalestSymbol"));
+        assertTrue("Age", (Long) server.getAttribute(books,
+                                    "MaxUpdateAgeMillis") >= 0);
+
+        session.stop();
+
+        assertFalse("Unregistered", server.isRegistered(feed));
+        assertFalse("Unregistered", server.isRegistered(books));
+    }
+
+    /**
+     * @param table symbol to value map from JMX
+     * @param symbol symbol
+     * @return value of the symbol
+     */
+    private static Object updates(final TabularData table,
+                                  final String symbol) {
+        final CompositeData row = table.get(new Object[] {symbol});
+        return row.get("value");
+    }
+
+    /**
+     * Build a one level bid snapshot.
+     * @param symbol symbol
+     * @return snapshot
+     */
+    private static MarketDataSnapshotFullRefresh snapshot(
+            final String symbol) {
+
+        final MarketDataSnapshotFullRefresh snapshot =
+                                    new MarketDataSnapshotFullRefresh();
+        final MarketDataSnapshotFullRefresh.NoMDEntries group =
+                new MarketDataSnapshotFullRefresh.NoMDEntries();
+
+        snapshot.setString(Symbol.FIELD, symbol);
+        group.setChar(MDEntryType.FIELD, OrderType.BID);
+        group.setString(MDEntryPx.FIELD, "1.4335");
+        group.setString(MDEntrySize.FIELD, "1000");
+        group.setInt(MDEntryPositionNo.FIELD, 1);
+        snapshot.addGroup(group);
+
+        return snapshot;
+    }
+
+    /**
+     * Build a refresh of the level 1 bid.
+     * @param action MDUpdateAction
+     * @param price MDEntryPx
+     * @return refresh
+     */
+    private static MarketDataIncrementalRefresh refresh(final char action,
+                                                        final String price) {
+
+        final MarketDataIncrementalRefresh refresh =
+                                    new MarketDataIncrementalRefresh();
+        final MarketDataIncrementalRefresh.NoMDEntries group =
+                new MarketDataIncrementalRefresh.NoMDEntries();
+
+        group.setChar(MDUpdateAction.FIELD, action);
+        group.setChar(MDEntryType.FIELD, OrderType.BID);
+        group.setString(Symbol.FIELD, SYMBOL);
+        group.setInt(MDEntryPositionNo.FIELD, 1);
+        group.setString(MDEntryPx.FIELD, price);
+        group.setString(MDEntrySize.FIELD, "500");
+        refresh.addGroup(group);
+
+        return refresh;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ *
+ */
+package com.blizzardtec.fixclient.simulator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import quickfix.field.MDUpdateAction;
+
+import com.blizzardtec.fixclient.OrderType;
+import com.blizzardtec.fixclient.depth.BookMode;
+import com.blizzardtec.fixclient.depth.InstrumentDepth;
+import com.blizzardtec.fixclient.depth.PriceDepth;
+
+/**
+ * @author Barnaby Golden
+ *
+ */
+public final class SyntheticBookTest {
+
+    /**
+     *
+     */
+    private static final String SYMBOL = "SYM0";
+    /**
+     *
+     */
+    private static final int DEPTH = 5;
+    /**
+     *
+     */
+    private static final int ENTRIES = 20000;
+    /**
+     *
+     */
+    private static final long SEED = 42L;
+    /**
+     *
+     */
+    private static final char[] TYPES = {OrderType.BID, OrderType.OFFER};
+
+    /**
+     * Test a client keyed by position builds the simulated book.
+     */
+    @Test
+    public void positionTest() {
+        checkBook(BookMode.POSITION);
+    }
+
+    /**
+     * Test a client keyed by price builds the simulated book.
+     */
+    @Test
+    public void priceTest() {
+        checkBook(BookMode.PRICE);
+    }
+
+    /**
+     * Apply a long run of simulated entries to a client book and
+     * check it matches the simulated book after each one.
+     * @param bookMode how the client book locates levels
+     */
+    private static void checkBook(final BookMode bookMode) {
+
+        final Random random = new Random(SEED);
+        final TrafficProfile profile = new TrafficProfile(DEPTH, 0, 1,
+                TrafficProfile.DEFAULT_CHANGE_PERCENT / 2,
+                TrafficProfile.DEFAULT_NEW_PERCENT * 2, 1);
+        final SyntheticBook book = new SyntheticBook(SYMBOL, DEPTH, random);
+        final InstrumentDepth depth = new InstrumentDepth(SYMBOL, DEPTH,
+                SyntheticBook.PRICE_SCALE, bookMode);
+        final PriceDepth entry = new PriceDepth();
+
+        entry.setSymbol(SYMBOL);
+        entry.setPriceScale(SyntheticBook.PRICE_SCALE);
+
+        for (final char type : TYPES) {
+            for (int level = 1; level <= DEPTH; level++) {
+                entry.setType(type);
+                entry.setLevel(level);
+                entry.setPrice(book.getPrice(type, level));
+                entry.setOrderSize(book.getSize(type, level));
+                depth.newDepth(entry);
+            }
+        }
+
+        assertBook(book, depth, -1);
+
+        for (int i = 0; i < ENTRIES; i++) {
+
+            book.next(random, profile, entry);
+
+            if (entry.getUpdateAction() == MDUpdateAction.NEW) {
+                depth.newDepth(entry);
+            } else if (entry.getUpdateAction() == MDUpdateAction.CHANGE) {
+                depth.updateDepth(entry);
+            } else {
+                depth.deleteDepth(entry);
+            }
+
+            assertBook(book, depth, i);
+        }
+    }
+
+    /**
+     * Check every level of a client book against the simulated book.
+     * @param book simulated book
+     * @param depth client book
+     * @param index index of the last entry applied
+     */
+    private static void assertBook(final SyntheticBook book,
+                                   final InstrumentDepth depth,
+                                   final int index) {
+
+        for (final char type : TYPES) {
+            for (int level = 1; level <= DEPTH; level++) {
+                final String where = "Entry " + index + " " + type
+                                     + " level " + level;
+
+                assertEquals(where, book.getPrice(type, level),
+                             depth.getPrice(type, level));
+                assertEquals(where, book.getSize(type, level),
+                             depth.getOrderSize(type, level));
+            }
+        }
+    }
+}